@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.benchmarks;
+
+import com.github.marsbits.restfbmessenger.Messenger;
+import com.github.marsbits.restfbmessenger.metrics.AbstractMessengerMetrics;
+import com.github.marsbits.restfbmessenger.webhook.AbstractCallbackHandler;
+import com.restfb.DefaultJsonMapper;
+import com.restfb.types.webhook.WebhookObject;
+import com.restfb.types.webhook.messaging.MessagingItem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the sequential dispatch of the messaging items of a bound {@link WebhookObject} by the {@link AbstractCallbackHandler}, with
+ * and without recording metrics.
+ *
+ * @author Marcel Overdijk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallbackDispatchBenchmark {
+
+    @Param({"1", "50"})
+    private int entries;
+
+    @Param({"false", "true"})
+    private boolean metrics;
+
+    private AbstractCallbackHandler callbackHandler;
+    private WebhookObject webhookObject;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        this.callbackHandler = new AbstractCallbackHandler() {
+
+            @Override
+            public void onMessage(Messenger messenger, MessagingItem messaging) {
+                blackhole.consume(messaging);
+            }
+        };
+        if (metrics) {
+            callbackHandler.setMetrics(new AbstractMessengerMetrics() {
+            });
+        }
+        this.webhookObject = new DefaultJsonMapper()
+                .toJavaObject(WebhookBindingBenchmark.createPayload("page", entries, false), WebhookObject.class);
+    }
+
+    @Benchmark
+    public void onCallback() {
+        callbackHandler.onCallback(null, webhookObject);
+    }
+}
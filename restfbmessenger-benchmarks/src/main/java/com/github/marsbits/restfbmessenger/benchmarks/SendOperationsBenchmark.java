@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.benchmarks;
+
+import com.github.marsbits.restfbmessenger.send.DefaultSendOperations;
+import com.github.marsbits.restfbmessenger.send.PreparedMessage;
+import com.restfb.BinaryAttachment;
+import com.restfb.DebugHeaderInfo;
+import com.restfb.DefaultFacebookClient;
+import com.restfb.DefaultJsonMapper;
+import com.restfb.WebRequestor;
+import com.restfb.types.send.Bubble;
+import com.restfb.types.send.GenericTemplatePayload;
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.Message;
+import com.restfb.types.send.MessagingType;
+import com.restfb.types.send.PostbackButton;
+import com.restfb.types.send.QuickReply;
+import com.restfb.types.send.SendResponse;
+import com.restfb.types.send.TemplateAttachment;
+import com.restfb.types.send.WebButton;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.marsbits.restfbmessenger.DefaultMessenger.DEFAULT_API_VERSION;
+
+/**
+ * Benchmarks the parameter building and serialization of the {@link DefaultSendOperations}, including the response binding, against a
+ * {@link DefaultFacebookClient} with a stub {@link WebRequestor} that does not perform any http requests.
+ *
+ * @author Marcel Overdijk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendOperationsBenchmark {
+
+    private static final String RESPONSE_BODY = "{\"recipient_id\":\"USER_ID\",\"message_id\":\"mid.1457764197618:41d102a3e1ae206a38\"}";
+
+    private DefaultSendOperations sendOperations;
+    private IdMessageRecipient recipient;
+    private Message quickRepliesMessage;
+    private Message genericTemplateMessage;
+    private PreparedMessage preparedGenericTemplateMessage;
+
+    @Setup
+    public void setUp() {
+        this.sendOperations = new DefaultSendOperations(
+                new DefaultFacebookClient("the access token", new StubWebRequestor(), new DefaultJsonMapper(), DEFAULT_API_VERSION));
+        this.recipient = new IdMessageRecipient("USER_ID");
+        this.quickRepliesMessage = new Message("Pick a color");
+        quickRepliesMessage.addQuickReply(new QuickReply("Red", "PICK_RED"));
+        quickRepliesMessage.addQuickReply(new QuickReply("Green", "PICK_GREEN"));
+        quickRepliesMessage.addQuickReply(new QuickReply("Blue", "PICK_BLUE"));
+        GenericTemplatePayload payload = new GenericTemplatePayload();
+        for (int i = 0; i < 5; i++) {
+            Bubble bubble = new Bubble("Product " + i);
+            bubble.setSubtitle("The best product in the store");
+            bubble.setImageUrl("https://example.com/images/product-" + i + ".jpg");
+            bubble.addButton(new WebButton("View", "https://example.com/products/" + i));
+            bubble.addButton(new PostbackButton("Buy", "BUY_" + i));
+            payload.addBubble(bubble);
+        }
+        this.genericTemplateMessage = new Message(new TemplateAttachment(payload));
+        this.preparedGenericTemplateMessage = PreparedMessage.of(MessagingType.RESPONSE, genericTemplateMessage);
+    }
+
+    @Benchmark
+    public SendResponse typingOn() {
+        return sendOperations.typingOn(recipient);
+    }
+
+    @Benchmark
+    public SendResponse textMessage() {
+        return sendOperations.textMessage(MessagingType.RESPONSE, recipient, "hello, world!");
+    }
+
+    @Benchmark
+    public SendResponse quickRepliesMessage() {
+        return sendOperations.message(MessagingType.RESPONSE, recipient, quickRepliesMessage);
+    }
+
+    @Benchmark
+    public SendResponse genericTemplateMessage() {
+        return sendOperations.message(MessagingType.RESPONSE, recipient, genericTemplateMessage);
+    }
+
+    @Benchmark
+    public SendResponse preparedGenericTemplateMessage() {
+        return sendOperations.preparedMessage(recipient, preparedGenericTemplateMessage);
+    }
+
+    /**
+     * Web requestor returning a successful send response without performing any http requests.
+     */
+    private static class StubWebRequestor implements WebRequestor {
+
+        // keeps the serialized parameters reachable, so their building cannot be optimized away
+        private volatile String parameters;
+
+        @Override
+        public Response executeGet(String url) {
+            return new Response(200, RESPONSE_BODY);
+        }
+
+        @Override
+        public Response executePost(String url, String parameters) {
+            this.parameters = parameters;
+            return new Response(200, RESPONSE_BODY);
+        }
+
+        @Override
+        public Response executePost(String url, String parameters, BinaryAttachment... binaryAttachments) {
+            return executePost(url, parameters);
+        }
+
+        @Override
+        public Response executeDelete(String url) {
+            return new Response(200, RESPONSE_BODY);
+        }
+
+        @Override
+        public DebugHeaderInfo getDebugHeaderInfo() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.benchmarks;
+
+import com.github.marsbits.restfbmessenger.DefaultMessenger;
+import com.restfb.util.EncodingUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static com.github.marsbits.restfbmessenger.DefaultMessenger.HMAC_SHA1_ALGORITHM;
+import static com.github.marsbits.restfbmessenger.DefaultMessenger.SIGNATURE_PREFIX;
+import static com.github.marsbits.restfbmessenger.webhook.HmacSignatureVerifier.HMAC_SHA256_ALGORITHM;
+import static com.github.marsbits.restfbmessenger.webhook.HmacSignatureVerifier.SHA256_SIGNATURE_PREFIX;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Benchmarks the webhook signature verification of {@link DefaultMessenger} against the previous implementation which looked up and
+ * initialized a new {@link Mac} for every webhook and compared hex encoded hashes.
+ *
+ * @author Marcel Overdijk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureVerificationBenchmark {
+
+    private static final String APP_SECRET = "the app secret";
+
+    @Param({"256", "4096", "65536"})
+    private int payloadSize;
+
+    private DefaultMessenger messenger;
+    private byte[] payload;
+    private String signature;
+    private String sha256Signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.messenger = new DefaultMessenger("the verify token", "the access token", APP_SECRET, null);
+        char[] chars = new char[payloadSize];
+        Arrays.fill(chars, 'x');
+        this.payload = new String(chars).getBytes(UTF_8);
+        this.signature = SIGNATURE_PREFIX + generateHmac(payload, HMAC_SHA1_ALGORITHM);
+        this.sha256Signature = SHA256_SIGNATURE_PREFIX + generateHmac(payload, HMAC_SHA256_ALGORITHM);
+    }
+
+    @Benchmark
+    public boolean baseline() throws Exception {
+        String signatureHash = signature.substring(SIGNATURE_PREFIX.length());
+        return generateHmac(payload, HMAC_SHA1_ALGORITHM).equals(signatureHash);
+    }
+
+    @Benchmark
+    public boolean verifySignature() {
+        return messenger.verifySignature(payload, signature);
+    }
+
+    @Benchmark
+    public boolean verifySha256Signature() {
+        return messenger.verifySignature(payload, sha256Signature);
+    }
+
+    private static String generateHmac(byte[] payload, String algorithm) throws Exception {
+        SecretKeySpec signingKey = new SecretKeySpec(APP_SECRET.getBytes(UTF_8), algorithm);
+        Mac mac = Mac.getInstance(algorithm);
+        mac.init(signingKey);
+        return new String(EncodingUtils.encodeHex(mac.doFinal(payload)));
+    }
+}
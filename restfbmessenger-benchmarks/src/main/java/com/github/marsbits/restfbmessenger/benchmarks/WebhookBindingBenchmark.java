@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.benchmarks;
+
+import com.github.marsbits.restfbmessenger.DefaultMessenger;
+import com.github.marsbits.restfbmessenger.Messenger;
+import com.github.marsbits.restfbmessenger.webhook.CallbackHandler;
+import com.restfb.DefaultJsonMapper;
+import com.restfb.JsonMapper;
+import com.restfb.types.webhook.WebhookObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Benchmarks the webhook payload binding of {@link DefaultMessenger} against binding the complete payload to a {@link WebhookObject}
+ * with the json mapper, for payloads with a single or 50 entries containing text messages or messages with attachments.
+ *
+ * @author Marcel Overdijk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebhookBindingBenchmark {
+
+    @Param({"1", "50"})
+    private int entries;
+
+    @Param({"text", "attachments"})
+    private String message;
+
+    private JsonMapper jsonMapper;
+    private DefaultMessenger messenger;
+    private String payload;
+    private byte[] payloadBytes;
+    private byte[] userPayloadBytes;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        this.jsonMapper = new DefaultJsonMapper();
+        this.messenger = new DefaultMessenger("the verify token", "the access token", null, new CallbackHandler() {
+
+            @Override
+            public void onCallback(Messenger messenger, WebhookObject webhookObject) {
+                blackhole.consume(webhookObject);
+            }
+        });
+        boolean attachments = "attachments".equals(message);
+        this.payload = createPayload("page", entries, attachments);
+        this.payloadBytes = payload.getBytes(UTF_8);
+        this.userPayloadBytes = createPayload("user", entries, attachments).getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public WebhookObject baseline() {
+        return jsonMapper.toJavaObject(new String(payloadBytes, UTF_8), WebhookObject.class);
+    }
+
+    @Benchmark
+    public void handleCallback() {
+        messenger.handleCallback(payloadBytes, null);
+    }
+
+    @Benchmark
+    public void handleCallbackNotPage() {
+        messenger.handleCallback(userPayloadBytes, null);
+    }
+
+    static String createPayload(String object, int entries, boolean attachments) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"object\":\"").append(object).append("\",\"entry\":[");
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append("{\"id\":\"PAGE_ID\",\"time\":1458692752478,\"messaging\":[{")
+                    .append("\"sender\":{\"id\":\"USER_ID_").append(i).append("\"},")
+                    .append("\"recipient\":{\"id\":\"PAGE_ID\"},")
+                    .append("\"timestamp\":1458692752478,")
+                    .append("\"message\":{\"mid\":\"mid.1457764197618:41d102a3e1ae206a38\",\"seq\":").append(i);
+            if (attachments) {
+                sb.append(",\"attachments\":[")
+                        .append("{\"type\":\"image\",\"payload\":{\"url\":\"https://scontent.xx.fbcdn.net/v/t34.0-12/image.jpg\"}},")
+                        .append("{\"type\":\"location\",\"title\":\"Amsterdam\",\"url\":\"https://www.bing.com/maps\",")
+                        .append("\"payload\":{\"coordinates\":{\"lat\":52.3702,\"long\":4.8952}}}]}}]}");
+            } else {
+                sb.append(",\"text\":\"hello, world!\"}}]}");
+            }
+        }
+        return sb.append("]}").toString();
+    }
+}
@@ -16,14 +16,35 @@
 
 package com.github.marsbits.restfbmessenger;
 
+import com.github.marsbits.restfbmessenger.metrics.MessengerMetrics;
+import com.github.marsbits.restfbmessenger.profile.UserProfileCache;
+import com.github.marsbits.restfbmessenger.profile.UserProfileLoader;
+import com.github.marsbits.restfbmessenger.profile.UserProfiles;
+import com.github.marsbits.restfbmessenger.send.AsyncSendOperations;
+import com.github.marsbits.restfbmessenger.send.BatchingAsyncSendOperations;
+import com.github.marsbits.restfbmessenger.send.DefaultAsyncSendOperations;
 import com.github.marsbits.restfbmessenger.send.DefaultSendOperations;
+import com.github.marsbits.restfbmessenger.send.DurableAsyncSendOperations;
+import com.github.marsbits.restfbmessenger.send.SendBatch;
 import com.github.marsbits.restfbmessenger.send.SendOperations;
+import com.github.marsbits.restfbmessenger.send.SendRateLimiter;
+import com.github.marsbits.restfbmessenger.tracing.MessengerSpan;
+import com.github.marsbits.restfbmessenger.tracing.MessengerTracer;
+import com.github.marsbits.restfbmessenger.tracing.NoopMessengerTracer;
+import com.github.marsbits.restfbmessenger.util.NamedThreadFactory;
+import com.github.marsbits.restfbmessenger.webhook.AbstractCallbackHandler;
 import com.github.marsbits.restfbmessenger.webhook.CallbackHandler;
+import com.github.marsbits.restfbmessenger.webhook.HmacSignatureVerifier;
+import com.github.marsbits.restfbmessenger.webhook.SignatureVerifier;
+import com.github.marsbits.restfbmessenger.webhook.WebhookPayloadScanner;
 import com.restfb.Connection;
 import com.restfb.DefaultFacebookClient;
+import com.restfb.DefaultJsonMapper;
 import com.restfb.FacebookClient;
+import com.restfb.JsonMapper;
 import com.restfb.Parameter;
 import com.restfb.Version;
+import com.restfb.WebRequestor;
 import com.restfb.exception.FacebookException;
 import com.restfb.types.User;
 import com.restfb.types.send.CallToAction;
@@ -34,30 +55,37 @@ import com.restfb.types.send.PageMessageTag;
 import com.restfb.types.send.SendResponse;
 import com.restfb.types.send.SettingTypeEnum;
 import com.restfb.types.send.ThreadStateEnum;
+import com.restfb.types.webhook.WebhookEntry;
 import com.restfb.types.webhook.WebhookObject;
-import com.restfb.util.EncodingUtils;
 
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-
 import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.WARNING;
 
 /**
  * Default implementation of the {@link Messenger} interface.
+ * <p>
+ * The default executor performing the {@link #sendAsync() asynchronous send operations} is owned by the messenger and must be stopped
+ * with {@link #close()}, which performs the queued operations first.
  *
  * @author Marcel Overdijk
  * @since 1.0.0
  */
-public class DefaultMessenger implements Messenger {
+public class DefaultMessenger implements Messenger, Closeable {
 
     private static final Logger logger = Logger.getLogger(DefaultMessenger.class.getName());
 
@@ -66,11 +94,16 @@ public class DefaultMessenger implements Messenger {
     public static final String THREAD_SETTINGS_PATH = "me/thread_settings";
     public static final String PAGE_MESSAGE_TAGS_PATH = "page_message_tags";
 
-    public static final String HMAC_SHA1_ALGORITHM = "HmacSHA1";
-    public static final String SIGNATURE_PREFIX = "sha1=";
+    public static final String HMAC_SHA1_ALGORITHM = HmacSignatureVerifier.HMAC_SHA1_ALGORITHM;
+    public static final String SIGNATURE_PREFIX = HmacSignatureVerifier.SHA1_SIGNATURE_PREFIX;
 
     public static final String OBJECT_PAGE_VALUE = "page";
 
+    public static final int DEFAULT_ASYNC_SEND_POOL_SIZE = 10;
+    public static final int DEFAULT_ASYNC_SEND_QUEUE_CAPACITY = 10000;
+
+    private static final long ASYNC_SEND_SHUTDOWN_TIMEOUT_SECONDS = 30;
+
     public static final String USER_FIELDS_PARAM_NAME = "fields";
     public static final String USER_FIELDS_DEFAULT_VALUE = "first_name,last_name,profile_pic,locale,timezone,gender";
 
@@ -88,8 +121,20 @@ public class DefaultMessenger implements Messenger {
     protected FacebookClient facebookClient;
 
     protected SendOperations sendOperations;
+    protected volatile AsyncSendOperations asyncSendOperations;
+    private ExecutorService asyncSendExecutor;
+    private boolean closed;
     protected CallbackHandler callbackHandler;
 
+    protected SignatureVerifier signatureVerifier;
+
+    protected volatile UserProfileLoader userProfileLoader;
+
+    protected volatile MessengerMetrics metrics;
+    protected volatile MessengerTracer tracer = NoopMessengerTracer.INSTANCE;
+    // the metrics the pending send operations queue is registered with, so it is registered only once
+    private MessengerMetrics queueMetrics;
+
     /**
      * Creates a {@code DefaultMessenger} instance. If the app secret is not provided ({@code null} the callback signature verification will
      * be disabled.
@@ -118,6 +163,26 @@ public class DefaultMessenger implements Messenger {
         this(verifyToken, appSecret, callbackHandler, new DefaultFacebookClient(accessToken, appSecret, apiVersion));
     }
 
+    /**
+     * Creates a {@code DefaultMessenger} instance performing the Graph API requests with the given web requestor, e.g. a pooled
+     * {@link com.github.marsbits.restfbmessenger.client.HttpClientWebRequestor}.
+     *
+     * If the app secret is not provided ({@code null} the callback signature verification will be disabled.
+     *
+     * @param verifyToken     the verify token
+     * @param accessToken     the access token
+     * @param appSecret       the app secret
+     * @param callbackHandler the callback handler
+     * @param apiVersion      the api version
+     * @param webRequestor    the web requestor
+     * @since 2.3.0
+     */
+    public DefaultMessenger(String verifyToken, String accessToken, String appSecret, CallbackHandler callbackHandler, Version apiVersion,
+            WebRequestor webRequestor) {
+        this(verifyToken, appSecret, callbackHandler,
+                new DefaultFacebookClient(accessToken, appSecret, webRequestor, new DefaultJsonMapper(), apiVersion));
+    }
+
     /**
      * Creates a {@code DefaultMessenger} instance.
      *
@@ -136,7 +201,10 @@ public class DefaultMessenger implements Messenger {
         this.callbackHandler = callbackHandler;
         this.facebookClient = facebookClient;
         this.sendOperations = new DefaultSendOperations(facebookClient);
-        if (appSecret == null) {
+        this.userProfileLoader = new UserProfileLoader(facebookClient, null);
+        if (appSecret != null) {
+            this.signatureVerifier = new HmacSignatureVerifier(appSecret);
+        } else {
             if (logger.isLoggable(WARNING)) {
                 logger.warning("App secret not configured; webhook signature will not be verified");
             }
@@ -155,58 +223,247 @@ public class DefaultMessenger implements Messenger {
 
     @Override
     public void handleCallback(String payload, String signature) {
+        requireNonNull(payload, "'payload' must not be null");
+        handleCallback(payload.getBytes(UTF_8), payload, signature, true);
+    }
+
+    /**
+     * Handles the webhook callback. The payload bytes are expected to be UTF-8 encoded.
+     *
+     * @param payload   the received webhook payload bytes
+     * @param signature the received webhook signature
+     * @since 2.3.0
+     */
+    public void handleCallback(byte[] payload, String signature) {
+        requireNonNull(payload, "'payload' must not be null");
+        handleCallback(payload, null, signature, true);
+    }
+
+    /**
+     * Handles the webhook callback of which the signature has already been verified with {@link #verifySignature(byte[], String)}, so
+     * the signature is not calculated again. The payload bytes are expected to be UTF-8 encoded.
+     *
+     * @param payload the verified webhook payload bytes
+     * @since 2.3.0
+     */
+    public void handleVerifiedCallback(byte[] payload) {
+        requireNonNull(payload, "'payload' must not be null");
+        handleCallback(payload, null, null, false);
+    }
+
+    private void handleCallback(byte[] payloadBytes, String payload, String signature, boolean verify) {
         if (callbackHandler == null) {
             if (logger.isLoggable(FINE)) {
                 logger.fine("Webhook received but no webhook handler configured");
             }
         } else {
             if (logger.isLoggable(FINE)) {
-                logger.fine(format("Handling webhook for payload: %s, signature: %s", payload, signature));
+                logger.fine(format("Handling webhook for payload: %s, signature: %s",
+                        payload != null ? payload : new String(payloadBytes, UTF_8), signature));
             }
-            if (appSecret != null) {
-                if (!verifySignature(payload, signature)) {
-                    if (logger.isLoggable(FINE)) {
-                        logger.fine("Invalid signature received; webhook handler not invoked");
-                    }
-                    return;
-                }
+            MessengerSpan span = tracer.startSpan(MessengerTracer.WEBHOOK_SPAN_NAME)
+                    .setAttribute(MessengerTracer.PAYLOAD_SIZE_ATTRIBUTE, payloadBytes.length);
+            try {
+                dispatchCallback(payloadBytes, payload, signature, verify);
+            } catch (RuntimeException | Error e) {
+                span.recordFailure(e);
+                throw e;
+            } finally {
+                span.end();
             }
-            WebhookObject webhookObject = facebookClient.getJsonMapper().toJavaObject(payload, WebhookObject.class);
-            if (!OBJECT_PAGE_VALUE.equals(webhookObject.getObject())) {
+        }
+    }
+
+    private void dispatchCallback(byte[] payloadBytes, String payload, String signature, boolean verify) {
+        if (verify && !verifySignature(payloadBytes, signature)) {
+            if (logger.isLoggable(FINE)) {
+                logger.fine("Invalid signature received; webhook handler not invoked");
+            }
+            return;
+        }
+        MessengerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        WebhookObject webhookObject;
+        // scan the payload first so non page objects are ignored before any json binding
+        WebhookPayloadScanner scanner = WebhookPayloadScanner.scan(payloadBytes, OBJECT_PAGE_VALUE);
+        if (scanner != null) {
+            if (!OBJECT_PAGE_VALUE.equals(scanner.getObject())) {
                 if (logger.isLoggable(FINE)) {
-                    logger.fine(format("Ignoring webhook object: %s; webhook handler not invoked", webhookObject.getObject()));
+                    logger.fine(format("Ignoring webhook object: %s; webhook handler not invoked", scanner.getObject()));
                 }
                 return;
             }
-            callbackHandler.onCallback(this, webhookObject);
+            webhookObject = toWebhookObject(scanner);
+        } else {
+            if (payload == null) {
+                // the json mapper only accepts strings
+                payload = new String(payloadBytes, UTF_8);
+            }
+            webhookObject = facebookClient.getJsonMapper().toJavaObject(payload, WebhookObject.class);
+        }
+        if (metrics != null) {
+            metrics.webhookParsed(System.nanoTime() - start);
+        }
+        if (!OBJECT_PAGE_VALUE.equals(webhookObject.getObject())) {
+            if (logger.isLoggable(FINE)) {
+                logger.fine(format("Ignoring webhook object: %s; webhook handler not invoked", webhookObject.getObject()));
+            }
+            return;
         }
+        callbackHandler.onCallback(this, webhookObject);
     }
 
+    /**
+     * Binds the scanned webhook payload to a {@link WebhookObject}. The entries are bound one by one, so the payload as a whole is never
+     * mapped into a json tree.
+     */
+    private WebhookObject toWebhookObject(WebhookPayloadScanner scanner) {
+        JsonMapper jsonMapper = facebookClient.getJsonMapper();
+        WebhookObject webhookObject = new WebhookObject();
+        webhookObject.setObject(scanner.getObject());
+        if (scanner.hasEntries()) {
+            List<WebhookEntry> entries = new ArrayList<>(scanner.getEntryCount());
+            for (int i = 0; i < scanner.getEntryCount(); i++) {
+                entries.add(jsonMapper.toJavaObject(scanner.getEntry(i), WebhookEntry.class));
+            }
+            webhookObject.setEntryList(entries);
+        }
+        return webhookObject;
+    }
 
-    protected boolean verifySignature(String payload, String signature) {
-        if (signature == null || !signature.startsWith(SIGNATURE_PREFIX)) {
-            if (logger.isLoggable(FINE)) {
-                logger.fine(format("Invalid signature: %s", signature));
+    /**
+     * Verifies the webhook signature.
+     *
+     * @param payload   the received webhook payload
+     * @param signature the received webhook signature
+     * @return {@code true} if the signature is valid or signature verification is disabled, otherwise {@code false}
+     * @since 2.3.0
+     */
+    public boolean verifySignature(String payload, String signature) {
+        requireNonNull(payload, "'payload' must not be null");
+        return verifySignature(payload.getBytes(UTF_8), signature);
+    }
+
+    /**
+     * Verifies the webhook signature over the raw payload bytes.
+     *
+     * @param payload   the received webhook payload bytes
+     * @param signature the received webhook signature
+     * @return {@code true} if the signature is valid or signature verification is disabled, otherwise {@code false}
+     * @since 2.3.0
+     */
+    public boolean verifySignature(byte[] payload, String signature) {
+        if (signatureVerifier == null) {
+            return true;
+        }
+        boolean valid = signatureVerifier.verify(payload, signature);
+        if (!valid) {
+            MessengerMetrics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.webhookSignatureFailed();
             }
-            return false;
         }
-        String signatureHash = signature.substring(SIGNATURE_PREFIX.length());
-        String expectedHash = generateHmac(payload);
-        return expectedHash.equals(signatureHash);
+        return valid;
     }
 
-    private String generateHmac(String payload) {
-        try {
-            SecretKeySpec signingKey = new SecretKeySpec(appSecret.getBytes(), HMAC_SHA1_ALGORITHM);
-            Mac mac = Mac.getInstance(HMAC_SHA1_ALGORITHM);
-            mac.init(signingKey);
-            byte[] hmac = mac.doFinal(payload.getBytes());
-            return new String(EncodingUtils.encodeHex(hmac));
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException(
-                    format("%s algorithm not supported", HMAC_SHA1_ALGORITHM));
-        } catch (InvalidKeyException e) {
-            throw new IllegalStateException("Signing key is inappropriate");
+    /**
+     * Returns the callback handler handling the webhook callbacks, or {@code null} if no callback handler is set.
+     *
+     * @since 2.3.0
+     */
+    public CallbackHandler getCallbackHandler() {
+        return callbackHandler;
+    }
+
+    /**
+     * Returns the signature verifier used to verify the webhook callback signatures, or {@code null} if signature verification is
+     * disabled.
+     *
+     * @since 2.3.0
+     */
+    public SignatureVerifier getSignatureVerifier() {
+        return signatureVerifier;
+    }
+
+    /**
+     * Sets the signature verifier used to verify the webhook callback signatures. By default a {@link HmacSignatureVerifier} is used when
+     * the app secret is provided. Setting it to {@code null} disables signature verification.
+     *
+     * @param signatureVerifier the signature verifier
+     * @since 2.3.0
+     */
+    public void setSignatureVerifier(SignatureVerifier signatureVerifier) {
+        this.signatureVerifier = signatureVerifier;
+    }
+
+    /**
+     * Returns the metrics recording the webhook and Send API metrics, or {@code null} if no metrics are recorded.
+     *
+     * @since 2.3.0
+     */
+    public MessengerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics recording the webhook signature failures and parse duration. The metrics are also set on the send operations
+     * when they are {@link DefaultSendOperations} and on the callback handler when it is an {@link AbstractCallbackHandler}, and are
+     * used by the {@link com.github.marsbits.restfbmessenger.webhook.WebhookServlet} to record the received webhooks.
+     *
+     * @param metrics the metrics, may be null to not record metrics
+     * @since 2.3.0
+     */
+    public synchronized void setMetrics(MessengerMetrics metrics) {
+        this.metrics = metrics;
+        if (sendOperations instanceof DefaultSendOperations) {
+            ((DefaultSendOperations) sendOperations).setMetrics(metrics);
+        }
+        if (callbackHandler instanceof AbstractCallbackHandler) {
+            ((AbstractCallbackHandler) callbackHandler).setMetrics(metrics);
+        }
+        if (metrics != null && metrics != queueMetrics) {
+            queueMetrics = metrics;
+            metrics.registerQueue("send.pending", new MessengerMetrics.QueueDepth() {
+
+                @Override
+                public long get() {
+                    AsyncSendOperations asyncSendOperations = DefaultMessenger.this.asyncSendOperations;
+                    return asyncSendOperations instanceof DurableAsyncSendOperations
+                            ? ((DurableAsyncSendOperations) asyncSendOperations).getPendingCount() : 0;
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the tracer starting the webhook, messaging item and Send API spans.
+     *
+     * @since 2.3.0
+     */
+    public MessengerTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Sets the tracer starting a span per webhook callback. The tracer is also set on the send operations when they are {@link
+     * DefaultSendOperations}, on the asynchronous send operations when they are {@link DefaultAsyncSendOperations}, and on the callback
+     * handler when it is an {@link AbstractCallbackHandler}, so a single trace covers a webhook and the Send API calls it triggers. It is
+     * also used by the {@link com.github.marsbits.restfbmessenger.webhook.WebhookServlet} to propagate the trace context to the webhook
+     * executor.
+     *
+     * @param tracer the tracer, may be null to not trace the webhooks
+     * @since 2.3.0
+     */
+    public synchronized void setTracer(MessengerTracer tracer) {
+        this.tracer = tracer != null ? tracer : NoopMessengerTracer.INSTANCE;
+        if (sendOperations instanceof DefaultSendOperations) {
+            ((DefaultSendOperations) sendOperations).setTracer(tracer);
+        }
+        if (asyncSendOperations instanceof DefaultAsyncSendOperations) {
+            ((DefaultAsyncSendOperations) asyncSendOperations).setTracer(tracer);
+        }
+        if (callbackHandler instanceof AbstractCallbackHandler) {
+            ((AbstractCallbackHandler) callbackHandler).setTracer(tracer);
         }
     }
 
@@ -217,19 +474,85 @@ public class DefaultMessenger implements Messenger {
 
     @Override
     public User getUserProfile(String userId, String... fields) throws FacebookException {
+        return getUserProfile(userId, joinFields(fields));
+    }
+
+    @Override
+    public User getUserProfile(String userId, String fields) throws FacebookException {
+        requireNonNull(userId, "'userId' must not be null");
+        return userProfileLoader.load(userId, fields);
+    }
+
+    /**
+     * Returns the {@link User}s for the given user ids, retrieving many users per Graph API call. Users that could not be retrieved are
+     * returned as failures instead of failing the whole lookup.
+     *
+     * @param userIds the user ids
+     * @return the users and failures by user id
+     * @since 2.3.0
+     */
+    public UserProfiles getUserProfiles(Collection<String> userIds) {
+        return getUserProfiles(userIds, USER_FIELDS_DEFAULT_VALUE);
+    }
+
+    /**
+     * Returns the {@link User}s for the given user ids, retrieving many users per Graph API call. Only the given fields will be retrieved
+     * and populated in the returned user objects. Users that could not be retrieved are returned as failures instead of failing the whole
+     * lookup.
+     *
+     * @param userIds the user ids
+     * @param fields  the list of user fields
+     * @return the users and failures by user id
+     * @since 2.3.0
+     */
+    public UserProfiles getUserProfiles(Collection<String> userIds, String... fields) {
+        return getUserProfiles(userIds, joinFields(fields));
+    }
+
+    /**
+     * Returns the {@link User}s for the given user ids, retrieving many users per Graph API call. Only the given fields will be retrieved
+     * and populated in the returned user objects. Users that could not be retrieved are returned as failures instead of failing the whole
+     * lookup.
+     *
+     * @param userIds the user ids
+     * @param fields  the comma separated list of user fields
+     * @return the users and failures by user id
+     * @since 2.3.0
+     */
+    public UserProfiles getUserProfiles(Collection<String> userIds, String fields) {
+        requireNonNull(userIds, "'userIds' must not be null");
+        return userProfileLoader.loadAll(userIds, fields);
+    }
+
+    private static String joinFields(String... fields) {
         StringBuilder sb = new StringBuilder();
         String sep = "";
         for (String field : fields) {
             sb.append(sep).append(field);
             sep = ",";
         }
-        return getUserProfile(userId, sb.toString());
+        return sb.toString();
     }
 
-    @Override
-    public User getUserProfile(String userId, String fields) throws FacebookException {
-        requireNonNull(userId, "'userId' must not be null");
-        return facebookClient.fetchObject(userId, User.class, Parameter.with(USER_FIELDS_PARAM_NAME, fields));
+    /**
+     * Sets the cache of the user profiles returned by {@link #getUserProfile(String, String)}. Concurrent lookups of the same user profile
+     * share one Graph API call, also without a cache.
+     *
+     * @param cache the cache, may be null to not cache user profiles
+     * @since 2.3.0
+     */
+    public void setUserProfileCache(UserProfileCache cache) {
+        this.userProfileLoader = new UserProfileLoader(facebookClient, cache);
+    }
+
+    /**
+     * Removes the cached profiles of the given user, e.g. after receiving a webhook indicating the user changed.
+     *
+     * @param userId the user id
+     * @since 2.3.0
+     */
+    public void invalidateUserProfile(String userId) {
+        userProfileLoader.invalidate(userId);
     }
 
     @Override
@@ -237,6 +560,139 @@ public class DefaultMessenger implements Messenger {
         return sendOperations;
     }
 
+    /**
+     * Asynchronous Send API for sending messages to users without blocking the calling thread.
+     *
+     * @since 2.3.0
+     */
+    public AsyncSendOperations sendAsync() {
+        AsyncSendOperations asyncSendOperations = this.asyncSendOperations;
+        if (asyncSendOperations == null) {
+            synchronized (this) {
+                asyncSendOperations = this.asyncSendOperations;
+                if (asyncSendOperations == null) {
+                    if (closed) {
+                        throw new IllegalStateException("Messenger has been closed");
+                    }
+                    Executor executor = createAsyncSendExecutor();
+                    if (executor instanceof ExecutorService) {
+                        asyncSendExecutor = (ExecutorService) executor;
+                    }
+                    DefaultAsyncSendOperations defaultAsyncSendOperations = new DefaultAsyncSendOperations(sendOperations, executor);
+                    defaultAsyncSendOperations.setTracer(tracer);
+                    asyncSendOperations = defaultAsyncSendOperations;
+                    this.asyncSendOperations = asyncSendOperations;
+                }
+            }
+        }
+        return asyncSendOperations;
+    }
+
+    /**
+     * Creates a new batch for sending multiple messages to users in Graph API batch requests.
+     *
+     * @since 2.3.0
+     */
+    public SendBatch sendBatch() {
+        SendBatch batch = new SendBatch(facebookClient);
+        if (sendOperations instanceof DefaultSendOperations) {
+            batch.setRateLimiter(((DefaultSendOperations) sendOperations).getRateLimiter());
+        }
+        return batch;
+    }
+
+    /**
+     * Sets the executor performing the asynchronous send operations. The lifecycle of the given executor is managed by the caller; the
+     * default executor, when already created, is shut down after performing its queued operations.
+     *
+     * @param executor the executor, not null
+     * @since 2.3.0
+     */
+    public synchronized void setAsyncSendExecutor(Executor executor) {
+        requireNonNull(executor, "'executor' must not be null");
+        shutdownAsyncSendExecutor();
+        DefaultAsyncSendOperations asyncSendOperations = new DefaultAsyncSendOperations(sendOperations, executor);
+        asyncSendOperations.setTracer(tracer);
+        this.asyncSendOperations = asyncSendOperations;
+    }
+
+    /**
+     * Sets the asynchronous send operations, e.g. a {@link BatchingAsyncSendOperations} coalescing the operations into batch requests.
+     * The default executor, when already created, is shut down after performing its queued operations.
+     *
+     * @param asyncSendOperations the asynchronous send operations, not null
+     * @since 2.3.0
+     */
+    public synchronized void setAsyncSendOperations(AsyncSendOperations asyncSendOperations) {
+        requireNonNull(asyncSendOperations, "'asyncSendOperations' must not be null");
+        shutdownAsyncSendExecutor();
+        this.asyncSendOperations = asyncSendOperations;
+    }
+
+    /**
+     * Stops the default executor performing the asynchronous send operations, waiting up to 30 seconds for the queued operations to be
+     * performed. Operations that have not been performed by then are discarded. Executors set with {@link
+     * #setAsyncSendExecutor(Executor)} are not stopped.
+     *
+     * @since 2.3.0
+     */
+    @Override
+    public void close() {
+        ExecutorService executor;
+        synchronized (this) {
+            closed = true;
+            executor = asyncSendExecutor;
+            asyncSendExecutor = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        logger.info("Shutting down async send executor...");
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(ASYNC_SEND_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                List<Runnable> discarded = executor.shutdownNow();
+                logger.warning(format("Async send executor did not terminate in time; %d pending send operations are discarded",
+                        discarded.size()));
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void shutdownAsyncSendExecutor() {
+        if (asyncSendExecutor != null) {
+            // the replaced executor still performs the operations already queued
+            asyncSendExecutor.shutdown();
+            asyncSendExecutor = null;
+        }
+    }
+
+    /**
+     * Sets the rate limiter applied to the send operations.
+     *
+     * @param rateLimiter the rate limiter, may be null to not limit the send operations
+     * @since 2.3.0
+     */
+    public void setSendRateLimiter(SendRateLimiter rateLimiter) {
+        if (!(sendOperations instanceof DefaultSendOperations)) {
+            throw new IllegalStateException("Rate limiting requires the send operations to be DefaultSendOperations");
+        }
+        ((DefaultSendOperations) sendOperations).setRateLimiter(rateLimiter);
+    }
+
+    /**
+     * Creates the default executor performing the asynchronous send operations, when no executor has been set. By default a fixed pool
+     * of {@value #DEFAULT_ASYNC_SEND_POOL_SIZE} daemon threads with a queue of {@value #DEFAULT_ASYNC_SEND_QUEUE_CAPACITY} operations is
+     * used; operations submitted while the queue is full fail with a {@link java.util.concurrent.RejectedExecutionException}. When the
+     * returned executor is an {@link ExecutorService} it is shut down by {@link #close()}.
+     */
+    protected Executor createAsyncSendExecutor() {
+        return new ThreadPoolExecutor(DEFAULT_ASYNC_SEND_POOL_SIZE, DEFAULT_ASYNC_SEND_POOL_SIZE, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(DEFAULT_ASYNC_SEND_QUEUE_CAPACITY), new NamedThreadFactory("send"));
+    }
+
     @Override
     public void setGreeting(String greeting) throws FacebookException {
         requireNonNull(greeting, "'greeting' must not be null");
@@ -58,6 +58,13 @@ public interface Messenger {
      */
     String HUB_SIGNATURE_HEADER_NAME = "X-Hub-Signature";
 
+    /**
+     * The {@code X-Hub-Signature-256} request header name.
+     *
+     * @since 2.3.0
+     */
+    String HUB_SIGNATURE_256_HEADER_NAME = "X-Hub-Signature-256";
+
     /**
      * Verifies the webhook verify token.
      *
@@ -0,0 +1,441 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.broadcast;
+
+import com.github.marsbits.restfbmessenger.send.AsyncSendOperations;
+import com.github.marsbits.restfbmessenger.send.PreparedMessage;
+import com.github.marsbits.restfbmessenger.send.SendCallback;
+import com.github.marsbits.restfbmessenger.send.SendFuture;
+import com.github.marsbits.restfbmessenger.util.TokenBucket;
+import com.restfb.exception.FacebookGraphException;
+import com.restfb.types.send.MessageRecipient;
+import com.restfb.types.send.SendResponse;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.logging.Level.INFO;
+
+/**
+ * Sends a {@link PreparedMessage} to a stream of recipients.
+ * <p>
+ * The recipients are read lazily from an iterator, e.g. {@link BroadcastRecipients#lines(java.io.Reader)}, so they never have to be
+ * loaded into memory at once. The send operations are dispatched to the given {@link AsyncSendOperations} with at most
+ * {@code maxInFlight} operations in flight and, optionally, at most {@code rateLimit} operations per second. Batching, retries and the
+ * Send API rate limits are applied by the asynchronous send operations, e.g. {@link
+ * com.github.marsbits.restfbmessenger.send.BatchingAsyncSendOperations} with a retry policy and a send rate limiter.
+ * <p>
+ * The result for every recipient, checkpoints and periodic statistics are reported to the {@link BroadcastListener}. A checkpoint is a
+ * position in the recipient source before which all recipients have been handled; a broadcast that was interrupted can be resumed from
+ * its last checkpoint with {@link Builder#resumeFrom(long)}.
+ * <pre class="code">
+ * Broadcast broadcast = Broadcast.builder(messenger.sendAsync(), preparedMessage, BroadcastRecipients.lines(reader))
+ *         .maxInFlight(200)
+ *         .rateLimit(250)
+ *         .listener(listener)
+ *         .build();
+ * BroadcastStats stats = broadcast.execute();
+ * </pre>
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class Broadcast {
+
+    private static final Logger logger = Logger.getLogger(Broadcast.class.getName());
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 100;
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+    public static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 10000;
+
+    private final AsyncSendOperations sendOperations;
+    private final PreparedMessage message;
+    private final Iterator<? extends MessageRecipient> recipients;
+    private final int maxInFlight;
+    private final TokenBucket rateLimiter;
+    private final long resumePosition;
+    private final int checkpointInterval;
+    private final long progressIntervalNanos;
+    private final BroadcastListener listener;
+
+    private final Semaphore permits;
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> errorCounts = new ConcurrentHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile CompletionTracker tracker;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile boolean cancelled;
+
+    // only accessed by the executing thread
+    private long lastCheckpoint;
+    private long lastProgressNanos;
+
+    protected Broadcast(Builder builder) {
+        this.sendOperations = builder.sendOperations;
+        this.message = builder.message;
+        this.recipients = builder.recipients;
+        this.maxInFlight = builder.maxInFlight;
+        this.rateLimiter = builder.rateLimit > 0 ? new TokenBucket(builder.rateLimit, 1) : null;
+        this.resumePosition = builder.resumePosition;
+        this.checkpointInterval = builder.checkpointInterval;
+        this.progressIntervalNanos = builder.progressIntervalNanos;
+        this.listener = builder.listener != null ? builder.listener : new AbstractBroadcastListener() {
+        };
+        this.permits = new Semaphore(maxInFlight);
+        this.tracker = new CompletionTracker(resumePosition);
+    }
+
+    /**
+     * Returns a new {@link Builder} for configuring a {@code Broadcast}.
+     *
+     * @param sendOperations the asynchronous send operations, not null
+     * @param message        the message, not null
+     * @param recipients     the recipients, not null
+     */
+    public static Builder builder(AsyncSendOperations sendOperations, PreparedMessage message,
+            Iterator<? extends MessageRecipient> recipients) {
+        return new Builder(sendOperations, message, recipients);
+    }
+
+    /**
+     * Executes the broadcast on the calling thread, returning once all send operations have completed or the broadcast was cancelled and
+     * the send operations in flight have completed.
+     *
+     * @return the final statistics
+     * @throws IllegalStateException if the broadcast has already been executed
+     */
+    public BroadcastStats execute() {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("Broadcast has already been executed");
+        }
+        startNanos = System.nanoTime();
+        lastProgressNanos = startNanos;
+        try {
+            long index = 0;
+            while (index < resumePosition && recipients.hasNext()) {
+                recipients.next();
+                index++;
+            }
+            tracker = new CompletionTracker(index);
+            lastCheckpoint = index;
+            while (!cancelled && recipients.hasNext()) {
+                MessageRecipient recipient = recipients.next();
+                if (!acquire()) {
+                    break;
+                }
+                dispatch(index++, recipient);
+                report(false);
+            }
+        } finally {
+            awaitInFlight();
+            endNanos = System.nanoTime();
+            report(true);
+        }
+        BroadcastStats stats = getStats();
+        if (logger.isLoggable(INFO)) {
+            logger.info(format("Broadcast %s: %s", cancelled ? "cancelled" : "finished", stats));
+        }
+        return stats;
+    }
+
+    /**
+     * Stops dispatching send operations. The send operations in flight still complete and are reported.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns whether the broadcast has been cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the current statistics.
+     */
+    public BroadcastStats getStats() {
+        long end = endNanos;
+        long start = startNanos;
+        Map<String, Long> errors = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : errorCounts.entrySet()) {
+            errors.put(entry.getKey(), entry.getValue().get());
+        }
+        return new BroadcastStats(dispatched.get(), succeeded.get(), failed.get(), tracker.position,
+                start == 0 ? 0 : (end != 0 ? end : System.nanoTime()) - start, errors, end != 0);
+    }
+
+    private boolean acquire() {
+        try {
+            while (!permits.tryAcquire(progressIntervalNanos, TimeUnit.NANOSECONDS)) {
+                report(false);
+                if (cancelled) {
+                    return false;
+                }
+            }
+            if (rateLimiter != null) {
+                long wait = rateLimiter.reserve(Long.MAX_VALUE);
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+            return false;
+        }
+    }
+
+    private void dispatch(final long index, final MessageRecipient recipient) {
+        dispatched.incrementAndGet();
+        SendFuture<SendResponse> future;
+        try {
+            future = sendOperations.preparedMessage(recipient, message);
+        } catch (RuntimeException e) {
+            future = SendFuture.failed(e);
+        }
+        future.addCallback(new SendCallback<SendResponse>() {
+
+            @Override
+            public void onSuccess(SendResponse response) {
+                try {
+                    succeeded.incrementAndGet();
+                    listener.onSuccess(index, recipient, response);
+                } finally {
+                    complete(index);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                try {
+                    failed.incrementAndGet();
+                    countError(failure);
+                    listener.onFailure(index, recipient, failure);
+                } finally {
+                    complete(index);
+                }
+            }
+        });
+    }
+
+    private void complete(long index) {
+        // the result has been reported before the position can pass the index
+        tracker.complete(index);
+        permits.release();
+    }
+
+    private void countError(Throwable failure) {
+        String key = failure.getClass().getSimpleName();
+        if (failure instanceof FacebookGraphException && ((FacebookGraphException) failure).getErrorCode() != null) {
+            key = key + "#" + ((FacebookGraphException) failure).getErrorCode();
+        }
+        AtomicLong count = errorCounts.get(key);
+        if (count == null) {
+            AtomicLong existing = errorCounts.putIfAbsent(key, count = new AtomicLong());
+            if (existing != null) {
+                count = existing;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private void awaitInFlight() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (permits.tryAcquire(maxInFlight, progressIntervalNanos, TimeUnit.NANOSECONDS)) {
+                    permits.release(maxInFlight);
+                    break;
+                }
+                report(false);
+            } catch (InterruptedException e) {
+                // the send operations in flight complete regardless, so wait for their results to be reported
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void report(boolean done) {
+        long position = tracker.position;
+        if (done ? position > lastCheckpoint : position - lastCheckpoint >= checkpointInterval) {
+            lastCheckpoint = position;
+            listener.onCheckpoint(position);
+        }
+        long now = System.nanoTime();
+        if (done || now - lastProgressNanos >= progressIntervalNanos) {
+            lastProgressNanos = now;
+            BroadcastStats stats = getStats();
+            if (!done && logger.isLoggable(INFO)) {
+                logger.info(format("Broadcast progress: %s", stats));
+            }
+            listener.onProgress(stats);
+        }
+    }
+
+    /**
+     * Tracks the position before which all send operations have completed, while they complete out of order.
+     */
+    static class CompletionTracker {
+
+        private static final int COMPACT_THRESHOLD = 4096;
+
+        private BitSet completed = new BitSet();
+        private long base;
+        volatile long position;
+
+        CompletionTracker(long position) {
+            this.base = position;
+            this.position = position;
+        }
+
+        synchronized void complete(long index) {
+            completed.set((int) (index - base));
+            if (index == position) {
+                int next = completed.nextClearBit((int) (index - base));
+                position = base + next;
+                if (next >= COMPACT_THRESHOLD) {
+                    // shift the bits of the operations completed ahead of the position, so the bit set does not grow unbounded
+                    completed = completed.get(next, Math.max(next, completed.length()));
+                    base = position;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builder for {@link Broadcast} instances.
+     */
+    public static class Builder {
+
+        private final AsyncSendOperations sendOperations;
+        private final PreparedMessage message;
+        private final Iterator<? extends MessageRecipient> recipients;
+        private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+        private double rateLimit;
+        private long resumePosition;
+        private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+        private long progressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_PROGRESS_INTERVAL_MILLIS);
+        private BroadcastListener listener;
+
+        protected Builder(AsyncSendOperations sendOperations, PreparedMessage message, Iterator<? extends MessageRecipient> recipients) {
+            this.sendOperations = requireNonNull(sendOperations, "'sendOperations' must not be null");
+            this.message = requireNonNull(message, "'message' must not be null");
+            this.recipients = requireNonNull(recipients, "'recipients' must not be null");
+        }
+
+        /**
+         * Sets the maximum number of send operations in flight. Defaults to {@value #DEFAULT_MAX_IN_FLIGHT}.
+         *
+         * @param maxInFlight the maximum number of send operations in flight, must be positive
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("'maxInFlight' must be positive");
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of send operations dispatched per second. Not limited by default.
+         *
+         * @param rateLimit the number of send operations per second, must be positive
+         */
+        public Builder rateLimit(double rateLimit) {
+            if (!(rateLimit > 0)) {
+                throw new IllegalArgumentException("'rateLimit' must be positive");
+            }
+            this.rateLimit = rateLimit;
+            return this;
+        }
+
+        /**
+         * Resumes an interrupted broadcast from the given checkpoint position, skipping the recipients before it.
+         *
+         * @param position the position, must not be negative
+         */
+        public Builder resumeFrom(long position) {
+            if (position < 0) {
+                throw new IllegalArgumentException("'position' must not be negative");
+            }
+            this.resumePosition = position;
+            return this;
+        }
+
+        /**
+         * Sets the number of handled recipients between checkpoints. Defaults to {@value #DEFAULT_CHECKPOINT_INTERVAL}.
+         *
+         * @param checkpointInterval the checkpoint interval, must be positive
+         */
+        public Builder checkpointInterval(int checkpointInterval) {
+            if (checkpointInterval < 1) {
+                throw new IllegalArgumentException("'checkpointInterval' must be positive");
+            }
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        /**
+         * Sets the interval between progress reports. Defaults to {@value #DEFAULT_PROGRESS_INTERVAL_MILLIS} milliseconds.
+         *
+         * @param progressInterval the progress interval, must be positive
+         * @param unit             the time unit, not null
+         */
+        public Builder progressInterval(long progressInterval, TimeUnit unit) {
+            requireNonNull(unit, "'unit' must not be null");
+            if (progressInterval <= 0) {
+                throw new IllegalArgumentException("'progressInterval' must be positive");
+            }
+            this.progressIntervalNanos = unit.toNanos(progressInterval);
+            return this;
+        }
+
+        /**
+         * Sets the listener notified of the results and progress.
+         *
+         * @param listener the listener
+         */
+        public Builder listener(BroadcastListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public Broadcast build() {
+            return new Broadcast(this);
+        }
+    }
+}
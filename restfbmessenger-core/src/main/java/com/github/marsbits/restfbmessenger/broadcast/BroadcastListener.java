@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.broadcast;
+
+import com.restfb.types.send.MessageRecipient;
+import com.restfb.types.send.SendResponse;
+
+/**
+ * Listener notified of the results and progress of a {@link Broadcast}.
+ * <p>
+ * The results are reported on the threads completing the send operations, so {@link #onSuccess} and {@link #onFailure} may be invoked
+ * concurrently. Checkpoints and progress are reported on the thread executing the broadcast.
+ *
+ * @author Marcel Overdijk
+ * @see AbstractBroadcastListener
+ * @since 2.3.0
+ */
+public interface BroadcastListener {
+
+    /**
+     * Invoked when the message has been sent to a recipient.
+     *
+     * @param index     the position of the recipient in the recipient source
+     * @param recipient the recipient
+     * @param response  the send response
+     */
+    void onSuccess(long index, MessageRecipient recipient, SendResponse response);
+
+    /**
+     * Invoked when the message could not be sent to a recipient, after any retries.
+     *
+     * @param index     the position of the recipient in the recipient source
+     * @param recipient the recipient
+     * @param failure   the failure
+     */
+    void onFailure(long index, MessageRecipient recipient, Throwable failure);
+
+    /**
+     * Invoked when all recipients before the given position have been handled and their results reported, so a broadcast interrupted
+     * afterwards can be resumed from this position with {@link Broadcast.Builder#resumeFrom(long)}.
+     *
+     * @param position the position in the recipient source
+     */
+    void onCheckpoint(long position);
+
+    /**
+     * Invoked periodically while the broadcast runs, and once when it has finished.
+     *
+     * @param stats the current statistics
+     */
+    void onProgress(BroadcastStats stats);
+}
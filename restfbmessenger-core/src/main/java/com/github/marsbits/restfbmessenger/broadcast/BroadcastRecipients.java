@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.broadcast;
+
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.MessageRecipient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Lazy recipient sources for a {@link Broadcast}, so the recipients do not have to be loaded into memory at once.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public abstract class BroadcastRecipients {
+
+    private BroadcastRecipients() {
+    }
+
+    /**
+     * Returns the recipients for the given user ids.
+     *
+     * @param userIds the user ids, not null
+     */
+    public static Iterator<MessageRecipient> ids(final Iterator<String> userIds) {
+        requireNonNull(userIds, "'userIds' must not be null");
+        return new Iterator<MessageRecipient>() {
+
+            @Override
+            public boolean hasNext() {
+                return userIds.hasNext();
+            }
+
+            @Override
+            public MessageRecipient next() {
+                return new IdMessageRecipient(userIds.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Returns the recipients for the user ids read from the given reader, one user id per line. Blank lines are skipped. The reader is
+     * read as the recipients are iterated and is not closed.
+     *
+     * @param reader the reader, not null
+     */
+    public static Iterator<MessageRecipient> lines(Reader reader) {
+        requireNonNull(reader, "'reader' must not be null");
+        final BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        return new Iterator<MessageRecipient>() {
+
+            private String next;
+            private boolean eof;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !eof) {
+                    String line;
+                    try {
+                        line = lines.readLine();
+                    } catch (IOException e) {
+                        throw new IllegalStateException(format("Exception reading recipients: %s", e.getMessage()), e);
+                    }
+                    if (line == null) {
+                        eof = true;
+                    } else if (!line.trim().isEmpty()) {
+                        next = line.trim();
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public MessageRecipient next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String userId = next;
+                next = null;
+                return new IdMessageRecipient(userId);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.broadcast;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Snapshot of the statistics of a {@link Broadcast}.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class BroadcastStats {
+
+    private final long dispatched;
+    private final long succeeded;
+    private final long failed;
+    private final long position;
+    private final long elapsedNanos;
+    private final Map<String, Long> errorCounts;
+    private final boolean done;
+
+    public BroadcastStats(long dispatched, long succeeded, long failed, long position, long elapsedNanos, Map<String, Long> errorCounts,
+            boolean done) {
+        this.dispatched = dispatched;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.position = position;
+        this.elapsedNanos = elapsedNanos;
+        this.errorCounts = Collections.unmodifiableMap(errorCounts);
+        this.done = done;
+    }
+
+    /**
+     * Returns the number of send operations dispatched.
+     */
+    public long getDispatched() {
+        return dispatched;
+    }
+
+    /**
+     * Returns the number of messages sent.
+     */
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * Returns the number of messages that could not be sent.
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Returns the number of send operations dispatched but not completed yet.
+     */
+    public long getInFlight() {
+        return dispatched - succeeded - failed;
+    }
+
+    /**
+     * Returns the last checkpoint position, before which all recipients have been handled.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the time elapsed since the broadcast started, in the given unit.
+     *
+     * @param unit the time unit
+     */
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of completed send operations per second since the broadcast started.
+     */
+    public double getThroughput() {
+        return elapsedNanos > 0 ? (succeeded + failed) * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+    }
+
+    /**
+     * Returns the number of failures per error, keyed by exception type and, for Graph API errors, error code.
+     */
+    public Map<String, Long> getErrorCounts() {
+        return errorCounts;
+    }
+
+    /**
+     * Returns whether the broadcast has finished.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public String toString() {
+        return format("%d sent, %d failed, %d in flight, position %d, %.1f/s, errors %s", succeeded, failed, getInFlight(), position,
+                getThroughput(), errorCounts);
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.client;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Circuit breaker tripping on the failure rate or slow call rate of the calls it protects.
+ * <p>
+ * While {@link State#CLOSED} the outcome of the last {@code slidingWindowSize} calls is recorded. Once at least {@code
+ * minimumNumberOfCalls} calls have been recorded and the rate of failed calls or of calls taking at least {@code slowCallDuration} reaches
+ * its threshold, the circuit breaker opens. While {@link State#OPEN} calls are not permitted, so callers fail fast instead of waiting on
+ * an unhealthy service. After {@code waitDurationInOpenState} the circuit breaker becomes {@link State#HALF_OPEN} and permits {@code
+ * permittedCallsInHalfOpenState} probe calls: when all of them succeed in time it closes again, otherwise it opens again.
+ * <p>
+ * Callers must invoke {@link #tryAcquirePermission()} before a call and report its outcome with the returned permission to {@link
+ * #onSuccess(long, long)} or {@link #onFailure(long, long)} after it, or return the permission with {@link #release(long)} when the call
+ * has no outcome to report. A permission is only valid for the state in which it was acquired: outcomes of calls permitted before a state
+ * transition, e.g. slow calls started while closed that complete while half-open, are ignored. State transitions are reported to the
+ * registered {@link CircuitBreakerListener}s.
+ *
+ * @author Marcel Overdijk
+ * @see CircuitBreakerFacebookClient
+ * @since 2.3.0
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = Logger.getLogger(CircuitBreaker.class.getName());
+
+    /**
+     * The states of a circuit breaker.
+     */
+    public enum State {
+
+        /**
+         * Calls are permitted and their outcome is recorded.
+         */
+        CLOSED,
+
+        /**
+         * Calls are not permitted.
+         */
+        OPEN,
+
+        /**
+         * A limited number of probe calls is permitted to determine whether the circuit breaker can close again.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * The permission returned by {@link #tryAcquirePermission()} when a call is not permitted.
+     */
+    public static final long NOT_PERMITTED = -1;
+
+    public static final String DEFAULT_NAME = "graph-api";
+    public static final int DEFAULT_SLIDING_WINDOW_SIZE = 100;
+    public static final int DEFAULT_MINIMUM_NUMBER_OF_CALLS = 20;
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 0.5;
+    public static final long DEFAULT_SLOW_CALL_DURATION_MILLIS = 5000;
+    public static final long DEFAULT_WAIT_DURATION_IN_OPEN_STATE_MILLIS = 30000;
+    public static final int DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE = 5;
+
+    private final String name;
+    private final int minimumNumberOfCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final long waitDurationInOpenStateNanos;
+    private final int permittedCallsInHalfOpenState;
+    private final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<>();
+
+    // sliding window of call outcomes, guarded by this
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int index;
+    private int calls;
+    private int failedCalls;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    // incremented on every state transition, so outcomes of calls permitted in an earlier state can be ignored
+    private long generation;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    protected CircuitBreaker(Builder builder) {
+        this.name = builder.name;
+        this.minimumNumberOfCalls = Math.min(builder.minimumNumberOfCalls, builder.slidingWindowSize);
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDurationNanos = builder.slowCallDurationNanos;
+        this.waitDurationInOpenStateNanos = builder.waitDurationInOpenStateNanos;
+        this.permittedCallsInHalfOpenState = builder.permittedCallsInHalfOpenState;
+        this.failed = new boolean[builder.slidingWindowSize];
+        this.slow = new boolean[builder.slidingWindowSize];
+    }
+
+    /**
+     * Returns a new {@link Builder} for configuring a {@code CircuitBreaker}.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Registers the given listener.
+     *
+     * @param listener the listener, not null
+     */
+    public void addListener(CircuitBreakerListener listener) {
+        listeners.add(requireNonNull(listener, "'listener' must not be null"));
+    }
+
+    /**
+     * Removes the given listener.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(CircuitBreakerListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns whether a call is permitted. Transitions from open to half-open once the wait duration in open state has elapsed.
+     *
+     * @return the permission to report the outcome of the call with, or {@link #NOT_PERMITTED} if the call is not permitted
+     */
+    public long tryAcquirePermission() {
+        State from;
+        long permission;
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return generation;
+            }
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAt < waitDurationInOpenStateNanos) {
+                    return NOT_PERMITTED;
+                }
+                halfOpenPermits = 0;
+                halfOpenSuccesses = 0;
+                transition(State.HALF_OPEN);
+                from = State.OPEN;
+            } else {
+                from = null;
+            }
+            if (halfOpenPermits >= permittedCallsInHalfOpenState) {
+                return NOT_PERMITTED;
+            }
+            halfOpenPermits++;
+            permission = generation;
+        }
+        if (from != null) {
+            notifyListeners(from, State.HALF_OPEN);
+        }
+        return permission;
+    }
+
+    /**
+     * Records a successful call. A successful call taking at least the slow call duration counts as a slow call.
+     *
+     * @param permission    the permission acquired for the call
+     * @param durationNanos the duration of the call in nanoseconds
+     */
+    public void onSuccess(long permission, long durationNanos) {
+        record(permission, false, durationNanos >= slowCallDurationNanos);
+    }
+
+    /**
+     * Records a failed call.
+     *
+     * @param permission    the permission acquired for the call
+     * @param durationNanos the duration of the call in nanoseconds
+     */
+    public void onFailure(long permission, long durationNanos) {
+        record(permission, true, durationNanos >= slowCallDurationNanos);
+    }
+
+    /**
+     * Returns the permission of a call of which no outcome is recorded, so a half-open circuit breaker permits another probe call in its
+     * place.
+     *
+     * @param permission the permission acquired for the call
+     */
+    public synchronized void release(long permission) {
+        if (state == State.HALF_OPEN && permission == generation && halfOpenPermits > 0) {
+            halfOpenPermits--;
+        }
+    }
+
+    /**
+     * Closes the circuit breaker and clears the recorded calls.
+     */
+    public void reset() {
+        State from;
+        synchronized (this) {
+            from = state;
+            clearWindow();
+            transition(State.CLOSED);
+        }
+        if (from != State.CLOSED) {
+            notifyListeners(from, State.CLOSED);
+        }
+    }
+
+    private void record(long permission, boolean failure, boolean slowCall) {
+        State from = null;
+        State to = null;
+        synchronized (this) {
+            if (permission != generation) {
+                // the call was permitted before the last state transition
+                return;
+            }
+            if (state == State.HALF_OPEN) {
+                if (failure || slowCall) {
+                    from = State.HALF_OPEN;
+                    to = open();
+                } else if (++halfOpenSuccesses >= permittedCallsInHalfOpenState) {
+                    from = State.HALF_OPEN;
+                    to = State.CLOSED;
+                    clearWindow();
+                    transition(State.CLOSED);
+                }
+            } else if (state == State.CLOSED) {
+                if (calls == failed.length) {
+                    failedCalls -= failed[index] ? 1 : 0;
+                    slowCalls -= slow[index] ? 1 : 0;
+                } else {
+                    calls++;
+                }
+                failed[index] = failure;
+                slow[index] = slowCall;
+                failedCalls += failure ? 1 : 0;
+                slowCalls += slowCall ? 1 : 0;
+                index = (index + 1) % failed.length;
+                if (calls >= minimumNumberOfCalls && ((double) failedCalls / calls >= failureRateThreshold
+                        || (double) slowCalls / calls >= slowCallRateThreshold)) {
+                    logger.warning(format("Circuit breaker '%s' opened; failure rate %d/%d, slow call rate %d/%d", name, failedCalls,
+                            calls, slowCalls, calls));
+                    from = State.CLOSED;
+                    to = open();
+                }
+            }
+        }
+        if (from != null) {
+            notifyListeners(from, to);
+        }
+    }
+
+    private State open() {
+        transition(State.OPEN);
+        openedAt = System.nanoTime();
+        clearWindow();
+        return State.OPEN;
+    }
+
+    private void transition(State to) {
+        state = to;
+        generation++;
+    }
+
+    private void clearWindow() {
+        for (int i = 0; i < failed.length; i++) {
+            failed[i] = false;
+            slow[i] = false;
+        }
+        index = 0;
+        calls = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+    }
+
+    private void notifyListeners(State from, State to) {
+        for (CircuitBreakerListener listener : listeners) {
+            try {
+                listener.onStateTransition(this, from, to);
+            } catch (RuntimeException e) {
+                logger.severe(format("Exception in circuit breaker listener: %s", e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Builder for {@link CircuitBreaker} instances.
+     */
+    public static class Builder {
+
+        private String name = DEFAULT_NAME;
+        private int slidingWindowSize = DEFAULT_SLIDING_WINDOW_SIZE;
+        private int minimumNumberOfCalls = DEFAULT_MINIMUM_NUMBER_OF_CALLS;
+        private double failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+        private double slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+        private long slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_CALL_DURATION_MILLIS);
+        private long waitDurationInOpenStateNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_WAIT_DURATION_IN_OPEN_STATE_MILLIS);
+        private int permittedCallsInHalfOpenState = DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE;
+
+        protected Builder() {
+        }
+
+        /**
+         * Sets the name identifying the circuit breaker in logging and listeners. Defaults to {@value #DEFAULT_NAME}.
+         *
+         * @param name the name, not null
+         */
+        public Builder name(String name) {
+            this.name = requireNonNull(name, "'name' must not be null");
+            return this;
+        }
+
+        /**
+         * Sets the number of most recent calls of which the outcome is recorded. Defaults to {@value #DEFAULT_SLIDING_WINDOW_SIZE}.
+         *
+         * @param slidingWindowSize the sliding window size, must be positive
+         */
+        public Builder slidingWindowSize(int slidingWindowSize) {
+            if (slidingWindowSize < 1) {
+                throw new IllegalArgumentException("'slidingWindowSize' must be positive");
+            }
+            this.slidingWindowSize = slidingWindowSize;
+            return this;
+        }
+
+        /**
+         * Sets the minimum number of recorded calls before the rates are evaluated. Defaults to {@value #DEFAULT_MINIMUM_NUMBER_OF_CALLS}.
+         *
+         * @param minimumNumberOfCalls the minimum number of calls, must be positive
+         */
+        public Builder minimumNumberOfCalls(int minimumNumberOfCalls) {
+            if (minimumNumberOfCalls < 1) {
+                throw new IllegalArgumentException("'minimumNumberOfCalls' must be positive");
+            }
+            this.minimumNumberOfCalls = minimumNumberOfCalls;
+            return this;
+        }
+
+        /**
+         * Sets the rate of failed calls at which the circuit breaker opens. Defaults to {@value #DEFAULT_FAILURE_RATE_THRESHOLD}.
+         *
+         * @param failureRateThreshold the failure rate threshold, greater than 0 and at most 1
+         */
+        public Builder failureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = rate(failureRateThreshold, "failureRateThreshold");
+            return this;
+        }
+
+        /**
+         * Sets the rate of slow calls at which the circuit breaker opens and the duration from which a call is slow. Defaults to {@value
+         * #DEFAULT_SLOW_CALL_RATE_THRESHOLD} and {@value #DEFAULT_SLOW_CALL_DURATION_MILLIS} milliseconds.
+         *
+         * @param slowCallRateThreshold the slow call rate threshold, greater than 0 and at most 1
+         * @param slowCallDuration      the slow call duration, must be positive
+         * @param unit                  the time unit, not null
+         */
+        public Builder slowCallRateThreshold(double slowCallRateThreshold, long slowCallDuration, TimeUnit unit) {
+            requireNonNull(unit, "'unit' must not be null");
+            if (slowCallDuration < 1) {
+                throw new IllegalArgumentException("'slowCallDuration' must be positive");
+            }
+            this.slowCallRateThreshold = rate(slowCallRateThreshold, "slowCallRateThreshold");
+            this.slowCallDurationNanos = unit.toNanos(slowCallDuration);
+            return this;
+        }
+
+        /**
+         * Sets the time the circuit breaker stays open before permitting probe calls. Defaults to {@value
+         * #DEFAULT_WAIT_DURATION_IN_OPEN_STATE_MILLIS} milliseconds.
+         *
+         * @param waitDuration the wait duration, must not be negative
+         * @param unit         the time unit, not null
+         */
+        public Builder waitDurationInOpenState(long waitDuration, TimeUnit unit) {
+            requireNonNull(unit, "'unit' must not be null");
+            if (waitDuration < 0) {
+                throw new IllegalArgumentException("'waitDuration' must not be negative");
+            }
+            this.waitDurationInOpenStateNanos = unit.toNanos(waitDuration);
+            return this;
+        }
+
+        /**
+         * Sets the number of probe calls permitted while half-open. Defaults to {@value #DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE}.
+         *
+         * @param permittedCallsInHalfOpenState the number of probe calls, must be positive
+         */
+        public Builder permittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+            if (permittedCallsInHalfOpenState < 1) {
+                throw new IllegalArgumentException("'permittedCallsInHalfOpenState' must be positive");
+            }
+            this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+
+        private static double rate(double rate, String name) {
+            if (!(rate > 0 && rate <= 1)) {
+                throw new IllegalArgumentException(format("'%s' must be greater than 0 and at most 1", name));
+            }
+            return rate;
+        }
+    }
+}
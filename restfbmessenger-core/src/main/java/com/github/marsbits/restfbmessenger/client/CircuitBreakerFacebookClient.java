@@ -0,0 +1,340 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.client;
+
+import com.github.marsbits.restfbmessenger.send.DefaultRetryableErrorClassifier;
+import com.github.marsbits.restfbmessenger.send.RetryableErrorClassifier;
+import com.restfb.BinaryAttachment;
+import com.restfb.Connection;
+import com.restfb.FacebookClient;
+import com.restfb.JsonMapper;
+import com.restfb.Parameter;
+import com.restfb.WebRequestor;
+import com.restfb.batch.BatchRequest;
+import com.restfb.batch.BatchResponse;
+import com.restfb.exception.devicetoken.FacebookDeviceTokenCodeExpiredException;
+import com.restfb.exception.devicetoken.FacebookDeviceTokenDeclinedException;
+import com.restfb.exception.devicetoken.FacebookDeviceTokenPendingException;
+import com.restfb.exception.devicetoken.FacebookDeviceTokenSlowdownException;
+import com.restfb.scope.ScopeBuilder;
+import com.restfb.types.DeviceCode;
+
+import java.util.List;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link FacebookClient} decorator protecting the Graph API calls of the delegate client with a {@link CircuitBreaker}.
+ * <p>
+ * Calls failing with an error the failure classifier classifies as transient, like network failures, 5xx responses and throttling, are
+ * recorded as failures; other errors, e.g. an invalid recipient, do not indicate an unhealthy Graph API and are recorded as successful
+ * calls. Calls taking at least the slow call duration count as slow calls. While the circuit breaker is open calls fail fast with a
+ * {@link CircuitBreakerOpenException}, which asynchronous send operations with a
+ * {@link com.github.marsbits.restfbmessenger.send.RetryPolicy} retry once the backoff has elapsed. Methods not calling the Graph API are
+ * delegated as is.
+ * <pre class="code">
+ * FacebookClient facebookClient = new CircuitBreakerFacebookClient(new DefaultFacebookClient(pageAccessToken, Version.VERSION_2_11),
+ *         CircuitBreaker.builder().build());
+ * Messenger messenger = new DefaultMessenger(verifyToken, appSecret, callbackHandler, facebookClient);
+ * </pre>
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class CircuitBreakerFacebookClient implements FacebookClient {
+
+    protected FacebookClient facebookClient;
+    protected CircuitBreaker circuitBreaker;
+    protected RetryableErrorClassifier failureClassifier = new DefaultRetryableErrorClassifier();
+
+    /**
+     * Creates a {@code CircuitBreakerFacebookClient} instance.
+     *
+     * @param facebookClient the delegate facebook client, not null
+     * @param circuitBreaker the circuit breaker, not null
+     */
+    public CircuitBreakerFacebookClient(FacebookClient facebookClient, CircuitBreaker circuitBreaker) {
+        this.facebookClient = requireNonNull(facebookClient, "'facebookClient' must not be null");
+        this.circuitBreaker = requireNonNull(circuitBreaker, "'circuitBreaker' must not be null");
+    }
+
+    public FacebookClient getFacebookClient() {
+        return facebookClient;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public RetryableErrorClassifier getFailureClassifier() {
+        return failureClassifier;
+    }
+
+    /**
+     * Sets the classifier determining which errors are recorded as failures. Defaults to the {@link DefaultRetryableErrorClassifier}.
+     *
+     * @param failureClassifier the failure classifier, not null
+     */
+    public void setFailureClassifier(RetryableErrorClassifier failureClassifier) {
+        this.failureClassifier = requireNonNull(failureClassifier, "'failureClassifier' must not be null");
+    }
+
+    @Override
+    public <T> T fetchObject(final String object, final Class<T> objectType, final Parameter... parameters) {
+        return execute(new Call<T>() {
+
+            @Override
+            public T call() {
+                return facebookClient.fetchObject(object, objectType, parameters);
+            }
+        });
+    }
+
+    @Override
+    public <T> T fetchObjects(final List<String> ids, final Class<T> objectType, final Parameter... parameters) {
+        return execute(new Call<T>() {
+
+            @Override
+            public T call() {
+                return facebookClient.fetchObjects(ids, objectType, parameters);
+            }
+        });
+    }
+
+    @Override
+    public <T> Connection<T> fetchConnection(final String connection, final Class<T> connectionType, final Parameter... parameters) {
+        return execute(new Call<Connection<T>>() {
+
+            @Override
+            public Connection<T> call() {
+                return facebookClient.fetchConnection(connection, connectionType, parameters);
+            }
+        });
+    }
+
+    @Override
+    public <T> Connection<T> fetchConnectionPage(final String connectionPageUrl, final Class<T> connectionType) {
+        return execute(new Call<Connection<T>>() {
+
+            @Override
+            public Connection<T> call() {
+                return facebookClient.fetchConnectionPage(connectionPageUrl, connectionType);
+            }
+        });
+    }
+
+    @Override
+    public List<BatchResponse> executeBatch(final BatchRequest... batchRequests) {
+        return execute(new Call<List<BatchResponse>>() {
+
+            @Override
+            public List<BatchResponse> call() {
+                return facebookClient.executeBatch(batchRequests);
+            }
+        });
+    }
+
+    @Override
+    public List<BatchResponse> executeBatch(final List<BatchRequest> batchRequests) {
+        return execute(new Call<List<BatchResponse>>() {
+
+            @Override
+            public List<BatchResponse> call() {
+                return facebookClient.executeBatch(batchRequests);
+            }
+        });
+    }
+
+    @Override
+    public List<BatchResponse> executeBatch(final List<BatchRequest> batchRequests, final List<BinaryAttachment> binaryAttachments) {
+        return execute(new Call<List<BatchResponse>>() {
+
+            @Override
+            public List<BatchResponse> call() {
+                return facebookClient.executeBatch(batchRequests, binaryAttachments);
+            }
+        });
+    }
+
+    @Override
+    public <T> T publish(final String connection, final Class<T> objectType, final Parameter... parameters) {
+        return execute(new Call<T>() {
+
+            @Override
+            public T call() {
+                return facebookClient.publish(connection, objectType, parameters);
+            }
+        });
+    }
+
+    @Override
+    public <T> T publish(final String connection, final Class<T> objectType, final List<BinaryAttachment> binaryAttachments,
+            final Parameter... parameters) {
+        return execute(new Call<T>() {
+
+            @Override
+            public T call() {
+                return facebookClient.publish(connection, objectType, binaryAttachments, parameters);
+            }
+        });
+    }
+
+    @Override
+    public <T> T publish(final String connection, final Class<T> objectType, final BinaryAttachment binaryAttachment,
+            final Parameter... parameters) {
+        return execute(new Call<T>() {
+
+            @Override
+            public T call() {
+                return facebookClient.publish(connection, objectType, binaryAttachment, parameters);
+            }
+        });
+    }
+
+    @Override
+    public boolean deleteObject(final String object, final Parameter... parameters) {
+        return execute(new Call<Boolean>() {
+
+            @Override
+            public Boolean call() {
+                return facebookClient.deleteObject(object, parameters);
+            }
+        });
+    }
+
+    @Override
+    public List<AccessToken> convertSessionKeysToAccessTokens(String appId, String secretKey, String... sessionKeys) {
+        return facebookClient.convertSessionKeysToAccessTokens(appId, secretKey, sessionKeys);
+    }
+
+    @Override
+    public AccessToken obtainUserAccessToken(String appId, String appSecret, String redirectUri, String verificationCode) {
+        return facebookClient.obtainUserAccessToken(appId, appSecret, redirectUri, verificationCode);
+    }
+
+    @Override
+    public AccessToken obtainAppAccessToken(String appId, String appSecret) {
+        return facebookClient.obtainAppAccessToken(appId, appSecret);
+    }
+
+    @Override
+    public AccessToken obtainExtendedAccessToken(String appId, String appSecret, String accessToken) {
+        return facebookClient.obtainExtendedAccessToken(appId, appSecret, accessToken);
+    }
+
+    @Override
+    public String obtainAppSecretProof(String accessToken, String appSecret) {
+        return facebookClient.obtainAppSecretProof(accessToken, appSecret);
+    }
+
+    @Override
+    public AccessToken obtainExtendedAccessToken(String appId, String appSecret) {
+        return facebookClient.obtainExtendedAccessToken(appId, appSecret);
+    }
+
+    @Override
+    public <T> T parseSignedRequest(String signedRequest, String appSecret, Class<T> objectType) {
+        return facebookClient.parseSignedRequest(signedRequest, appSecret, objectType);
+    }
+
+    @Override
+    public DeviceCode fetchDeviceCode(String appId, ScopeBuilder scope) {
+        return facebookClient.fetchDeviceCode(appId, scope);
+    }
+
+    @Override
+    public DeviceCode fetchDeviceCode(ScopeBuilder scope) {
+        return facebookClient.fetchDeviceCode(scope);
+    }
+
+    @Override
+    public AccessToken obtainDeviceAccessToken(String appId, String code) throws FacebookDeviceTokenCodeExpiredException,
+            FacebookDeviceTokenPendingException, FacebookDeviceTokenDeclinedException, FacebookDeviceTokenSlowdownException {
+        return facebookClient.obtainDeviceAccessToken(appId, code);
+    }
+
+    @Override
+    public AccessToken obtainDeviceAccessToken(String code) throws FacebookDeviceTokenCodeExpiredException,
+            FacebookDeviceTokenPendingException, FacebookDeviceTokenDeclinedException, FacebookDeviceTokenSlowdownException {
+        return facebookClient.obtainDeviceAccessToken(code);
+    }
+
+    @Override
+    public DebugTokenInfo debugToken(String inputToken) {
+        return facebookClient.debugToken(inputToken);
+    }
+
+    @Override
+    public JsonMapper getJsonMapper() {
+        return facebookClient.getJsonMapper();
+    }
+
+    @Override
+    public WebRequestor getWebRequestor() {
+        return facebookClient.getWebRequestor();
+    }
+
+    @Override
+    public String getLogoutUrl(String next) {
+        return facebookClient.getLogoutUrl(next);
+    }
+
+    @Override
+    public String getLoginDialogUrl(String appId, String redirectUri, ScopeBuilder scope, Parameter... parameters) {
+        return facebookClient.getLoginDialogUrl(appId, redirectUri, scope, parameters);
+    }
+
+    /**
+     * Performs the given Graph API call when permitted by the circuit breaker and records its outcome.
+     */
+    protected <T> T execute(Call<T> call) {
+        long permission = circuitBreaker.tryAcquirePermission();
+        if (permission == CircuitBreaker.NOT_PERMITTED) {
+            throw new CircuitBreakerOpenException(format("Circuit breaker '%s' is open", circuitBreaker.getName()));
+        }
+        long start = System.nanoTime();
+        boolean recorded = false;
+        try {
+            T result = call.call();
+            circuitBreaker.onSuccess(permission, System.nanoTime() - start);
+            recorded = true;
+            return result;
+        } catch (RuntimeException e) {
+            if (failureClassifier.isRetryable(e)) {
+                circuitBreaker.onFailure(permission, System.nanoTime() - start);
+            } else {
+                circuitBreaker.onSuccess(permission, System.nanoTime() - start);
+            }
+            recorded = true;
+            throw e;
+        } finally {
+            if (!recorded) {
+                // e.g. an Error, which says nothing about the health of the Graph API
+                circuitBreaker.release(permission);
+            }
+        }
+    }
+
+    /**
+     * A Graph API call.
+     */
+    protected interface Call<T> {
+
+        T call();
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.client;
+
+import com.github.marsbits.restfbmessenger.client.CircuitBreaker.State;
+
+/**
+ * Listener notified of {@link CircuitBreaker} state transitions, e.g. for alerting.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public interface CircuitBreakerListener {
+
+    /**
+     * Invoked after the circuit breaker transitioned from one state to another.
+     *
+     * @param circuitBreaker the circuit breaker
+     * @param from           the previous state
+     * @param to             the new state
+     */
+    void onStateTransition(CircuitBreaker circuitBreaker, State from, State to);
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.client;
+
+import com.restfb.exception.FacebookNetworkException;
+
+/**
+ * Exception thrown when a Graph API call is not performed because the {@link CircuitBreaker} is open.
+ * <p>
+ * As the request has not been sent it is safe to retry, so it is a {@link FacebookNetworkException} without HTTP status, which the
+ * {@link com.github.marsbits.restfbmessenger.send.DefaultRetryableErrorClassifier} classifies as retryable.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class CircuitBreakerOpenException extends FacebookNetworkException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException(String message) {
+        super(message, (Integer) null);
+    }
+}
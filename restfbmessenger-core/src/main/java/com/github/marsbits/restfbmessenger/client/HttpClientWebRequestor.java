@@ -0,0 +1,346 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.client;
+
+import com.restfb.BinaryAttachment;
+import com.restfb.DebugHeaderInfo;
+import com.restfb.Version;
+import com.restfb.WebRequestor;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link WebRequestor} implementation on Apache HttpClient with a pool of keep-alive connections.
+ * <p>
+ * restfb's {@code DefaultWebRequestor} uses {@code HttpURLConnection}, of which the connection reuse cannot be tuned per client. This
+ * implementation keeps a configurable pool of persistent connections to the Graph API, so consecutive requests skip the TCP and TLS
+ * handshakes. All connections share a single {@link SSLContext}, so new connections can resume a cached TLS session instead of performing
+ * a full handshake. Connect, read and pool wait timeouts are configurable and idle connections are evicted in the background.
+ * <p>
+ * Requires {@code org.apache.httpcomponents:httpclient} and {@code org.apache.httpcomponents:httpmime} 4.5 or later on the classpath. The
+ * requestor should be {@link #close() closed} when no longer used to release the pooled connections.
+ * <pre class="code">
+ * HttpClientWebRequestor webRequestor = HttpClientWebRequestor.builder()
+ *         .maxConnections(200)
+ *         .connectTimeout(5, TimeUnit.SECONDS)
+ *         .readTimeout(30, TimeUnit.SECONDS)
+ *         .build();
+ * Messenger messenger = new DefaultMessenger(verifyToken, accessToken, appSecret, callbackHandler, apiVersion, webRequestor);
+ * </pre>
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class HttpClientWebRequestor implements WebRequestor, Closeable {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 200;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 200;
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+    public static final long DEFAULT_READ_TIMEOUT_MILLIS = 60000;
+    public static final long DEFAULT_CONNECTION_REQUEST_TIMEOUT_MILLIS = 5000;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 60000;
+
+    private final CloseableHttpClient httpClient;
+    private volatile DebugHeaderInfo debugHeaderInfo;
+
+    /**
+     * Creates a {@code HttpClientWebRequestor} instance using the default configuration.
+     */
+    public HttpClientWebRequestor() {
+        this(builder());
+    }
+
+    /**
+     * Creates a {@code HttpClientWebRequestor} instance using the given http client. The http client is closed when the requestor is
+     * closed.
+     *
+     * @param httpClient the http client, not null
+     */
+    public HttpClientWebRequestor(CloseableHttpClient httpClient) {
+        this.httpClient = requireNonNull(httpClient, "'httpClient' must not be null");
+    }
+
+    protected HttpClientWebRequestor(Builder builder) {
+        this(createHttpClient(builder));
+    }
+
+    /**
+     * Returns a new {@link Builder} for configuring a {@code HttpClientWebRequestor}.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Response executeGet(String url) throws IOException {
+        return execute(new HttpGet(url));
+    }
+
+    @Override
+    public Response executePost(String url, String parameters) throws IOException {
+        return executePost(url, parameters, (BinaryAttachment[]) null);
+    }
+
+    @Override
+    public Response executePost(String url, String parameters, BinaryAttachment... binaryAttachments) throws IOException {
+        HttpPost request;
+        if (binaryAttachments == null || binaryAttachments.length == 0) {
+            request = new HttpPost(url);
+            request.setEntity(new StringEntity(parameters, ContentType.APPLICATION_FORM_URLENCODED));
+        } else {
+            // like the default requestor, parameters are sent in the query string when sending a multipart body
+            request = new HttpPost(url + "?" + parameters);
+            MultipartEntityBuilder entity = MultipartEntityBuilder.create();
+            for (BinaryAttachment binaryAttachment : binaryAttachments) {
+                String contentType = binaryAttachment.getContentType();
+                entity.addBinaryBody(binaryAttachment.getFieldName() != null ? binaryAttachment.getFieldName()
+                                : binaryAttachment.getFilename(), binaryAttachment.getData(),
+                        contentType != null ? ContentType.create(contentType) : ContentType.DEFAULT_BINARY,
+                        binaryAttachment.getFilename());
+            }
+            request.setEntity(entity.build());
+        }
+        return execute(request);
+    }
+
+    @Override
+    public Response executeDelete(String url) throws IOException {
+        return execute(new HttpDelete(url));
+    }
+
+    /**
+     * Returns the debug header information of the last response.
+     */
+    @Override
+    public DebugHeaderInfo getDebugHeaderInfo() {
+        return debugHeaderInfo;
+    }
+
+    /**
+     * Closes the http client and its pooled connections.
+     */
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    protected Response execute(HttpUriRequest request) throws IOException {
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            fillDebugHeaderInfo(response);
+            HttpEntity entity = response.getEntity();
+            // fully consuming the entity returns the connection to the pool
+            String body = entity != null ? EntityUtils.toString(entity, UTF_8) : null;
+            return new Response(response.getStatusLine().getStatusCode(), body);
+        }
+    }
+
+    protected void fillDebugHeaderInfo(HttpResponse response) {
+        String usedApiVersion = getHeader(response, "facebook-api-version");
+        debugHeaderInfo = new DebugHeaderInfo(getHeader(response, "x-fb-debug"), getHeader(response, "x-fb-rev"),
+                getHeader(response, "x-fb-trace-id"), Version.getVersionFromString(usedApiVersion), getHeader(response, "x-app-usage"),
+                getHeader(response, "x-page-usage"));
+    }
+
+    private static String getHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null && header.getValue() != null ? header.getValue().trim() : "";
+    }
+
+    private static CloseableHttpClient createHttpClient(Builder builder) {
+        SSLContext sslContext = builder.sslContext != null ? builder.sslContext : SSLContexts.createSystemDefault();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", new SSLConnectionSocketFactory(sslContext))
+                        .build());
+        connectionManager.setMaxTotal(builder.maxConnections);
+        connectionManager.setDefaultMaxPerRoute(builder.maxConnectionsPerRoute);
+        // revalidate connections idle for a while before reuse, as the server may have closed them
+        connectionManager.setValidateAfterInactivity(2000);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout((int) builder.connectTimeoutMillis)
+                .setSocketTimeout((int) builder.readTimeoutMillis)
+                .setConnectionRequestTimeout((int) builder.connectionRequestTimeoutMillis)
+                .build();
+        final long keepAliveMillis = builder.keepAliveMillis;
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+
+                    @Override
+                    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                        return duration > 0 ? Math.min(duration, keepAliveMillis) : keepAliveMillis;
+                    }
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+                .disableCookieManagement()
+                .build();
+    }
+
+    /**
+     * Builder for {@link HttpClientWebRequestor} instances.
+     */
+    public static class Builder {
+
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+        private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+        private long connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        private long readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+        private long connectionRequestTimeoutMillis = DEFAULT_CONNECTION_REQUEST_TIMEOUT_MILLIS;
+        private long keepAliveMillis = DEFAULT_KEEP_ALIVE_MILLIS;
+        private SSLContext sslContext;
+
+        protected Builder() {
+        }
+
+        /**
+         * Sets the maximum number of pooled connections. Defaults to {@value #DEFAULT_MAX_CONNECTIONS}.
+         *
+         * @param maxConnections the maximum number of connections, must be positive
+         */
+        public Builder maxConnections(int maxConnections) {
+            this.maxConnections = positive(maxConnections, "maxConnections");
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of pooled connections per host. As all requests go to the Graph API host this usually equals the
+         * maximum number of connections. Defaults to {@value #DEFAULT_MAX_CONNECTIONS_PER_ROUTE}.
+         *
+         * @param maxConnectionsPerRoute the maximum number of connections per host, must be positive
+         */
+        public Builder maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = positive(maxConnectionsPerRoute, "maxConnectionsPerRoute");
+            return this;
+        }
+
+        /**
+         * Sets the timeout for establishing a connection. Defaults to {@value #DEFAULT_CONNECT_TIMEOUT_MILLIS} milliseconds.
+         *
+         * @param connectTimeout the connect timeout, {@code 0} for no timeout
+         * @param unit           the time unit, not null
+         */
+        public Builder connectTimeout(long connectTimeout, TimeUnit unit) {
+            this.connectTimeoutMillis = millis(connectTimeout, unit, "connectTimeout");
+            return this;
+        }
+
+        /**
+         * Sets the timeout for waiting for data. Defaults to {@value #DEFAULT_READ_TIMEOUT_MILLIS} milliseconds.
+         *
+         * @param readTimeout the read timeout, {@code 0} for no timeout
+         * @param unit        the time unit, not null
+         */
+        public Builder readTimeout(long readTimeout, TimeUnit unit) {
+            this.readTimeoutMillis = millis(readTimeout, unit, "readTimeout");
+            return this;
+        }
+
+        /**
+         * Sets the timeout for waiting for a connection from the pool when all connections are in use. Defaults to {@value
+         * #DEFAULT_CONNECTION_REQUEST_TIMEOUT_MILLIS} milliseconds.
+         *
+         * @param connectionRequestTimeout the connection request timeout, {@code 0} for no timeout
+         * @param unit                     the time unit, not null
+         */
+        public Builder connectionRequestTimeout(long connectionRequestTimeout, TimeUnit unit) {
+            this.connectionRequestTimeoutMillis = millis(connectionRequestTimeout, unit, "connectionRequestTimeout");
+            return this;
+        }
+
+        /**
+         * Sets how long an idle connection is kept alive, unless the server asks for a shorter period. Defaults to {@value
+         * #DEFAULT_KEEP_ALIVE_MILLIS} milliseconds.
+         *
+         * @param keepAlive the keep alive duration, must be positive
+         * @param unit      the time unit, not null
+         */
+        public Builder keepAlive(long keepAlive, TimeUnit unit) {
+            this.keepAliveMillis = millis(keepAlive, unit, "keepAlive");
+            if (keepAliveMillis == 0) {
+                throw new IllegalArgumentException("'keepAlive' must be positive");
+            }
+            return this;
+        }
+
+        /**
+         * Sets the SSL context used for all connections. Defaults to the default SSL context of the JVM, which honors the
+         * {@code javax.net.ssl.*} system properties.
+         *
+         * @param sslContext the SSL context, not null
+         */
+        public Builder sslContext(SSLContext sslContext) {
+            this.sslContext = requireNonNull(sslContext, "'sslContext' must not be null");
+            return this;
+        }
+
+        public HttpClientWebRequestor build() {
+            return new HttpClientWebRequestor(this);
+        }
+
+        private static int positive(int value, String name) {
+            if (value < 1) {
+                throw new IllegalArgumentException(format("'%s' must be positive", name));
+            }
+            return value;
+        }
+
+        private static long millis(long value, TimeUnit unit, String name) {
+            requireNonNull(unit, "'unit' must not be null");
+            if (value < 0) {
+                throw new IllegalArgumentException(format("'%s' must not be negative", name));
+            }
+            return Math.min(unit.toMillis(value), Integer.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.dedup;
+
+/**
+ * Store remembering the webhook events which have already been handled, used by the {@link MessagingDeduplicator}.
+ * <p>
+ * An id is claimed atomically before the event is handled, so a redelivery arriving while the event is still being handled is a
+ * duplicate. Once the event has been handled successfully the id is marked as seen; when handling failed the claim is released, so the
+ * event is handled again when it is redelivered. Implementations must be thread-safe. Implementations backed by a store shared between
+ * application instances, e.g. a key-value store with atomic put-if-absent and expiry, deduplicate webhooks redelivered to another instance
+ * as well.
+ *
+ * @author Marcel Overdijk
+ * @see InMemoryDeduplicationStore
+ * @since 2.3.0
+ */
+public interface DeduplicationStore {
+
+    /**
+     * Claims the given id, unless it has been marked as seen or is claimed already.
+     *
+     * @param id the id, e.g. the message id, not null
+     * @return {@code true} if the id has been claimed, {@code false} if it is a duplicate
+     */
+    boolean tryClaim(String id);
+
+    /**
+     * Releases the claim on the given id, so it can be claimed again.
+     *
+     * @param id the id, not null
+     */
+    void release(String id);
+
+    /**
+     * Marks the given id as seen, replacing the claim on it.
+     *
+     * @param id the id, not null
+     */
+    void markSeen(String id);
+
+    /**
+     * Returns whether the given watermark does not advance the current watermark with the given key.
+     *
+     * @param key       the watermark key, not null
+     * @param watermark the watermark
+     * @return {@code true} if the watermark is not greater than the current watermark, i.e. it is a duplicate or out of date
+     */
+    boolean isWatermarkStale(String key, long watermark);
+
+    /**
+     * Advances the watermark with the given key, unless the current watermark is greater.
+     *
+     * @param key       the watermark key, not null
+     * @param watermark the new watermark
+     */
+    void advanceWatermark(String key, long watermark);
+}
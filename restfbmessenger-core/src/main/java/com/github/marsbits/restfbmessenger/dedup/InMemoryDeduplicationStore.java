@@ -0,0 +1,285 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.dedup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * In-memory {@link DeduplicationStore} implementation combining an exact, bounded LRU with a time-windowed Bloom filter.
+ * <p>
+ * The ids seen within the {@code window} are remembered exactly, up to {@code maximumSize} ids, evicting the least recently seen ids
+ * first. The Bloom filter remembers the ids seen within the window beyond the LRU in a fixed amount of memory, at the cost of reporting a
+ * new id as a duplicate with the configured {@code falsePositiveRate}; it is only consulted for ids not in the LRU. Claims on ids being
+ * handled are kept separately, up to {@code maximumSize} claims, and expire after the window. Watermarks are kept per key, up to {@code
+ * maximumSize} keys. To keep lookups from contending on a single lock the entries are spread over {@code concurrencyLevel} segments.
+ * <pre class="code">
+ * DeduplicationStore store = InMemoryDeduplicationStore.builder()
+ *         .maximumSize(100000)
+ *         .window(1, TimeUnit.HOURS)
+ *         .bloomFilter(1000000, 0.00001)
+ *         .build();
+ * </pre>
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class InMemoryDeduplicationStore implements DeduplicationStore {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 100000;
+    public static final long DEFAULT_WINDOW_MILLIS = 3600000;
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final long windowNanos;
+    private final Segment<Long>[] seen;
+    // guarded by the seen segment with the same index
+    private final Segment<Long>[] claims;
+    private final Segment<Long>[] watermarks;
+    private final TimeWindowedBloomFilter bloomFilter;
+
+    /**
+     * Creates a {@code InMemoryDeduplicationStore} instance with the default settings, without Bloom filter.
+     */
+    public InMemoryDeduplicationStore() {
+        this(builder());
+    }
+
+    protected InMemoryDeduplicationStore(Builder builder) {
+        this.windowNanos = builder.windowNanos;
+        this.seen = createSegments(builder.maximumSize, builder.concurrencyLevel);
+        this.claims = createSegments(builder.maximumSize, builder.concurrencyLevel);
+        this.watermarks = createSegments(builder.maximumSize, builder.concurrencyLevel);
+        this.bloomFilter = builder.expectedInsertions > 0
+                ? new TimeWindowedBloomFilter(builder.expectedInsertions, builder.falsePositiveRate, windowNanos, System.nanoTime())
+                : null;
+    }
+
+    /**
+     * Returns a new {@link Builder} for configuring a {@code InMemoryDeduplicationStore}.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public boolean tryClaim(String id) {
+        return tryClaim(id, System.nanoTime());
+    }
+
+    boolean tryClaim(String id, long now) {
+        requireNonNull(id, "'id' must not be null");
+        int index = segmentIndex(seen, id);
+        Segment<Long> segment = seen[index];
+        synchronized (segment) {
+            Long seenAt = segment.get(id);
+            if (seenAt != null && now - seenAt < windowNanos) {
+                return false;
+            }
+            if (seenAt == null && bloomFilter != null && bloomFilter.mightContain(id, now)) {
+                return false;
+            }
+            Long claimedAt = claims[index].get(id);
+            if (claimedAt != null && now - claimedAt < windowNanos) {
+                return false;
+            }
+            claims[index].put(id, now);
+            return true;
+        }
+    }
+
+    @Override
+    public void release(String id) {
+        requireNonNull(id, "'id' must not be null");
+        int index = segmentIndex(seen, id);
+        synchronized (seen[index]) {
+            claims[index].remove(id);
+        }
+    }
+
+    @Override
+    public void markSeen(String id) {
+        markSeen(id, System.nanoTime());
+    }
+
+    void markSeen(String id, long now) {
+        requireNonNull(id, "'id' must not be null");
+        int index = segmentIndex(seen, id);
+        Segment<Long> segment = seen[index];
+        synchronized (segment) {
+            claims[index].remove(id);
+            segment.put(id, now);
+        }
+        if (bloomFilter != null) {
+            bloomFilter.put(id, now);
+        }
+    }
+
+    @Override
+    public boolean isWatermarkStale(String key, long watermark) {
+        requireNonNull(key, "'key' must not be null");
+        Segment<Long> segment = segmentFor(watermarks, key);
+        synchronized (segment) {
+            Long current = segment.get(key);
+            return current != null && watermark <= current;
+        }
+    }
+
+    @Override
+    public void advanceWatermark(String key, long watermark) {
+        requireNonNull(key, "'key' must not be null");
+        Segment<Long> segment = segmentFor(watermarks, key);
+        synchronized (segment) {
+            Long current = segment.get(key);
+            if (current == null || watermark > current) {
+                segment.put(key, watermark);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of ids remembered exactly.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<Long> segment : seen) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Segment<Long>[] createSegments(int maximumSize, int concurrencyLevel) {
+        int count = Math.min(concurrencyLevel, maximumSize);
+        Segment<Long>[] segments = (Segment<Long>[]) new Segment<?>[count];
+        for (int i = 0; i < count; i++) {
+            // spread the remainder so the segment sizes add up to the maximum size
+            segments[i] = new Segment<>(maximumSize / count + (i < maximumSize % count ? 1 : 0));
+        }
+        return segments;
+    }
+
+    private static <V> Segment<V> segmentFor(Segment<V>[] segments, String key) {
+        return segments[segmentIndex(segments, key)];
+    }
+
+    private static int segmentIndex(Segment<?>[] segments, String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % segments.length;
+    }
+
+    private static class Segment<V> extends LinkedHashMap<String, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maximumSize;
+
+        Segment(int maximumSize) {
+            super(16, 0.75f, true);
+            this.maximumSize = maximumSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+            return size() > maximumSize;
+        }
+    }
+
+    /**
+     * Builder for {@link InMemoryDeduplicationStore} instances.
+     */
+    public static class Builder {
+
+        private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+        private long windowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_WINDOW_MILLIS);
+        private int concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+        private int expectedInsertions;
+        private double falsePositiveRate;
+
+        protected Builder() {
+        }
+
+        /**
+         * Sets the maximum number of ids remembered exactly, and the maximum number of watermarks. Defaults to {@value
+         * #DEFAULT_MAXIMUM_SIZE}.
+         *
+         * @param maximumSize the maximum size, must be positive
+         */
+        public Builder maximumSize(int maximumSize) {
+            if (maximumSize < 1) {
+                throw new IllegalArgumentException("'maximumSize' must be positive");
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Sets the time window within which a seen id is a duplicate. Defaults to {@value #DEFAULT_WINDOW_MILLIS} milliseconds.
+         *
+         * @param window the window, must be positive
+         * @param unit   the time unit, not null
+         */
+        public Builder window(long window, TimeUnit unit) {
+            requireNonNull(unit, "'unit' must not be null");
+            if (window <= 0) {
+                throw new IllegalArgumentException("'window' must be positive");
+            }
+            this.windowNanos = unit.toNanos(window);
+            return this;
+        }
+
+        /**
+         * Enables the Bloom filter remembering the ids evicted from the LRU within the window. Disabled by default.
+         *
+         * @param expectedInsertions the expected number of ids per half window, must be positive
+         * @param falsePositiveRate  the rate at which new ids are reported as duplicates, between 0 and 1 exclusive
+         */
+        public Builder bloomFilter(int expectedInsertions, double falsePositiveRate) {
+            if (expectedInsertions < 1) {
+                throw new IllegalArgumentException("'expectedInsertions' must be positive");
+            }
+            if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+                throw new IllegalArgumentException("'falsePositiveRate' must be between 0 and 1");
+            }
+            this.expectedInsertions = expectedInsertions;
+            this.falsePositiveRate = falsePositiveRate;
+            return this;
+        }
+
+        /**
+         * Sets the number of independently locked segments. Defaults to {@value #DEFAULT_CONCURRENCY_LEVEL}.
+         *
+         * @param concurrencyLevel the concurrency level, must be positive
+         */
+        public Builder concurrencyLevel(int concurrencyLevel) {
+            if (concurrencyLevel < 1) {
+                throw new IllegalArgumentException("'concurrencyLevel' must be positive");
+            }
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        public InMemoryDeduplicationStore build() {
+            return new InMemoryDeduplicationStore(this);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.dedup;
+
+import com.restfb.types.webhook.messaging.DeliveryItem;
+import com.restfb.types.webhook.messaging.InnerMessagingItem;
+import com.restfb.types.webhook.messaging.MessageItem;
+import com.restfb.types.webhook.messaging.MessagingItem;
+import com.restfb.types.webhook.messaging.MessagingParticipant;
+import com.restfb.types.webhook.messaging.ReadItem;
+
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Detects messaging items which Facebook redelivered, e.g. because the webhook was not acknowledged in time.
+ * <p>
+ * Messages and message echoes are identified by their message id ({@code mid}). Deliveries and reads carry a watermark, a timestamp
+ * before which all messages have been delivered or read; they are duplicates when their watermark does not advance the last watermark
+ * handled for the same sender and recipient. Other messaging items are never considered duplicates.
+ * <p>
+ * A message that is not a duplicate is claimed, so a redelivery arriving while it is still being handled is a duplicate. It is only
+ * remembered once it has been {@link #markHandled(MessagingItem, boolean) handled}; when handling it failed the claim is {@link
+ * #release(MessagingItem, boolean) released}, so it is handled again when Facebook redelivers it. When the {@link DeduplicationStore}
+ * fails, the item is not considered a duplicate so no item is lost.
+ *
+ * @author Marcel Overdijk
+ * @see com.github.marsbits.restfbmessenger.webhook.AbstractCallbackHandler#setDeduplicator(MessagingDeduplicator)
+ * @since 2.3.0
+ */
+public class MessagingDeduplicator {
+
+    private static final Logger logger = Logger.getLogger(MessagingDeduplicator.class.getName());
+
+    private final DeduplicationStore store;
+
+    /**
+     * Creates a {@code MessagingDeduplicator} instance using an {@link InMemoryDeduplicationStore} with the default settings.
+     */
+    public MessagingDeduplicator() {
+        this(new InMemoryDeduplicationStore());
+    }
+
+    /**
+     * Creates a {@code MessagingDeduplicator} instance.
+     *
+     * @param store the deduplication store, not null
+     */
+    public MessagingDeduplicator(DeduplicationStore store) {
+        this.store = requireNonNull(store, "'store' must not be null");
+    }
+
+    /**
+     * Returns whether the given messaging item has been handled before or is being handled. When it is not a duplicate, the item must be
+     * {@link #markHandled(MessagingItem, boolean) marked as handled} or {@link #release(MessagingItem, boolean) released} once handling
+     * it has completed.
+     *
+     * @param messaging the messaging item
+     * @param standby   whether the item was received on the standby channel
+     * @return {@code true} if the item is a duplicate
+     */
+    public boolean isDuplicate(MessagingItem messaging, boolean standby) {
+        InnerMessagingItem item = messaging != null ? messaging.getItem() : null;
+        try {
+            if (item instanceof MessageItem) {
+                String id = messageId((MessageItem) item, standby);
+                return id != null && !store.tryClaim(id);
+            }
+            Long watermark = watermark(item);
+            return watermark != null && store.isWatermarkStale(watermarkKey(item, messaging, standby), watermark);
+        } catch (RuntimeException e) {
+            logger.log(WARNING, format("Exception deduplicating messaging item: %s", e.getMessage()), e);
+        }
+        return false;
+    }
+
+    /**
+     * Remembers the given messaging item as handled, so a later call to {@link #isDuplicate(MessagingItem, boolean)} for the same item
+     * returns {@code true}.
+     *
+     * @param messaging the messaging item
+     * @param standby   whether the item was received on the standby channel
+     */
+    public void markHandled(MessagingItem messaging, boolean standby) {
+        InnerMessagingItem item = messaging != null ? messaging.getItem() : null;
+        try {
+            if (item instanceof MessageItem) {
+                String id = messageId((MessageItem) item, standby);
+                if (id != null) {
+                    store.markSeen(id);
+                }
+                return;
+            }
+            Long watermark = watermark(item);
+            if (watermark != null) {
+                store.advanceWatermark(watermarkKey(item, messaging, standby), watermark);
+            }
+        } catch (RuntimeException e) {
+            logger.log(WARNING, format("Exception marking messaging item as handled: %s", e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Releases the given messaging item after handling it failed, so it is handled again when it is redelivered.
+     *
+     * @param messaging the messaging item
+     * @param standby   whether the item was received on the standby channel
+     */
+    public void release(MessagingItem messaging, boolean standby) {
+        InnerMessagingItem item = messaging != null ? messaging.getItem() : null;
+        try {
+            // watermarks are only advanced once handled, so there is nothing to release for deliveries and reads
+            if (item instanceof MessageItem) {
+                String id = messageId((MessageItem) item, standby);
+                if (id != null) {
+                    store.release(id);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.log(WARNING, format("Exception releasing messaging item: %s", e.getMessage()), e);
+        }
+    }
+
+    private static String messageId(MessageItem item, boolean standby) {
+        String mid = item.getMid();
+        return mid != null && standby ? "standby:" + mid : mid;
+    }
+
+    /**
+     * Returns the watermark of the given delivery or read item, or {@code null} if the item has no valid watermark.
+     */
+    private static Long watermark(InnerMessagingItem item) {
+        String watermark = null;
+        if (item instanceof DeliveryItem) {
+            watermark = ((DeliveryItem) item).getWatermark();
+        } else if (item instanceof ReadItem) {
+            watermark = ((ReadItem) item).getWatermark();
+        }
+        if (watermark == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(watermark);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String watermarkKey(InnerMessagingItem item, MessagingItem messaging, boolean standby) {
+        String type = item instanceof DeliveryItem ? "delivery" : "read";
+        return (standby ? "standby-" + type : type) + ":" + id(messaging.getSender()) + ":" + id(messaging.getRecipient());
+    }
+
+    private static String id(MessagingParticipant participant) {
+        return participant != null ? participant.getId() : null;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.dedup;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Bloom filter remembering the ids put within a time window. The window is covered by two generations of filters; the older generation
+ * is discarded and replaced by an empty one every half window, so an id is remembered for at least half and at most a full window.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+class TimeWindowedBloomFilter {
+
+    private final int bitCount;
+    private final int hashCount;
+    private final long generationNanos;
+
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    /**
+     * Creates a {@code TimeWindowedBloomFilter} instance.
+     *
+     * @param expectedInsertions the expected number of ids put per half window
+     * @param falsePositiveRate  the false positive rate at the expected number of ids
+     * @param windowNanos        the window in nanoseconds
+     * @param now                the current time in nanoseconds
+     */
+    TimeWindowedBloomFilter(int expectedInsertions, double falsePositiveRate, long windowNanos, long now) {
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        // round up to whole words, capped at the maximum array size
+        this.bitCount = (int) Math.min((bits + 63) & ~63L, ((long) Integer.MAX_VALUE - 63) & ~63L);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        this.generationNanos = windowNanos / 2;
+        this.current = new Generation(bitCount, now);
+        this.previous = new Generation(bitCount, now);
+    }
+
+    boolean mightContain(String id, long now) {
+        rotate(now);
+        long hash = hash(id);
+        return current.mightContain(hash) || previous.mightContain(hash);
+    }
+
+    void put(String id, long now) {
+        rotate(now);
+        current.put(hash(id));
+    }
+
+    int getBitCount() {
+        return bitCount;
+    }
+
+    int getHashCount() {
+        return hashCount;
+    }
+
+    private void rotate(long now) {
+        if (now - current.createdAt >= generationNanos) {
+            synchronized (this) {
+                long elapsed = now - current.createdAt;
+                if (elapsed >= generationNanos) {
+                    // when no id was put for more than a generation the current generation has expired as well
+                    previous = elapsed >= 2 * generationNanos ? new Generation(bitCount, now) : current;
+                    current = new Generation(bitCount, now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a 64 bit FNV-1a hash of the UTF-8 bytes of the given id, which is split into the two hashes used for double hashing.
+     */
+    private static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : id.getBytes(UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        // finalize so the lower and upper halves are well mixed
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private class Generation {
+
+        private final AtomicLongArray words;
+        private final long createdAt;
+
+        Generation(int bitCount, long createdAt) {
+            this.words = new AtomicLongArray(bitCount / 64);
+            this.createdAt = createdAt;
+        }
+
+        boolean mightContain(long hash) {
+            int hash1 = (int) hash;
+            int hash2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                int bit = ((hash1 + i * hash2) & Integer.MAX_VALUE) % bitCount;
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(long hash) {
+            int hash1 = (int) hash;
+            int hash2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                int bit = ((hash1 + i * hash2) & Integer.MAX_VALUE) % bitCount;
+                long mask = 1L << bit;
+                long word;
+                do {
+                    word = words.get(bit >>> 6);
+                    if ((word & mask) != 0) {
+                        break;
+                    }
+                } while (!words.compareAndSet(bit >>> 6, word, word | mask));
+            }
+        }
+    }
+}
@@ -0,0 +1,535 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.journal;
+
+import com.github.marsbits.restfbmessenger.util.NamedThreadFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Append-only journal of records stored in memory-mapped segment files in a local directory.
+ * <p>
+ * Each record is addressed by its offset, a position in the logical byte stream of all segments. Appending a record copies it into the
+ * mapped segment without a system call; the records become durable when they are synced. Concurrent {@link #sync(long)} calls are
+ * group committed: a single {@code fsync} makes the records of all waiting callers durable. With a sync interval the journal also syncs
+ * periodically in the background.
+ * <p>
+ * Consumers read the records with a {@link JournalReader} and {@link #commit(long) commit} the offset before which all records have been
+ * processed. The committed offset is stored in a checkpoint file and segments containing only committed records are deleted, unless they
+ * are retained for replaying with the retention size. When the
+ * journal is opened, the last segment is scanned and a torn or corrupt tail left by a crash is truncated; the records from the committed
+ * offset onward can then be replayed.
+ *
+ * @author Marcel Overdijk
+ * @see JournalReader
+ * @since 2.3.0
+ */
+public class Journal implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(Journal.class.getName());
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    static final int HEADER_SIZE = 8;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE_NAME = "checkpoint";
+    private static final long CHECKPOINT_MAGIC = 0x6a6f75726e616cL;
+    private static final int MIN_SEGMENT_SIZE = 4096;
+
+    private final File directory;
+    private final int segmentSize;
+    private final long retentionSize;
+    private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Object appendLock = new Object();
+    private final Object syncLock = new Object();
+    private final Object commitLock = new Object();
+    private final MappedByteBuffer checkpoint;
+    private final RandomAccessFile checkpointFile;
+    private final ScheduledExecutorService syncScheduler;
+
+    private Segment active;
+    private volatile long endOffset;
+    private volatile long durableOffset;
+    private volatile long committedOffset;
+    private volatile boolean closed;
+
+    protected Journal(Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.segmentSize = builder.segmentSize;
+        this.retentionSize = builder.retentionSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(format("Could not create journal directory '%s'", directory));
+        }
+        this.checkpointFile = new RandomAccessFile(new File(directory, CHECKPOINT_FILE_NAME), "rw");
+        try {
+            this.checkpoint = checkpointFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 16);
+            recover();
+        } catch (IOException | RuntimeException e) {
+            closeQuietly();
+            throw e;
+        }
+        if (builder.syncIntervalNanos > 0) {
+            this.syncScheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("journal-sync"));
+            syncScheduler.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        sync();
+                    } catch (IOException e) {
+                        logger.log(WARNING, format("Exception syncing journal '%s'", directory), e);
+                    }
+                }
+            }, builder.syncIntervalNanos, builder.syncIntervalNanos, TimeUnit.NANOSECONDS);
+        } else {
+            this.syncScheduler = null;
+        }
+    }
+
+    /**
+     * Returns a new {@link Builder} for opening a {@code Journal} in the given directory.
+     *
+     * @param directory the journal directory, created if it does not exist, not null
+     */
+    public static Builder builder(File directory) {
+        return new Builder(directory);
+    }
+
+    /**
+     * Appends the given record.
+     *
+     * @param data the record data, not empty
+     * @return the offset of the record
+     * @throws IOException in case a new segment could not be created
+     */
+    public long append(byte[] data) throws IOException {
+        requireNonNull(data, "'data' must not be null");
+        if (data.length == 0) {
+            throw new IllegalArgumentException("'data' must not be empty");
+        }
+        int size = HEADER_SIZE + data.length;
+        if (size > segmentSize) {
+            throw new IllegalArgumentException(format("Record of %d bytes does not fit in a segment of %d bytes", data.length,
+                    segmentSize));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        synchronized (appendLock) {
+            ensureOpen();
+            if (active.position + size > segmentSize) {
+                roll();
+            }
+            long offset = active.base + active.position;
+            ByteBuffer buffer = active.writeBuffer;
+            buffer.position(active.position);
+            buffer.putInt(data.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(data);
+            active.position += size;
+            // publishes the record to the readers
+            endOffset = offset + size;
+            return offset;
+        }
+    }
+
+    /**
+     * Makes the record at the given offset, and all records before it, durable. Concurrent callers share a single {@code fsync}.
+     *
+     * @param offset the record offset
+     * @throws IOException in case the segments could not be synced
+     */
+    public void sync(long offset) throws IOException {
+        if (durableOffset > offset) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durableOffset > offset) {
+                return;
+            }
+            ensureOpen();
+            long end = endOffset;
+            Long from = segments.floorKey(durableOffset);
+            for (Segment segment : (from != null ? segments.tailMap(from) : segments).values()) {
+                segment.mapped.force();
+            }
+            checkpoint.force();
+            durableOffset = end;
+            if (logger.isLoggable(FINE)) {
+                logger.fine(format("Synced journal '%s' up to offset %d", directory, end));
+            }
+        }
+    }
+
+    /**
+     * Makes all appended records durable.
+     *
+     * @throws IOException in case the segments could not be synced
+     */
+    public void sync() throws IOException {
+        long end = endOffset;
+        if (end > durableOffset) {
+            sync(end - 1);
+        }
+    }
+
+    /**
+     * Commits the given offset, marking all records before it as processed. Segments containing only committed records are deleted once
+     * the committed records in the following segments exceed the retention size.
+     *
+     * @param offset the offset before which all records have been processed, a record offset or the end offset
+     * @throws IOException in case the checkpoint could not be written
+     */
+    public void commit(long offset) throws IOException {
+        if (offset > endOffset) {
+            throw new IllegalArgumentException(format("Offset %d is beyond the end offset %d", offset, endOffset));
+        }
+        synchronized (commitLock) {
+            if (offset <= committedOffset) {
+                return;
+            }
+            ensureOpen();
+            checkpoint.putLong(0, offset);
+            checkpoint.putLong(8, offset ^ CHECKPOINT_MAGIC);
+            committedOffset = offset;
+            // the active segment is never deleted, so the first segment always has a successor here
+            while (segments.size() > 1) {
+                Map.Entry<Long, Segment> first = segments.firstEntry();
+                long next = segments.higherKey(first.getKey());
+                if (next > offset || offset - next < retentionSize) {
+                    break;
+                }
+                segments.remove(first.getKey());
+                first.getValue().delete();
+            }
+        }
+    }
+
+    /**
+     * Returns a reader reading the records from the given offset.
+     *
+     * @param offset the offset of the first record to read, a record offset or the end offset
+     */
+    public JournalReader reader(long offset) {
+        if (offset < segments.firstKey() || offset > endOffset) {
+            throw new IllegalArgumentException(format("Offset %d is not in the journal", offset));
+        }
+        return new JournalReader(this, offset);
+    }
+
+    /**
+     * Returns the offset of the first record in the journal, which is the committed offset unless committed records are retained.
+     */
+    public long getFirstOffset() {
+        return segments.firstKey();
+    }
+
+    /**
+     * Returns the offset following the last appended record.
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Returns the offset before which all records are durable.
+     */
+    public long getDurableOffset() {
+        return durableOffset;
+    }
+
+    /**
+     * Returns the committed offset.
+     */
+    public long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Syncs and closes the journal.
+     */
+    @Override
+    public void close() throws IOException {
+        if (syncScheduler != null) {
+            syncScheduler.shutdown();
+        }
+        synchronized (appendLock) {
+            if (closed) {
+                return;
+            }
+            try {
+                sync();
+            } finally {
+                closed = true;
+                closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * Returns the segment containing the given offset, or {@code null} if the offset precedes the first segment.
+     */
+    Segment segmentFor(long offset) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+        return entry != null ? entry.getValue() : null;
+    }
+
+    int getSegmentSize() {
+        return segmentSize;
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles();
+        long[] bases = new long[files != null ? files.length : 0];
+        int count = 0;
+        for (int i = 0; i < bases.length; i++) {
+            String name = files[i].getName();
+            if (name.endsWith(SEGMENT_SUFFIX)) {
+                bases[count++] = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            }
+        }
+        bases = Arrays.copyOf(bases, count);
+        Arrays.sort(bases);
+        long checkpointOffset = checkpoint.getLong(0);
+        boolean validCheckpoint = (checkpointOffset ^ CHECKPOINT_MAGIC) == checkpoint.getLong(8);
+        for (int i = 0; i < bases.length; i++) {
+            Segment segment = new Segment(segmentFile(bases[i]), bases[i], segmentSize);
+            segments.put(bases[i], segment);
+            if (i == bases.length - 1) {
+                segment.position = scan(segment);
+            } else {
+                segment.position = (int) (bases[i + 1] - bases[i]);
+            }
+        }
+        if (segments.isEmpty()) {
+            long base = validCheckpoint ? checkpointOffset : 0;
+            segments.put(base, new Segment(segmentFile(base), base, segmentSize));
+        }
+        active = segments.lastEntry().getValue();
+        endOffset = active.base + active.position;
+        durableOffset = endOffset;
+        long first = segments.firstKey();
+        // records before the first segment have been committed and deleted
+        committedOffset = validCheckpoint ? Math.min(Math.max(checkpointOffset, first), endOffset) : first;
+        logger.info(format("Opened journal '%s' with %d segment(s), committed offset %d and end offset %d", directory, segments.size(),
+                committedOffset, endOffset));
+    }
+
+    /**
+     * Scans the records of the given segment and truncates the segment after the last valid record.
+     */
+    private int scan(Segment segment) {
+        ByteBuffer buffer = segment.writeBuffer;
+        int position = 0;
+        CRC32 crc = new CRC32();
+        byte[] data = new byte[0];
+        while (position + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > segmentSize) {
+                break;
+            }
+            if (data.length < length) {
+                data = new byte[Math.max(length, data.length * 2)];
+            }
+            buffer.position(position + HEADER_SIZE);
+            buffer.get(data, 0, length);
+            crc.reset();
+            crc.update(data, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                logger.warning(format("Truncating corrupt record at offset %d of journal '%s'", segment.base + position, directory));
+                break;
+            }
+            position += HEADER_SIZE + length;
+        }
+        // clear the torn tail so it is not mistaken for records after new records have been appended
+        byte[] zeros = new byte[Math.min(8192, segmentSize)];
+        buffer.position(position);
+        while (buffer.hasRemaining()) {
+            buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+        }
+        return position;
+    }
+
+    private void roll() throws IOException {
+        long base = active.base + active.position;
+        Segment segment = new Segment(segmentFile(base), base, segmentSize);
+        segments.put(base, segment);
+        active = segment;
+        if (logger.isLoggable(FINE)) {
+            logger.fine(format("Rolled journal '%s' to new segment at offset %d", directory, base));
+        }
+    }
+
+    private File segmentFile(long base) {
+        return new File(directory, format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+    }
+
+    private void closeQuietly() {
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        try {
+            checkpointFile.close();
+        } catch (IOException e) {
+            logger.log(WARNING, "Exception closing journal checkpoint", e);
+        }
+    }
+
+    /**
+     * A memory-mapped segment file.
+     */
+    static class Segment {
+
+        final File file;
+        final long base;
+        final MappedByteBuffer mapped;
+        final ByteBuffer writeBuffer;
+        private final RandomAccessFile randomAccessFile;
+        // only accessed while holding the append lock
+        int position;
+
+        Segment(File file, long base, int size) throws IOException {
+            this.file = file;
+            this.base = base;
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                this.mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException e) {
+                randomAccessFile.close();
+                throw e;
+            }
+            this.writeBuffer = mapped.duplicate();
+        }
+
+        void close() {
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                logger.log(WARNING, format("Exception closing journal segment '%s'", file), e);
+            }
+        }
+
+        void delete() {
+            close();
+            // the mapping stays valid for readers still reading the segment until it is garbage collected
+            if (!file.delete()) {
+                logger.warning(format("Could not delete journal segment '%s'", file));
+            }
+        }
+    }
+
+    /**
+     * Builder for {@link Journal} instances.
+     */
+    public static class Builder {
+
+        private final File directory;
+        private int segmentSize = DEFAULT_SEGMENT_SIZE;
+        private long syncIntervalNanos;
+        private long retentionSize;
+
+        protected Builder(File directory) {
+            this.directory = requireNonNull(directory, "'directory' must not be null");
+        }
+
+        /**
+         * Sets the size of the segment files. Defaults to 64 MB.
+         *
+         * @param segmentSize the segment size in bytes, at least 4096
+         */
+        public Builder segmentSize(int segmentSize) {
+            if (segmentSize < MIN_SEGMENT_SIZE) {
+                throw new IllegalArgumentException(format("'segmentSize' must be at least %d", MIN_SEGMENT_SIZE));
+            }
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Sets the interval at which the appended records are synced in the background. By default records are only synced when
+         * {@link Journal#sync(long)} is called.
+         *
+         * @param syncInterval the sync interval, must be positive
+         * @param unit         the time unit, not null
+         */
+        public Builder syncInterval(long syncInterval, TimeUnit unit) {
+            requireNonNull(unit, "'unit' must not be null");
+            if (syncInterval <= 0) {
+                throw new IllegalArgumentException("'syncInterval' must be positive");
+            }
+            this.syncIntervalNanos = unit.toNanos(syncInterval);
+            return this;
+        }
+
+        /**
+         * Sets the minimum number of bytes of committed records to retain, so they can still be read for replaying. By default
+         * committed records are not retained.
+         *
+         * @param retentionSize the retention size in bytes, must not be negative
+         */
+        public Builder retentionSize(long retentionSize) {
+            if (retentionSize < 0) {
+                throw new IllegalArgumentException("'retentionSize' must not be negative");
+            }
+            this.retentionSize = retentionSize;
+            return this;
+        }
+
+        /**
+         * Opens the journal, recovering the existing segments in the directory.
+         *
+         * @throws IOException in case the journal could not be opened
+         */
+        public Journal build() throws IOException {
+            return new Journal(this);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.journal;
+
+import java.nio.ByteBuffer;
+
+import static java.lang.String.format;
+
+/**
+ * Reads the records of a {@link Journal} sequentially. A reader is not thread-safe; it may be used while other threads append to the
+ * journal and returns the appended records once they have been published.
+ *
+ * @author Marcel Overdijk
+ * @see Journal#reader(long)
+ * @since 2.3.0
+ */
+public class JournalReader {
+
+    private final Journal journal;
+    private long offset;
+    private Journal.Segment segment;
+    private ByteBuffer buffer;
+
+    JournalReader(Journal journal, long offset) {
+        this.journal = journal;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the next record, or {@code null} if no more records have been appended yet.
+     *
+     * @throws IllegalStateException if the records at the reader offset have been deleted
+     */
+    public JournalRecord next() {
+        if (offset >= journal.getEndOffset()) {
+            return null;
+        }
+        int position = offset(offset);
+        int length = buffer.getInt(position);
+        if (length <= 0) {
+            // the end of a segment which was rolled before it was full
+            segment = null;
+            position = offset(offset);
+            length = buffer.getInt(position);
+        }
+        byte[] data = new byte[length];
+        buffer.position(position + Journal.HEADER_SIZE);
+        buffer.get(data);
+        JournalRecord record = new JournalRecord(offset, offset + Journal.HEADER_SIZE + length, data);
+        offset = record.getNextOffset();
+        return record;
+    }
+
+    /**
+     * Returns the offset of the next record to read.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    private int offset(long offset) {
+        if (segment == null || offset < segment.base || offset - segment.base + Journal.HEADER_SIZE > journal.getSegmentSize()) {
+            segment = journal.segmentFor(offset);
+            if (segment == null) {
+                throw new IllegalStateException(format("Offset %d has been deleted from the journal", offset));
+            }
+            buffer = segment.mapped.duplicate();
+        }
+        return (int) (offset - segment.base);
+    }
+}
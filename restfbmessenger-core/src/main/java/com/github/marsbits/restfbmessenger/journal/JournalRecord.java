@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.journal;
+
+/**
+ * A record read from a {@link Journal}.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class JournalRecord {
+
+    private final long offset;
+    private final long nextOffset;
+    private final byte[] data;
+
+    public JournalRecord(long offset, long nextOffset, byte[] data) {
+        this.offset = offset;
+        this.nextOffset = nextOffset;
+        this.data = data;
+    }
+
+    /**
+     * Returns the offset of the record.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the offset of the record following this record, to be committed once this record has been processed.
+     */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
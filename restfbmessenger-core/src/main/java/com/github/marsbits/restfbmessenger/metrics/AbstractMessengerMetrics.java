@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.metrics;
+
+import com.github.marsbits.restfbmessenger.webhook.MessagingEventType;
+
+/**
+ * Abstract {@link MessengerMetrics} implementation with empty methods, so only the relevant methods need to be overridden.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public abstract class AbstractMessengerMetrics implements MessengerMetrics {
+
+    @Override
+    public void webhookReceived(int payloadSize) {
+    }
+
+    @Override
+    public void webhookSignatureFailed() {
+    }
+
+    @Override
+    public void webhookParsed(long durationNanos) {
+    }
+
+    @Override
+    public void messagingItemDispatched(MessagingEventType eventType, boolean standby, long durationNanos, Throwable failure) {
+    }
+
+    @Override
+    public void sendCompleted(String operation, String errorCode, long durationNanos) {
+    }
+
+    @Override
+    public void registerQueue(String name, QueueDepth gauge) {
+    }
+}
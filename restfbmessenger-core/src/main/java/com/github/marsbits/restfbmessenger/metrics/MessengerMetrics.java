@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.metrics;
+
+import com.github.marsbits.restfbmessenger.webhook.MessagingEventType;
+
+/**
+ * Service provider interface recording the metrics of the webhook and Send API paths, e.g. to a monitoring system.
+ * <p>
+ * The methods are invoked on the request, dispatch and send threads, so implementations must be thread-safe and should return quickly.
+ * Durations are measured with {@link System#nanoTime()} and only when a {@code MessengerMetrics} instance is configured.
+ *
+ * @author Marcel Overdijk
+ * @see com.github.marsbits.restfbmessenger.DefaultMessenger#setMetrics(MessengerMetrics)
+ * @since 2.3.0
+ */
+public interface MessengerMetrics {
+
+    /**
+     * Invoked when a webhook callback request is received, before its signature is verified.
+     *
+     * @param payloadSize the payload size in bytes
+     */
+    void webhookReceived(int payloadSize);
+
+    /**
+     * Invoked when the signature of a webhook callback is invalid.
+     */
+    void webhookSignatureFailed();
+
+    /**
+     * Invoked after a webhook payload has been scanned and bound to a webhook object.
+     *
+     * @param durationNanos the parse duration in nanoseconds
+     */
+    void webhookParsed(long durationNanos);
+
+    /**
+     * Invoked after a messaging or standby item has been dispatched to the callback methods and listeners.
+     *
+     * @param eventType     the event type of the item
+     * @param standby       whether the item is a standby item
+     * @param durationNanos the dispatch duration in nanoseconds
+     * @param failure       the exception thrown by the callback, or {@code null} if the item was handled successfully
+     */
+    void messagingItemDispatched(MessagingEventType eventType, boolean standby, long durationNanos, Throwable failure);
+
+    /**
+     * Invoked after a Send API request has completed.
+     *
+     * @param operation     the send operation, e.g. {@code message} or {@code sender_action}
+     * @param errorCode     the Graph API error code or exception name of a failed request, or {@code null} if the request succeeded
+     * @param durationNanos the request duration in nanoseconds
+     */
+    void sendCompleted(String operation, String errorCode, long durationNanos);
+
+    /**
+     * Registers a gauge reporting the depth of a queue, e.g. the webhook executor queue or the pending durable send operations. A gauge
+     * registered with the name of an already registered queue replaces the registered gauge.
+     *
+     * @param name  the queue name
+     * @param gauge the gauge
+     */
+    void registerQueue(String name, QueueDepth gauge);
+
+    /**
+     * Gauge reporting the current depth of a queue.
+     */
+    interface QueueDepth {
+
+        /**
+         * Returns the current number of entries in the queue.
+         */
+        long get();
+    }
+}
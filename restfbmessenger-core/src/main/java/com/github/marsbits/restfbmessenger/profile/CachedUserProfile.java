@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.profile;
+
+import com.restfb.exception.FacebookException;
+import com.restfb.types.User;
+
+import java.io.Serializable;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A cached user profile, holding either the retrieved {@link User} or the failure of a user that was not found.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public final class CachedUserProfile implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final User user;
+    private final FacebookException notFoundException;
+
+    private CachedUserProfile(User user, FacebookException notFoundException) {
+        this.user = user;
+        this.notFoundException = notFoundException;
+    }
+
+    /**
+     * Returns a cached profile of a found user.
+     *
+     * @param user the user, not null
+     */
+    public static CachedUserProfile found(User user) {
+        return new CachedUserProfile(requireNonNull(user, "'user' must not be null"), null);
+    }
+
+    /**
+     * Returns a cached profile of a user that was not found.
+     *
+     * @param notFoundException the failure returned by the Graph API, not null
+     */
+    public static CachedUserProfile notFound(FacebookException notFoundException) {
+        return new CachedUserProfile(null, requireNonNull(notFoundException, "'notFoundException' must not be null"));
+    }
+
+    /**
+     * Returns whether the user was not found.
+     */
+    public boolean isNotFound() {
+        return notFoundException != null;
+    }
+
+    /**
+     * Returns the user, or {@code null} if the user was not found.
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * Returns the failure returned by the Graph API, or {@code null} if the user was found.
+     */
+    public FacebookException getNotFoundException() {
+        return notFoundException;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.profile;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * In-memory {@link UserProfileCache} implementation with size and time-to-live based eviction.
+ * <p>
+ * The cache holds at most {@code maximumSize} users, evicting the least recently used users first. Found profiles expire after the
+ * {@code ttl}, profiles of users that were not found after the (usually shorter) {@code notFoundTtl}. To keep lookups from contending on a
+ * single lock the users are spread over {@code concurrencyLevel} segments, each evicting its own least recently used users.
+ * <pre class="code">
+ * UserProfileCache cache = InMemoryUserProfileCache.builder()
+ *         .maximumSize(50000)
+ *         .ttl(1, TimeUnit.HOURS)
+ *         .build();
+ * </pre>
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class InMemoryUserProfileCache implements UserProfileCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    public static final long DEFAULT_TTL_MILLIS = 3600000;
+    public static final long DEFAULT_NOT_FOUND_TTL_MILLIS = 300000;
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final long ttlNanos;
+    private final long notFoundTtlNanos;
+    private final Segment[] segments;
+
+    /**
+     * Creates a {@code InMemoryUserProfileCache} instance with the default settings.
+     */
+    public InMemoryUserProfileCache() {
+        this(builder());
+    }
+
+    protected InMemoryUserProfileCache(Builder builder) {
+        this.ttlNanos = builder.ttlNanos;
+        this.notFoundTtlNanos = builder.notFoundTtlNanos;
+        int concurrencyLevel = Math.min(builder.concurrencyLevel, builder.maximumSize);
+        this.segments = new Segment[concurrencyLevel];
+        for (int i = 0; i < concurrencyLevel; i++) {
+            // spread the remainder so the segment sizes add up to the maximum size
+            segments[i] = new Segment(builder.maximumSize / concurrencyLevel + (i < builder.maximumSize % concurrencyLevel ? 1 : 0));
+        }
+    }
+
+    /**
+     * Returns a new {@link Builder} for configuring a {@code InMemoryUserProfileCache}.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public CachedUserProfile get(String userId, String fields) {
+        return get(userId, fields, System.nanoTime());
+    }
+
+    CachedUserProfile get(String userId, String fields, long now) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            Map<String, Entry> profiles = segment.get(userId);
+            if (profiles == null) {
+                return null;
+            }
+            Entry entry = profiles.get(fields);
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.expiresAt >= 0) {
+                profiles.remove(fields);
+                if (profiles.isEmpty()) {
+                    segment.remove(userId);
+                }
+                return null;
+            }
+            return entry.profile;
+        }
+    }
+
+    @Override
+    public void put(String userId, String fields, CachedUserProfile profile) {
+        put(userId, fields, profile, System.nanoTime());
+    }
+
+    void put(String userId, String fields, CachedUserProfile profile, long now) {
+        requireNonNull(userId, "'userId' must not be null");
+        requireNonNull(fields, "'fields' must not be null");
+        requireNonNull(profile, "'profile' must not be null");
+        Entry entry = new Entry(profile, now + (profile.isNotFound() ? notFoundTtlNanos : ttlNanos));
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            Map<String, Entry> profiles = segment.get(userId);
+            if (profiles == null) {
+                // most users are looked up with a single set of fields
+                profiles = new HashMap<>(2);
+                segment.put(userId, profiles);
+            }
+            profiles.put(fields, entry);
+        }
+    }
+
+    @Override
+    public void invalidate(String userId) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            segment.remove(userId);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached users.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(String userId) {
+        int hash = userId.hashCode();
+        hash ^= hash >>> 16;
+        return segments[(hash & Integer.MAX_VALUE) % segments.length];
+    }
+
+    private static class Segment extends LinkedHashMap<String, Map<String, Entry>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maximumSize;
+
+        Segment(int maximumSize) {
+            super(16, 0.75f, true);
+            this.maximumSize = maximumSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Map<String, Entry>> eldest) {
+            return size() > maximumSize;
+        }
+    }
+
+    private static class Entry {
+
+        private final CachedUserProfile profile;
+        private final long expiresAt;
+
+        Entry(CachedUserProfile profile, long expiresAt) {
+            this.profile = profile;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Builder for {@link InMemoryUserProfileCache} instances.
+     */
+    public static class Builder {
+
+        private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+        private long ttlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TTL_MILLIS);
+        private long notFoundTtlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_NOT_FOUND_TTL_MILLIS);
+        private int concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+
+        protected Builder() {
+        }
+
+        /**
+         * Sets the maximum number of cached users. Defaults to {@value #DEFAULT_MAXIMUM_SIZE}.
+         *
+         * @param maximumSize the maximum size, must be positive
+         */
+        public Builder maximumSize(int maximumSize) {
+            if (maximumSize < 1) {
+                throw new IllegalArgumentException("'maximumSize' must be positive");
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Sets the time after which found profiles expire. Defaults to {@value #DEFAULT_TTL_MILLIS} milliseconds.
+         *
+         * @param ttl  the time to live, must be positive
+         * @param unit the time unit, not null
+         */
+        public Builder ttl(long ttl, TimeUnit unit) {
+            requireNonNull(unit, "'unit' must not be null");
+            if (ttl <= 0) {
+                throw new IllegalArgumentException("'ttl' must be positive");
+            }
+            this.ttlNanos = unit.toNanos(ttl);
+            return this;
+        }
+
+        /**
+         * Sets the time after which profiles of users that were not found expire. Defaults to {@value #DEFAULT_NOT_FOUND_TTL_MILLIS}
+         * milliseconds.
+         *
+         * @param notFoundTtl the time to live, must be positive
+         * @param unit        the time unit, not null
+         */
+        public Builder notFoundTtl(long notFoundTtl, TimeUnit unit) {
+            requireNonNull(unit, "'unit' must not be null");
+            if (notFoundTtl <= 0) {
+                throw new IllegalArgumentException("'notFoundTtl' must be positive");
+            }
+            this.notFoundTtlNanos = unit.toNanos(notFoundTtl);
+            return this;
+        }
+
+        /**
+         * Sets the number of independently locked segments. Defaults to {@value #DEFAULT_CONCURRENCY_LEVEL}.
+         *
+         * @param concurrencyLevel the concurrency level, must be positive
+         */
+        public Builder concurrencyLevel(int concurrencyLevel) {
+            if (concurrencyLevel < 1) {
+                throw new IllegalArgumentException("'concurrencyLevel' must be positive");
+            }
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        public InMemoryUserProfileCache build() {
+            return new InMemoryUserProfileCache(this);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.profile;
+
+/**
+ * SPI for caching user profiles retrieved from the Graph API.
+ * <p>
+ * Profiles are cached per user id and set of requested fields. Besides found profiles, implementations also store the failures of users
+ * that do not exist (anymore), so repeated lookups of deleted users do not hit the Graph API either. Implementations must be thread-safe
+ * and may be backed by a store shared between application instances, in which case the {@link CachedUserProfile} can be serialized.
+ *
+ * @author Marcel Overdijk
+ * @see InMemoryUserProfileCache
+ * @since 2.3.0
+ */
+public interface UserProfileCache {
+
+    /**
+     * Returns the cached profile of the given user and fields.
+     *
+     * @param userId the user id
+     * @param fields the normalized comma separated list of user fields
+     * @return the cached profile, or {@code null} if not cached or expired
+     */
+    CachedUserProfile get(String userId, String fields);
+
+    /**
+     * Caches the profile of the given user and fields.
+     *
+     * @param userId  the user id
+     * @param fields  the normalized comma separated list of user fields
+     * @param profile the profile, not null
+     */
+    void put(String userId, String fields, CachedUserProfile profile);
+
+    /**
+     * Removes all cached profiles of the given user.
+     *
+     * @param userId the user id
+     */
+    void invalidate(String userId);
+
+    /**
+     * Removes all cached profiles.
+     */
+    void clear();
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.profile;
+
+import com.restfb.FacebookClient;
+import com.restfb.Parameter;
+import com.restfb.batch.BatchRequest;
+import com.restfb.batch.BatchRequest.BatchRequestBuilder;
+import com.restfb.batch.BatchResponse;
+import com.restfb.exception.FacebookException;
+import com.restfb.exception.FacebookGraphException;
+import com.restfb.exception.FacebookNetworkException;
+import com.restfb.exception.generator.DefaultFacebookExceptionGenerator;
+import com.restfb.exception.generator.FacebookExceptionGenerator;
+import com.restfb.types.User;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Loads user profiles from the Graph API through an optional {@link UserProfileCache}.
+ * <p>
+ * Concurrent lookups of the same user and fields are coalesced: only the first lookup calls the Graph API, the others wait for and share
+ * its outcome. Failures of users that do not exist (anymore) are cached as well when a cache is configured. Restfb users are mutable, so
+ * every caller is returned its own {@link #copy(User) copy} of a cached or shared user, which it may modify without affecting the cache
+ * or other callers.
+ * <p>
+ * Multiple user profiles are looked up with {@link #loadAll(Collection, String)}, which only retrieves the profiles missing from the
+ * cache, in Graph API batch requests of up to {@value #MAX_BATCH_SIZE} users. Unlike a multi-id lookup, which fails as a whole when one
+ * of the ids fails, each user in a batch request succeeds or fails on its own.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class UserProfileLoader {
+
+    public static final String FIELDS_PARAM_NAME = "fields";
+
+    /**
+     * Graph API error code of an invalid parameter, which with error subcode {@code 33} is returned for objects that do not exist.
+     */
+    public static final int INVALID_PARAMETER_ERROR_CODE = 100;
+    public static final int OBJECT_NOT_FOUND_ERROR_SUBCODE = 33;
+
+    /**
+     * Graph API error code returned for aliases that do not exist.
+     */
+    public static final int ALIAS_NOT_FOUND_ERROR_CODE = 803;
+
+    /**
+     * The maximum number of requests in a Graph API batch request.
+     */
+    public static final int MAX_BATCH_SIZE = 50;
+
+    protected final FacebookClient facebookClient;
+    protected final UserProfileCache cache;
+
+    protected FacebookExceptionGenerator exceptionGenerator = new DefaultFacebookExceptionGenerator();
+
+    private final ConcurrentMap<Key, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a {@code UserProfileLoader} instance.
+     *
+     * @param facebookClient the facebook client, not null
+     * @param cache          the cache, may be null to only coalesce concurrent lookups
+     */
+    public UserProfileLoader(FacebookClient facebookClient, UserProfileCache cache) {
+        this.facebookClient = requireNonNull(facebookClient, "'facebookClient' must not be null");
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the cache, or {@code null} if profiles are not cached.
+     */
+    public UserProfileCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the {@link User} for the given user id, from the cache if available.
+     *
+     * @param userId the user id, not null
+     * @param fields the comma separated list of user fields
+     * @return the user
+     * @throws FacebookException in case an error occurs while performing the Facebook API call, or the user was cached as not found
+     */
+    public User load(String userId, String fields) throws FacebookException {
+        requireNonNull(userId, "'userId' must not be null");
+        if (fields == null) {
+            return fetch(userId, null);
+        }
+        String normalizedFields = normalizeFields(fields);
+        if (cache != null) {
+            CachedUserProfile cached = cache.get(userId, normalizedFields);
+            if (cached != null) {
+                return copy(unwrap(cached));
+            }
+        }
+        Key key = new Key(userId, normalizedFields);
+        InFlight call = new InFlight();
+        InFlight existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            return copy(unwrap(existing.await()));
+        }
+        try {
+            CachedUserProfile profile = load(userId, fields, normalizedFields, call);
+            // the fetched user is shared with the cache and concurrent lookups, which are handed copies of it as well
+            return copy(unwrap(profile));
+        } finally {
+            // removed only after the profile is cached, so later lookups either join this call or hit the cache
+            inFlight.remove(key, call);
+        }
+    }
+
+    private CachedUserProfile load(String userId, String fields, String normalizedFields, InFlight call) {
+        CachedUserProfile profile;
+        try {
+            try {
+                profile = CachedUserProfile.found(fetch(userId, fields));
+            } catch (FacebookException e) {
+                if (!isNotFound(e)) {
+                    throw e;
+                }
+                profile = CachedUserProfile.notFound(e);
+            }
+            if (cache != null) {
+                cache.put(userId, normalizedFields, profile);
+            }
+        } catch (RuntimeException | Error e) {
+            call.fail(e);
+            throw e;
+        }
+        call.complete(profile);
+        return profile;
+    }
+
+    /**
+     * Returns the {@link User}s for the given user ids, from the cache if available. Users missing from the cache are retrieved in Graph
+     * API batch requests. Failures are returned per user id instead of being thrown.
+     *
+     * @param userIds the user ids, not null
+     * @param fields  the comma separated list of user fields
+     * @return the users and failures by user id
+     */
+    public UserProfiles loadAll(Collection<String> userIds, String fields) {
+        requireNonNull(userIds, "'userIds' must not be null");
+        String normalizedFields = fields != null ? normalizeFields(fields) : null;
+        Map<String, User> users = new HashMap<>();
+        Map<String, FacebookException> failures = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String userId : new LinkedHashSet<>(userIds)) {
+            requireNonNull(userId, "'userIds' must not contain null");
+            CachedUserProfile cached = cache != null && normalizedFields != null ? cache.get(userId, normalizedFields) : null;
+            if (cached == null) {
+                misses.add(userId);
+            } else if (cached.isNotFound()) {
+                failures.put(userId, cached.getNotFoundException());
+            } else {
+                users.put(userId, copy(cached.getUser()));
+            }
+        }
+        if (misses.size() == 1) {
+            // a single lookup costs the same round trip as a batch request and joins a lookup in flight
+            String userId = misses.get(0);
+            try {
+                users.put(userId, load(userId, fields));
+            } catch (FacebookException e) {
+                failures.put(userId, e);
+            }
+        } else {
+            for (int i = 0; i < misses.size(); i += MAX_BATCH_SIZE) {
+                fetchAll(misses.subList(i, Math.min(i + MAX_BATCH_SIZE, misses.size())), fields, normalizedFields, users, failures);
+            }
+        }
+        return new UserProfiles(users, failures);
+    }
+
+    private void fetchAll(List<String> userIds, String fields, String normalizedFields, Map<String, User> users,
+            Map<String, FacebookException> failures) {
+        List<BatchRequest> requests = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            BatchRequestBuilder request = new BatchRequestBuilder(userId);
+            if (fields != null) {
+                request.parameters(Parameter.with(FIELDS_PARAM_NAME, fields));
+            }
+            requests.add(request.build());
+        }
+        List<BatchResponse> responses;
+        try {
+            responses = facebookClient.executeBatch(requests);
+        } catch (FacebookException e) {
+            for (String userId : userIds) {
+                failures.put(userId, e);
+            }
+            return;
+        }
+        for (int i = 0; i < userIds.size(); i++) {
+            String userId = userIds.get(i);
+            CachedUserProfile profile;
+            try {
+                profile = CachedUserProfile.found(toUser(i < responses.size() ? responses.get(i) : null));
+            } catch (FacebookException e) {
+                if (!isNotFound(e)) {
+                    failures.put(userId, e);
+                    continue;
+                }
+                profile = CachedUserProfile.notFound(e);
+            }
+            if (cache != null && normalizedFields != null) {
+                cache.put(userId, normalizedFields, profile);
+            }
+            if (profile.isNotFound()) {
+                failures.put(userId, profile.getNotFoundException());
+            } else {
+                users.put(userId, cache != null && normalizedFields != null ? copy(profile.getUser()) : profile.getUser());
+            }
+        }
+    }
+
+    private User toUser(BatchResponse response) throws FacebookException {
+        if (response == null) {
+            // the Graph API returns null for operations it did not execute, e.g. when the batch timed out
+            throw new FacebookNetworkException("Batch operation was not executed", (Integer) null);
+        }
+        exceptionGenerator.throwFacebookResponseStatusExceptionIfNecessary(response.getBody(), response.getCode());
+        if (response.getCode() == null || response.getCode() / 100 != 2) {
+            throw new FacebookNetworkException("Batch operation failed", response.getCode());
+        }
+        return facebookClient.getJsonMapper().toJavaObject(response.getBody(), User.class);
+    }
+
+    /**
+     * Removes the cached profiles of the given user, e.g. after the user changed its profile.
+     *
+     * @param userId the user id
+     */
+    public void invalidate(String userId) {
+        if (cache != null) {
+            cache.invalidate(userId);
+        }
+    }
+
+    /**
+     * Fetches the user from the Graph API.
+     */
+    protected User fetch(String userId, String fields) throws FacebookException {
+        if (fields == null) {
+            return facebookClient.fetchObject(userId, User.class);
+        }
+        return facebookClient.fetchObject(userId, User.class, Parameter.with(FIELDS_PARAM_NAME, fields));
+    }
+
+    /**
+     * Returns a deep copy of the given cached or shared user. The default implementation copies the user by serializing it.
+     *
+     * @param user the user, may be null
+     * @return the copy, or {@code null} if the user is {@code null}
+     */
+    protected User copy(User user) {
+        if (user == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(user);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                return (User) in.readObject();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException(format("Could not copy user %s", user.getId()), e);
+        }
+    }
+
+    /**
+     * Returns whether the given failure indicates the user does not exist (anymore).
+     */
+    protected boolean isNotFound(FacebookException failure) {
+        if (failure instanceof FacebookGraphException) {
+            FacebookGraphException e = (FacebookGraphException) failure;
+            Integer errorCode = e.getErrorCode();
+            Integer errorSubcode = e.getErrorSubcode();
+            if (errorCode == null) {
+                return false;
+            }
+            return errorCode == ALIAS_NOT_FOUND_ERROR_CODE
+                    || (errorCode == INVALID_PARAMETER_ERROR_CODE && errorSubcode != null && errorSubcode == OBJECT_NOT_FOUND_ERROR_SUBCODE);
+        }
+        return false;
+    }
+
+    /**
+     * Normalizes the given comma separated list of fields by trimming, sorting and removing duplicate fields, so the same set of fields
+     * always results in the same cache key.
+     */
+    public static String normalizeFields(String fields) {
+        String[] values = fields.split(",");
+        for (int i = 0; i < values.length; i++) {
+            values[i] = values[i].trim();
+        }
+        Arrays.sort(values);
+        StringBuilder sb = new StringBuilder(fields.length());
+        String previous = null;
+        for (String field : values) {
+            if (field.isEmpty() || field.equals(previous)) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(field);
+            previous = field;
+        }
+        return sb.toString();
+    }
+
+    private static User unwrap(CachedUserProfile profile) {
+        if (profile.isNotFound()) {
+            throw profile.getNotFoundException();
+        }
+        return profile.getUser();
+    }
+
+    private static class Key {
+
+        private final String userId;
+        private final String fields;
+
+        Key(String userId, String fields) {
+            this.userId = userId;
+            this.fields = fields;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return userId.equals(key.userId) && fields.equals(key.fields);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * userId.hashCode() + fields.hashCode();
+        }
+    }
+
+    private static class InFlight {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile CachedUserProfile profile;
+        private volatile Throwable failure;
+
+        void complete(CachedUserProfile profile) {
+            this.profile = profile;
+            latch.countDown();
+        }
+
+        void fail(Throwable failure) {
+            this.failure = failure;
+            latch.countDown();
+        }
+
+        CachedUserProfile await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    // the lookup in flight is bounded by the http timeouts, so keep waiting and restore the interrupt afterwards
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable failure = this.failure;
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return profile;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.profile;
+
+import com.restfb.exception.FacebookException;
+import com.restfb.types.User;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The outcome of looking up multiple user profiles at once, holding the found users and the failures per user id.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class UserProfiles {
+
+    private final Map<String, User> users;
+    private final Map<String, FacebookException> failures;
+
+    /**
+     * Creates a {@code UserProfiles} instance.
+     *
+     * @param users    the found users by user id, not null
+     * @param failures the failures by user id, not null
+     */
+    public UserProfiles(Map<String, User> users, Map<String, FacebookException> failures) {
+        this.users = Collections.unmodifiableMap(requireNonNull(users, "'users' must not be null"));
+        this.failures = Collections.unmodifiableMap(requireNonNull(failures, "'failures' must not be null"));
+    }
+
+    /**
+     * Returns the found users by user id.
+     */
+    public Map<String, User> getUsers() {
+        return users;
+    }
+
+    /**
+     * Returns the failures by user id, e.g. of users that do not exist (anymore) or could not be retrieved.
+     */
+    public Map<String, FacebookException> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns the user with the given user id, or {@code null} if not found.
+     *
+     * @param userId the user id
+     */
+    public User get(String userId) {
+        return users.get(userId);
+    }
+
+    /**
+     * Returns whether any of the user profiles could not be retrieved.
+     */
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+}
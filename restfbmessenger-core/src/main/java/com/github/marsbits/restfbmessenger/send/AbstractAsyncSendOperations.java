@@ -0,0 +1,770 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.restfb.types.send.ButtonTemplatePayload;
+import com.restfb.types.send.GenericTemplatePayload;
+import com.restfb.types.send.ListTemplatePayload;
+import com.restfb.types.send.MediaAttachment;
+import com.restfb.types.send.Message;
+import com.restfb.types.send.MessageRecipient;
+import com.restfb.types.send.MessagingType;
+import com.restfb.types.send.NotificationTypeEnum;
+import com.restfb.types.send.OpenGraphTemplatePayload;
+import com.restfb.types.send.QuickReply;
+import com.restfb.types.send.ReceiptTemplatePayload;
+import com.restfb.types.send.SendResponse;
+import com.restfb.types.send.SenderActionEnum;
+import com.restfb.types.send.TemplateAttachment;
+import com.restfb.types.send.airline.AirlineBoardingPassTemplatePayload;
+import com.restfb.types.send.airline.AirlineCheckinTemplatePayload;
+import com.restfb.types.send.airline.AirlineItineraryTemplatePayload;
+import com.restfb.types.send.airline.AirlineUpdateTemplatePayload;
+
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Base class for {@link AsyncSendOperations} implementations, turning each send operation into a {@link SendTask} invoking the {@link
+ * SendOperations}, which is submitted with {@link #submit(SendTask)}.
+ *
+ * @author Marcel Overdijk
+ * @see DefaultAsyncSendOperations
+ * @see SendBatch
+ * @since 2.3.0
+ */
+public abstract class AbstractAsyncSendOperations implements AsyncSendOperations {
+
+    protected SendOperations sendOperations;
+
+    /**
+     * Creates a {@code AbstractAsyncSendOperations} instance.
+     *
+     * @param sendOperations the send operations performing the send tasks, not null
+     */
+    protected AbstractAsyncSendOperations(SendOperations sendOperations) {
+        this.sendOperations = requireNonNull(sendOperations, "'sendOperations' must not be null");
+    }
+
+    @Override
+    public SendFuture<SendResponse> senderAction(final MessageRecipient recipient, final SenderActionEnum senderAction) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.senderAction(recipient, senderAction);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> senderAction(final MessageRecipient recipient, final SenderActionEnum senderAction,
+            final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.senderAction(recipient, senderAction, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> markSeen(final MessageRecipient recipient) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.markSeen(recipient);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> markSeen(final MessageRecipient recipient, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.markSeen(recipient, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> typingOn(final MessageRecipient recipient) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.typingOn(recipient);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> typingOn(final MessageRecipient recipient, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.typingOn(recipient, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> typingOff(final MessageRecipient recipient) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.typingOff(recipient);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> typingOff(final MessageRecipient recipient, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.typingOff(recipient, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> message(final MessagingType type, final MessageRecipient recipient, final Message message) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.message(type, recipient, message);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> message(final MessagingType type, final MessageRecipient recipient, final Message message,
+            final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.message(type, recipient, message, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> message(final MessagingType type, final MessageRecipient recipient, final Message message,
+            final NotificationTypeEnum notificationType, final MessageTag tag) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.message(type, recipient, message, notificationType, tag);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> message(final MessagingType type, final MessageRecipient recipient, final Message message,
+            final MessageTag tag) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.message(type, recipient, message, tag);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> textMessage(final MessagingType type, final MessageRecipient recipient, final String text) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.textMessage(type, recipient, text);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> textMessage(final MessagingType type, final MessageRecipient recipient, final String text,
+            final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.textMessage(type, recipient, text, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> textMessage(final MessagingType type, final MessageRecipient recipient, final String text,
+            final NotificationTypeEnum notificationType, final MessageTag tag) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.textMessage(type, recipient, text, notificationType, tag);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> textMessage(final MessagingType type, final MessageRecipient recipient, final String text,
+            final MessageTag tag) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.textMessage(type, recipient, text, tag);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> attachment(final MessagingType type, final MessageRecipient recipient,
+            final MediaAttachment.Type attachmentType, final String url) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.attachment(type, recipient, attachmentType, url);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> attachment(final MessagingType type, final MessageRecipient recipient,
+            final MediaAttachment.Type attachmentType, final String url, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.attachment(type, recipient, attachmentType, url, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> imageAttachment(final MessagingType type, final MessageRecipient recipient, final String url) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.imageAttachment(type, recipient, url);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> imageAttachment(final MessagingType type, final MessageRecipient recipient, final String url,
+            final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.imageAttachment(type, recipient, url, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> audioAttachment(final MessagingType type, final MessageRecipient recipient, final String url) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.audioAttachment(type, recipient, url);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> audioAttachment(final MessagingType type, final MessageRecipient recipient, final String url,
+            final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.audioAttachment(type, recipient, url, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> videoAttachment(final MessagingType type, final MessageRecipient recipient, final String url) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.videoAttachment(type, recipient, url);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> videoAttachment(final MessagingType type, final MessageRecipient recipient, final String url,
+            final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.videoAttachment(type, recipient, url, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> fileAttachment(final MessagingType type, final MessageRecipient recipient, final String url) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.fileAttachment(type, recipient, url);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> fileAttachment(final MessagingType type, final MessageRecipient recipient, final String url,
+            final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.fileAttachment(type, recipient, url, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> quickReplies(final MessagingType type, final MessageRecipient recipient, final String text,
+            final List<QuickReply> quickReplies) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.quickReplies(type, recipient, text, quickReplies);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> quickReplies(final MessagingType type, final MessageRecipient recipient, final String text,
+            final List<QuickReply> quickReplies, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.quickReplies(type, recipient, text, quickReplies, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> quickReplies(final MessagingType type, final MessageRecipient recipient, final String text,
+            final List<QuickReply> quickReplies, final NotificationTypeEnum notificationType, final MessageTag tag) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.quickReplies(type, recipient, text, quickReplies, notificationType, tag);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> quickReplies(final MessagingType type, final MessageRecipient recipient, final String text,
+            final List<QuickReply> quickReplies, final MessageTag tag) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.quickReplies(type, recipient, text, quickReplies, tag);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> quickReplies(final MessagingType type, final MessageRecipient recipient,
+            final MediaAttachment attachment, final List<QuickReply> quickReplies) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.quickReplies(type, recipient, attachment, quickReplies);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> quickReplies(final MessagingType type, final MessageRecipient recipient,
+            final MediaAttachment attachment, final List<QuickReply> quickReplies, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.quickReplies(type, recipient, attachment, quickReplies, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> quickReplies(final MessagingType type, final MessageRecipient recipient,
+            final TemplateAttachment attachment, final List<QuickReply> quickReplies) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.quickReplies(type, recipient, attachment, quickReplies);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> quickReplies(final MessagingType type, final MessageRecipient recipient,
+            final TemplateAttachment attachment, final List<QuickReply> quickReplies, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.quickReplies(type, recipient, attachment, quickReplies, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> buttonTemplate(final MessagingType type, final MessageRecipient recipient,
+            final ButtonTemplatePayload buttonTemplate) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.buttonTemplate(type, recipient, buttonTemplate);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> buttonTemplate(final MessagingType type, final MessageRecipient recipient,
+            final ButtonTemplatePayload buttonTemplate, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.buttonTemplate(type, recipient, buttonTemplate, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> openGraphTemplate(final MessagingType type, final MessageRecipient recipient,
+            final OpenGraphTemplatePayload openGraphTemplate) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.openGraphTemplate(type, recipient, openGraphTemplate);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> openGraphTemplate(final MessagingType type, final MessageRecipient recipient,
+            final OpenGraphTemplatePayload openGraphTemplate, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.openGraphTemplate(type, recipient, openGraphTemplate, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> genericTemplate(final MessagingType type, final MessageRecipient recipient,
+            final GenericTemplatePayload genericTemplate) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.genericTemplate(type, recipient, genericTemplate);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> genericTemplate(final MessagingType type, final MessageRecipient recipient,
+            final GenericTemplatePayload genericTemplate, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.genericTemplate(type, recipient, genericTemplate, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> genericTemplate(final MessagingType type, final MessageRecipient recipient,
+            final GenericTemplatePayload genericTemplate, final NotificationTypeEnum notificationType, final MessageTag tag) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.genericTemplate(type, recipient, genericTemplate, notificationType, tag);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> genericTemplate(final MessagingType type, final MessageRecipient recipient,
+            final GenericTemplatePayload genericTemplate, final MessageTag tag) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.genericTemplate(type, recipient, genericTemplate, tag);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> listTemplate(final MessagingType type, final MessageRecipient recipient,
+            final ListTemplatePayload listTemplate) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.listTemplate(type, recipient, listTemplate);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> listTemplate(final MessagingType type, final MessageRecipient recipient,
+            final ListTemplatePayload listTemplate, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.listTemplate(type, recipient, listTemplate, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> mediaTemplate(final MessagingType type, final MessageRecipient recipient,
+            final MediaAttachment mediaTemplate) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.mediaTemplate(type, recipient, mediaTemplate);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> mediaTemplate(final MessagingType type, final MessageRecipient recipient,
+            final MediaAttachment mediaTemplate, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.mediaTemplate(type, recipient, mediaTemplate, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> mediaTemplate(final MessagingType type, final MessageRecipient recipient,
+            final List<MediaAttachment.MediaTemplateElement> elements) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.mediaTemplate(type, recipient, elements);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> mediaTemplate(final MessagingType type, final MessageRecipient recipient,
+            final List<MediaAttachment.MediaTemplateElement> elements, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.mediaTemplate(type, recipient, elements, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> receiptTemplate(final MessagingType type, final MessageRecipient recipient,
+            final ReceiptTemplatePayload receiptTemplate) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.receiptTemplate(type, recipient, receiptTemplate);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> receiptTemplate(final MessagingType type, final MessageRecipient recipient,
+            final ReceiptTemplatePayload receiptTemplate, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.receiptTemplate(type, recipient, receiptTemplate, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> airlineItineraryTemplate(final MessagingType type, final MessageRecipient recipient,
+            final AirlineItineraryTemplatePayload airlineItineraryTemplate) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.airlineItineraryTemplate(type, recipient, airlineItineraryTemplate);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> airlineItineraryTemplate(final MessagingType type, final MessageRecipient recipient,
+            final AirlineItineraryTemplatePayload airlineItineraryTemplate, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.airlineItineraryTemplate(type, recipient, airlineItineraryTemplate, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> airlineCheckinTemplate(final MessagingType type, final MessageRecipient recipient,
+            final AirlineCheckinTemplatePayload airlineCheckinTemplate) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.airlineCheckinTemplate(type, recipient, airlineCheckinTemplate);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> airlineCheckinTemplate(final MessagingType type, final MessageRecipient recipient,
+            final AirlineCheckinTemplatePayload airlineCheckinTemplate, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.airlineCheckinTemplate(type, recipient, airlineCheckinTemplate, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> airlineBoardingPassTemplate(final MessagingType type, final MessageRecipient recipient,
+            final AirlineBoardingPassTemplatePayload airlineBoardingPassTemplate) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.airlineBoardingPassTemplate(type, recipient, airlineBoardingPassTemplate);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> airlineBoardingPassTemplate(final MessagingType type, final MessageRecipient recipient,
+            final AirlineBoardingPassTemplatePayload airlineBoardingPassTemplate, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.airlineBoardingPassTemplate(type, recipient, airlineBoardingPassTemplate, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> airlineUpdateTemplate(final MessagingType type, final MessageRecipient recipient,
+            final AirlineUpdateTemplatePayload airlineUpdateTemplate) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.airlineUpdateTemplate(type, recipient, airlineUpdateTemplate);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> airlineUpdateTemplate(final MessagingType type, final MessageRecipient recipient,
+            final AirlineUpdateTemplatePayload airlineUpdateTemplate, final NotificationTypeEnum notificationType) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return sendOperations.airlineUpdateTemplate(type, recipient, airlineUpdateTemplate, notificationType);
+            }
+        });
+    }
+
+    @Override
+    public SendFuture<SendResponse> preparedMessage(final MessageRecipient recipient, final PreparedMessage message) {
+        return submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return message.send(sendOperations, recipient);
+            }
+        });
+    }
+
+    /**
+     * Submits the given send task.
+     */
+    protected abstract SendFuture<SendResponse> submit(SendTask task);
+
+    /**
+     * A send operation to be submitted.
+     */
+    protected interface SendTask {
+
+        SendResponse send();
+    }
+}
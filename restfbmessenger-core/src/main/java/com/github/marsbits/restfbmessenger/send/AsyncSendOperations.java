@@ -0,0 +1,707 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.restfb.types.send.ButtonTemplatePayload;
+import com.restfb.types.send.GenericTemplatePayload;
+import com.restfb.types.send.ListTemplatePayload;
+import com.restfb.types.send.MediaAttachment;
+import com.restfb.types.send.Message;
+import com.restfb.types.send.MessageRecipient;
+import com.restfb.types.send.MessagingType;
+import com.restfb.types.send.NotificationTypeEnum;
+import com.restfb.types.send.OpenGraphTemplatePayload;
+import com.restfb.types.send.QuickReply;
+import com.restfb.types.send.ReceiptTemplatePayload;
+import com.restfb.types.send.SendResponse;
+import com.restfb.types.send.SenderActionEnum;
+import com.restfb.types.send.TemplateAttachment;
+import com.restfb.types.send.airline.AirlineBoardingPassTemplatePayload;
+import com.restfb.types.send.airline.AirlineCheckinTemplatePayload;
+import com.restfb.types.send.airline.AirlineItineraryTemplatePayload;
+import com.restfb.types.send.airline.AirlineUpdateTemplatePayload;
+
+import java.util.List;
+
+/**
+ * Interface specifying the asynchronous operations for the Send API. The operations mirror the {@link SendOperations} but return
+ * immediately with a {@link SendFuture}; a {@link com.restfb.exception.FacebookException} is reported through the future.
+ *
+ * @author Marcel Overdijk
+ * @see SendOperations
+ * @since 2.3.0
+ */
+public interface AsyncSendOperations {
+
+    /**
+     * Sends the given sender action to the user.
+     *
+     * @param recipient    the recipient
+     * @param senderAction the sender action
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> senderAction(MessageRecipient recipient, SenderActionEnum senderAction);
+
+    /**
+     * Sends the given sender action to the user.
+     *
+     * @param recipient        the recipient
+     * @param senderAction     the sender action
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> senderAction(MessageRecipient recipient, SenderActionEnum senderAction, NotificationTypeEnum notificationType);
+
+    /**
+     * Sends a read receipt to the user.
+     *
+     * @param recipient the recipient
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> markSeen(MessageRecipient recipient);
+
+    /**
+     * Sends a read receipt to the user.
+     *
+     * @param recipient        the recipient
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> markSeen(MessageRecipient recipient, NotificationTypeEnum notificationType);
+
+    /**
+     * Sends a typing indicator on to the user.
+     *
+     * @param recipient the recipient
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> typingOn(MessageRecipient recipient);
+
+    /**
+     * Sends a typing indicator on to the user.
+     *
+     * @param recipient        the recipient
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> typingOn(MessageRecipient recipient, NotificationTypeEnum notificationType);
+
+    /**
+     * Sends a typing indicator off to the user.
+     *
+     * @param recipient the recipient
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> typingOff(MessageRecipient recipient);
+
+    /**
+     * Sends a typing indicator off to the user.
+     *
+     * @param recipient        the recipient
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> typingOff(MessageRecipient recipient, NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given message to the user.
+     *
+     * @param type      the messaging type
+     * @param recipient the recipient
+     * @param message   the message
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> message(MessagingType type, MessageRecipient recipient, Message message);
+
+    /**
+     * Sends the given message to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param message          the message
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> message(MessagingType type, MessageRecipient recipient, Message message,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given message to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param message          the message
+     * @param notificationType the push notification type
+     * @param tag              the message tag
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> message(MessagingType type, MessageRecipient recipient, Message message,
+            NotificationTypeEnum notificationType, MessageTag tag);
+
+    /**
+     * Sends the given message to the user.
+     *
+     * @param type      the messaging type
+     * @param recipient the recipient
+     * @param message   the message
+     * @param tag       the message tag
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> message(MessagingType type, MessageRecipient recipient, Message message, MessageTag tag);
+
+    /**
+     * Sends the given text message to the user.
+     *
+     * @param type      the messaging type
+     * @param recipient the recipient
+     * @param text      the text message
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> textMessage(MessagingType type, MessageRecipient recipient, String text);
+
+    /**
+     * Sends the given text message to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param text             the text message
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> textMessage(MessagingType type, MessageRecipient recipient, String text,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given text message to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param text             the text message
+     * @param notificationType the push notification type
+     * @param tag              the message tag
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> textMessage(MessagingType type, MessageRecipient recipient, String text,
+            NotificationTypeEnum notificationType, MessageTag tag);
+
+    /**
+     * Sends the given text message to the user.
+     *
+     * @param type      the messaging type
+     * @param recipient the recipient
+     * @param text      the text message
+     * @param tag       the message tag
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> textMessage(MessagingType type, MessageRecipient recipient, String text, MessageTag tag);
+
+    /**
+     * Sends the given attachment to the user.
+     *
+     * @param type           the messaging type
+     * @param recipient      the recipient
+     * @param attachmentType the type of the attachment
+     * @param url            the url of the attachment
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> attachment(MessagingType type, MessageRecipient recipient, MediaAttachment.Type attachmentType, String url);
+
+    /**
+     * Sends the given attachment to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param attachmentType   the type of the attachment
+     * @param url              the url of the attachment
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> attachment(MessagingType type, MessageRecipient recipient, MediaAttachment.Type attachmentType, String url,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given image to the user.
+     *
+     * @param type      the messaging type
+     * @param recipient the recipient
+     * @param url       the url of the image
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> imageAttachment(MessagingType type, MessageRecipient recipient, String url);
+
+    /**
+     * Sends the given image to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param url              the url of the image
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> imageAttachment(MessagingType type, MessageRecipient recipient, String url,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given audio to the user.
+     *
+     * @param type      the messaging type
+     * @param recipient the recipient
+     * @param url       the url of the audio
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> audioAttachment(MessagingType type, MessageRecipient recipient, String url);
+
+    /**
+     * Sends the given audio to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param url              the url of the audio
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> audioAttachment(MessagingType type, MessageRecipient recipient, String url,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given video to the user.
+     *
+     * @param type      the messaging type
+     * @param recipient the recipient
+     * @param url       the url of the video
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> videoAttachment(MessagingType type, MessageRecipient recipient, String url);
+
+    /**
+     * Sends the given video to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param url              the url of the video
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> videoAttachment(MessagingType type, MessageRecipient recipient, String url,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given file to the user.
+     *
+     * @param type      the messaging type
+     * @param recipient the recipient
+     * @param url       the url of the file
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> fileAttachment(MessagingType type, MessageRecipient recipient, String url);
+
+    /**
+     * Sends the given file to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param url              the url of the file
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> fileAttachment(MessagingType type, MessageRecipient recipient, String url,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given text message and quick replies to the user.
+     *
+     * @param type         the messaging type
+     * @param recipient    the recipient
+     * @param text         the text message
+     * @param quickReplies the quick replies
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> quickReplies(MessagingType type, MessageRecipient recipient, String text, List<QuickReply> quickReplies);
+
+    /**
+     * Sends the given text message and quick replies to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param text             the text message
+     * @param quickReplies     the quick replies
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> quickReplies(MessagingType type, MessageRecipient recipient, String text, List<QuickReply> quickReplies,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given text message and quick replies to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param text             the text message
+     * @param quickReplies     the quick replies
+     * @param notificationType the push notification type
+     * @param tag              the message tag
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> quickReplies(MessagingType type, MessageRecipient recipient, String text, List<QuickReply> quickReplies,
+            NotificationTypeEnum notificationType, MessageTag tag);
+
+    /**
+     * Sends the given text message and quick replies to the user.
+     *
+     * @param type         the messaging type
+     * @param recipient    the recipient
+     * @param text         the text message
+     * @param quickReplies the quick replies
+     * @param tag          the message tag
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> quickReplies(MessagingType type, MessageRecipient recipient, String text, List<QuickReply> quickReplies,
+            MessageTag tag);
+
+    /**
+     * Sends the given media attachment and quick replies to the user.
+     *
+     * @param type         the messaging type
+     * @param recipient    the recipient
+     * @param attachment   the media attachment
+     * @param quickReplies the quick replies
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> quickReplies(MessagingType type, MessageRecipient recipient, MediaAttachment attachment,
+            List<QuickReply> quickReplies);
+
+    /**
+     * Sends the given media attachment and quick replies to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param attachment       the media attachment
+     * @param quickReplies     the quick replies
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> quickReplies(MessagingType type, MessageRecipient recipient, MediaAttachment attachment,
+            List<QuickReply> quickReplies, NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given template attachment and quick replies to the user.
+     *
+     * @param type         the messaging type
+     * @param recipient    the recipient
+     * @param attachment   the template attachment
+     * @param quickReplies the quick replies
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> quickReplies(MessagingType type, MessageRecipient recipient, TemplateAttachment attachment,
+            List<QuickReply> quickReplies);
+
+    /**
+     * Sends the given template attachment and quick replies to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param attachment       the template attachment
+     * @param quickReplies     the quick replies
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> quickReplies(MessagingType type, MessageRecipient recipient, TemplateAttachment attachment,
+            List<QuickReply> quickReplies, NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given button template to the user.
+     *
+     * @param type           the messaging type
+     * @param recipient      the recipient
+     * @param buttonTemplate the button template
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> buttonTemplate(MessagingType type, MessageRecipient recipient, ButtonTemplatePayload buttonTemplate);
+
+    /**
+     * Sends the given button template to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param buttonTemplate   the button template
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> buttonTemplate(MessagingType type, MessageRecipient recipient, ButtonTemplatePayload buttonTemplate,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given open graph template to the user.
+     *
+     * @param type              the messaging type
+     * @param recipient         the recipient
+     * @param openGraphTemplate the open graph template
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> openGraphTemplate(MessagingType type, MessageRecipient recipient, OpenGraphTemplatePayload openGraphTemplate);
+
+    /**
+     * Sends the given open graph template to the user.
+     *
+     * @param type              the messaging type
+     * @param recipient         the recipient
+     * @param openGraphTemplate the open graph template
+     * @param notificationType  the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> openGraphTemplate(MessagingType type, MessageRecipient recipient, OpenGraphTemplatePayload openGraphTemplate,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given generic template to the user.
+     *
+     * @param type            the messaging type
+     * @param recipient       the recipient
+     * @param genericTemplate the generic template
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> genericTemplate(MessagingType type, MessageRecipient recipient, GenericTemplatePayload genericTemplate);
+
+    /**
+     * Sends the given generic template to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param genericTemplate  the generic template
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> genericTemplate(MessagingType type, MessageRecipient recipient, GenericTemplatePayload genericTemplate,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given generic template to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param genericTemplate  the generic template
+     * @param notificationType the push notification type
+     * @param tag              the message tag
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> genericTemplate(MessagingType type, MessageRecipient recipient, GenericTemplatePayload genericTemplate,
+            NotificationTypeEnum notificationType, MessageTag tag);
+
+    /**
+     * Sends the given generic template to the user.
+     *
+     * @param type            the messaging type
+     * @param recipient       the recipient
+     * @param genericTemplate the generic template
+     * @param tag             the message tag
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> genericTemplate(MessagingType type, MessageRecipient recipient, GenericTemplatePayload genericTemplate,
+            MessageTag tag);
+
+    /**
+     * Sends the given list template to the user.
+     *
+     * @param type         the messaging type
+     * @param recipient    the recipient
+     * @param listTemplate the list template
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> listTemplate(MessagingType type, MessageRecipient recipient, ListTemplatePayload listTemplate);
+
+    /**
+     * Sends the given list template to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param listTemplate     the list template
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> listTemplate(MessagingType type, MessageRecipient recipient, ListTemplatePayload listTemplate,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given media template to the user.
+     *
+     * @param type          the messaging type
+     * @param recipient     the recipient
+     * @param mediaTemplate the media template
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> mediaTemplate(MessagingType type, MessageRecipient recipient, MediaAttachment mediaTemplate);
+
+    /**
+     * Sends the given media template to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param mediaTemplate    the media template
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> mediaTemplate(MessagingType type, MessageRecipient recipient, MediaAttachment mediaTemplate,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given media template to the user.
+     *
+     * @param type      the messaging type
+     * @param recipient the recipient
+     * @param elements  the media template elements
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> mediaTemplate(MessagingType type, MessageRecipient recipient,
+            List<MediaAttachment.MediaTemplateElement> elements);
+
+    /**
+     * Sends the given media template to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param elements         the media template elements
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> mediaTemplate(MessagingType type, MessageRecipient recipient,
+            List<MediaAttachment.MediaTemplateElement> elements, NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given receipt template to the user.
+     *
+     * @param type            the messaging type
+     * @param recipient       the recipient
+     * @param receiptTemplate the receipt template
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> receiptTemplate(MessagingType type, MessageRecipient recipient, ReceiptTemplatePayload receiptTemplate);
+
+    /**
+     * Sends the given receipt template to the user.
+     *
+     * @param type             the messaging type
+     * @param recipient        the recipient
+     * @param receiptTemplate  the receipt template
+     * @param notificationType the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> receiptTemplate(MessagingType type, MessageRecipient recipient, ReceiptTemplatePayload receiptTemplate,
+            NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given airline itinerary template to the user.
+     *
+     * @param type                     the messaging type
+     * @param recipient                the recipient
+     * @param airlineItineraryTemplate airline itinerary template
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> airlineItineraryTemplate(MessagingType type, MessageRecipient recipient,
+            AirlineItineraryTemplatePayload airlineItineraryTemplate);
+
+    /**
+     * Sends the given airline itinerary template to the user.
+     *
+     * @param type                     the messaging type
+     * @param recipient                the recipient
+     * @param airlineItineraryTemplate airline itinerary template
+     * @param notificationType         the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> airlineItineraryTemplate(MessagingType type, MessageRecipient recipient,
+            AirlineItineraryTemplatePayload airlineItineraryTemplate, NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given airline checkin template to the user.
+     *
+     * @param type                   the messaging type
+     * @param recipient              the recipient
+     * @param airlineCheckinTemplate airline checkin template
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> airlineCheckinTemplate(MessagingType type, MessageRecipient recipient,
+            AirlineCheckinTemplatePayload airlineCheckinTemplate);
+
+    /**
+     * Sends the given airline checkin template to the user.
+     *
+     * @param type                   the messaging type
+     * @param recipient              the recipient
+     * @param airlineCheckinTemplate airline checkin template
+     * @param notificationType       the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> airlineCheckinTemplate(MessagingType type, MessageRecipient recipient,
+            AirlineCheckinTemplatePayload airlineCheckinTemplate, NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given airline boarding pass template to the user.
+     *
+     * @param type                        the messaging type
+     * @param recipient                   the recipient
+     * @param airlineBoardingPassTemplate airline boarding pass template
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> airlineBoardingPassTemplate(MessagingType type, MessageRecipient recipient,
+            AirlineBoardingPassTemplatePayload airlineBoardingPassTemplate);
+
+    /**
+     * Sends the given airline boarding pass template to the user.
+     *
+     * @param type                        the messaging type
+     * @param recipient                   the recipient
+     * @param airlineBoardingPassTemplate airline boarding pass template
+     * @param notificationType            the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> airlineBoardingPassTemplate(MessagingType type, MessageRecipient recipient,
+            AirlineBoardingPassTemplatePayload airlineBoardingPassTemplate, NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given airline update template to the user.
+     *
+     * @param type                  the messaging type
+     * @param recipient             the recipient
+     * @param airlineUpdateTemplate airline update template
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> airlineUpdateTemplate(MessagingType type, MessageRecipient recipient,
+            AirlineUpdateTemplatePayload airlineUpdateTemplate);
+
+    /**
+     * Sends the given airline update template to the user.
+     *
+     * @param type                  the messaging type
+     * @param recipient             the recipient
+     * @param airlineUpdateTemplate airline update template
+     * @param notificationType      the push notification type
+     * @return the future {@code SendResponse}
+     */
+    SendFuture<SendResponse> airlineUpdateTemplate(MessagingType type, MessageRecipient recipient,
+            AirlineUpdateTemplatePayload airlineUpdateTemplate, NotificationTypeEnum notificationType);
+
+    /**
+     * Sends the given prepared message to the user. Only the recipient is encoded per send, making this the cheapest way to send the
+     * same message to many users.
+     *
+     * @param recipient the recipient
+     * @param message   the prepared message
+     * @return the future {@code SendResponse}
+     * @since 2.3.0
+     */
+    SendFuture<SendResponse> preparedMessage(MessageRecipient recipient, PreparedMessage message);
+}
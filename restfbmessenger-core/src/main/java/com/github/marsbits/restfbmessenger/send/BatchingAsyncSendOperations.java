@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.restfb.FacebookClient;
+import com.restfb.Parameter;
+import com.restfb.types.send.SendResponse;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link AsyncSendOperations} implementation that transparently coalesces send operations into Graph API batch requests.
+ * <p>
+ * Send operations are collected in a {@link SendBatch} which is executed when it reaches the maximum batch size or when the batching
+ * window since its first operation has elapsed, whichever comes first. Each operation's {@link SendFuture} is completed with its own
+ * {@link SendResponse} or failure. The window bounds the extra latency added to a single operation, while under broadcast-style traffic
+ * up to {@link SendBatch#MAX_BATCH_SIZE} operations share one HTTP request.
+ *
+ * @author Marcel Overdijk
+ * @see SendBatch
+ * @since 2.3.0
+ */
+public class BatchingAsyncSendOperations extends DefaultAsyncSendOperations {
+
+    protected FacebookClient facebookClient;
+    protected ScheduledExecutorService scheduler;
+
+    private final int maxBatchSize;
+    private final long window;
+    private final TimeUnit unit;
+    private SendBatch batch;
+
+    /**
+     * Creates a {@code BatchingAsyncSendOperations} instance.
+     *
+     * @param facebookClient the facebook client, not null
+     * @param scheduler      the scheduler executing the batches, not null
+     * @param maxBatchSize   the maximum number of operations per batch request, between 1 and {@link SendBatch#MAX_BATCH_SIZE}
+     * @param window         the maximum time to wait for more operations before a batch is executed
+     * @param unit           the time unit of the window, not null
+     */
+    public BatchingAsyncSendOperations(FacebookClient facebookClient, ScheduledExecutorService scheduler, int maxBatchSize, long window,
+            TimeUnit unit) {
+        super(new RecordingSendOperations(requireNonNull(facebookClient, "'facebookClient' must not be null")),
+                requireNonNull(scheduler, "'scheduler' must not be null"));
+        if (maxBatchSize < 1 || maxBatchSize > SendBatch.MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException(format("'maxBatchSize' must be between 1 and %d", SendBatch.MAX_BATCH_SIZE));
+        }
+        if (window < 0) {
+            throw new IllegalArgumentException("'window' must not be negative");
+        }
+        this.facebookClient = facebookClient;
+        this.scheduler = scheduler;
+        this.maxBatchSize = maxBatchSize;
+        this.window = window;
+        this.unit = requireNonNull(unit, "'unit' must not be null");
+    }
+
+    /**
+     * Executes the pending operations without waiting for the batching window to elapse.
+     */
+    public void flush() {
+        SendBatch batch;
+        synchronized (this) {
+            batch = this.batch;
+            this.batch = null;
+        }
+        if (batch != null) {
+            execute(batch);
+        }
+    }
+
+    /**
+     * Adds the send operation of the given task to the current batch, starting a new batch and its window when needed. Retried
+     * operations are added to the batch current at the time of the retry.
+     */
+    @Override
+    protected SendFuture<SendResponse> attempt(SendTask task) {
+        Parameter[] parameters;
+        try {
+            parameters = RecordingSendOperations.record(task);
+        } catch (RuntimeException e) {
+            return SendFuture.failed(e);
+        }
+        SendFuture<SendResponse> future;
+        SendBatch full = null;
+        SendBatch started = null;
+        synchronized (this) {
+            if (batch == null) {
+                batch = createBatch();
+                started = batch;
+            }
+            future = batch.add(parameters);
+            if (batch.size() >= maxBatchSize) {
+                full = batch;
+                batch = null;
+            }
+        }
+        if (full != null) {
+            execute(full);
+        } else if (started != null) {
+            scheduleFlush(started);
+        }
+        return future;
+    }
+
+    /**
+     * Creates the batch collecting the send operations.
+     */
+    protected SendBatch createBatch() {
+        return new SendBatch(facebookClient, maxBatchSize);
+    }
+
+    private void scheduleFlush(final SendBatch scheduled) {
+        try {
+            scheduler.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    synchronized (BatchingAsyncSendOperations.this) {
+                        if (batch != scheduled) {
+                            // already executed because it was full or flushed
+                            return;
+                        }
+                        batch = null;
+                    }
+                    scheduled.execute();
+                }
+            }, window, unit);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                if (batch == scheduled) {
+                    batch = null;
+                }
+            }
+            scheduled.fail(e);
+        }
+    }
+
+    private void execute(final SendBatch batch) {
+        try {
+            scheduler.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    batch.execute();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            batch.fail(e);
+        }
+    }
+}
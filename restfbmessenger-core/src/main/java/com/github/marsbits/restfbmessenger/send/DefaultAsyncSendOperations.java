@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.github.marsbits.restfbmessenger.tracing.MessengerTracer;
+import com.github.marsbits.restfbmessenger.tracing.NoopMessengerTracer;
+import com.restfb.types.send.SendResponse;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Default implementation of the {@link AsyncSendOperations} interface, performing the {@link SendOperations} on the given executor.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class DefaultAsyncSendOperations extends AbstractAsyncSendOperations {
+
+    protected Executor executor;
+    protected volatile RetryPolicy retryPolicy;
+    protected volatile ScheduledExecutorService retryScheduler;
+    protected volatile MessengerTracer tracer = NoopMessengerTracer.INSTANCE;
+
+    /**
+     * Creates a {@code DefaultAsyncSendOperations} instance.
+     *
+     * @param sendOperations the send operations, not null
+     * @param executor       the executor performing the send operations, not null
+     */
+    public DefaultAsyncSendOperations(SendOperations sendOperations, Executor executor) {
+        super(sendOperations);
+        this.executor = requireNonNull(executor, "'executor' must not be null");
+    }
+
+    /**
+     * Sets the policy for retrying failed send operations. Retries are scheduled on the given scheduler after the backoff and then
+     * performed like the first attempt, so no thread sleeps while backing off.
+     *
+     * @param retryPolicy the retry policy, may be null to not retry failed send operations
+     * @param scheduler   the scheduler scheduling the retries, not null when a retry policy is given
+     */
+    public synchronized void setRetryPolicy(RetryPolicy retryPolicy, ScheduledExecutorService scheduler) {
+        if (retryPolicy != null) {
+            this.retryScheduler = requireNonNull(scheduler, "'scheduler' must not be null");
+        }
+        this.retryPolicy = retryPolicy;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Returns the tracer propagating the trace context to the executor and retry scheduler.
+     *
+     * @since 2.3.0
+     */
+    public MessengerTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Sets the tracer propagating the trace context of the calling thread to the executor and retry scheduler, so the spans of the
+     * asynchronous send operations are part of the trace of the caller.
+     *
+     * @param tracer the tracer, may be null to not propagate the trace context
+     * @since 2.3.0
+     */
+    public void setTracer(MessengerTracer tracer) {
+        this.tracer = tracer != null ? tracer : NoopMessengerTracer.INSTANCE;
+    }
+
+    /**
+     * Submits the given send task, retrying it according to the retry policy when it fails.
+     */
+    @Override
+    protected SendFuture<SendResponse> submit(SendTask task) {
+        RetryPolicy retryPolicy = this.retryPolicy;
+        if (retryPolicy == null) {
+            return attempt(task);
+        }
+        // the scheduler is always set before the retry policy
+        ScheduledExecutorService retryScheduler = this.retryScheduler;
+        retryPolicy.onSend();
+        SendFuture<SendResponse> future = new SendFuture<>();
+        attempt(task, 1, future, retryPolicy, retryScheduler);
+        return future;
+    }
+
+    /**
+     * Performs a single attempt of the given send task on the executor. When the executor rejects the task the returned future fails
+     * with the {@link RejectedExecutionException}.
+     */
+    protected SendFuture<SendResponse> attempt(final SendTask task) {
+        final SendFuture<SendResponse> future = new SendFuture<>();
+        try {
+            executor.execute(tracer.wrap(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (future.isDone()) {
+                        // cancelled before the operation started
+                        return;
+                    }
+                    try {
+                        future.complete(task.send());
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void attempt(final SendTask task, final int attempt, final SendFuture<SendResponse> future, final RetryPolicy retryPolicy,
+            final ScheduledExecutorService retryScheduler) {
+        attempt(task).addCallback(new SendCallback<SendResponse>() {
+
+            @Override
+            public void onSuccess(SendResponse response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                if (future.isDone()) {
+                    // cancelled while the attempt was in progress
+                    return;
+                }
+                if (!retryPolicy.shouldRetry(failure, attempt)) {
+                    future.completeExceptionally(failure);
+                    return;
+                }
+                try {
+                    retryScheduler.schedule(tracer.wrap(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            if (!future.isDone()) {
+                                attempt(task, attempt + 1, future, retryPolicy, retryScheduler);
+                            }
+                        }
+                    }), retryPolicy.getBackoffNanos(attempt), TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    future.completeExceptionally(failure);
+                }
+            }
+        });
+    }
+}
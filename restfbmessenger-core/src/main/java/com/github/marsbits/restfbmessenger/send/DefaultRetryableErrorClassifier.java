@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.restfb.exception.FacebookGraphException;
+import com.restfb.exception.FacebookNetworkException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Default {@link RetryableErrorClassifier} implementation classifying transient Graph API errors as retryable.
+ * <p>
+ * Retryable are network failures without a HTTP status or with a 5xx HTTP status, Graph API errors with a 5xx HTTP status or flagged as
+ * transient, and Graph API errors with one of the {@link #RETRYABLE_ERROR_CODES}: unknown ({@code 1}), service unavailable ({@code 2})
+ * and the throttling codes {@code 4}, {@code 17}, {@code 32} and {@code 613}.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class DefaultRetryableErrorClassifier implements RetryableErrorClassifier {
+
+    public static final Set<Integer> RETRYABLE_ERROR_CODES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(1, 2, 4, 17, 32, 613)));
+
+    @Override
+    public boolean isRetryable(Throwable failure) {
+        if (failure instanceof FacebookGraphException) {
+            FacebookGraphException e = (FacebookGraphException) failure;
+            return isServerError(e.getHttpStatusCode()) || Boolean.TRUE.equals(e.getIsTransient())
+                    || (e.getErrorCode() != null && RETRYABLE_ERROR_CODES.contains(e.getErrorCode()));
+        }
+        if (failure instanceof FacebookNetworkException) {
+            Integer httpStatusCode = ((FacebookNetworkException) failure).getHttpStatusCode();
+            return httpStatusCode == null || isServerError(httpStatusCode);
+        }
+        return false;
+    }
+
+    private static boolean isServerError(Integer httpStatusCode) {
+        return httpStatusCode != null && httpStatusCode >= 500;
+    }
+}
@@ -16,11 +16,19 @@
 
 package com.github.marsbits.restfbmessenger.send;
 
+import com.github.marsbits.restfbmessenger.metrics.MessengerMetrics;
+import com.github.marsbits.restfbmessenger.tracing.MessengerSpan;
+import com.github.marsbits.restfbmessenger.tracing.MessengerTracer;
+import com.github.marsbits.restfbmessenger.tracing.NoopMessengerTracer;
+import com.restfb.DefaultJsonMapper;
 import com.restfb.FacebookClient;
+import com.restfb.JsonMapper;
 import com.restfb.Parameter;
 import com.restfb.exception.FacebookException;
+import com.restfb.exception.FacebookGraphException;
 import com.restfb.types.send.ButtonTemplatePayload;
 import com.restfb.types.send.GenericTemplatePayload;
+import com.restfb.types.send.IdMessageRecipient;
 import com.restfb.types.send.ListTemplatePayload;
 import com.restfb.types.send.MediaAttachment;
 import com.restfb.types.send.Message;
@@ -43,6 +51,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -62,7 +71,13 @@ public class DefaultSendOperations implements SendOperations {
     public static final String NOTIFICATION_TYPE_PARAM_NAME = "notification_type";
     public static final String TAG_PARAM_NAME = "tag";
 
+    // shared, as Parameter.with creates a new mapper per parameter otherwise
+    private static final JsonMapper JSON_MAPPER = new DefaultJsonMapper();
+
     protected FacebookClient facebookClient;
+    protected volatile SendRateLimiter rateLimiter;
+    protected volatile MessengerMetrics metrics;
+    protected volatile MessengerTracer tracer = NoopMessengerTracer.INSTANCE;
 
     /**
      * Creates a {@code DefaultSendOperations} instance.
@@ -73,6 +88,61 @@ public class DefaultSendOperations implements SendOperations {
         this.facebookClient = requireNonNull(facebookClient, "'facebookClient' must not be null");
     }
 
+    /**
+     * Creates a {@code DefaultSendOperations} instance limiting the send operations with the given rate limiter.
+     *
+     * @param facebookClient the facebook client, not null
+     * @param rateLimiter    the rate limiter, may be null to not limit the send operations
+     * @since 2.3.0
+     */
+    public DefaultSendOperations(FacebookClient facebookClient, SendRateLimiter rateLimiter) {
+        this(facebookClient);
+        this.rateLimiter = rateLimiter;
+    }
+
+    public SendRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the rate limiter applied to the send operations. When a send operation exceeds the limits a {@link
+     * RateLimitExceededException} is thrown instead of sending the request.
+     *
+     * @param rateLimiter the rate limiter, may be null to not limit the send operations
+     * @since 2.3.0
+     */
+    public void setRateLimiter(SendRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public MessengerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics recording the duration and error code of the send operations.
+     *
+     * @param metrics the metrics, may be null to not record metrics
+     * @since 2.3.0
+     */
+    public void setMetrics(MessengerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public MessengerTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Sets the tracer starting a span per send operation.
+     *
+     * @param tracer the tracer, may be null to not trace the send operations
+     * @since 2.3.0
+     */
+    public void setTracer(MessengerTracer tracer) {
+        this.tracer = tracer != null ? tracer : NoopMessengerTracer.INSTANCE;
+    }
+
     @Override
     public SendResponse senderAction(MessageRecipient recipient, SenderActionEnum senderAction) throws FacebookException {
         return senderAction(recipient, senderAction, null);
@@ -83,7 +153,7 @@ public class DefaultSendOperations implements SendOperations {
             throws FacebookException {
         requireNonNull(recipient, "'recipient' must not be null");
         requireNonNull(senderAction, "'senderAction' must not be null");
-        return send(recipient, notificationType, null, Parameter.with(SENDER_ACTION_PARAM_NAME, senderAction.name()));
+        return send(recipient, notificationType, null, Parameter.with(SENDER_ACTION_PARAM_NAME, senderAction.name(), JSON_MAPPER));
     }
 
     @Override
@@ -133,7 +203,7 @@ public class DefaultSendOperations implements SendOperations {
             throws FacebookException {
         requireNonNull(recipient, "'recipient' must not be null");
         requireNonNull(message, "'message' must not be null");
-        return send(type, recipient, notificationType, tag, Parameter.with(MESSAGE_PARAM_NAME, message));
+        return send(type, recipient, notificationType, tag, Parameter.with(MESSAGE_PARAM_NAME, message, JSON_MAPPER));
     }
 
     @Override
@@ -458,6 +528,22 @@ public class DefaultSendOperations implements SendOperations {
         return template(type, recipient, airlineUpdateTemplate, notificationType, null);
     }
 
+    /**
+     * Sends the given prepared message to the user. Only the recipient is encoded per send, making this the cheapest way to send the
+     * same message to many users.
+     *
+     * @param recipient the recipient
+     * @param message   the prepared message
+     * @return the {@code SendResponse}
+     * @throws FacebookException in case an error occurs while performing the Facebook API call
+     * @since 2.3.0
+     */
+    public SendResponse preparedMessage(MessageRecipient recipient, PreparedMessage message) throws FacebookException {
+        requireNonNull(recipient, "'recipient' must not be null");
+        requireNonNull(message, "'message' must not be null");
+        return send(message.toParameters(toRecipientParameter(recipient)));
+    }
+
     protected SendResponse template(MessagingType type, MessageRecipient recipient, TemplatePayload template,
             NotificationTypeEnum notificationType,
             MessageTag tag) {
@@ -472,12 +558,12 @@ public class DefaultSendOperations implements SendOperations {
             Parameter... parameters) {
         requireNonNull(recipient, "'recipient' must not be null");
         List<Parameter> params = new ArrayList<>();
-        params.add(Parameter.with(RECIPIENT_PARAM_NAME, recipient));
+        params.add(toRecipientParameter(recipient));
         if (notificationType != null) {
-            params.add(Parameter.with(NOTIFICATION_TYPE_PARAM_NAME, notificationType.name()));
+            params.add(Parameter.with(NOTIFICATION_TYPE_PARAM_NAME, notificationType.name(), JSON_MAPPER));
         }
         if (tag != null) {
-            params.add(Parameter.with(TAG_PARAM_NAME, tag.getTag()));
+            params.add(Parameter.with(TAG_PARAM_NAME, tag.getTag(), JSON_MAPPER));
         }
         params.addAll(Arrays.asList(parameters));
         return send(params.toArray(new Parameter[params.size()]));
@@ -488,13 +574,13 @@ public class DefaultSendOperations implements SendOperations {
         requireNonNull(type, "'type' must not be null");
         requireNonNull(recipient, "'recipient' must not be null");
         List<Parameter> params = new ArrayList<>();
-        params.add(Parameter.with(MESSAGING_TYPE_PARAM_NAME, type.toString()));
-        params.add(Parameter.with(RECIPIENT_PARAM_NAME, recipient));
+        params.add(Parameter.with(MESSAGING_TYPE_PARAM_NAME, type.toString(), JSON_MAPPER));
+        params.add(toRecipientParameter(recipient));
         if (notificationType != null) {
-            params.add(Parameter.with(NOTIFICATION_TYPE_PARAM_NAME, notificationType.name()));
+            params.add(Parameter.with(NOTIFICATION_TYPE_PARAM_NAME, notificationType.name(), JSON_MAPPER));
         }
         if (tag != null) {
-            params.add(Parameter.with(TAG_PARAM_NAME, tag.getTag()));
+            params.add(Parameter.with(TAG_PARAM_NAME, tag.getTag(), JSON_MAPPER));
         }
         params.addAll(Arrays.asList(parameters));
         return send(params.toArray(new Parameter[params.size()]));
@@ -506,6 +592,97 @@ public class DefaultSendOperations implements SendOperations {
 
     protected <T> T send(Class<T> objectType, Parameter... parameters) {
         requireNonNull(objectType, "'objectType' must not be null");
+        MessengerMetrics metrics = this.metrics;
+        MessengerTracer tracer = this.tracer;
+        if (metrics == null && tracer == NoopMessengerTracer.INSTANCE) {
+            return publish(objectType, parameters);
+        }
+        String operation = getOperation(parameters);
+        MessengerSpan span = tracer.startSpan(MessengerTracer.SEND_SPAN_NAME).setAttribute(MessengerTracer.OPERATION_ATTRIBUTE, operation);
+        long start = System.nanoTime();
+        String errorCode = null;
+        try {
+            return publish(objectType, parameters);
+        } catch (RuntimeException e) {
+            errorCode = getErrorCode(e);
+            span.setAttribute(MessengerTracer.ERROR_CODE_ATTRIBUTE, errorCode);
+            span.recordFailure(e);
+            throw e;
+        } finally {
+            if (metrics != null) {
+                metrics.sendCompleted(operation, errorCode, System.nanoTime() - start);
+            }
+            span.end();
+        }
+    }
+
+    private <T> T publish(Class<T> objectType, Parameter... parameters) {
+        SendRateLimiter rateLimiter = this.rateLimiter;
+        if (rateLimiter != null) {
+            rateLimiter.acquire(facebookClient, getRecipient(parameters));
+        }
         return facebookClient.publish(MESSAGES_PATH, objectType, parameters);
     }
+
+    /**
+     * Returns the name of the send operation recorded in the metrics and traces, which is the name of the sender action or message
+     * parameter.
+     */
+    protected static String getOperation(Parameter... parameters) {
+        for (Parameter parameter : parameters) {
+            if (SENDER_ACTION_PARAM_NAME.equals(parameter.name)) {
+                return SENDER_ACTION_PARAM_NAME;
+            }
+        }
+        return MESSAGE_PARAM_NAME;
+    }
+
+    /**
+     * Returns the Graph API error code of the given exception, or the exception name if it does not contain an error code.
+     */
+    protected static String getErrorCode(Exception e) {
+        if (e instanceof FacebookGraphException && ((FacebookGraphException) e).getErrorCode() != null) {
+            return String.valueOf(((FacebookGraphException) e).getErrorCode());
+        }
+        return e.getClass().getSimpleName();
+    }
+
+    /**
+     * Returns the recipient parameter. Id recipients, by far the most common, are serialized without reflection.
+     */
+    protected static Parameter toRecipientParameter(MessageRecipient recipient) {
+        if (recipient instanceof IdMessageRecipient && ((IdMessageRecipient) recipient).getId() != null) {
+            StringBuilder sb = new StringBuilder(32).append("{\"id\":");
+            appendJsonString(sb, ((IdMessageRecipient) recipient).getId());
+            return Parameter.with(RECIPIENT_PARAM_NAME, sb.append('}').toString(), JSON_MAPPER);
+        }
+        return Parameter.with(RECIPIENT_PARAM_NAME, recipient, JSON_MAPPER);
+    }
+
+    private static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Returns the serialized recipient parameter value, or {@code null} if not present.
+     */
+    protected static String getRecipient(Parameter... parameters) {
+        for (Parameter parameter : parameters) {
+            if (RECIPIENT_PARAM_NAME.equals(parameter.name)) {
+                return parameter.value;
+            }
+        }
+        return null;
+    }
 }
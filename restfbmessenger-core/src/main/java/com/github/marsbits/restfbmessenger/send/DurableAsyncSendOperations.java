@@ -0,0 +1,359 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.github.marsbits.restfbmessenger.journal.Journal;
+import com.github.marsbits.restfbmessenger.journal.JournalReader;
+import com.github.marsbits.restfbmessenger.journal.JournalRecord;
+import com.restfb.DefaultJsonMapper;
+import com.restfb.JsonMapper;
+import com.restfb.Parameter;
+import com.restfb.types.send.SendResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * {@link AsyncSendOperations} implementation that writes every send operation to a {@link Journal} before it is performed, so queued
+ * operations survive a restart of the JVM.
+ * <p>
+ * The request parameters of each operation are appended to the journal and the operation is performed by the given {@link
+ * DefaultSendOperations} on the executor, retried according to the retry policy. Operations for the same recipient are performed one at a
+ * time in the order they were sent, while operations for different recipients are performed in parallel. Once an operation has succeeded
+ * or failed permanently it is acknowledged, and the journal is committed up to the oldest unacknowledged operation.
+ * <p>
+ * On startup {@link #recover()} replays the operations that were not acknowledged before the JVM stopped. Delivery is at-least-once: an
+ * operation performed right before a crash, but not yet acknowledged, is performed again.
+ * <p>
+ * By default sending an operation blocks until it has been synced to disk; concurrent senders share a single {@code fsync} (group
+ * commit). When the sync fails the operation is not performed and its future fails with the {@link IOException}. When sync on send is
+ * disabled, the durability of the operations relies on the sync interval of the journal.
+ * <p>
+ * Attachments uploaded from a local file are not supported, as only request parameters are written to the journal.
+ *
+ * @author Marcel Overdijk
+ * @see Journal
+ * @since 2.3.0
+ */
+public class DurableAsyncSendOperations extends DefaultAsyncSendOperations {
+
+    private static final Logger logger = Logger.getLogger(DurableAsyncSendOperations.class.getName());
+
+    private static final JsonMapper JSON_MAPPER = new DefaultJsonMapper();
+
+    protected DefaultSendOperations targetSendOperations;
+    protected Journal journal;
+
+    private final long recoveryEndOffset;
+    private final AtomicBoolean recovered = new AtomicBoolean();
+    // guarded by the recipient queues, which also orders the journal with the queues
+    private final Map<String, ArrayDeque<Entry>> recipientQueues = new HashMap<>();
+    private final TreeSet<Long> pending = new TreeSet<>();
+    // the offset of the first operation left by a previous run, which is not committed past until it has been recovered
+    private long unrecoveredOffset = -1;
+    private volatile boolean syncOnSend = true;
+
+    /**
+     * Creates a {@code DurableAsyncSendOperations} instance.
+     *
+     * @param sendOperations the send operations performing the journaled operations, not null
+     * @param executor       the executor performing the send operations, not null
+     * @param journal        the journal, not null
+     */
+    public DurableAsyncSendOperations(DefaultSendOperations sendOperations, Executor executor, Journal journal) {
+        super(new RecordingSendOperations(requireNonNull(sendOperations, "'sendOperations' must not be null").facebookClient), executor);
+        this.targetSendOperations = sendOperations;
+        this.journal = requireNonNull(journal, "'journal' must not be null");
+        this.recoveryEndOffset = journal.getEndOffset();
+        if (journal.getCommittedOffset() < recoveryEndOffset) {
+            this.unrecoveredOffset = journal.getCommittedOffset();
+        }
+    }
+
+    /**
+     * Sets whether sending an operation blocks until it has been synced to disk. Defaults to {@code true}.
+     *
+     * @param syncOnSend whether to sync on send
+     */
+    public void setSyncOnSend(boolean syncOnSend) {
+        this.syncOnSend = syncOnSend;
+    }
+
+    public boolean isSyncOnSend() {
+        return syncOnSend;
+    }
+
+    /**
+     * Replays the operations in the journal that were not acknowledged. Must be called once at startup, before new operations are sent.
+     * Until then the journal is not committed past these operations, so they are not lost when operations are sent before. Failures of
+     * replayed operations are logged.
+     *
+     * @return the number of replayed operations
+     * @throws IOException           in case a journal record could not be decoded
+     * @throws IllegalStateException if the operations have already been recovered
+     */
+    public int recover() throws IOException {
+        if (!recovered.compareAndSet(false, true)) {
+            throw new IllegalStateException("Operations have already been recovered");
+        }
+        List<Entry> entries = new ArrayList<>();
+        JournalReader reader = journal.reader(journal.getCommittedOffset());
+        JournalRecord record;
+        while (reader.getOffset() < recoveryEndOffset && (record = reader.next()) != null) {
+            Entry entry = new Entry(record.getOffset(), decode(record.getData()), new SendFuture<SendResponse>());
+            entry.synced = true;
+            entries.add(entry);
+        }
+        List<Entry> heads = new ArrayList<>();
+        synchronized (recipientQueues) {
+            // all replayed operations are pending before the first one is acknowledged and the journal is committed
+            for (Entry entry : entries) {
+                pending.add(entry.offset);
+                if (enqueue(entry) && markDispatched(entry)) {
+                    heads.add(entry);
+                }
+            }
+            unrecoveredOffset = -1;
+        }
+        SendCallback<SendResponse> callback = new SendCallback<SendResponse>() {
+
+            @Override
+            public void onSuccess(SendResponse response) {
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                logger.warning(format("Replayed send operation failed: %s", failure.getMessage()));
+            }
+        };
+        for (Entry entry : entries) {
+            entry.future.addCallback(callback);
+        }
+        for (Entry entry : heads) {
+            dispatch(entry);
+        }
+        logger.info(format("Replayed %d send operation(s) from journal '%s'", entries.size(), journal.getDirectory()));
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of operations which have been journaled but not yet acknowledged.
+     */
+    public int getPendingCount() {
+        synchronized (recipientQueues) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Appends the send operation of the given task to the journal and queues it behind the pending operations for the same recipient.
+     */
+    @Override
+    protected SendFuture<SendResponse> submit(SendTask task) {
+        boolean syncOnSend = this.syncOnSend;
+        Entry entry;
+        boolean head;
+        try {
+            Parameter[] parameters = RecordingSendOperations.record(task);
+            byte[] data = encode(parameters);
+            synchronized (recipientQueues) {
+                entry = new Entry(journal.append(data), parameters, new SendFuture<SendResponse>());
+                entry.synced = !syncOnSend;
+                pending.add(entry.offset);
+                head = enqueue(entry) && markDispatched(entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            return SendFuture.failed(e);
+        }
+        if (syncOnSend) {
+            try {
+                journal.sync(entry.offset);
+            } catch (IOException e) {
+                // the operation may not be replayed after a crash, so it is not performed
+                logger.log(WARNING, format("Exception syncing journal '%s'", journal.getDirectory()), e);
+                acknowledge(entry);
+                entry.future.completeExceptionally(e);
+                return entry.future;
+            }
+            synchronized (recipientQueues) {
+                entry.synced = true;
+                // the operations ahead of it may have been acknowledged while it was synced
+                head = recipientQueues.get(entry.recipient).peek() == entry && markDispatched(entry);
+            }
+        }
+        if (head) {
+            dispatch(entry);
+        }
+        return entry.future;
+    }
+
+    /**
+     * Marks the given operation at the head of its recipient queue as dispatched, unless it has not been synced yet or has already been
+     * dispatched. Must be called while holding the recipient queues lock.
+     *
+     * @return {@code true} if the operation must be dispatched by the caller
+     */
+    private static boolean markDispatched(Entry entry) {
+        if (!entry.synced || entry.dispatched) {
+            return false;
+        }
+        entry.dispatched = true;
+        return true;
+    }
+
+    private boolean enqueue(Entry entry) {
+        ArrayDeque<Entry> queue = recipientQueues.get(entry.recipient);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            recipientQueues.put(entry.recipient, queue);
+        }
+        queue.add(entry);
+        return queue.size() == 1;
+    }
+
+    private void dispatch(final Entry entry) {
+        super.submit(new SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return targetSendOperations.send(SendResponse.class, entry.parameters);
+            }
+        }).addCallback(new SendCallback<SendResponse>() {
+
+            @Override
+            public void onSuccess(SendResponse response) {
+                acknowledge(entry);
+                entry.future.complete(response);
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                acknowledge(entry);
+                entry.future.completeExceptionally(failure);
+            }
+        });
+    }
+
+    private void acknowledge(Entry entry) {
+        Entry next = null;
+        long committable;
+        synchronized (recipientQueues) {
+            ArrayDeque<Entry> queue = recipientQueues.get(entry.recipient);
+            // an operation whose sync failed is acknowledged without being dispatched, and may not be the head of the queue
+            if (queue.peek() == entry) {
+                queue.poll();
+                next = queue.peek();
+                if (next != null && !markDispatched(next)) {
+                    // the next operation is dispatched once it has been synced
+                    next = null;
+                }
+            } else {
+                queue.remove(entry);
+            }
+            if (queue.isEmpty()) {
+                recipientQueues.remove(entry.recipient);
+            }
+            pending.remove(entry.offset);
+            committable = pending.isEmpty() ? journal.getEndOffset() : pending.first();
+            if (unrecoveredOffset >= 0) {
+                committable = Math.min(committable, unrecoveredOffset);
+            }
+        }
+        try {
+            journal.commit(committable);
+        } catch (IOException | RuntimeException e) {
+            logger.log(WARNING, format("Exception committing journal '%s'", journal.getDirectory()), e);
+        }
+        if (next != null) {
+            dispatch(next);
+        }
+    }
+
+    /**
+     * Encodes the given request parameters as a journal record.
+     */
+    static byte[] encode(Parameter[] parameters) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeShort(parameters.length);
+        for (Parameter parameter : parameters) {
+            byte[] name = parameter.name.getBytes(UTF_8);
+            byte[] value = parameter.value.getBytes(UTF_8);
+            output.writeShort(name.length);
+            output.write(name);
+            output.writeInt(value.length);
+            output.write(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes the request parameters of the given journal record.
+     */
+    static Parameter[] decode(byte[] data) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        Parameter[] parameters = new Parameter[input.readUnsignedShort()];
+        for (int i = 0; i < parameters.length; i++) {
+            byte[] name = new byte[input.readUnsignedShort()];
+            input.readFully(name);
+            byte[] value = new byte[input.readInt()];
+            input.readFully(value);
+            // string values are used as is by the json mapper
+            parameters[i] = Parameter.with(new String(name, UTF_8), new String(value, UTF_8), JSON_MAPPER);
+        }
+        return parameters;
+    }
+
+    /**
+     * A journaled send operation.
+     */
+    private static class Entry {
+
+        private final long offset;
+        private final Parameter[] parameters;
+        private final String recipient;
+        private final SendFuture<SendResponse> future;
+        // guarded by the recipient queues; an operation is only dispatched once it has been synced
+        private boolean synced;
+        private boolean dispatched;
+
+        Entry(long offset, Parameter[] parameters, SendFuture<SendResponse> future) {
+            this.offset = offset;
+            this.parameters = parameters;
+            String recipient = DefaultSendOperations.getRecipient(parameters);
+            this.recipient = recipient != null ? recipient : "";
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.restfb.DefaultJsonMapper;
+import com.restfb.JsonMapper;
+import com.restfb.Parameter;
+import com.restfb.types.send.Message;
+import com.restfb.types.send.MessageRecipient;
+import com.restfb.types.send.MessagingType;
+import com.restfb.types.send.NotificationTypeEnum;
+import com.restfb.types.send.SendResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.marsbits.restfbmessenger.send.DefaultSendOperations.MESSAGE_PARAM_NAME;
+import static com.github.marsbits.restfbmessenger.send.DefaultSendOperations.MESSAGING_TYPE_PARAM_NAME;
+import static com.github.marsbits.restfbmessenger.send.DefaultSendOperations.NOTIFICATION_TYPE_PARAM_NAME;
+import static com.github.marsbits.restfbmessenger.send.DefaultSendOperations.TAG_PARAM_NAME;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A message serialized once to be sent to many recipients.
+ * <p>
+ * Sending a {@link Message} serializes its whole object graph by reflection on every send. A {@code PreparedMessage} holds the
+ * serialized message and the other send parameters, so sending it with {@link DefaultSendOperations#preparedMessage} or {@link
+ * AsyncSendOperations#preparedMessage} only encodes the recipient per send. Prepared messages are immutable and can be shared between
+ * threads; the prepared message must not be modified after preparing it.
+ * <pre class="code">
+ * PreparedMessage prepared = PreparedMessage.of(MessagingType.MESSAGE_TAG, new Message(new TemplateAttachment(genericTemplate)),
+ *         NotificationTypeEnum.NO_PUSH, MessageTag.ACCOUNT_UPDATE);
+ * for (String psid : recipients) {
+ *     messenger.sendAsync().preparedMessage(new IdMessageRecipient(psid), prepared);
+ * }
+ * </pre>
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public final class PreparedMessage {
+
+    private static final JsonMapper JSON_MAPPER = new DefaultJsonMapper();
+
+    private final MessagingType type;
+    private final Message message;
+    private final NotificationTypeEnum notificationType;
+    private final MessageTag tag;
+    private final String json;
+    private final Parameter messagingType;
+    private final Parameter[] parameters;
+
+    private PreparedMessage(MessagingType type, Message message, String json, NotificationTypeEnum notificationType, MessageTag tag) {
+        this.type = requireNonNull(type, "'type' must not be null");
+        this.message = message;
+        this.notificationType = notificationType;
+        this.tag = tag;
+        this.json = requireNonNull(json, "'json' must not be null");
+        this.messagingType = Parameter.with(MESSAGING_TYPE_PARAM_NAME, type.toString(), JSON_MAPPER);
+        List<Parameter> params = new ArrayList<>(3);
+        if (notificationType != null) {
+            params.add(Parameter.with(NOTIFICATION_TYPE_PARAM_NAME, notificationType.name(), JSON_MAPPER));
+        }
+        if (tag != null) {
+            params.add(Parameter.with(TAG_PARAM_NAME, tag.getTag(), JSON_MAPPER));
+        }
+        // a string value is taken as is, so the message is not serialized again
+        params.add(Parameter.with(MESSAGE_PARAM_NAME, json, JSON_MAPPER));
+        this.parameters = params.toArray(new Parameter[params.size()]);
+    }
+
+    /**
+     * Prepares the given message.
+     *
+     * @param type    the messaging type, not null
+     * @param message the message, not null
+     */
+    public static PreparedMessage of(MessagingType type, Message message) {
+        return of(type, message, null, null);
+    }
+
+    /**
+     * Prepares the given message.
+     *
+     * @param type             the messaging type, not null
+     * @param message          the message, not null
+     * @param notificationType the push notification type, may be null
+     * @param tag              the message tag, may be null
+     */
+    public static PreparedMessage of(MessagingType type, Message message, NotificationTypeEnum notificationType, MessageTag tag) {
+        requireNonNull(message, "'message' must not be null");
+        return new PreparedMessage(type, message, JSON_MAPPER.toJson(message, true), notificationType, tag);
+    }
+
+    /**
+     * Prepares the given already serialized message, e.g. a message template kept as JSON. A message prepared from JSON can only be sent
+     * with {@link DefaultSendOperations}.
+     *
+     * @param type             the messaging type, not null
+     * @param json             the message JSON, not null
+     * @param notificationType the push notification type, may be null
+     * @param tag              the message tag, may be null
+     */
+    public static PreparedMessage ofJson(MessagingType type, String json, NotificationTypeEnum notificationType, MessageTag tag) {
+        return new PreparedMessage(type, null, json, notificationType, tag);
+    }
+
+    /**
+     * Returns the message JSON.
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * Sends this message to the given recipient. Send operations other than {@link DefaultSendOperations} cannot send the serialized
+     * message, so they are given the original message to serialize again.
+     *
+     * @throws UnsupportedOperationException if this message was prepared from JSON and the send operations are not {@link
+     *                                       DefaultSendOperations}
+     */
+    SendResponse send(SendOperations sendOperations, MessageRecipient recipient) {
+        if (sendOperations instanceof DefaultSendOperations) {
+            return ((DefaultSendOperations) sendOperations).preparedMessage(recipient, this);
+        }
+        if (message == null) {
+            throw new UnsupportedOperationException("A message prepared from JSON can only be sent with DefaultSendOperations");
+        }
+        return sendOperations.message(type, recipient, message, notificationType, tag);
+    }
+
+    /**
+     * Returns the send parameters for the given recipient parameter.
+     */
+    Parameter[] toParameters(Parameter recipient) {
+        Parameter[] params = new Parameter[parameters.length + 2];
+        params[0] = messagingType;
+        params[1] = recipient;
+        System.arraycopy(parameters, 0, params, 2, parameters.length);
+        return params;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.github.marsbits.restfbmessenger.send.AbstractAsyncSendOperations.SendTask;
+import com.restfb.FacebookClient;
+import com.restfb.Parameter;
+import com.restfb.types.send.SendResponse;
+
+/**
+ * {@link SendOperations} implementation that does not perform the send operation but records its request parameters, so the
+ * operations can be coalesced into a batch request.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+class RecordingSendOperations extends DefaultSendOperations {
+
+    RecordingSendOperations(FacebookClient facebookClient) {
+        super(facebookClient);
+    }
+
+    /**
+     * Performs the given send task against the recording send operations and returns the recorded request parameters.
+     */
+    static Parameter[] record(SendTask task) {
+        SendResponse response = task.send();
+        if (!(response instanceof RecordedSendResponse)) {
+            throw new IllegalStateException("Send task did not perform a recordable send operation");
+        }
+        return ((RecordedSendResponse) response).parameters;
+    }
+
+    @Override
+    protected <T> T send(Class<T> objectType, Parameter... parameters) {
+        if (!SendResponse.class.equals(objectType)) {
+            throw new IllegalArgumentException("Only send operations returning a SendResponse can be recorded");
+        }
+        return objectType.cast(new RecordedSendResponse(parameters));
+    }
+
+    /**
+     * Carries the recorded request parameters back to the caller.
+     */
+    private static class RecordedSendResponse extends SendResponse {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Parameter[] parameters;
+
+        RecordedSendResponse(Parameter[] parameters) {
+            this.parameters = parameters;
+        }
+    }
+}
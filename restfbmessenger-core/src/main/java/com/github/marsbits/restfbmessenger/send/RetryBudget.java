@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Budget limiting retries to a ratio of the send operations, so a Facebook outage does not amplify into a retry storm.
+ * <p>
+ * Every send operation deposits {@code ratio} into the budget and every retry withdraws {@code 1}, so at most {@code ratio} retries are
+ * performed per send operation on average. The balance is capped at {@code maxBalance} retries, which is also the initial balance, to
+ * allow retries right after startup. The budget is lock-free.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long maxBalance;
+    private final AtomicLong balance;
+
+    /**
+     * Creates a {@code RetryBudget} instance.
+     *
+     * @param ratio      the number of retries allowed per send operation, between 0 and 1
+     * @param maxBalance the maximum number of retries that can be saved up, must not be negative
+     */
+    public RetryBudget(double ratio, int maxBalance) {
+        if (ratio < 0 || ratio > 1) {
+            throw new IllegalArgumentException("'ratio' must be between 0 and 1");
+        }
+        if (maxBalance < 0) {
+            throw new IllegalArgumentException("'maxBalance' must not be negative");
+        }
+        this.deposit = (long) (ratio * SCALE);
+        this.maxBalance = maxBalance * SCALE;
+        this.balance = new AtomicLong(this.maxBalance);
+    }
+
+    /**
+     * Records a send operation, adding to the budget.
+     */
+    public void deposit() {
+        while (true) {
+            long current = balance.get();
+            long next = Math.min(maxBalance, current + deposit);
+            if (next == current || balance.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Withdraws a retry from the budget if available.
+     *
+     * @return {@code true} if the retry may be performed, otherwise {@code false}
+     */
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Policy for retrying failed send operations with exponential backoff and jitter.
+ * <p>
+ * A failed send operation is retried when the failure is retryable according to the {@link RetryableErrorClassifier}, the maximum number
+ * of attempts has not been reached and, when configured, the {@link RetryBudget} allows it. The backoff before attempt {@code n + 1} is
+ * {@code initialBackoff * multiplier^(n - 1)}, capped at {@code maxBackoff}, of which the {@code jitter} fraction is randomized to spread
+ * retries of operations that failed at the same time.
+ * <pre class="code">
+ * RetryPolicy retryPolicy = RetryPolicy.builder()
+ *         .maxAttempts(4)
+ *         .backoff(200, 5000, TimeUnit.MILLISECONDS)
+ *         .budget(new RetryBudget(0.1, 100))
+ *         .build();
+ * </pre>
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 200;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 10000;
+    public static final double DEFAULT_MULTIPLIER = 2.0;
+    public static final double DEFAULT_JITTER = 0.5;
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final double multiplier;
+    private final double jitter;
+    private final RetryableErrorClassifier classifier;
+    private final RetryBudget budget;
+
+    protected RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffNanos = builder.initialBackoffNanos;
+        this.maxBackoffNanos = builder.maxBackoffNanos;
+        this.multiplier = builder.multiplier;
+        this.jitter = builder.jitter;
+        this.classifier = builder.classifier;
+        this.budget = builder.budget;
+    }
+
+    /**
+     * Returns a new {@link Builder} for configuring a {@code RetryPolicy}.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Records a new send operation, before its first attempt.
+     */
+    public void onSend() {
+        if (budget != null) {
+            budget.deposit();
+        }
+    }
+
+    /**
+     * Returns whether the send operation should be retried after the given attempt failed with the given failure.
+     *
+     * @param failure the failure
+     * @param attempt the number of the failed attempt, starting at {@code 1}
+     * @return {@code true} if the send operation should be retried, otherwise {@code false}
+     */
+    public boolean shouldRetry(Throwable failure, int attempt) {
+        return attempt < maxAttempts && classifier.isRetryable(failure) && (budget == null || budget.tryWithdraw());
+    }
+
+    /**
+     * Returns the backoff in nanoseconds before retrying after the given attempt.
+     *
+     * @param attempt the number of the failed attempt, starting at {@code 1}
+     * @return the backoff in nanoseconds
+     */
+    public long getBackoffNanos(int attempt) {
+        double backoff = initialBackoffNanos * Math.pow(multiplier, attempt - 1);
+        long capped = (long) Math.min(backoff, maxBackoffNanos);
+        long randomized = (long) (capped * jitter);
+        return capped - randomized + (randomized > 0 ? ThreadLocalRandom.current().nextLong(randomized + 1) : 0);
+    }
+
+    /**
+     * Builder for {@link RetryPolicy} instances.
+     */
+    public static class Builder {
+
+        private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        private long initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_BACKOFF_MILLIS);
+        private long maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_BACKOFF_MILLIS);
+        private double multiplier = DEFAULT_MULTIPLIER;
+        private double jitter = DEFAULT_JITTER;
+        private RetryableErrorClassifier classifier = new DefaultRetryableErrorClassifier();
+        private RetryBudget budget;
+
+        protected Builder() {
+        }
+
+        /**
+         * Sets the maximum number of attempts, including the first attempt. Defaults to {@value #DEFAULT_MAX_ATTEMPTS}.
+         *
+         * @param maxAttempts the maximum number of attempts, must be positive
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("'maxAttempts' must be positive");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the backoff before the first retry and the maximum backoff. Defaults to {@value #DEFAULT_INITIAL_BACKOFF_MILLIS} and
+         * {@value #DEFAULT_MAX_BACKOFF_MILLIS} milliseconds.
+         *
+         * @param initialBackoff the initial backoff, must not be negative
+         * @param maxBackoff     the maximum backoff, must not be less than the initial backoff
+         * @param unit           the time unit, not null
+         */
+        public Builder backoff(long initialBackoff, long maxBackoff, TimeUnit unit) {
+            requireNonNull(unit, "'unit' must not be null");
+            if (initialBackoff < 0 || maxBackoff < initialBackoff) {
+                throw new IllegalArgumentException("'initialBackoff' must not be negative or greater than 'maxBackoff'");
+            }
+            this.initialBackoffNanos = unit.toNanos(initialBackoff);
+            this.maxBackoffNanos = unit.toNanos(maxBackoff);
+            return this;
+        }
+
+        /**
+         * Sets the factor by which the backoff grows per attempt. Defaults to {@value #DEFAULT_MULTIPLIER}.
+         *
+         * @param multiplier the multiplier, must be at least 1
+         */
+        public Builder multiplier(double multiplier) {
+            if (!(multiplier >= 1)) {
+                throw new IllegalArgumentException("'multiplier' must be at least 1");
+            }
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * Sets the randomized fraction of the backoff. Defaults to {@value #DEFAULT_JITTER}.
+         *
+         * @param jitter the jitter, between 0 (no jitter) and 1 (full jitter)
+         */
+        public Builder jitter(double jitter) {
+            if (!(jitter >= 0 && jitter <= 1)) {
+                throw new IllegalArgumentException("'jitter' must be between 0 and 1");
+            }
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Sets the classifier determining which failures are retryable. Defaults to the {@link DefaultRetryableErrorClassifier}.
+         *
+         * @param classifier the classifier, not null
+         */
+        public Builder classifier(RetryableErrorClassifier classifier) {
+            this.classifier = requireNonNull(classifier, "'classifier' must not be null");
+            return this;
+        }
+
+        /**
+         * Sets the retry budget. By default retries are not limited by a budget.
+         *
+         * @param budget the budget, may be null
+         */
+        public Builder budget(RetryBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
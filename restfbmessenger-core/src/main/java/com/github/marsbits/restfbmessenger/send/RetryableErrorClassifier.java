@@ -0,0 +1,35 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+/**
+ * Interface for classifying send operation failures as retryable or not.
+ *
+ * @author Marcel Overdijk
+ * @see DefaultRetryableErrorClassifier
+ * @since 2.3.0
+ */
+public interface RetryableErrorClassifier {
+
+    /**
+     * Returns whether the send operation that failed with the given failure may succeed when retried.
+     *
+     * @param failure the failure
+     * @return {@code true} if the send operation may be retried, otherwise {@code false}
+     */
+    boolean isRetryable(Throwable failure);
+}
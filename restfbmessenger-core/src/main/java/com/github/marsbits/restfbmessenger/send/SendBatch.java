@@ -0,0 +1,257 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.restfb.FacebookClient;
+import com.restfb.Parameter;
+import com.restfb.batch.BatchRequest;
+import com.restfb.batch.BatchRequest.BatchRequestBuilder;
+import com.restfb.batch.BatchResponse;
+import com.restfb.exception.FacebookException;
+import com.restfb.exception.FacebookNetworkException;
+import com.restfb.exception.generator.DefaultFacebookExceptionGenerator;
+import com.restfb.exception.generator.FacebookExceptionGenerator;
+import com.restfb.types.send.SendResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.marsbits.restfbmessenger.send.DefaultSendOperations.MESSAGES_PATH;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Builder coalescing send operations into Graph API batch requests.
+ * <p>
+ * Each send operation invoked on the batch is recorded and returns a {@link SendFuture} which is completed with the {@link SendResponse}
+ * or failure of the individual operation once the batch is executed. Executing the batch sends the recorded operations in batch requests
+ * of at most {@link #MAX_BATCH_SIZE} operations each, so sending a large number of messages only takes a fraction of the HTTP requests.
+ * <pre class="code">
+ * SendBatch batch = messenger.sendBatch();
+ * for (MessageRecipient recipient : recipients) {
+ *     batch.textMessage(MessagingType.UPDATE, recipient, "Hello!");
+ * }
+ * batch.execute();
+ * </pre>
+ * A batch is not thread-safe for concurrent execution, but operations may be added from multiple threads. After execution the batch is
+ * empty and can be reused.
+ *
+ * @author Marcel Overdijk
+ * @see BatchingAsyncSendOperations
+ * @since 2.3.0
+ */
+public class SendBatch extends AbstractAsyncSendOperations {
+
+    /**
+     * The maximum number of operations the Graph API accepts in a single batch request.
+     */
+    public static final int MAX_BATCH_SIZE = 50;
+
+    public static final String POST_METHOD = "POST";
+
+    protected FacebookClient facebookClient;
+    protected FacebookExceptionGenerator exceptionGenerator = new DefaultFacebookExceptionGenerator();
+    protected volatile SendRateLimiter rateLimiter;
+
+    private final int maxBatchSize;
+    private List<Item> items = new ArrayList<>();
+
+    /**
+     * Creates a {@code SendBatch} instance sending batch requests of at most {@link #MAX_BATCH_SIZE} operations.
+     *
+     * @param facebookClient the facebook client, not null
+     */
+    public SendBatch(FacebookClient facebookClient) {
+        this(facebookClient, MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a {@code SendBatch} instance sending batch requests of at most the given number of operations.
+     *
+     * @param facebookClient the facebook client, not null
+     * @param maxBatchSize   the maximum number of operations per batch request, between 1 and {@link #MAX_BATCH_SIZE}
+     */
+    public SendBatch(FacebookClient facebookClient, int maxBatchSize) {
+        super(new RecordingSendOperations(requireNonNull(facebookClient, "'facebookClient' must not be null")));
+        if (maxBatchSize < 1 || maxBatchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException(format("'maxBatchSize' must be between 1 and %d", MAX_BATCH_SIZE));
+        }
+        this.facebookClient = facebookClient;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public SendRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the rate limiter applied to the operations when executing the batch. Each operation counts as a single send; operations
+     * exceeding the limits fail with a {@link RateLimitExceededException} and are left out of the batch request.
+     *
+     * @param rateLimiter the rate limiter, may be null to not limit the operations
+     */
+    public void setRateLimiter(SendRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Returns the number of operations added to the batch and not executed yet.
+     */
+    public synchronized int size() {
+        return items.size();
+    }
+
+    /**
+     * Returns whether the batch does not contain any operations to be executed.
+     */
+    public synchronized boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    /**
+     * Executes the operations added to the batch and completes their futures. Operations of which the future has been cancelled are not
+     * sent. When a batch request fails as a whole, the futures of all its operations fail with the same exception.
+     */
+    public void execute() {
+        List<Item> items;
+        synchronized (this) {
+            items = this.items;
+            this.items = new ArrayList<>();
+        }
+        List<Item> chunk = new ArrayList<>(Math.min(items.size(), maxBatchSize));
+        for (Item item : items) {
+            if (item.future.isDone() || !acquire(item)) {
+                continue;
+            }
+            chunk.add(item);
+            if (chunk.size() == maxBatchSize) {
+                execute(chunk);
+                chunk = new ArrayList<>(maxBatchSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            execute(chunk);
+        }
+    }
+
+    /**
+     * Records the send operation of the given task instead of performing it. Invalid operations fail immediately.
+     */
+    @Override
+    protected SendFuture<SendResponse> submit(SendTask task) {
+        Parameter[] parameters;
+        try {
+            parameters = RecordingSendOperations.record(task);
+        } catch (RuntimeException e) {
+            return SendFuture.failed(e);
+        }
+        return add(parameters);
+    }
+
+    /**
+     * Adds a send operation with the given request parameters to the batch.
+     */
+    synchronized SendFuture<SendResponse> add(Parameter[] parameters) {
+        SendFuture<SendResponse> future = new SendFuture<>();
+        items.add(new Item(parameters, future));
+        return future;
+    }
+
+    /**
+     * Fails the futures of all operations added to the batch and not executed yet with the given failure.
+     */
+    void fail(Throwable failure) {
+        List<Item> items;
+        synchronized (this) {
+            items = this.items;
+            this.items = new ArrayList<>();
+        }
+        for (Item item : items) {
+            item.future.completeExceptionally(failure);
+        }
+    }
+
+    private boolean acquire(Item item) {
+        SendRateLimiter rateLimiter = this.rateLimiter;
+        if (rateLimiter == null) {
+            return true;
+        }
+        try {
+            rateLimiter.acquire(facebookClient, DefaultSendOperations.getRecipient(item.parameters));
+            return true;
+        } catch (RateLimitExceededException e) {
+            item.future.completeExceptionally(e);
+            return false;
+        }
+    }
+
+    /**
+     * Sends the given operations in a single batch request and demultiplexes the batch response to their futures.
+     */
+    protected void execute(List<Item> items) {
+        List<BatchRequest> requests = new ArrayList<>(items.size());
+        for (Item item : items) {
+            requests.add(new BatchRequestBuilder(MESSAGES_PATH).method(POST_METHOD).body(item.parameters).build());
+        }
+        List<BatchResponse> responses;
+        try {
+            responses = facebookClient.executeBatch(requests);
+        } catch (RuntimeException e) {
+            for (Item item : items) {
+                item.future.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < items.size(); i++) {
+            complete(items.get(i).future, i < responses.size() ? responses.get(i) : null);
+        }
+    }
+
+    /**
+     * Completes the given future with the given batch response of its operation.
+     */
+    protected void complete(SendFuture<SendResponse> future, BatchResponse response) {
+        if (response == null) {
+            // the Graph API returns null for operations it did not execute, e.g. when the batch timed out
+            future.completeExceptionally(new FacebookNetworkException("Batch operation was not executed", (Integer) null));
+            return;
+        }
+        try {
+            exceptionGenerator.throwFacebookResponseStatusExceptionIfNecessary(response.getBody(), response.getCode());
+            if (response.getCode() == null || response.getCode() / 100 != 2) {
+                throw new FacebookNetworkException("Batch operation failed", response.getCode());
+            }
+            future.complete(facebookClient.getJsonMapper().toJavaObject(response.getBody(), SendResponse.class));
+        } catch (FacebookException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * A recorded send operation.
+     */
+    protected static class Item {
+
+        private final Parameter[] parameters;
+        private final SendFuture<SendResponse> future;
+
+        Item(Parameter[] parameters, SendFuture<SendResponse> future) {
+            this.parameters = parameters;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+/**
+ * Callback notified when a {@link SendFuture} completes.
+ *
+ * @param <T> the result type
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public interface SendCallback<T> {
+
+    /**
+     * Invoked when the operation completed successfully.
+     *
+     * @param result the result
+     */
+    void onSuccess(T result);
+
+    /**
+     * Invoked when the operation failed or was cancelled.
+     *
+     * @param throwable the failure, e.g. a {@link com.restfb.exception.FacebookException} or a {@link
+     *                  java.util.concurrent.CancellationException}
+     */
+    void onFailure(Throwable throwable);
+}
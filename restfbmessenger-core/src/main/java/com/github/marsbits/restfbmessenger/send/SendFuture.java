@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link Future} representing the result of an asynchronous send operation, which can be completed explicitly and notifies registered
+ * {@link SendCallback}s on completion.
+ * <p>
+ * Callbacks are invoked on the thread completing the future, or on the registering thread if the future is already completed. Cancelling
+ * the future does not interrupt an operation which is already in progress.
+ *
+ * @param <T> the result type
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class SendFuture<T> implements Future<T> {
+
+    private static final Logger logger = Logger.getLogger(SendFuture.class.getName());
+
+    private final List<SendCallback<? super T>> callbacks = new ArrayList<>();
+
+    private boolean done;
+    private boolean cancelled;
+    private T result;
+    private Throwable failure;
+
+    /**
+     * Returns a future already completed with the given result.
+     *
+     * @param result the result
+     * @param <T>    the result type
+     * @return the completed future
+     */
+    public static <T> SendFuture<T> completed(T result) {
+        SendFuture<T> future = new SendFuture<>();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * Returns a future already completed with the given failure.
+     *
+     * @param failure the failure, not null
+     * @param <T>     the result type
+     * @return the failed future
+     */
+    public static <T> SendFuture<T> failed(Throwable failure) {
+        SendFuture<T> future = new SendFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+
+    /**
+     * Registers the given callback. When the future is already completed the callback is invoked immediately.
+     *
+     * @param callback the callback, not null
+     */
+    public void addCallback(SendCallback<? super T> callback) {
+        requireNonNull(callback, "'callback' must not be null");
+        synchronized (this) {
+            if (!done) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        notifyCallback(callback);
+    }
+
+    /**
+     * Completes the future with the given result, if not already completed.
+     *
+     * @param result the result
+     * @return {@code true} if this invocation completed the future, otherwise {@code false}
+     */
+    public boolean complete(T result) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.result = result;
+            this.done = true;
+            notifyAll();
+        }
+        notifyCallbacks();
+        return true;
+    }
+
+    /**
+     * Completes the future with the given failure, if not already completed.
+     *
+     * @param failure the failure, not null
+     * @return {@code true} if this invocation completed the future, otherwise {@code false}
+     */
+    public boolean completeExceptionally(Throwable failure) {
+        requireNonNull(failure, "'failure' must not be null");
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.failure = failure;
+            this.done = true;
+            notifyAll();
+        }
+        notifyCallbacks();
+        return true;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.failure = new CancellationException();
+            this.cancelled = true;
+            this.done = true;
+            notifyAll();
+        }
+        notifyCallbacks();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long remaining = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + remaining;
+        while (!done) {
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+
+    private void notifyCallbacks() {
+        List<SendCallback<? super T>> callbacks;
+        synchronized (this) {
+            callbacks = new ArrayList<>(this.callbacks);
+            this.callbacks.clear();
+        }
+        for (SendCallback<? super T> callback : callbacks) {
+            notifyCallback(callback);
+        }
+    }
+
+    private void notifyCallback(SendCallback<? super T> callback) {
+        T result;
+        Throwable failure;
+        synchronized (this) {
+            result = this.result;
+            failure = this.failure;
+        }
+        try {
+            if (failure == null) {
+                callback.onSuccess(result);
+            } else {
+                callback.onFailure(failure);
+            }
+        } catch (RuntimeException e) {
+            logger.severe(format("Exception in send callback: %s", e.getMessage()));
+        }
+    }
+}
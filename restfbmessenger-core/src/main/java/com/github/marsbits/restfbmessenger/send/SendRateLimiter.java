@@ -0,0 +1,238 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.github.marsbits.restfbmessenger.util.TokenBucket;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Rate limiter for outbound send operations, applying token bucket limits globally, per page and per recipient.
+ * <p>
+ * A page is identified by the {@link com.restfb.FacebookClient} performing the send operations, as each client is bound to a single page
+ * access token. A global limit can be shared between messengers by sharing the same limiter instance.
+ * <p>
+ * When a permit is not available immediately the calling thread waits for it, up to the configured maximum wait time. When it would have
+ * to wait longer, a {@link RateLimitExceededException} is thrown without sending the request; a maximum wait time of {@code 0} therefore
+ * fails fast. Acquiring a permit does not take any lock; the per page and per recipient buckets are kept in concurrent maps and buckets of
+ * idle recipients are evicted periodically.
+ * <pre class="code">
+ * SendRateLimiter rateLimiter = SendRateLimiter.builder()
+ *         .globalLimit(250, 250)
+ *         .recipientLimit(1, 5)
+ *         .maxWait(2, TimeUnit.SECONDS)
+ *         .build();
+ * </pre>
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class SendRateLimiter {
+
+    static final int EVICTION_INTERVAL = 1024;
+
+    private final TokenBucket globalBucket;
+    private final Limit pageLimit;
+    private final Limit recipientLimit;
+    private final long maxWaitNanos;
+
+    private final ConcurrentMap<Object, TokenBucket> pageBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TokenBucket> recipientBuckets = new ConcurrentHashMap<>();
+    private final AtomicInteger acquisitions = new AtomicInteger();
+
+    protected SendRateLimiter(Builder builder) {
+        this.globalBucket = builder.globalLimit != null ? builder.globalLimit.createBucket() : null;
+        this.pageLimit = builder.pageLimit;
+        this.recipientLimit = builder.recipientLimit;
+        this.maxWaitNanos = builder.maxWaitNanos;
+    }
+
+    /**
+     * Returns a new {@link Builder} for configuring a {@code SendRateLimiter}.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Acquires a permit to send to the given recipient via the given page, waiting for it when needed.
+     *
+     * @param page      the page key, e.g. the facebook client, not null
+     * @param recipient the recipient key, may be null when the recipient is unknown
+     * @throws RateLimitExceededException when no permit becomes available within the maximum wait time
+     */
+    public void acquire(Object page, String recipient) throws RateLimitExceededException {
+        requireNonNull(page, "'page' must not be null");
+        TokenBucket recipientBucket = recipientLimit != null && recipient != null
+                ? bucket(recipientBuckets, recipient, recipientLimit) : null;
+        TokenBucket pageBucket = pageLimit != null ? bucket(pageBuckets, page, pageLimit) : null;
+        long recipientWait = reserve(recipientBucket);
+        if (recipientWait < 0) {
+            throw new RateLimitExceededException("Recipient send rate limit exceeded");
+        }
+        long pageWait = reserve(pageBucket);
+        if (pageWait < 0) {
+            release(recipientBucket);
+            throw new RateLimitExceededException("Page send rate limit exceeded");
+        }
+        long globalWait = reserve(globalBucket);
+        if (globalWait < 0) {
+            release(recipientBucket);
+            release(pageBucket);
+            throw new RateLimitExceededException("Global send rate limit exceeded");
+        }
+        long wait = Math.max(recipientWait, Math.max(pageWait, globalWait));
+        if (acquisitions.incrementAndGet() % EVICTION_INTERVAL == 0) {
+            evictIdleRecipients();
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RateLimitExceededException("Interrupted while waiting for send rate limit", e);
+            }
+        }
+    }
+
+    /**
+     * Removes the buckets of recipients that have not been sent to recently, as they would behave like new buckets anyway.
+     */
+    protected void evictIdleRecipients() {
+        Iterator<Map.Entry<String, TokenBucket>> iterator = recipientBuckets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().isFull()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    int getRecipientBucketCount() {
+        return recipientBuckets.size();
+    }
+
+    private long reserve(TokenBucket bucket) {
+        return bucket != null ? bucket.reserve(maxWaitNanos) : 0;
+    }
+
+    private static void release(TokenBucket bucket) {
+        if (bucket != null) {
+            bucket.release();
+        }
+    }
+
+    private static <K> TokenBucket bucket(ConcurrentMap<K, TokenBucket> buckets, K key, Limit limit) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            TokenBucket created = limit.createBucket();
+            bucket = buckets.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    private static class Limit {
+
+        private final double permitsPerSecond;
+        private final int burst;
+
+        Limit(double permitsPerSecond, int burst) {
+            // validates the limit eagerly
+            new TokenBucket(permitsPerSecond, burst);
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
+
+        TokenBucket createBucket() {
+            return new TokenBucket(permitsPerSecond, burst);
+        }
+    }
+
+    /**
+     * Builder for {@link SendRateLimiter} instances. Limits that are not configured are not applied.
+     */
+    public static class Builder {
+
+        private Limit globalLimit;
+        private Limit pageLimit;
+        private Limit recipientLimit;
+        private long maxWaitNanos;
+
+        protected Builder() {
+        }
+
+        /**
+         * Limits the send operations of all pages together.
+         *
+         * @param permitsPerSecond the number of send operations per second
+         * @param burst            the maximum number of send operations at once
+         */
+        public Builder globalLimit(double permitsPerSecond, int burst) {
+            this.globalLimit = new Limit(permitsPerSecond, burst);
+            return this;
+        }
+
+        /**
+         * Limits the send operations per page.
+         *
+         * @param permitsPerSecond the number of send operations per second
+         * @param burst            the maximum number of send operations at once
+         */
+        public Builder pageLimit(double permitsPerSecond, int burst) {
+            this.pageLimit = new Limit(permitsPerSecond, burst);
+            return this;
+        }
+
+        /**
+         * Limits the send operations per recipient.
+         *
+         * @param permitsPerSecond the number of send operations per second
+         * @param burst            the maximum number of send operations at once
+         */
+        public Builder recipientLimit(double permitsPerSecond, int burst) {
+            this.recipientLimit = new Limit(permitsPerSecond, burst);
+            return this;
+        }
+
+        /**
+         * Sets the maximum time to wait for a permit before failing. Defaults to {@code 0}, failing fast.
+         *
+         * @param maxWait the maximum wait time, must not be negative
+         * @param unit    the time unit, not null
+         */
+        public Builder maxWait(long maxWait, TimeUnit unit) {
+            if (maxWait < 0) {
+                throw new IllegalArgumentException("'maxWait' must not be negative");
+            }
+            this.maxWaitNanos = requireNonNull(unit, "'unit' must not be null").toNanos(maxWait);
+            return this;
+        }
+
+        public SendRateLimiter build() {
+            return new SendRateLimiter(this);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.tracing;
+
+/**
+ * A span started by a {@link MessengerTracer}. A span must be ended on the thread that started it.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public interface MessengerSpan {
+
+    /**
+     * Sets an attribute on this span. Attributes with a {@code null} value are ignored.
+     *
+     * @param key   the attribute name
+     * @param value the attribute value
+     * @return this span
+     */
+    MessengerSpan setAttribute(String key, String value);
+
+    /**
+     * Sets an attribute on this span.
+     *
+     * @param key   the attribute name
+     * @param value the attribute value
+     * @return this span
+     */
+    MessengerSpan setAttribute(String key, long value);
+
+    /**
+     * Sets an attribute on this span.
+     *
+     * @param key   the attribute name
+     * @param value the attribute value
+     * @return this span
+     */
+    MessengerSpan setAttribute(String key, boolean value);
+
+    /**
+     * Records the failure of the traced operation on this span.
+     *
+     * @param failure the failure
+     */
+    void recordFailure(Throwable failure);
+
+    /**
+     * Ends this span and restores the span that was current when this span was started.
+     */
+    void end();
+}
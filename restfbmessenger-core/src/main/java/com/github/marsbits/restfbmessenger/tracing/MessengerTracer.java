@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.tracing;
+
+/**
+ * Service provider interface tracing the lifecycle from a received webhook to the Send API calls it triggers, e.g. with OpenTelemetry.
+ * <p>
+ * A span is started per webhook callback ({@value #WEBHOOK_SPAN_NAME}), per messaging or standby item ({@value
+ * #MESSAGING_ITEM_SPAN_NAME}) and per Send API call ({@value #SEND_SPAN_NAME}). Each span is started as a child of the current span of the
+ * calling thread and becomes the current span until it is ended, so the spans of a webhook form a single trace. The trace context is
+ * propagated to the dispatch, asynchronous send and webhook executors by {@linkplain #wrap(Runnable) wrapping} the submitted tasks.
+ * <p>
+ * By default the {@link NoopMessengerTracer} is used, which does not record anything.
+ *
+ * @author Marcel Overdijk
+ * @see com.github.marsbits.restfbmessenger.DefaultMessenger#setTracer(MessengerTracer)
+ * @since 2.3.0
+ */
+public interface MessengerTracer {
+
+    /**
+     * The name of the span of a webhook callback.
+     */
+    String WEBHOOK_SPAN_NAME = "messenger.webhook";
+
+    /**
+     * The name of the span of a messaging or standby item.
+     */
+    String MESSAGING_ITEM_SPAN_NAME = "messenger.messaging_item";
+
+    /**
+     * The name of the span of a Send API call.
+     */
+    String SEND_SPAN_NAME = "messenger.send";
+
+    /**
+     * The webhook payload size attribute name.
+     */
+    String PAYLOAD_SIZE_ATTRIBUTE = "messenger.payload.size";
+
+    /**
+     * The messaging event type attribute name.
+     */
+    String EVENT_TYPE_ATTRIBUTE = "messenger.event_type";
+
+    /**
+     * The standby attribute name.
+     */
+    String STANDBY_ATTRIBUTE = "messenger.standby";
+
+    /**
+     * The sender id attribute name.
+     */
+    String SENDER_ID_ATTRIBUTE = "messenger.sender.id";
+
+    /**
+     * The send operation attribute name.
+     */
+    String OPERATION_ATTRIBUTE = "messenger.operation";
+
+    /**
+     * The Graph API error code attribute name.
+     */
+    String ERROR_CODE_ATTRIBUTE = "messenger.error.code";
+
+    /**
+     * Starts a span as a child of the current span of the calling thread and makes it the current span until it is ended.
+     *
+     * @param name the span name
+     * @return the started span
+     */
+    MessengerSpan startSpan(String name);
+
+    /**
+     * Returns a task running the given task with the trace context of the calling thread, so spans started by the task on another
+     * thread are part of the same trace.
+     *
+     * @param task the task
+     * @return the wrapped task, or the given task if there is no trace context to propagate
+     */
+    Runnable wrap(Runnable task);
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.tracing;
+
+/**
+ * {@link MessengerTracer} implementation that does not record anything. Its spans are a shared instance and tasks are not wrapped, so
+ * tracing costs nothing when disabled.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public final class NoopMessengerTracer implements MessengerTracer {
+
+    public static final NoopMessengerTracer INSTANCE = new NoopMessengerTracer();
+
+    private static final MessengerSpan NOOP_SPAN = new MessengerSpan() {
+
+        @Override
+        public MessengerSpan setAttribute(String key, String value) {
+            return this;
+        }
+
+        @Override
+        public MessengerSpan setAttribute(String key, long value) {
+            return this;
+        }
+
+        @Override
+        public MessengerSpan setAttribute(String key, boolean value) {
+            return this;
+        }
+
+        @Override
+        public void recordFailure(Throwable failure) {
+        }
+
+        @Override
+        public void end() {
+        }
+    };
+
+    private NoopMessengerTracer() {
+    }
+
+    @Override
+    public MessengerSpan startSpan(String name) {
+        return NOOP_SPAN;
+    }
+
+    @Override
+    public Runnable wrap(Runnable task) {
+        return task;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Executor that partitions tasks over a fixed number of single-threaded lanes by key.
+ * <p>
+ * Tasks submitted with the same key are always executed on the same lane, and thus in submission order, while tasks with different keys
+ * may be executed in parallel. Each lane has a bounded queue; the {@link OverflowPolicy} determines what happens when the queue of a lane
+ * is full.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class PartitionedExecutor {
+
+    /**
+     * The policy applied when the queue of a lane is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Blocks the submitting thread until the lane has room for the task. Preserves the order per key.
+         */
+        BLOCK,
+
+        /**
+         * Rejects the task by throwing a {@link RejectedExecutionException}.
+         */
+        REJECT,
+
+        /**
+         * Executes the task on the submitting thread. Note this does not preserve the order per key.
+         */
+        CALLER_RUNS
+    }
+
+    private final ThreadPoolExecutor[] lanes;
+
+    /**
+     * Creates a {@code PartitionedExecutor} instance using daemon threads named {@code dispatch-N}.
+     *
+     * @param laneCount      the number of lanes, must be positive
+     * @param queueCapacity  the queue capacity of each lane, must be positive
+     * @param overflowPolicy the overflow policy, not null
+     */
+    public PartitionedExecutor(int laneCount, int queueCapacity, OverflowPolicy overflowPolicy) {
+        this(laneCount, queueCapacity, overflowPolicy, new NamedThreadFactory("dispatch"));
+    }
+
+    /**
+     * Creates a {@code PartitionedExecutor} instance.
+     *
+     * @param laneCount      the number of lanes, must be positive
+     * @param queueCapacity  the queue capacity of each lane, must be positive
+     * @param overflowPolicy the overflow policy, not null
+     * @param threadFactory  the thread factory, not null
+     */
+    public PartitionedExecutor(int laneCount, int queueCapacity, OverflowPolicy overflowPolicy, ThreadFactory threadFactory) {
+        if (laneCount <= 0) {
+            throw new IllegalArgumentException("'laneCount' must be positive");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("'queueCapacity' must be positive");
+        }
+        requireNonNull(overflowPolicy, "'overflowPolicy' must not be null");
+        requireNonNull(threadFactory, "'threadFactory' must not be null");
+        RejectedExecutionHandler rejectedExecutionHandler;
+        switch (overflowPolicy) {
+            case BLOCK:
+                rejectedExecutionHandler = new BlockPolicy();
+                break;
+            case CALLER_RUNS:
+                rejectedExecutionHandler = new ThreadPoolExecutor.CallerRunsPolicy();
+                break;
+            default:
+                rejectedExecutionHandler = new ThreadPoolExecutor.AbortPolicy();
+        }
+        this.lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+                    threadFactory, rejectedExecutionHandler);
+        }
+    }
+
+    /**
+     * Executes the given task on the lane of the given key.
+     *
+     * @param key  the partition key, tasks with a {@code null} key are executed on the first lane
+     * @param task the task, not null
+     * @throws RejectedExecutionException if the task cannot be accepted
+     */
+    public void execute(Object key, Runnable task) {
+        requireNonNull(task, "'task' must not be null");
+        lanes[getLane(key)].execute(task);
+    }
+
+    /**
+     * Returns the number of lanes.
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Returns the number of tasks queued on all lanes, not including the tasks being executed.
+     *
+     * @since 2.3.0
+     */
+    public int getQueueSize() {
+        int size = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            size += lane.getQueue().size();
+        }
+        return size;
+    }
+
+    int getLane(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode();
+        // spread the higher bits as hash codes of similar keys tend to differ in the lower bits only
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    /**
+     * Initiates an orderly shutdown; previously submitted tasks are executed, but no new tasks will be accepted.
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    /**
+     * Attempts to stop all executing tasks and returns the tasks that were awaiting execution.
+     */
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks = new ArrayList<>();
+        for (ThreadPoolExecutor lane : lanes) {
+            tasks.addAll(lane.shutdownNow());
+        }
+        return tasks;
+    }
+
+    /**
+     * Returns whether this executor has been shut down.
+     */
+    public boolean isShutdown() {
+        return lanes[0].isShutdown();
+    }
+
+    /**
+     * Blocks until all lanes have terminated after a shutdown request, or the timeout occurs.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the time unit of the timeout argument
+     * @return {@code true} if all lanes terminated, {@code false} if the timeout elapsed before termination
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolExecutor lane : lanes) {
+            if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class BlockPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+            try {
+                executor.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for lane capacity", e);
+            }
+        }
+    }
+}
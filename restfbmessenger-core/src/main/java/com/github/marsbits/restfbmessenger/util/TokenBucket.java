@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket rate limiter.
+ * <p>
+ * The bucket is refilled at a fixed rate of permits per second and holds at most {@code burst} permits. Instead of counting tokens the
+ * bucket keeps the theoretical arrival time of the next permit (the generic cell rate algorithm), so acquiring a permit is a single
+ * compare-and-set on an {@link AtomicLong} and no refill thread is needed.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class TokenBucket {
+
+    private final long interval;
+    private final long tolerance;
+    private final AtomicLong arrival;
+
+    /**
+     * Creates a {@code TokenBucket} instance.
+     *
+     * @param permitsPerSecond the number of permits per second, must be positive
+     * @param burst            the maximum number of permits that can be acquired at once, must be positive
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0)) {
+            throw new IllegalArgumentException("'permitsPerSecond' must be positive");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("'burst' must be positive");
+        }
+        this.interval = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.tolerance = interval * burst;
+        this.arrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Acquires a permit if one is available right now.
+     *
+     * @return {@code true} if the permit was acquired, otherwise {@code false}
+     */
+    public boolean tryAcquire() {
+        return reserve(0) == 0;
+    }
+
+    /**
+     * Reserves a permit if it becomes available within the given maximum wait time. The caller must wait the returned time before using
+     * the permit.
+     *
+     * @param maxWaitNanos the maximum wait time in nanoseconds
+     * @return the time in nanoseconds to wait before the permit may be used, or {@code -1} if no permit is available within the maximum
+     * wait time, in which case nothing is reserved
+     */
+    public long reserve(long maxWaitNanos) {
+        return reserve(System.nanoTime(), maxWaitNanos);
+    }
+
+    long reserve(long now, long maxWaitNanos) {
+        while (true) {
+            long current = arrival.get();
+            long next = Math.max(current, now) + interval;
+            long wait = next - now - tolerance;
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return Math.max(0L, wait);
+            }
+        }
+    }
+
+    /**
+     * Returns a previously reserved permit, e.g. because the operation it was reserved for has not been performed after all.
+     */
+    public void release() {
+        arrival.addAndGet(-interval);
+    }
+
+    /**
+     * Returns whether the bucket is full, meaning it would behave exactly like a newly created bucket.
+     */
+    public boolean isFull() {
+        return isFull(System.nanoTime());
+    }
+
+    boolean isFull(long now) {
+        return arrival.get() <= now;
+    }
+}
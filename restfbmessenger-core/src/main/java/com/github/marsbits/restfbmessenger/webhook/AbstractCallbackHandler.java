@@ -17,13 +17,28 @@
 package com.github.marsbits.restfbmessenger.webhook;
 
 import com.github.marsbits.restfbmessenger.Messenger;
+import com.github.marsbits.restfbmessenger.dedup.MessagingDeduplicator;
+import com.github.marsbits.restfbmessenger.metrics.MessengerMetrics;
+import com.github.marsbits.restfbmessenger.tracing.MessengerSpan;
+import com.github.marsbits.restfbmessenger.tracing.MessengerTracer;
+import com.github.marsbits.restfbmessenger.tracing.NoopMessengerTracer;
+import com.github.marsbits.restfbmessenger.util.PartitionedExecutor;
 import com.restfb.types.webhook.WebhookEntry;
 import com.restfb.types.webhook.WebhookObject;
 import com.restfb.types.webhook.messaging.MessagingItem;
 
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
+import static com.github.marsbits.restfbmessenger.tracing.MessengerTracer.EVENT_TYPE_ATTRIBUTE;
+import static com.github.marsbits.restfbmessenger.tracing.MessengerTracer.MESSAGING_ITEM_SPAN_NAME;
+import static com.github.marsbits.restfbmessenger.tracing.MessengerTracer.SENDER_ID_ATTRIBUTE;
+import static com.github.marsbits.restfbmessenger.tracing.MessengerTracer.STANDBY_ATTRIBUTE;
 import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.WARNING;
 
@@ -38,6 +53,20 @@ import static java.util.logging.Level.WARNING;
  * <p>
  * Special cases are the {@link #fallback(Messenger, MessagingItem)} and {@link #standbyFallback(Messenger, MessagingItem)} methods which
  * are called when the received callback type is unknown. This could potentially happen when Facebook introduces new callback types.
+ * <p>
+ * By default the callbacks are invoked sequentially on the calling thread. A {@link PartitionedExecutor} can be set with {@link
+ * #setDispatchExecutor(PartitionedExecutor)} to invoke the callbacks in parallel while preserving the order per sender.
+ * <p>
+ * Each item is classified once into a {@link MessagingEventType}, which selects the callback method to invoke. Instead of overriding the
+ * callback methods, {@link MessagingEventListener}s can be registered per event type using {@link #addListener(MessagingEventType,
+ * MessagingEventListener)} and {@link #addStandbyListener(MessagingEventType, MessagingEventListener)}.
+ * <p>
+ * Items redelivered by Facebook can be skipped by setting a {@link MessagingDeduplicator} with {@link
+ * #setDeduplicator(MessagingDeduplicator)}. An item is only remembered once its callback returned without exception.
+ * <p>
+ * The dispatch count and duration per event type can be recorded by setting {@link MessengerMetrics} with {@link
+ * #setMetrics(MessengerMetrics)}, and a span per item can be started by setting a {@link MessengerTracer} with {@link
+ * #setTracer(MessengerTracer)}.
  *
  * @author Marcel Overdijk
  * @since 1.0.0
@@ -46,6 +75,16 @@ public abstract class AbstractCallbackHandler implements CallbackHandler {
 
     private static final Logger logger = Logger.getLogger(AbstractCallbackHandler.class.getName());
 
+    private final Map<MessagingEventType, List<MessagingEventListener>> listeners = createListenerTable();
+    private final Map<MessagingEventType, List<MessagingEventListener>> standbyListeners = createListenerTable();
+
+    private volatile PartitionedExecutor dispatchExecutor;
+    private volatile MessagingDeduplicator deduplicator;
+    private volatile MessengerMetrics metrics;
+    private volatile MessengerTracer tracer = NoopMessengerTracer.INSTANCE;
+    // the metrics the dispatch queue is registered with, so it is registered only once
+    private MessengerMetrics queueMetrics;
+
     @Override
     public final void onCallback(Messenger messenger, WebhookObject webhookObject) {
         if (webhookObject != null) {
@@ -59,78 +98,327 @@ public abstract class AbstractCallbackHandler implements CallbackHandler {
                 // Process the messaging items.
                 if (entry.getMessaging() != null) {
                     for (MessagingItem messaging : entry.getMessaging()) {
-                        if (logger.isLoggable(FINE)) {
-                            logger.fine(format("Handling messaging item: %s", messaging));
-                        }
-                        if (messaging.isMessage()) {
-                            if (messaging.getMessage().isEcho()) {
-                                onMessageEcho(messenger, messaging);
-                            } else {
-                                onMessage(messenger, messaging);
-                            }
-                        } else if (messaging.isDelivery()) {
-                            onMessageDelivered(messenger, messaging);
-                        } else if (messaging.isRead()) {
-                            onMessageRead(messenger, messaging);
-                        } else if (messaging.isPostback()) {
-                            onPostback(messenger, messaging);
-                        } else if (messaging.isOptin()) {
-                            onOptin(messenger, messaging);
-                        } else if (messaging.isReferral()) {
-                            onReferral(messenger, messaging);
-                        } else if (messaging.isPayment()) {
-                            onPayment(messenger, messaging);
-                        } else if (messaging.isCheckoutUpdate()) {
-                            onCheckoutUpdate(messenger, messaging);
-                        } else if (messaging.isAccountLinking()) {
-                            onAccountLinking(messenger, messaging);
-                        } else if (messaging.isPolicyEnforcement()) {
-                            onPolicyEnforcement(messenger, messaging);
-                        } else if (messaging.isTakeThreadControl()) {
-                            onTakeThreadControl(messenger, messaging);
-                        } else if (messaging.isPassThreadControl()) {
-                            onPassThreadControl(messenger, messaging);
-                        } else if (messaging.getAppRoles() != null) {
-                            onAppRoles(messenger, messaging);
-                        } else {
-                            if (logger.isLoggable(WARNING)) {
-                                Class clazz = messaging.getItem() != null ? messaging.getItem().getClass() : null;
-                                logger.warning(format("Unknown inner messaging item: %s", clazz));
-                            }
-                            fallback(messenger, messaging);
-                        }
+                        dispatch(messenger, messaging, false);
                     }
                 }
 
                 // Process the standby items.
                 if (entry.getStandby() != null) {
                     for (MessagingItem standby : entry.getStandby()) {
-                        if (logger.isLoggable(FINE)) {
-                            logger.fine(format("Handling standby item: %s", standby));
-                        }
-                        if (standby.isMessage()) {
-                            if (standby.getMessage().isEcho()) {
-                                onStandbyMessageEcho(messenger, standby);
-                            } else {
-                                onStandbyMessage(messenger, standby);
-                            }
-                        } else if (standby.isDelivery()) {
-                            onStandbyMessageDelivered(messenger, standby);
-                        } else if (standby.isRead()) {
-                            onStandbyMessageRead(messenger, standby);
-                        } else {
-                            if (logger.isLoggable(WARNING)) {
-                                Class clazz = standby.getItem() != null ? standby.getItem().getClass() : null;
-                                logger.warning(format("Unknown inner standby item: %s", clazz));
-                            }
-                            standbyFallback(messenger, standby);
-                        }
+                        dispatch(messenger, standby, true);
                     }
                 }
             }
         }
     }
 
+    private void dispatch(final Messenger messenger, final MessagingItem item, final boolean standby) {
+        PartitionedExecutor executor = this.dispatchExecutor;
+        if (executor == null) {
+            handleOnce(messenger, item, standby);
+            return;
+        }
+        // partition by sender so the items of a single conversation are handled in order
+        String senderId = item.getSender() != null ? item.getSender().getId() : null;
+        executor.execute(senderId, tracer.wrap(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    handleOnce(messenger, item, standby);
+                } catch (Exception e) {
+                    logger.severe(format("Exception handling %s item: %s", standby ? "standby" : "messaging", e.getMessage()));
+                }
+            }
+        }));
+    }
+
+    private void handleOnce(Messenger messenger, MessagingItem item, boolean standby) {
+        MessagingDeduplicator deduplicator = this.deduplicator;
+        if (deduplicator == null) {
+            handle(messenger, item, standby);
+            return;
+        }
+        // the item is claimed, so a redelivery received while it is being handled is skipped
+        if (deduplicator.isDuplicate(item, standby)) {
+            if (logger.isLoggable(FINE)) {
+                logger.fine(format("Skipping duplicate %s item: %s", standby ? "standby" : "messaging", item));
+            }
+            return;
+        }
+        boolean handled = false;
+        try {
+            handle(messenger, item, standby);
+            handled = true;
+        } finally {
+            // only marked once handled, so an item whose handling failed is handled again when it is redelivered
+            if (handled) {
+                deduplicator.markHandled(item, standby);
+            } else {
+                deduplicator.release(item, standby);
+            }
+        }
+    }
+
+    private void handle(Messenger messenger, MessagingItem item, boolean standby) {
+        MessagingEventType type = MessagingEventType.of(item);
+        MessengerMetrics metrics = this.metrics;
+        MessengerTracer tracer = this.tracer;
+        if (metrics == null && tracer == NoopMessengerTracer.INSTANCE) {
+            handle(messenger, item, type, standby);
+            return;
+        }
+        MessengerSpan span = tracer.startSpan(MESSAGING_ITEM_SPAN_NAME)
+                .setAttribute(EVENT_TYPE_ATTRIBUTE, type.name().toLowerCase())
+                .setAttribute(STANDBY_ATTRIBUTE, standby)
+                .setAttribute(SENDER_ID_ATTRIBUTE, item.getSender() != null ? item.getSender().getId() : null);
+        long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            handle(messenger, item, type, standby);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            span.recordFailure(e);
+            throw e;
+        } finally {
+            if (metrics != null) {
+                metrics.messagingItemDispatched(type, standby, System.nanoTime() - start, failure);
+            }
+            span.end();
+        }
+    }
+
+    private void handle(Messenger messenger, MessagingItem item, MessagingEventType type, boolean standby) {
+        if (standby) {
+            handleStandby(messenger, item, type);
+        } else {
+            handleMessaging(messenger, item, type);
+        }
+    }
+
+    private void handleMessaging(Messenger messenger, MessagingItem messaging, MessagingEventType type) {
+        if (logger.isLoggable(FINE)) {
+            logger.fine(format("Handling messaging item: %s", messaging));
+        }
+        switch (type) {
+            case MESSAGE:
+                onMessage(messenger, messaging);
+                break;
+            case MESSAGE_ECHO:
+                onMessageEcho(messenger, messaging);
+                break;
+            case MESSAGE_DELIVERED:
+                onMessageDelivered(messenger, messaging);
+                break;
+            case MESSAGE_READ:
+                onMessageRead(messenger, messaging);
+                break;
+            case POSTBACK:
+                onPostback(messenger, messaging);
+                break;
+            case OPTIN:
+                onOptin(messenger, messaging);
+                break;
+            case REFERRAL:
+                onReferral(messenger, messaging);
+                break;
+            case PAYMENT:
+                onPayment(messenger, messaging);
+                break;
+            case CHECKOUT_UPDATE:
+                onCheckoutUpdate(messenger, messaging);
+                break;
+            case ACCOUNT_LINKING:
+                onAccountLinking(messenger, messaging);
+                break;
+            case POLICY_ENFORCEMENT:
+                onPolicyEnforcement(messenger, messaging);
+                break;
+            case TAKE_THREAD_CONTROL:
+                onTakeThreadControl(messenger, messaging);
+                break;
+            case PASS_THREAD_CONTROL:
+                onPassThreadControl(messenger, messaging);
+                break;
+            case APP_ROLES:
+                onAppRoles(messenger, messaging);
+                break;
+            default:
+                if (logger.isLoggable(WARNING)) {
+                    Class clazz = messaging.getItem() != null ? messaging.getItem().getClass() : null;
+                    logger.warning(format("Unknown inner messaging item: %s", clazz));
+                }
+                fallback(messenger, messaging);
+        }
+        notifyListeners(listeners.get(type), messenger, messaging);
+    }
+
+    private void handleStandby(Messenger messenger, MessagingItem standby, MessagingEventType type) {
+        if (logger.isLoggable(FINE)) {
+            logger.fine(format("Handling standby item: %s", standby));
+        }
+        switch (type) {
+            case MESSAGE:
+                onStandbyMessage(messenger, standby);
+                break;
+            case MESSAGE_ECHO:
+                onStandbyMessageEcho(messenger, standby);
+                break;
+            case MESSAGE_DELIVERED:
+                onStandbyMessageDelivered(messenger, standby);
+                break;
+            case MESSAGE_READ:
+                onStandbyMessageRead(messenger, standby);
+                break;
+            default:
+                if (logger.isLoggable(WARNING)) {
+                    Class clazz = standby.getItem() != null ? standby.getItem().getClass() : null;
+                    logger.warning(format("Unknown inner standby item: %s", clazz));
+                }
+                standbyFallback(messenger, standby);
+        }
+        notifyListeners(standbyListeners.get(type), messenger, standby);
+    }
+
+    private static Map<MessagingEventType, List<MessagingEventListener>> createListenerTable() {
+        Map<MessagingEventType, List<MessagingEventListener>> table = new EnumMap<>(MessagingEventType.class);
+        for (MessagingEventType type : MessagingEventType.values()) {
+            table.put(type, new CopyOnWriteArrayList<MessagingEventListener>());
+        }
+        return table;
+    }
+
+    private static void notifyListeners(List<MessagingEventListener> listeners, Messenger messenger, MessagingItem messaging) {
+        if (!listeners.isEmpty()) {
+            for (MessagingEventListener listener : listeners) {
+                listener.onEvent(messenger, messaging);
+            }
+        }
+    }
+
+    /**
+     * Registers a listener for messaging items of the given type. Listeners are invoked after the corresponding callback method, in
+     * registration order.
+     *
+     * @param type     the messaging event type, not null
+     * @param listener the listener, not null
+     * @since 2.3.0
+     */
+    public void addListener(MessagingEventType type, MessagingEventListener listener) {
+        requireNonNull(type, "'type' must not be null");
+        requireNonNull(listener, "'listener' must not be null");
+        listeners.get(type).add(listener);
+    }
+
+    /**
+     * Registers a listener for standby items of the given type. Listeners are invoked after the corresponding standby callback method, in
+     * registration order.
+     *
+     * @param type     the messaging event type, not null
+     * @param listener the listener, not null
+     * @since 2.3.0
+     */
+    public void addStandbyListener(MessagingEventType type, MessagingEventListener listener) {
+        requireNonNull(type, "'type' must not be null");
+        requireNonNull(listener, "'listener' must not be null");
+        standbyListeners.get(type).add(listener);
+    }
+
+    /**
+     * Returns the executor the messaging and standby items are dispatched to, or {@code null} if the items are handled sequentially on
+     * the calling thread.
+     *
+     * @since 2.3.0
+     */
+    public PartitionedExecutor getDispatchExecutor() {
+        return dispatchExecutor;
+    }
+
+    /**
+     * Sets the executor the messaging and standby items are dispatched to. The items are partitioned by sender id, so items of the same
+     * sender are handled in order while items of different senders may be handled in parallel. When {@code null} (the default) the items
+     * are handled sequentially on the calling thread.
+     * <p>
+     * The executor is not shut down by this callback handler.
+     *
+     * @param dispatchExecutor the dispatch executor
+     * @since 2.3.0
+     */
+    public void setDispatchExecutor(PartitionedExecutor dispatchExecutor) {
+        this.dispatchExecutor = dispatchExecutor;
+    }
+
+    /**
+     * Returns the deduplicator skipping redelivered items, or {@code null} if items are not deduplicated.
+     *
+     * @since 2.3.0
+     */
+    public MessagingDeduplicator getDeduplicator() {
+        return deduplicator;
+    }
+
+    /**
+     * Sets the deduplicator skipping messaging and standby items which have been handled before, e.g. when Facebook redelivers a webhook
+     * that was not acknowledged in time. Items are marked as handled once their callback returned without exception, so an item whose
+     * callback failed is handled again when it is redelivered. When {@code null} (the default) all items are handled.
+     *
+     * @param deduplicator the deduplicator
+     * @since 2.3.0
+     */
+    public void setDeduplicator(MessagingDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+    }
+
+    /**
+     * Returns the metrics recording the dispatch of the items, or {@code null} if no metrics are recorded.
+     *
+     * @since 2.3.0
+     */
+    public MessengerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics recording the dispatch count and duration of the items per event type, and the number of items queued on the
+     * dispatch executor.
+     *
+     * @param metrics the metrics, may be null to not record metrics
+     * @since 2.3.0
+     */
+    public synchronized void setMetrics(MessengerMetrics metrics) {
+        this.metrics = metrics;
+        if (metrics != null && metrics != queueMetrics) {
+            queueMetrics = metrics;
+            metrics.registerQueue("dispatch", new MessengerMetrics.QueueDepth() {
+
+                @Override
+                public long get() {
+                    PartitionedExecutor executor = dispatchExecutor;
+                    return executor != null ? executor.getQueueSize() : 0;
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the tracer starting a span per item.
+     *
+     * @since 2.3.0
+     */
+    public MessengerTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Sets the tracer starting a span per item. The trace context of the webhook is propagated to the dispatch executor.
+     *
+     * @param tracer the tracer, may be null to not trace the items
+     * @since 2.3.0
+     */
+    public void setTracer(MessengerTracer tracer) {
+        this.tracer = tracer != null ? tracer : NoopMessengerTracer.INSTANCE;
+    }
+
     /**
      * Handles a message callback.
      *
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.webhook;
+
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.logging.Level.FINE;
+
+/**
+ * {@link SignatureVerifier} verifying the {@code X-Hub-Signature-256} ({@code sha256=}) and {@code X-Hub-Signature} ({@code sha1=})
+ * HMAC signatures calculated with the app secret. The algorithm is selected from the signature prefix.
+ * <p>
+ * A pre-initialized {@link Mac} is kept per thread and algorithm, and the hashes are compared in constant time.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class HmacSignatureVerifier implements SignatureVerifier {
+
+    private static final Logger logger = Logger.getLogger(HmacSignatureVerifier.class.getName());
+
+    public static final String HMAC_SHA1_ALGORITHM = "HmacSHA1";
+    public static final String HMAC_SHA256_ALGORITHM = "HmacSHA256";
+
+    public static final String SHA1_SIGNATURE_PREFIX = "sha1=";
+    public static final String SHA256_SIGNATURE_PREFIX = "sha256=";
+
+    private final SecretKeySpec sha1SigningKey;
+    private final SecretKeySpec sha256SigningKey;
+
+    // mac instances are not thread-safe; keep a pre-initialized instance per thread
+    private final ThreadLocal<Mac> sha1Macs = new ThreadLocal<Mac>() {
+
+        @Override
+        protected Mac initialValue() {
+            return createMac(sha1SigningKey);
+        }
+    };
+
+    private final ThreadLocal<Mac> sha256Macs = new ThreadLocal<Mac>() {
+
+        @Override
+        protected Mac initialValue() {
+            return createMac(sha256SigningKey);
+        }
+    };
+
+    /**
+     * Creates a {@code HmacSignatureVerifier} instance.
+     *
+     * @param appSecret the app secret, not null
+     */
+    public HmacSignatureVerifier(String appSecret) {
+        requireNonNull(appSecret, "'appSecret' must not be null");
+        byte[] key = appSecret.getBytes(UTF_8);
+        this.sha1SigningKey = new SecretKeySpec(key, HMAC_SHA1_ALGORITHM);
+        this.sha256SigningKey = new SecretKeySpec(key, HMAC_SHA256_ALGORITHM);
+    }
+
+    @Override
+    public boolean verify(byte[] payload, String signature) {
+        requireNonNull(payload, "'payload' must not be null");
+        Mac mac;
+        byte[] signatureHash;
+        if (signature != null && signature.startsWith(SHA256_SIGNATURE_PREFIX)) {
+            mac = sha256Macs.get();
+            signatureHash = decodeHex(signature, SHA256_SIGNATURE_PREFIX.length());
+        } else if (signature != null && signature.startsWith(SHA1_SIGNATURE_PREFIX)) {
+            mac = sha1Macs.get();
+            signatureHash = decodeHex(signature, SHA1_SIGNATURE_PREFIX.length());
+        } else {
+            mac = null;
+            signatureHash = null;
+        }
+        if (signatureHash == null) {
+            if (logger.isLoggable(FINE)) {
+                logger.fine(format("Invalid signature: %s", signature));
+            }
+            return false;
+        }
+        return MessageDigest.isEqual(mac.doFinal(payload), signatureHash);
+    }
+
+    private static Mac createMac(SecretKeySpec signingKey) {
+        try {
+            Mac mac = Mac.getInstance(signingKey.getAlgorithm());
+            mac.init(signingKey);
+            return mac;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(
+                    format("%s algorithm not supported", signingKey.getAlgorithm()));
+        } catch (InvalidKeyException e) {
+            throw new IllegalStateException("Signing key is inappropriate");
+        }
+    }
+
+    private static byte[] decodeHex(String value, int offset) {
+        int length = value.length() - offset;
+        if (length == 0 || length % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(value.charAt(offset + i * 2), 16);
+            int low = Character.digit(value.charAt(offset + i * 2 + 1), 16);
+            if (high == -1 || low == -1) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.webhook;
+
+import com.github.marsbits.restfbmessenger.Messenger;
+import com.restfb.types.webhook.messaging.MessagingItem;
+
+/**
+ * Listener for messaging events of a specific {@link MessagingEventType}.
+ *
+ * @author Marcel Overdijk
+ * @see AbstractCallbackHandler#addListener(MessagingEventType, MessagingEventListener)
+ * @see AbstractCallbackHandler#addStandbyListener(MessagingEventType, MessagingEventListener)
+ * @since 2.3.0
+ */
+public interface MessagingEventListener {
+
+    /**
+     * Handles a messaging event.
+     *
+     * @param messenger the {@code Messenger} instance that retrieved the callback
+     * @param messaging the {@code MessagingItem} containing the event data
+     */
+    void onEvent(Messenger messenger, MessagingItem messaging);
+}
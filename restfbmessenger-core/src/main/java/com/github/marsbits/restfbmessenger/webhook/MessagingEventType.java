@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.webhook;
+
+import com.restfb.types.webhook.messaging.AccountLinkingItem;
+import com.restfb.types.webhook.messaging.AppRoles;
+import com.restfb.types.webhook.messaging.CheckoutUpdateItem;
+import com.restfb.types.webhook.messaging.DeliveryItem;
+import com.restfb.types.webhook.messaging.InnerMessagingItem;
+import com.restfb.types.webhook.messaging.MessageItem;
+import com.restfb.types.webhook.messaging.MessagingItem;
+import com.restfb.types.webhook.messaging.OptinItem;
+import com.restfb.types.webhook.messaging.PassThreadControlItem;
+import com.restfb.types.webhook.messaging.PaymentItem;
+import com.restfb.types.webhook.messaging.PolicyEnforcementItem;
+import com.restfb.types.webhook.messaging.PostbackItem;
+import com.restfb.types.webhook.messaging.ReadItem;
+import com.restfb.types.webhook.messaging.ReferralItem;
+import com.restfb.types.webhook.messaging.TakeThreadControlItem;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The types of messaging events contained in a {@link MessagingItem}.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public enum MessagingEventType {
+
+    MESSAGE(MessageItem.class),
+    MESSAGE_ECHO(null),
+    MESSAGE_DELIVERED(DeliveryItem.class),
+    MESSAGE_READ(ReadItem.class),
+    POSTBACK(PostbackItem.class),
+    OPTIN(OptinItem.class),
+    REFERRAL(ReferralItem.class),
+    PAYMENT(PaymentItem.class),
+    CHECKOUT_UPDATE(CheckoutUpdateItem.class),
+    ACCOUNT_LINKING(AccountLinkingItem.class),
+    POLICY_ENFORCEMENT(PolicyEnforcementItem.class),
+    TAKE_THREAD_CONTROL(TakeThreadControlItem.class),
+    PASS_THREAD_CONTROL(PassThreadControlItem.class),
+    APP_ROLES(AppRoles.class),
+
+    /**
+     * An unknown messaging event type. This could potentially happen when Facebook introduces new callback types.
+     */
+    UNKNOWN(null);
+
+    private static final Map<Class<?>, MessagingEventType> ITEM_TYPES = new HashMap<>();
+
+    static {
+        for (MessagingEventType type : values()) {
+            if (type.itemClass != null) {
+                ITEM_TYPES.put(type.itemClass, type);
+            }
+        }
+    }
+
+    private final Class<? extends InnerMessagingItem> itemClass;
+
+    MessagingEventType(Class<? extends InnerMessagingItem> itemClass) {
+        this.itemClass = itemClass;
+    }
+
+    /**
+     * Resolves the messaging event type of the given messaging item.
+     *
+     * @param messaging the messaging item
+     * @return the messaging event type, or {@link #UNKNOWN} if the type could not be resolved
+     */
+    public static MessagingEventType of(MessagingItem messaging) {
+        InnerMessagingItem item = messaging != null ? messaging.getItem() : null;
+        if (item == null) {
+            return UNKNOWN;
+        }
+        MessagingEventType type = ITEM_TYPES.get(item.getClass());
+        if (type == null) {
+            type = UNKNOWN;
+            for (MessagingEventType candidate : values()) {
+                if (candidate.itemClass != null && candidate.itemClass.isInstance(item)) {
+                    type = candidate;
+                    break;
+                }
+            }
+        }
+        if (type == MESSAGE && ((MessageItem) item).isEcho()) {
+            return MESSAGE_ECHO;
+        }
+        return type;
+    }
+}
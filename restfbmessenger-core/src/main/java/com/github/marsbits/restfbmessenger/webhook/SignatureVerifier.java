@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.webhook;
+
+/**
+ * Interface specifying the verification of webhook callback signatures.
+ *
+ * @author Marcel Overdijk
+ * @see HmacSignatureVerifier
+ * @since 2.3.0
+ */
+public interface SignatureVerifier {
+
+    /**
+     * Verifies the signature of the given webhook payload.
+     *
+     * @param payload   the received webhook payload bytes
+     * @param signature the received webhook signature including the algorithm prefix, e.g. {@code sha256=...}
+     * @return {@code true} if the signature is valid, otherwise {@code false}
+     */
+    boolean verify(byte[] payload, String signature);
+}
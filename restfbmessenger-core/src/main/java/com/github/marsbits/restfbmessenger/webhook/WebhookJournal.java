@@ -0,0 +1,358 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.webhook;
+
+import com.github.marsbits.restfbmessenger.DefaultMessenger;
+import com.github.marsbits.restfbmessenger.Messenger;
+import com.github.marsbits.restfbmessenger.journal.Journal;
+import com.github.marsbits.restfbmessenger.journal.JournalReader;
+import com.github.marsbits.restfbmessenger.journal.JournalRecord;
+import com.github.marsbits.restfbmessenger.util.NamedThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Inbound journal that decouples receiving webhooks from handling them.
+ * <p>
+ * The {@link WebhookServlet} appends each verified webhook payload and its signature to the {@link Journal} and acknowledges the webhook
+ * once the payload is durable, so a webhook is not lost when handling it fails or the JVM stops after it was acknowledged. A single
+ * consumer thread reads the journal in order, hands the payloads to {@link Messenger#handleCallback(String, String)} and commits the
+ * offset of every handled payload. When handling a payload fails it is retried with an exponential backoff while the payloads behind it
+ * wait, up to the {@link #setMaxAttempts(int) maximum number of attempts}. A payload still failing after that is passed to {@link
+ * #onDeadLetter(long, byte[], String, Exception)}, which logs it by default, and committed, so a payload that can never be handled does
+ * not stall the journal. After a restart the consumer continues from the committed offset; payloads that were being handled are handled
+ * again.
+ * <p>
+ * The offset is committed once {@code handleCallback} returns, so the callbacks must be handled on the consumer thread. An {@link
+ * AbstractCallbackHandler} with a {@link AbstractCallbackHandler#setDispatchExecutor dispatch executor} returns before the items are
+ * handled, and is therefore rejected by the {@link WebhookServlet} when journaling is enabled.
+ * <p>
+ * When the journal retains committed records, the retained payloads can be replayed with {@link #replay(long)}, e.g. after fixing a bug
+ * in a callback handler.
+ *
+ * @author Marcel Overdijk
+ * @see WebhookServlet#JOURNAL_DIRECTORY_PARAM_NAME
+ * @since 2.3.0
+ */
+public class WebhookJournal implements Closeable {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+    private static final Logger logger = Logger.getLogger(WebhookJournal.class.getName());
+
+    private static final long IDLE_WAIT_MILLIS = 100;
+    private static final long INITIAL_RETRY_BACKOFF_MILLIS = 100;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 30000;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000;
+
+    private final Journal journal;
+    private final Messenger messenger;
+    private final Object signal = new Object();
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile boolean consumerWaiting;
+    private volatile boolean running;
+    private Thread consumer;
+
+    /**
+     * Creates a {@code WebhookJournal} instance.
+     *
+     * @param journal   the journal, not null
+     * @param messenger the messenger handling the journaled webhook callbacks, not null
+     */
+    public WebhookJournal(Journal journal, Messenger messenger) {
+        this.journal = requireNonNull(journal, "'journal' must not be null");
+        this.messenger = requireNonNull(messenger, "'messenger' must not be null");
+    }
+
+    /**
+     * Sets the maximum number of times the consumer attempts to handle a journaled callback before passing it to {@link
+     * #onDeadLetter(long, byte[], String, Exception)} and committing it. Defaults to {@value #DEFAULT_MAX_ATTEMPTS}.
+     *
+     * @param maxAttempts the maximum number of attempts, at least 1
+     * @throws IllegalArgumentException if {@code maxAttempts} is less than 1
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("'maxAttempts' must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Returns the maximum number of times the consumer attempts to handle a journaled callback.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Appends the given webhook callback to the journal and returns once it is durable. Concurrent appends share a single {@code fsync}.
+     *
+     * @param payload   the webhook payload bytes, not null
+     * @param signature the webhook signature
+     * @return the offset of the journaled callback
+     * @throws IOException in case the callback could not be journaled
+     */
+    public long append(byte[] payload, String signature) throws IOException {
+        long offset = journal.append(encode(requireNonNull(payload, "'payload' must not be null"), signature));
+        journal.sync(offset);
+        if (consumerWaiting) {
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Starts the consumer thread handling the journaled callbacks from the committed offset.
+     *
+     * @throws IllegalStateException if the consumer has already been started
+     */
+    public synchronized void start() {
+        if (consumer != null) {
+            throw new IllegalStateException("Webhook journal consumer has already been started");
+        }
+        running = true;
+        final JournalReader reader = journal.reader(journal.getCommittedOffset());
+        consumer = new NamedThreadFactory("webhook-journal").newThread(new Runnable() {
+
+            @Override
+            public void run() {
+                consume(reader);
+            }
+        });
+        consumer.start();
+        logger.info(format("Started webhook journal consumer at offset %d", reader.getOffset()));
+    }
+
+    /**
+     * Handles the journaled callbacks from the given offset up to the current end of the journal on the calling thread, without
+     * committing them. Callbacks failing to be handled are logged and not retried.
+     *
+     * @param offset the offset to replay from, e.g. the {@link #getFirstOffset() first offset}
+     * @return the number of replayed callbacks
+     */
+    public int replay(long offset) {
+        JournalReader reader = journal.reader(offset);
+        long end = journal.getEndOffset();
+        int count = 0;
+        JournalRecord record;
+        while (reader.getOffset() < end && (record = reader.next()) != null) {
+            Exception failure = handle(record);
+            if (failure != null) {
+                logger.log(SEVERE, format("Exception replaying journaled webhook at offset %d: %s", record.getOffset(),
+                        failure.getMessage()), failure);
+            }
+            count++;
+        }
+        logger.info(format("Replayed %d webhook callback(s) from offset %d", count, offset));
+        return count;
+    }
+
+    /**
+     * Returns the offset of the first retained callback.
+     */
+    public long getFirstOffset() {
+        return journal.getFirstOffset();
+    }
+
+    /**
+     * Returns the offset before which all callbacks have been handled.
+     */
+    public long getCommittedOffset() {
+        return journal.getCommittedOffset();
+    }
+
+    /**
+     * Returns the offset following the last journaled callback.
+     */
+    public long getEndOffset() {
+        return journal.getEndOffset();
+    }
+
+    /**
+     * Returns the number of journaled bytes not yet handled by the consumer.
+     */
+    public long getLag() {
+        return journal.getEndOffset() - journal.getCommittedOffset();
+    }
+
+    /**
+     * Stops the consumer, waiting for the callback being handled, and closes the journal.
+     */
+    @Override
+    public void close() throws IOException {
+        Thread consumer;
+        synchronized (this) {
+            running = false;
+            consumer = this.consumer;
+        }
+        if (consumer != null) {
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+            try {
+                consumer.join(SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        journal.close();
+    }
+
+    private void consume(JournalReader reader) {
+        while (running) {
+            JournalRecord record = reader.next();
+            if (record == null) {
+                awaitAppend(reader);
+                continue;
+            }
+            int attempts = 1;
+            long backoff = INITIAL_RETRY_BACKOFF_MILLIS;
+            Exception failure;
+            while ((failure = handle(record)) != null) {
+                if (attempts >= maxAttempts) {
+                    deadLetter(record, failure, attempts);
+                    break;
+                }
+                // the failed callback is not committed, so it is handled again after a restart when the consumer is stopped
+                if (!awaitRetry(record, failure, backoff)) {
+                    return;
+                }
+                attempts++;
+                backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MILLIS);
+            }
+            try {
+                journal.commit(record.getNextOffset());
+            } catch (IOException | RuntimeException e) {
+                logger.log(WARNING, format("Exception committing webhook journal at offset %d", record.getNextOffset()), e);
+            }
+        }
+    }
+
+    private void awaitAppend(JournalReader reader) {
+        synchronized (signal) {
+            consumerWaiting = true;
+            try {
+                // the end offset is read after announcing the wait, so an append either is seen here or notifies
+                if (running && reader.getOffset() >= journal.getEndOffset()) {
+                    signal.wait(IDLE_WAIT_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+                Thread.currentThread().interrupt();
+            } finally {
+                consumerWaiting = false;
+            }
+        }
+    }
+
+    private boolean awaitRetry(JournalRecord record, Exception failure, long backoff) {
+        logger.log(WARNING, format("Exception handling journaled webhook at offset %d, retrying in %d ms: %s", record.getOffset(), backoff,
+                failure.getMessage()), failure);
+        synchronized (signal) {
+            try {
+                if (running) {
+                    signal.wait(backoff);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+                Thread.currentThread().interrupt();
+            }
+        }
+        return running;
+    }
+
+    private void deadLetter(JournalRecord record, Exception failure, int attempts) {
+        logger.severe(format("Giving up on journaled webhook at offset %d after %d attempt(s)", record.getOffset(), attempts));
+        try {
+            byte[] data = record.getData();
+            onDeadLetter(record.getOffset(), decodePayload(data), decodeSignature(data), failure);
+        } catch (RuntimeException e) {
+            logger.log(SEVERE, format("Exception handling dead letter webhook at offset %d", record.getOffset()), e);
+        }
+    }
+
+    /**
+     * Returns the exception thrown handling the given record, or {@code null} when it was handled.
+     */
+    private Exception handle(JournalRecord record) {
+        try {
+            byte[] data = record.getData();
+            byte[] payload = decodePayload(data);
+            String signature = decodeSignature(data);
+            if (messenger instanceof DefaultMessenger) {
+                ((DefaultMessenger) messenger).handleCallback(payload, signature);
+            } else {
+                messenger.handleCallback(new String(payload, UTF_8), signature);
+            }
+            return null;
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    /**
+     * Invoked on the consumer thread with a journaled callback that failed to be handled {@link #setMaxAttempts(int) max attempts}
+     * times, before it is committed. The default implementation logs the payload; override to e.g. store it for later inspection. The
+     * payload can also be replayed with {@link #replay(long)} as long as the journal retains it.
+     *
+     * @param offset    the offset of the journaled callback
+     * @param payload   the webhook payload bytes
+     * @param signature the webhook signature
+     * @param failure   the exception thrown by the last attempt
+     */
+    protected void onDeadLetter(long offset, byte[] payload, String signature, Exception failure) {
+        logger.log(SEVERE, format("Dead letter webhook at offset %d: %s", offset, new String(payload, UTF_8)), failure);
+    }
+
+    private static String decodeSignature(byte[] data) {
+        int signatureLength = ByteBuffer.wrap(data).getInt();
+        return signatureLength >= 0 ? new String(data, 4, signatureLength, UTF_8) : null;
+    }
+
+    private static byte[] decodePayload(byte[] data) {
+        int signatureLength = ByteBuffer.wrap(data).getInt();
+        return Arrays.copyOfRange(data, 4 + Math.max(signatureLength, 0), data.length);
+    }
+
+    /**
+     * Encodes the given webhook callback as a journal record.
+     */
+    static byte[] encode(byte[] payload, String signature) {
+        byte[] signatureBytes = signature != null ? signature.getBytes(UTF_8) : null;
+        int signatureLength = signatureBytes != null ? signatureBytes.length : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + signatureLength + payload.length);
+        buffer.putInt(signatureBytes != null ? signatureLength : -1);
+        if (signatureBytes != null) {
+            buffer.put(signatureBytes);
+        }
+        buffer.put(payload);
+        return buffer.array();
+    }
+}
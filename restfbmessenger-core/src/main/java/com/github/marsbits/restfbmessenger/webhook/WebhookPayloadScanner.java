@@ -0,0 +1,314 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.webhook;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Token-level scanner for webhook payloads.
+ * <p>
+ * The scanner reads the top-level {@code object} field and locates the elements of the top-level {@code entry} array directly on the
+ * UTF-8 payload bytes, without building a JSON tree. This allows webhook objects not sent for a page to be rejected before any JSON
+ * binding takes place, and allows the entries of batched webhooks to be bound one by one. Scanning stops as soon as the {@code object}
+ * field turns out not to match the expected value.
+ * <p>
+ * The entry elements are not validated by the scanner; they are expected to be bound by a JSON mapper which reports malformed input.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public final class WebhookPayloadScanner {
+
+    private static final byte[] OBJECT_KEY = "object".getBytes(UTF_8);
+    private static final byte[] ENTRY_KEY = "entry".getBytes(UTF_8);
+
+    private final byte[] payload;
+    private final String object;
+    private final int[] entryOffsets;
+    private final int entryCount;
+
+    private WebhookPayloadScanner(byte[] payload, String object, int[] entryOffsets, int entryCount) {
+        this.payload = payload;
+        this.object = object;
+        this.entryOffsets = entryOffsets;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * Scans the given webhook payload.
+     *
+     * @param payload        the UTF-8 encoded webhook payload, not null
+     * @param expectedObject the expected value of the {@code object} field; scanning stops early when the value does not match
+     * @return the scanner, or {@code null} if the payload could not be scanned, e.g. because it is not a JSON object or the {@code
+     * object} field is missing, not a plain string or contains escape sequences
+     */
+    public static WebhookPayloadScanner scan(byte[] payload, String expectedObject) {
+        requireNonNull(payload, "'payload' must not be null");
+        try {
+            return new Scanner(payload).scan(expectedObject);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // truncated payload
+            return null;
+        }
+    }
+
+    /**
+     * Returns the value of the top-level {@code object} field.
+     */
+    public String getObject() {
+        return object;
+    }
+
+    /**
+     * Returns whether the payload contains a top-level {@code entry} array. Only available when the {@code object} field matched the
+     * expected value.
+     */
+    public boolean hasEntries() {
+        return entryOffsets != null;
+    }
+
+    /**
+     * Returns the number of elements in the top-level {@code entry} array.
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the raw JSON of the element at the given index of the top-level {@code entry} array.
+     */
+    public String getEntry(int index) {
+        if (index < 0 || index >= entryCount) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        int start = entryOffsets[index * 2];
+        int end = entryOffsets[index * 2 + 1];
+        return new String(payload, start, end - start, UTF_8);
+    }
+
+    /**
+     * Returns the raw JSON of the elements of the top-level {@code entry} array.
+     */
+    public List<String> getEntries() {
+        if (entryCount == 0) {
+            return Collections.emptyList();
+        }
+        List<String> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            entries.add(getEntry(i));
+        }
+        return entries;
+    }
+
+    private static class Scanner {
+
+        private final byte[] payload;
+        private int pos;
+
+        private String object;
+        private int[] entryOffsets;
+        private int entryCount;
+
+        Scanner(byte[] payload) {
+            this.payload = payload;
+        }
+
+        WebhookPayloadScanner scan(String expectedObject) {
+            skipWhitespace();
+            if (payload[pos++] != '{') {
+                return null;
+            }
+            skipWhitespace();
+            if (payload[pos] == '}') {
+                return null;
+            }
+            boolean objectFound = false;
+            while (true) {
+                skipWhitespace();
+                if (payload[pos] != '"') {
+                    return null;
+                }
+                int keyStart = pos + 1;
+                skipString();
+                int keyEnd = pos - 1;
+                skipWhitespace();
+                if (payload[pos++] != ':') {
+                    return null;
+                }
+                skipWhitespace();
+                if (matches(keyStart, keyEnd, OBJECT_KEY)) {
+                    if (!readObject()) {
+                        return null;
+                    }
+                    objectFound = true;
+                    if (!object.equals(expectedObject)) {
+                        // no need to look any further
+                        return new WebhookPayloadScanner(payload, object, null, 0);
+                    }
+                } else if (matches(keyStart, keyEnd, ENTRY_KEY) && payload[pos] == '[') {
+                    if (!readEntries()) {
+                        return null;
+                    }
+                } else if (!skipValue()) {
+                    return null;
+                }
+                skipWhitespace();
+                byte b = payload[pos++];
+                if (b == '}') {
+                    break;
+                }
+                if (b != ',') {
+                    return null;
+                }
+            }
+            skipWhitespace();
+            if (pos != payload.length || !objectFound) {
+                return null;
+            }
+            return new WebhookPayloadScanner(payload, object, entryOffsets, entryCount);
+        }
+
+        private boolean readObject() {
+            if (payload[pos] != '"') {
+                return false;
+            }
+            int start = pos + 1;
+            for (int i = start; i < payload.length; i++) {
+                byte b = payload[i];
+                if (b == '\\') {
+                    return false;
+                }
+                if (b == '"') {
+                    object = new String(payload, start, i - start, UTF_8);
+                    pos = i + 1;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean readEntries() {
+            entryOffsets = new int[16];
+            entryCount = 0;
+            pos++;
+            skipWhitespace();
+            if (payload[pos] == ']') {
+                pos++;
+                return true;
+            }
+            while (true) {
+                skipWhitespace();
+                int start = pos;
+                if (!skipValue()) {
+                    return false;
+                }
+                if (entryCount * 2 == entryOffsets.length) {
+                    int[] offsets = new int[entryOffsets.length * 2];
+                    System.arraycopy(entryOffsets, 0, offsets, 0, entryOffsets.length);
+                    entryOffsets = offsets;
+                }
+                entryOffsets[entryCount * 2] = start;
+                entryOffsets[entryCount * 2 + 1] = pos;
+                entryCount++;
+                skipWhitespace();
+                byte b = payload[pos++];
+                if (b == ']') {
+                    return true;
+                }
+                if (b != ',') {
+                    return false;
+                }
+            }
+        }
+
+        private boolean skipValue() {
+            byte b = payload[pos];
+            if (b == '"') {
+                skipString();
+            } else if (b == '{' || b == '[') {
+                skipNested();
+            } else {
+                int start = pos;
+                while (pos < payload.length && !isDelimiter(payload[pos])) {
+                    pos++;
+                }
+                return pos > start;
+            }
+            return true;
+        }
+
+        private void skipNested() {
+            int depth = 0;
+            do {
+                byte b = payload[pos];
+                if (b == '"') {
+                    skipString();
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+                pos++;
+            } while (depth > 0);
+        }
+
+        private void skipString() {
+            pos++;
+            while (true) {
+                byte b = payload[pos++];
+                if (b == '\\') {
+                    pos++;
+                } else if (b == '"') {
+                    return;
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < payload.length) {
+                byte b = payload[pos];
+                if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                    return;
+                }
+                pos++;
+            }
+        }
+
+        private boolean matches(int start, int end, byte[] key) {
+            if (end - start != key.length) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (payload[start + i] != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isDelimiter(byte b) {
+            return b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.webhook;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when a webhook request body exceeds the maximum request body size of the {@link WebhookServlet}.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class WebhookPayloadTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WebhookPayloadTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -16,11 +16,25 @@
 
 package com.github.marsbits.restfbmessenger.webhook;
 
+import com.github.marsbits.restfbmessenger.DefaultMessenger;
 import com.github.marsbits.restfbmessenger.Messenger;
 import com.github.marsbits.restfbmessenger.MessengerProvider;
+import com.github.marsbits.restfbmessenger.journal.Journal;
+import com.github.marsbits.restfbmessenger.metrics.MessengerMetrics;
+import com.github.marsbits.restfbmessenger.tracing.MessengerTracer;
+import com.github.marsbits.restfbmessenger.tracing.NoopMessengerTracer;
+import com.github.marsbits.restfbmessenger.util.NamedThreadFactory;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import javax.servlet.ServletException;
@@ -31,16 +45,36 @@ import javax.servlet.http.HttpServletResponse;
 import static com.github.marsbits.restfbmessenger.Messenger.HUB_CHALLENGE_PARAM_NAME;
 import static com.github.marsbits.restfbmessenger.Messenger.HUB_MODE_PARAM_NAME;
 import static com.github.marsbits.restfbmessenger.Messenger.HUB_MODE_SUBSCRIBE_VALUE;
+import static com.github.marsbits.restfbmessenger.Messenger.HUB_SIGNATURE_256_HEADER_NAME;
 import static com.github.marsbits.restfbmessenger.Messenger.HUB_SIGNATURE_HEADER_NAME;
 import static com.github.marsbits.restfbmessenger.Messenger.HUB_VERIFY_TOKEN_PARAM_NAME;
 import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.WARNING;
 
 /**
  * Servlet that is responsible for receiving the Facebook Messenger webhook callbacks and delegating them to the configured {@link
  * Messenger} instance.
+ * <p>
+ * By default the webhook callback is handled synchronously on the request thread. When the {@code async} init parameter is set to
+ * {@code true} the servlet verifies the signature, enqueues the payload on a bounded executor and acknowledges the webhook immediately.
+ * The executor can be tuned with the {@code asyncPoolSize}, {@code asyncQueueCapacity} and {@code asyncRejectionPolicy} init parameters.
+ * <p>
+ * Request bodies larger than the {@code maxRequestBodySize} init parameter (1 MiB by default) are rejected with a {@code 413 Request
+ * Entity Too Large} status before the signature is verified.
+ * <p>
+ * When the {@code journalDirectory} init parameter is set, verified webhook payloads are appended to a {@link WebhookJournal} in that
+ * directory and acknowledged once they are durable; the callbacks are handled from the journal by its consumer thread, which attempts
+ * each callback up to {@code journalMaxAttempts} times. The journal cannot be combined with an {@link AbstractCallbackHandler} dispatch
+ * executor.
+ * <p>
+ * When the {@link DefaultMessenger} has {@link MessengerMetrics} set, the servlet records the size of the received webhook payloads and
+ * the depth of the webhook executor queue and journal. When it has a {@link MessengerTracer} set, the trace context of the request is
+ * propagated to the webhook executor.
  *
  * @author Marcel Overdijk
- * @see Messenger#handleCallback(String, String)
+ * @see DefaultMessenger#handleCallback(byte[], String)
  * @see CallbackHandler
  * @since 1.0.0
  */
@@ -53,8 +87,80 @@ public class WebhookServlet extends HttpServlet {
      */
     public static final String MESSENGER_PROVIDER_CLASS_PARAM_NAME = "messengerProviderClass";
 
+    /**
+     * The {@code async} servlet init parameter name.
+     */
+    public static final String ASYNC_PARAM_NAME = "async";
+
+    /**
+     * The {@code asyncPoolSize} servlet init parameter name.
+     */
+    public static final String ASYNC_POOL_SIZE_PARAM_NAME = "asyncPoolSize";
+
+    /**
+     * The {@code asyncQueueCapacity} servlet init parameter name.
+     */
+    public static final String ASYNC_QUEUE_CAPACITY_PARAM_NAME = "asyncQueueCapacity";
+
+    /**
+     * The {@code asyncRejectionPolicy} servlet init parameter name.
+     */
+    public static final String ASYNC_REJECTION_POLICY_PARAM_NAME = "asyncRejectionPolicy";
+
+    /**
+     * The {@code journalDirectory} servlet init parameter name.
+     *
+     * @since 2.3.0
+     */
+    public static final String JOURNAL_DIRECTORY_PARAM_NAME = "journalDirectory";
+
+    /**
+     * The {@code journalRetentionSize} servlet init parameter name.
+     *
+     * @since 2.3.0
+     */
+    public static final String JOURNAL_RETENTION_SIZE_PARAM_NAME = "journalRetentionSize";
+
+    /**
+     * The {@code journalMaxAttempts} servlet init parameter name.
+     *
+     * @since 2.3.0
+     */
+    public static final String JOURNAL_MAX_ATTEMPTS_PARAM_NAME = "journalMaxAttempts";
+
+    /**
+     * The {@code maxRequestBodySize} servlet init parameter name.
+     *
+     * @since 2.3.0
+     */
+    public static final String MAX_REQUEST_BODY_SIZE_PARAM_NAME = "maxRequestBodySize";
+
+    public static final int DEFAULT_ASYNC_POOL_SIZE = 10;
+    public static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 1000;
+    public static final AsyncRejectionPolicy DEFAULT_ASYNC_REJECTION_POLICY = AsyncRejectionPolicy.REJECT;
+    public static final int DEFAULT_MAX_REQUEST_BODY_SIZE = 1024 * 1024;
+
+    private static final long ASYNC_SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private static final int REQUEST_BODY_BUFFER_SIZE = 4096;
+    private static final int MAX_REQUEST_BODY_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> requestBodyBuffer = new ThreadLocal<byte[]>() {
+
+        @Override
+        protected byte[] initialValue() {
+            return new byte[REQUEST_BODY_BUFFER_SIZE];
+        }
+    };
+
     private Messenger messenger;
 
+    private int maxRequestBodySize = DEFAULT_MAX_REQUEST_BODY_SIZE;
+    private boolean async;
+    private ExecutorService executorService;
+    private WebhookJournal webhookJournal;
+    private MessengerMetrics metrics;
+
     public WebhookServlet() {
     }
 
@@ -81,6 +187,98 @@ public class WebhookServlet extends HttpServlet {
                 }
             }
         }
+        maxRequestBodySize = getIntInitParameter(MAX_REQUEST_BODY_SIZE_PARAM_NAME, DEFAULT_MAX_REQUEST_BODY_SIZE);
+        if (maxRequestBodySize <= 0) {
+            logger.severe(format("Invalid servlet init parameter %s: %d; using default: %d", MAX_REQUEST_BODY_SIZE_PARAM_NAME,
+                    maxRequestBodySize, DEFAULT_MAX_REQUEST_BODY_SIZE));
+            maxRequestBodySize = DEFAULT_MAX_REQUEST_BODY_SIZE;
+        }
+        async = Boolean.parseBoolean(getServletConfig().getInitParameter(ASYNC_PARAM_NAME));
+        if (async || isExecutorRequired()) {
+            int poolSize = getIntInitParameter(ASYNC_POOL_SIZE_PARAM_NAME, DEFAULT_ASYNC_POOL_SIZE);
+            int queueCapacity = getIntInitParameter(ASYNC_QUEUE_CAPACITY_PARAM_NAME, DEFAULT_ASYNC_QUEUE_CAPACITY);
+            AsyncRejectionPolicy rejectionPolicy = getRejectionPolicyInitParameter();
+            if (async) {
+                logger.info(format("Webhook callbacks will be handled asynchronously (pool size: %d, queue capacity: %d, "
+                        + "rejection policy: %s)", poolSize, queueCapacity, rejectionPolicy));
+            }
+            executorService = createExecutorService(poolSize, queueCapacity, rejectionPolicy);
+        }
+        String journalDirectory = getServletConfig().getInitParameter(JOURNAL_DIRECTORY_PARAM_NAME);
+        if (journalDirectory != null && journalDirectory.length() > 0) {
+            if (hasDispatchExecutor(messenger)) {
+                // the journal commits a webhook once it is handled, which a dispatch executor defers
+                throw new ServletException("Webhook journal cannot be used with a callback handler dispatch executor");
+            }
+            long retentionSize = getLongInitParameter(JOURNAL_RETENTION_SIZE_PARAM_NAME, 0);
+            int maxAttempts = getIntInitParameter(JOURNAL_MAX_ATTEMPTS_PARAM_NAME, WebhookJournal.DEFAULT_MAX_ATTEMPTS);
+            try {
+                webhookJournal = createWebhookJournal(new File(journalDirectory.trim()), retentionSize);
+            } catch (IOException e) {
+                throw new ServletException(format("Could not open webhook journal in %s", journalDirectory), e);
+            }
+            if (maxAttempts >= 1) {
+                webhookJournal.setMaxAttempts(maxAttempts);
+            } else {
+                logger.severe(format("Invalid servlet init parameter %s: %d; using default: %d", JOURNAL_MAX_ATTEMPTS_PARAM_NAME,
+                        maxAttempts, webhookJournal.getMaxAttempts()));
+            }
+            webhookJournal.start();
+            logger.info(format("Webhook callbacks will be journaled in %s", journalDirectory));
+        }
+        if (metrics == null && messenger instanceof DefaultMessenger) {
+            metrics = ((DefaultMessenger) messenger).getMetrics();
+        }
+        if (metrics != null) {
+            registerQueues(metrics);
+        }
+    }
+
+    private void registerQueues(MessengerMetrics metrics) {
+        if (executorService instanceof ThreadPoolExecutor) {
+            final ThreadPoolExecutor executor = (ThreadPoolExecutor) executorService;
+            metrics.registerQueue("webhook.executor", new MessengerMetrics.QueueDepth() {
+
+                @Override
+                public long get() {
+                    return executor.getQueue().size();
+                }
+            });
+        }
+        if (webhookJournal != null) {
+            metrics.registerQueue("webhook.journal", new MessengerMetrics.QueueDepth() {
+
+                @Override
+                public long get() {
+                    return webhookJournal.getLag();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (webhookJournal != null) {
+            logger.info("Closing webhook journal...");
+            try {
+                webhookJournal.close();
+            } catch (IOException e) {
+                logger.log(WARNING, "Exception closing webhook journal", e);
+            }
+        }
+        if (executorService != null) {
+            logger.info("Shutting down webhook executor...");
+            executorService.shutdown();
+            try {
+                if (!executorService.awaitTermination(ASYNC_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    logger.warning("Webhook executor did not terminate in time; pending webhooks are discarded");
+                    executorService.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executorService.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     /**
@@ -110,26 +308,264 @@ public class WebhookServlet extends HttpServlet {
             throws ServletException, IOException {
         logger.info("Webhook received");
         try {
-            String payload = getRequestBodyAsString(req);
-            String signature = req.getHeader(HUB_SIGNATURE_HEADER_NAME);
-            messenger.handleCallback(payload, signature);
+            byte[] payload = getRequestBody(req);
+            if (metrics != null) {
+                metrics.webhookReceived(payload.length);
+            }
+            String signature = getSignature(req);
+            if (webhookJournal != null) {
+                handleCallbackJournaled(payload, signature, resp);
+            } else if (!async) {
+                handleCallback(payload, signature);
+            } else {
+                handleCallbackAsync(payload, signature, resp);
+            }
+        } catch (WebhookPayloadTooLargeException e) {
+            logger.warning(format("Webhook rejected: %s", e.getMessage()));
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
         } catch (Exception e) {
             logger.severe(format("Exception handling webhook: %s", e.getMessage()));
             throw e;
         }
     }
 
+    /**
+     * Verifies the signature and enqueues the webhook callback on the executor.
+     * <p>
+     * Webhooks with an invalid signature are not enqueued. When the executor queue is full the webhook is either rejected with a {@code
+     * 503 Service Unavailable} status so Facebook will redeliver it later, or handled on the request thread, depending on the configured
+     * {@link AsyncRejectionPolicy}.
+     */
+    protected void handleCallbackAsync(final byte[] payload, final String signature, HttpServletResponse resp) {
+        if (!verifySignature(payload, signature)) {
+            if (logger.isLoggable(FINE)) {
+                logger.fine("Invalid signature received; webhook not enqueued");
+            }
+            return;
+        }
+        try {
+            executorService.execute(getTracer().wrap(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        handleVerifiedCallback(payload, signature);
+                    } catch (Exception e) {
+                        logger.severe(format("Exception handling webhook: %s", e.getMessage()));
+                    }
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            logger.warning("Webhook queue is full; webhook rejected");
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Handles the webhook callback of which the signature has already been verified. The {@link DefaultMessenger} handles it without
+     * calculating the signature again, other {@link Messenger} implementations verify it as part of handling the callback.
+     *
+     * @since 2.3.0
+     */
+    protected void handleVerifiedCallback(byte[] payload, String signature) {
+        if (messenger instanceof DefaultMessenger) {
+            ((DefaultMessenger) messenger).handleVerifiedCallback(payload);
+        } else {
+            messenger.handleCallback(new String(payload, UTF_8), signature);
+        }
+    }
+
+    /**
+     * Handles the webhook callback. Other {@link Messenger} implementations than the {@link DefaultMessenger} are handed the UTF-8
+     * decoded payload.
+     *
+     * @since 2.3.0
+     */
+    protected void handleCallback(byte[] payload, String signature) {
+        if (messenger instanceof DefaultMessenger) {
+            ((DefaultMessenger) messenger).handleCallback(payload, signature);
+        } else {
+            messenger.handleCallback(new String(payload, UTF_8), signature);
+        }
+    }
+
+    /**
+     * Verifies the signature before the webhook callback is enqueued or journaled. Other {@link Messenger} implementations than the
+     * {@link DefaultMessenger} verify the signature as part of handling the callback, so the callback is accepted here.
+     *
+     * @since 2.3.0
+     */
+    protected boolean verifySignature(byte[] payload, String signature) {
+        return !(messenger instanceof DefaultMessenger) || ((DefaultMessenger) messenger).verifySignature(payload, signature);
+    }
+
+    /**
+     * Verifies the signature and appends the webhook callback to the journal, returning once it is durable.
+     * <p>
+     * Webhooks with an invalid signature are not journaled. When the webhook cannot be journaled it is rejected with a {@code 503 Service
+     * Unavailable} status so Facebook will redeliver it later.
+     *
+     * @since 2.3.0
+     */
+    protected void handleCallbackJournaled(byte[] payload, String signature, HttpServletResponse resp) {
+        if (!verifySignature(payload, signature)) {
+            if (logger.isLoggable(FINE)) {
+                logger.fine("Invalid signature received; webhook not journaled");
+            }
+            return;
+        }
+        try {
+            webhookJournal.append(payload, signature);
+        } catch (IOException | RuntimeException e) {
+            logger.severe(format("Exception journaling webhook: %s", e.getMessage()));
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+    }
+
+    private static boolean hasDispatchExecutor(Messenger messenger) {
+        if (messenger instanceof DefaultMessenger) {
+            CallbackHandler callbackHandler = ((DefaultMessenger) messenger).getCallbackHandler();
+            return callbackHandler instanceof AbstractCallbackHandler
+                    && ((AbstractCallbackHandler) callbackHandler).getDispatchExecutor() != null;
+        }
+        return false;
+    }
+
+    /**
+     * Creates the webhook journal in the given directory.
+     *
+     * @since 2.3.0
+     */
+    protected WebhookJournal createWebhookJournal(File directory, long retentionSize) throws IOException {
+        return new WebhookJournal(Journal.builder(directory).retentionSize(retentionSize).build(), messenger);
+    }
+
+    /**
+     * Returns whether the executor must be created even when the webhook callbacks are not acknowledged before they are handled.
+     * Subclasses handling callbacks off the request thread should override this method.
+     */
+    protected boolean isExecutorRequired() {
+        return false;
+    }
+
+    /**
+     * Creates the bounded executor used to handle webhook callbacks asynchronously.
+     */
+    protected ExecutorService createExecutorService(int poolSize, int queueCapacity, AsyncRejectionPolicy rejectionPolicy) {
+        RejectedExecutionHandler rejectedExecutionHandler = rejectionPolicy == AsyncRejectionPolicy.CALLER_RUNS
+                ? new ThreadPoolExecutor.CallerRunsPolicy()
+                : new ThreadPoolExecutor.AbortPolicy();
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory("webhook"), rejectedExecutionHandler);
+    }
+
+    private int getIntInitParameter(String name, int defaultValue) {
+        String value = getServletConfig().getInitParameter(name);
+        if (value == null || value.length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.severe(format("Invalid servlet init parameter %s: %s; using default: %d", name, value, defaultValue));
+            return defaultValue;
+        }
+    }
+
+    private long getLongInitParameter(String name, long defaultValue) {
+        String value = getServletConfig().getInitParameter(name);
+        if (value == null || value.length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.severe(format("Invalid servlet init parameter %s: %s; using default: %d", name, value, defaultValue));
+            return defaultValue;
+        }
+    }
+
+    private AsyncRejectionPolicy getRejectionPolicyInitParameter() {
+        String value = getServletConfig().getInitParameter(ASYNC_REJECTION_POLICY_PARAM_NAME);
+        if (value == null || value.length() == 0) {
+            return DEFAULT_ASYNC_REJECTION_POLICY;
+        }
+        try {
+            return AsyncRejectionPolicy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.severe(format("Invalid servlet init parameter %s: %s; using default: %s", ASYNC_REJECTION_POLICY_PARAM_NAME, value,
+                    DEFAULT_ASYNC_REJECTION_POLICY));
+            return DEFAULT_ASYNC_REJECTION_POLICY;
+        }
+    }
+
+    /**
+     * Retrieves the webhook signature from the given request, preferring the {@code X-Hub-Signature-256} header over the {@code
+     * X-Hub-Signature} header.
+     *
+     * @since 2.3.0
+     */
+    protected String getSignature(HttpServletRequest req) {
+        String signature = req.getHeader(HUB_SIGNATURE_256_HEADER_NAME);
+        return signature != null ? signature : req.getHeader(HUB_SIGNATURE_HEADER_NAME);
+    }
+
     /**
      * Retrieves the request body from the given request.
+     *
+     * @deprecated in favor of {@link #getRequestBody(HttpServletRequest)} which preserves the payload bytes the signature is calculated
+     * over
      */
+    @Deprecated
     protected String getRequestBodyAsString(HttpServletRequest req) throws IOException {
-        StringBuilder buffer = new StringBuilder();
-        BufferedReader reader = req.getReader();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            buffer.append(line);
+        return new String(getRequestBody(req), UTF_8);
+    }
+
+    /**
+     * Retrieves the raw request body bytes from the given request.
+     * <p>
+     * The body is read once from the request input stream. When the {@code Content-Length} is known the bytes are read straight into an
+     * array of that size, otherwise a reusable per-thread buffer is used and copied once into an array of the exact size.
+     *
+     * @throws WebhookPayloadTooLargeException if the body exceeds the maximum request body size
+     */
+    protected byte[] getRequestBody(HttpServletRequest req) throws IOException {
+        InputStream input = req.getInputStream();
+        int contentLength = req.getContentLength();
+        if (contentLength > maxRequestBodySize) {
+            throw payloadTooLarge();
+        }
+        // only trust the content length for pre-sizing up to the max buffer size
+        if (contentLength >= 0 && contentLength <= MAX_REQUEST_BODY_BUFFER_SIZE) {
+            byte[] body = new byte[contentLength];
+            int length = 0;
+            int read;
+            while (length < contentLength && (read = input.read(body, length, contentLength - length)) != -1) {
+                length += read;
+            }
+            return length == contentLength ? body : Arrays.copyOf(body, length);
         }
-        return buffer.toString();
+        byte[] buffer = requestBodyBuffer.get();
+        int length = 0;
+        int read;
+        while ((read = input.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length > maxRequestBodySize) {
+                throw payloadTooLarge();
+            }
+            if (length == buffer.length) {
+                // read one byte past the maximum so an exactly maximum sized body is accepted
+                buffer = Arrays.copyOf(buffer, (int) Math.min(buffer.length * 2L, maxRequestBodySize + 1L));
+                if (buffer.length <= MAX_REQUEST_BODY_BUFFER_SIZE) {
+                    requestBodyBuffer.set(buffer);
+                }
+            }
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private WebhookPayloadTooLargeException payloadTooLarge() {
+        return new WebhookPayloadTooLargeException(format("Request body exceeds the maximum size of %d bytes", maxRequestBodySize));
     }
 
     /**
@@ -145,4 +581,82 @@ public class WebhookServlet extends HttpServlet {
     protected void setMessenger(Messenger messenger) {
         this.messenger = messenger;
     }
+
+    /**
+     * Returns the metrics recording the received webhooks, or {@code null} if no metrics are recorded. By default the metrics of the
+     * {@link DefaultMessenger} are used.
+     *
+     * @since 2.3.0
+     */
+    protected MessengerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics recording the received webhooks and the depth of the webhook executor queue and journal. Must be set before the
+     * servlet is initialized.
+     *
+     * @since 2.3.0
+     */
+    protected void setMetrics(MessengerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the tracer propagating the trace context of the request to the webhook executor. By default the tracer of the {@link
+     * DefaultMessenger} is used.
+     *
+     * @since 2.3.0
+     */
+    protected MessengerTracer getTracer() {
+        return messenger instanceof DefaultMessenger ? ((DefaultMessenger) messenger).getTracer() : NoopMessengerTracer.INSTANCE;
+    }
+
+    /**
+     * Returns the maximum size in bytes of the webhook request body.
+     *
+     * @since 2.3.0
+     */
+    protected int getMaxRequestBodySize() {
+        return maxRequestBodySize;
+    }
+
+    /**
+     * Returns whether webhooks are acknowledged before the callbacks are handled.
+     */
+    protected boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Returns the executor handling webhook callbacks asynchronously, or {@code null} when running synchronously.
+     */
+    protected ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Returns the webhook journal, or {@code null} when webhook callbacks are not journaled.
+     *
+     * @since 2.3.0
+     */
+    protected WebhookJournal getWebhookJournal() {
+        return webhookJournal;
+    }
+
+    /**
+     * The policy applied when a webhook callback cannot be enqueued because the executor queue is full.
+     */
+    public enum AsyncRejectionPolicy {
+
+        /**
+         * Rejects the webhook with a {@code 503 Service Unavailable} status.
+         */
+        REJECT,
+
+        /**
+         * Handles the webhook synchronously on the request thread.
+         */
+        CALLER_RUNS
+    }
 }
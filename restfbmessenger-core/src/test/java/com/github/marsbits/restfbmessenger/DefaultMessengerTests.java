@@ -16,8 +16,22 @@
 
 package com.github.marsbits.restfbmessenger;
 
+import com.github.marsbits.restfbmessenger.metrics.MessengerMetrics;
+import com.github.marsbits.restfbmessenger.profile.InMemoryUserProfileCache;
+import com.github.marsbits.restfbmessenger.profile.UserProfiles;
+import com.github.marsbits.restfbmessenger.send.AsyncSendOperations;
+import com.github.marsbits.restfbmessenger.send.DefaultSendOperations;
+import com.github.marsbits.restfbmessenger.send.SendBatch;
+import com.github.marsbits.restfbmessenger.send.SendFuture;
+import com.github.marsbits.restfbmessenger.tracing.MessengerSpan;
+import com.github.marsbits.restfbmessenger.tracing.MessengerTracer;
+import com.github.marsbits.restfbmessenger.tracing.NoopMessengerTracer;
+import com.github.marsbits.restfbmessenger.util.PartitionedExecutor;
+import com.github.marsbits.restfbmessenger.webhook.AbstractCallbackHandler;
 import com.github.marsbits.restfbmessenger.webhook.CallbackHandler;
+import com.github.marsbits.restfbmessenger.webhook.SignatureVerifier;
 import com.restfb.Connection;
+import com.restfb.DefaultJsonMapper;
 import com.restfb.FacebookClient;
 import com.restfb.JsonMapper;
 import com.restfb.Parameter;
@@ -27,22 +41,41 @@ import com.restfb.types.ProfilePictureSource;
 import com.restfb.types.User;
 import com.restfb.types.send.CallToAction;
 import com.restfb.types.send.DomainActionTypeEnum;
+import com.restfb.types.send.IdMessageRecipient;
 import com.restfb.types.send.Greeting;
 import com.restfb.types.send.Message;
 import com.restfb.types.send.PageMessageTag;
 import com.restfb.types.send.SendResponse;
 import com.restfb.types.send.SettingTypeEnum;
 import com.restfb.types.send.ThreadStateEnum;
+import com.restfb.types.webhook.WebhookEntry;
 import com.restfb.types.webhook.WebhookObject;
+import com.restfb.types.webhook.messaging.MessageItem;
+import com.restfb.types.webhook.messaging.MessagingItem;
+import com.restfb.types.webhook.messaging.MessagingParticipant;
 import com.restfb.util.EncodingUtils;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -61,12 +94,19 @@ import static com.github.marsbits.restfbmessenger.DefaultMessenger.THREAD_STATE_
 import static com.github.marsbits.restfbmessenger.DefaultMessenger.USER_FIELDS_DEFAULT_VALUE;
 import static com.github.marsbits.restfbmessenger.DefaultMessenger.USER_FIELDS_PARAM_NAME;
 import static com.github.marsbits.restfbmessenger.DefaultMessenger.WHITELISTED_DOMAINS_PARAM_NAME;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -118,6 +158,64 @@ public class DefaultMessengerTests {
         verify(callbackHandler).onCallback(messenger, webhookObject);
     }
 
+    @Test
+    public void testHandleCallbackHandlerWithPayloadBytes() throws Exception {
+        String payload = "the payload\nh\u00e9llo";
+        byte[] payloadBytes = payload.getBytes("UTF-8");
+        String signature = generateSignature(payloadBytes, appSecret);
+        WebhookObject webhookObject = new WebhookObject();
+        webhookObject.setObject(OBJECT_PAGE_VALUE);
+        when(jsonMapper.toJavaObject(payload, WebhookObject.class)).thenReturn(webhookObject);
+        messenger.handleCallback(payloadBytes, signature);
+        verify(callbackHandler).onCallback(messenger, webhookObject);
+    }
+
+    @Test
+    public void testHandleCallbackHandlerWithPayloadBytesDoesNotMapPayloadWhenSignatureIsNotValid() throws Exception {
+        messenger.handleCallback(payload.getBytes("UTF-8"), "invalid signature");
+        verify(jsonMapper, never()).toJavaObject(any(String.class), any(Class.class));
+        verify(callbackHandler, never()).onCallback(any(Messenger.class), any(WebhookObject.class));
+    }
+
+    @Test
+    public void testHandleVerifiedCallbackDoesNotVerifySignature() throws Exception {
+        SignatureVerifier signatureVerifier = mock(SignatureVerifier.class);
+        messenger.setSignatureVerifier(signatureVerifier);
+        WebhookObject webhookObject = new WebhookObject();
+        webhookObject.setObject(OBJECT_PAGE_VALUE);
+        when(jsonMapper.toJavaObject(payload, WebhookObject.class)).thenReturn(webhookObject);
+        messenger.handleVerifiedCallback(payload.getBytes("UTF-8"));
+        verify(callbackHandler).onCallback(messenger, webhookObject);
+        verify(signatureVerifier, never()).verify(any(byte[].class), any(String.class));
+    }
+
+    @Test
+    public void testHandleCallbackHandlerBindsScannedEntries() throws Exception {
+        when(facebookClient.getJsonMapper()).thenReturn(new DefaultJsonMapper());
+        String payload = "{\"object\":\"page\",\"entry\":["
+                + "{\"id\":\"1\",\"time\":1458692752478,\"messaging\":[{\"sender\":{\"id\":\"USER_ID\"},"
+                + "\"recipient\":{\"id\":\"PAGE_ID\"},\"timestamp\":1458692752478,"
+                + "\"message\":{\"mid\":\"mid.1\",\"text\":\"h\u00e9llo [\\\"world\\\"]\"}}]},"
+                + "{\"id\":\"2\",\"time\":1458692752479,\"messaging\":[]}]}";
+        messenger.handleCallback(payload, generateSignature(payload, appSecret));
+        ArgumentCaptor<WebhookObject> captor = ArgumentCaptor.forClass(WebhookObject.class);
+        verify(callbackHandler).onCallback(eq(messenger), captor.capture());
+        WebhookObject webhookObject = captor.getValue();
+        assertThat(webhookObject.getObject(), is(OBJECT_PAGE_VALUE));
+        assertThat(webhookObject.getEntryList().size(), is(2));
+        assertThat(webhookObject.getEntryList().get(0).getId(), is("1"));
+        assertThat(webhookObject.getEntryList().get(0).getMessaging().get(0).getMessage().getText(), is("h\u00e9llo [\"world\"]"));
+        assertThat(webhookObject.getEntryList().get(1).getId(), is("2"));
+    }
+
+    @Test
+    public void testHandleCallbackHandlerDoesNotMapPayloadWhenScannedObjectIsNotPage() throws Exception {
+        String payload = "{\"object\":\"user\",\"entry\":[{\"id\":\"1\"}]}";
+        messenger.handleCallback(payload, generateSignature(payload, appSecret));
+        verify(jsonMapper, never()).toJavaObject(any(String.class), any(Class.class));
+        verify(callbackHandler, never()).onCallback(any(Messenger.class), any(WebhookObject.class));
+    }
+
     @Test
     public void testHandleCallbackHandlerIgnoresInvalidSignatureWhenAppSecretIsNull() throws Exception {
         messenger = new DefaultMessenger(verifyToken, null, callbackHandler, facebookClient);
@@ -157,6 +255,203 @@ public class DefaultMessengerTests {
         verify(callbackHandler, never()).onCallback(any(Messenger.class), any(WebhookObject.class));
     }
 
+    @Test
+    public void testHandleCallbackRecordsMetrics() throws Exception {
+        MessengerMetrics metrics = mock(MessengerMetrics.class);
+        messenger.setMetrics(metrics);
+        String signature = generateSignature(payload, appSecret);
+        WebhookObject webhookObject = new WebhookObject();
+        webhookObject.setObject(OBJECT_PAGE_VALUE);
+        when(jsonMapper.toJavaObject(payload, WebhookObject.class)).thenReturn(webhookObject);
+        messenger.handleCallback(payload, signature);
+        messenger.handleCallback(payload, "invalid signature");
+        verify(metrics, times(1)).webhookParsed(anyLong());
+        verify(metrics, times(1)).webhookSignatureFailed();
+    }
+
+    @Test
+    public void testSetMetricsSetsMetricsOnSendOperationsAndCallbackHandler() throws Exception {
+        AbstractCallbackHandler callbackHandler = new AbstractCallbackHandler() {
+        };
+        messenger = new DefaultMessenger(verifyToken, appSecret, callbackHandler, facebookClient);
+        MessengerMetrics metrics = mock(MessengerMetrics.class);
+        messenger.setMetrics(metrics);
+        assertThat(messenger.getMetrics(), is(metrics));
+        assertThat(((DefaultSendOperations) messenger.send()).getMetrics(), is(metrics));
+        assertThat(callbackHandler.getMetrics(), is(metrics));
+        verify(metrics).registerQueue(eq("send.pending"), any(MessengerMetrics.QueueDepth.class));
+    }
+
+    @Test
+    public void testSetMetricsRegistersQueuesOnce() throws Exception {
+        AbstractCallbackHandler callbackHandler = new AbstractCallbackHandler() {
+        };
+        messenger = new DefaultMessenger(verifyToken, appSecret, callbackHandler, facebookClient);
+        MessengerMetrics metrics = mock(MessengerMetrics.class);
+        messenger.setMetrics(metrics);
+        messenger.setMetrics(metrics);
+        messenger.setMetrics(null);
+        messenger.setMetrics(metrics);
+        verify(metrics, times(1)).registerQueue(eq("send.pending"), any(MessengerMetrics.QueueDepth.class));
+        verify(metrics, times(1)).registerQueue(eq("dispatch"), any(MessengerMetrics.QueueDepth.class));
+        MessengerMetrics otherMetrics = mock(MessengerMetrics.class);
+        messenger.setMetrics(otherMetrics);
+        verify(otherMetrics).registerQueue(eq("send.pending"), any(MessengerMetrics.QueueDepth.class));
+        verify(otherMetrics).registerQueue(eq("dispatch"), any(MessengerMetrics.QueueDepth.class));
+    }
+
+    @Test
+    public void testTracerSpansWebhookMessagingItemsAndSends() throws Exception {
+        RecordingTracer tracer = new RecordingTracer();
+        PartitionedExecutor dispatchExecutor = new PartitionedExecutor(2, 16, PartitionedExecutor.OverflowPolicy.BLOCK);
+        ExecutorService asyncSendExecutor = Executors.newSingleThreadExecutor();
+        AbstractCallbackHandler callbackHandler = new AbstractCallbackHandler() {
+
+            @Override
+            public void onMessage(Messenger messenger, MessagingItem messaging) {
+                IdMessageRecipient recipient = new IdMessageRecipient(messaging.getSender().getId());
+                messenger.send().typingOn(recipient);
+                ((DefaultMessenger) messenger).sendAsync().typingOff(recipient);
+            }
+        };
+        callbackHandler.setDispatchExecutor(dispatchExecutor);
+        messenger = new DefaultMessenger(verifyToken, appSecret, callbackHandler, facebookClient);
+        messenger.setAsyncSendExecutor(asyncSendExecutor);
+        messenger.setTracer(tracer);
+        MessagingParticipant sender = new MessagingParticipant();
+        sender.setId("the-user-id");
+        MessagingItem messagingItem = new MessagingItem();
+        messagingItem.setSender(sender);
+        messagingItem.setMessage(new MessageItem());
+        WebhookEntry entry = new WebhookEntry();
+        entry.setMessaging(Arrays.asList(messagingItem));
+        WebhookObject webhookObject = new WebhookObject();
+        webhookObject.setObject(OBJECT_PAGE_VALUE);
+        webhookObject.setEntryList(Arrays.asList(entry));
+        when(jsonMapper.toJavaObject(payload, WebhookObject.class)).thenReturn(webhookObject);
+        when(facebookClient.publish(any(String.class), eq(SendResponse.class), Matchers.<Parameter>anyVararg()))
+                .thenReturn(new SendResponse());
+        messenger.handleCallback(payload, generateSignature(payload, appSecret));
+        dispatchExecutor.shutdown();
+        assertThat(dispatchExecutor.awaitTermination(1, TimeUnit.SECONDS), is(true));
+        asyncSendExecutor.shutdown();
+        assertThat(asyncSendExecutor.awaitTermination(1, TimeUnit.SECONDS), is(true));
+        assertThat(tracer.spans.size(), is(4));
+        RecordingTracer.RecordedSpan webhookSpan = tracer.getSpan(MessengerTracer.WEBHOOK_SPAN_NAME);
+        assertThat(webhookSpan.parent, is(nullValue()));
+        assertThat(webhookSpan.attributes.get(MessengerTracer.PAYLOAD_SIZE_ATTRIBUTE), is((Object) (long) payload.length()));
+        RecordingTracer.RecordedSpan itemSpan = tracer.getSpan(MessengerTracer.MESSAGING_ITEM_SPAN_NAME);
+        assertThat(itemSpan.parent, is(webhookSpan));
+        assertThat(itemSpan.attributes.get(MessengerTracer.EVENT_TYPE_ATTRIBUTE), is((Object) "message"));
+        assertThat(itemSpan.attributes.get(MessengerTracer.SENDER_ID_ATTRIBUTE), is((Object) "the-user-id"));
+        int sendSpans = 0;
+        for (RecordingTracer.RecordedSpan span : tracer.spans) {
+            if (span.name.equals(MessengerTracer.SEND_SPAN_NAME)) {
+                // both the synchronous and the asynchronous send are children of the messaging item span
+                assertThat(span.parent, is(itemSpan));
+                assertThat(span.attributes.get(MessengerTracer.OPERATION_ATTRIBUTE), is((Object) "sender_action"));
+                sendSpans++;
+            }
+        }
+        assertThat(sendSpans, is(2));
+    }
+
+    @Test
+    public void testSetTracerWithNullResetsToNoopTracer() throws Exception {
+        messenger.setTracer(new RecordingTracer());
+        messenger.setTracer(null);
+        assertThat(messenger.getTracer(), is((MessengerTracer) NoopMessengerTracer.INSTANCE));
+        assertThat(((DefaultSendOperations) messenger.send()).getTracer(), is((MessengerTracer) NoopMessengerTracer.INSTANCE));
+    }
+
+    @Test
+    public void testSendAsync() throws Exception {
+        SendResponse response = new SendResponse();
+        IdMessageRecipient recipient = new IdMessageRecipient("the-user-id");
+        when(facebookClient.publish(any(String.class), eq(SendResponse.class), Matchers.<Parameter>anyVararg())).thenReturn(response);
+        messenger.setAsyncSendExecutor(new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        assertThat(messenger.sendAsync().markSeen(recipient).get(), is(response));
+    }
+
+    @Test
+    public void testSendAsyncUsesDefaultExecutor() throws Exception {
+        assertThat(messenger.sendAsync(), is(notNullValue()));
+        assertThat(messenger.sendAsync() == messenger.sendAsync(), is(true));
+    }
+
+    @Test
+    public void testClosePerformsQueuedAsyncSendOperations() throws Exception {
+        IdMessageRecipient recipient = new IdMessageRecipient("the-user-id");
+        when(facebookClient.publish(any(String.class), eq(SendResponse.class), Matchers.<Parameter>anyVararg()))
+                .thenAnswer(new Answer<SendResponse>() {
+
+                    @Override
+                    public SendResponse answer(InvocationOnMock invocation) throws Throwable {
+                        Thread.sleep(20);
+                        return new SendResponse();
+                    }
+                });
+        List<SendFuture<SendResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            futures.add(messenger.sendAsync().markSeen(recipient));
+        }
+        messenger.close();
+        for (SendFuture<SendResponse> future : futures) {
+            assertThat(future.isDone(), is(true));
+            assertThat(future.get(), is(notNullValue()));
+        }
+    }
+
+    @Test
+    public void testSendAsyncAfterCloseFails() throws Exception {
+        AsyncSendOperations asyncSendOperations = messenger.sendAsync();
+        messenger.close();
+        try {
+            asyncSendOperations.markSeen(new IdMessageRecipient("the-user-id")).get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(RejectedExecutionException.class)));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSendAsyncAfterCloseWithoutDefaultExecutorThrowsIllegalStateException() throws Exception {
+        messenger.close();
+        messenger.sendAsync();
+    }
+
+    @Test
+    public void testSetAsyncSendExecutorShutsDownDefaultExecutor() throws Exception {
+        AsyncSendOperations defaultAsyncSendOperations = messenger.sendAsync();
+        messenger.setAsyncSendExecutor(mock(Executor.class));
+        try {
+            defaultAsyncSendOperations.markSeen(new IdMessageRecipient("the-user-id")).get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(RejectedExecutionException.class)));
+        }
+    }
+
+    @Test
+    public void testSetAsyncSendOperations() throws Exception {
+        AsyncSendOperations asyncSendOperations = mock(AsyncSendOperations.class);
+        messenger.setAsyncSendOperations(asyncSendOperations);
+        assertThat(messenger.sendAsync(), is(sameInstance(asyncSendOperations)));
+    }
+
+    @Test
+    public void testSendBatch() throws Exception {
+        SendBatch batch = messenger.sendBatch();
+        assertThat(batch.isEmpty(), is(true));
+        assertThat(messenger.sendBatch() == batch, is(false));
+    }
+
     @Test
     public void testGetUserProfile() {
         String userId = "user id";
@@ -196,6 +491,31 @@ public class DefaultMessengerTests {
         assertThat(messenger.getUserProfile(userId, "first_name,last_name"), is(user));
     }
 
+    @Test
+    public void testGetUserProfileWithCache() {
+        String userId = "user id";
+        User user = new User();
+        when(facebookClient.fetchObject(userId, User.class, Parameter.with(USER_FIELDS_PARAM_NAME, "first_name,last_name")))
+                .thenReturn(user);
+        messenger.setUserProfileCache(new InMemoryUserProfileCache());
+        assertThat(messenger.getUserProfile(userId, "first_name,last_name"), is(user));
+        assertThat(messenger.getUserProfile(userId, "last_name", "first_name"), is(user));
+        verify(facebookClient, times(1)).fetchObject(userId, User.class, Parameter.with(USER_FIELDS_PARAM_NAME, "first_name,last_name"));
+        messenger.invalidateUserProfile(userId);
+        assertThat(messenger.getUserProfile(userId, "first_name,last_name"), is(user));
+        verify(facebookClient, times(2)).fetchObject(userId, User.class, Parameter.with(USER_FIELDS_PARAM_NAME, "first_name,last_name"));
+    }
+
+    @Test
+    public void testGetUserProfiles() {
+        User user = new User();
+        when(facebookClient.fetchObject("user id", User.class, Parameter.with(USER_FIELDS_PARAM_NAME, "first_name,last_name")))
+                .thenReturn(user);
+        UserProfiles profiles = messenger.getUserProfiles(Arrays.asList("user id", "user id"), "first_name", "last_name");
+        assertThat(profiles.get("user id"), is(user));
+        assertThat(profiles.hasFailures(), is(false));
+    }
+
     @Test
     public void testSendOperationsNotNull() throws Exception {
         assertThat(messenger.send(), is(notNullValue()));
@@ -222,6 +542,97 @@ public class DefaultMessengerTests {
         assertThat(messenger.verifySignature(payload, signature), is(false));
     }
 
+    @Test
+    public void testVerifySignatureReturnsFalseWhenSignatureHashDoesNotMatch() throws Exception {
+        String signature = generateSignature("another payload", appSecret);
+        assertThat(messenger.verifySignature("the payload", signature), is(false));
+    }
+
+    @Test
+    public void testVerifySignatureReturnsFalseWhenSignatureHashHasInvalidLength() throws Exception {
+        String signature = generateSignature("the payload", appSecret);
+        assertThat(messenger.verifySignature("the payload", signature.substring(0, signature.length() - 1)), is(false));
+        assertThat(messenger.verifySignature("the payload", signature.substring(0, signature.length() - 2)), is(false));
+        assertThat(messenger.verifySignature("the payload", SIGNATURE_PREFIX), is(false));
+    }
+
+    @Test
+    public void testVerifySignatureIsCaseInsensitiveForSignatureHash() throws Exception {
+        String signature = generateSignature("the payload", appSecret);
+        String upperCaseSignature = SIGNATURE_PREFIX + signature.substring(SIGNATURE_PREFIX.length()).toUpperCase();
+        assertThat(messenger.verifySignature("the payload", upperCaseSignature), is(true));
+    }
+
+    @Test
+    public void testVerifySignatureIsRepeatable() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            String payload = "the payload " + i;
+            assertThat(messenger.verifySignature(payload, generateSignature(payload, appSecret)), is(true));
+            assertThat(messenger.verifySignature(payload, "sha1=invalid"), is(false));
+        }
+    }
+
+    @Test
+    public void testVerifySignatureFromMultipleThreads() throws Exception {
+        final String signature = generateSignature(payload, appSecret);
+        final AtomicInteger verified = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        if (messenger.verifySignature(payload, signature)) {
+                            verified.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(verified.get(), is(400));
+    }
+
+    @Test
+    public void testVerifySignatureWithSha256Signature() throws Exception {
+        String payload = "the payload";
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(appSecret.getBytes("UTF-8"), "HmacSHA256"));
+        String signature = "sha256=" + new String(EncodingUtils.encodeHex(mac.doFinal(payload.getBytes("UTF-8"))));
+        assertThat(messenger.verifySignature(payload, signature), is(true));
+    }
+
+    @Test
+    public void testVerifySignatureUsesSignatureVerifier() throws Exception {
+        SignatureVerifier signatureVerifier = mock(SignatureVerifier.class);
+        byte[] payload = "the payload".getBytes("UTF-8");
+        when(signatureVerifier.verify(payload, "the signature")).thenReturn(true);
+        messenger.setSignatureVerifier(signatureVerifier);
+        assertThat(messenger.verifySignature(payload, "the signature"), is(true));
+        assertThat(messenger.verifySignature(payload, "another signature"), is(false));
+    }
+
+    @Test
+    public void testVerifySignatureUsesUtf8PayloadBytes() throws Exception {
+        String payload = "h\u00e9llo \u2764";
+        String signature = generateSignature(payload.getBytes("UTF-8"), appSecret);
+        assertThat(messenger.verifySignature(payload, signature), is(true));
+        assertThat(messenger.verifySignature(payload.getBytes("UTF-8"), signature), is(true));
+    }
+
+    @Test
+    public void testVerifySignatureReturnsTrueWhenAppSecretIsNull() throws Exception {
+        messenger = new DefaultMessenger(verifyToken, null, callbackHandler, facebookClient);
+        String payload = "the payload";
+        String signature = SIGNATURE_PREFIX + "invalid signature";
+        assertThat(messenger.verifySignature(payload, signature), is(true));
+    }
+
     @Test
     public void testSetGreetingAsText() {
         String greeting = "greeting";
@@ -520,10 +931,99 @@ public class DefaultMessengerTests {
     }
 
     private String generateSignature(String payload, String appSecret) throws Exception {
-        SecretKeySpec signingKey = new SecretKeySpec(appSecret.getBytes(), HMAC_SHA1_ALGORITHM);
+        return generateSignature(payload.getBytes("UTF-8"), appSecret);
+    }
+
+    private String generateSignature(byte[] payload, String appSecret) throws Exception {
+        SecretKeySpec signingKey = new SecretKeySpec(appSecret.getBytes("UTF-8"), HMAC_SHA1_ALGORITHM);
         Mac mac = Mac.getInstance(HMAC_SHA1_ALGORITHM);
         mac.init(signingKey);
-        byte[] hmac = mac.doFinal(payload.getBytes());
+        byte[] hmac = mac.doFinal(payload);
         return SIGNATURE_PREFIX + new String(EncodingUtils.encodeHex(hmac));
     }
+
+    /**
+     * Tracer recording the ended spans with their parent, keeping the current span in a thread local.
+     */
+    private static class RecordingTracer implements MessengerTracer {
+
+        private final ThreadLocal<RecordedSpan> current = new ThreadLocal<>();
+        private final List<RecordedSpan> spans = new CopyOnWriteArrayList<>();
+
+        @Override
+        public MessengerSpan startSpan(String name) {
+            RecordedSpan span = new RecordedSpan(name, current.get());
+            current.set(span);
+            return span;
+        }
+
+        @Override
+        public Runnable wrap(final Runnable task) {
+            final RecordedSpan parent = current.get();
+            return new Runnable() {
+
+                @Override
+                public void run() {
+                    RecordedSpan previous = current.get();
+                    current.set(parent);
+                    try {
+                        task.run();
+                    } finally {
+                        current.set(previous);
+                    }
+                }
+            };
+        }
+
+        RecordedSpan getSpan(String name) {
+            for (RecordedSpan span : spans) {
+                if (span.name.equals(name)) {
+                    return span;
+                }
+            }
+            return null;
+        }
+
+        private class RecordedSpan implements MessengerSpan {
+
+            private final String name;
+            private final RecordedSpan parent;
+            private final Map<String, Object> attributes = new HashMap<>();
+
+            RecordedSpan(String name, RecordedSpan parent) {
+                this.name = name;
+                this.parent = parent;
+            }
+
+            @Override
+            public MessengerSpan setAttribute(String key, String value) {
+                if (value != null) {
+                    attributes.put(key, value);
+                }
+                return this;
+            }
+
+            @Override
+            public MessengerSpan setAttribute(String key, long value) {
+                attributes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public MessengerSpan setAttribute(String key, boolean value) {
+                attributes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public void recordFailure(Throwable failure) {
+            }
+
+            @Override
+            public void end() {
+                current.set(parent);
+                spans.add(this);
+            }
+        }
+    }
 }
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.broadcast;
+
+import com.github.marsbits.restfbmessenger.send.AsyncSendOperations;
+import com.github.marsbits.restfbmessenger.send.PreparedMessage;
+import com.github.marsbits.restfbmessenger.send.SendFuture;
+import com.restfb.exception.FacebookOAuthException;
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.Message;
+import com.restfb.types.send.MessageRecipient;
+import com.restfb.types.send.SendResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.restfb.types.send.MessagingType.UPDATE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link Broadcast}.
+ *
+ * @author Marcel Overdijk
+ */
+public class BroadcastTests {
+
+    private AsyncSendOperations sendOperations;
+    private PreparedMessage message = PreparedMessage.of(UPDATE, new Message("Hello!"));
+    private BlockingQueue<SendFuture<SendResponse>> pending = new LinkedBlockingQueue<>();
+    private RecordingListener listener = new RecordingListener();
+
+    @Before
+    public void setUp() {
+        this.sendOperations = mock(AsyncSendOperations.class);
+    }
+
+    @Test
+    public void testExecute() {
+        completeImmediately();
+        Broadcast broadcast = Broadcast.builder(sendOperations, message, recipients(25))
+                .checkpointInterval(10)
+                .listener(listener)
+                .build();
+        BroadcastStats stats = broadcast.execute();
+        assertThat(stats.getDispatched(), is(25L));
+        assertThat(stats.getSucceeded(), is(25L));
+        assertThat(stats.getFailed(), is(0L));
+        assertThat(stats.getPosition(), is(25L));
+        assertThat(stats.isDone(), is(true));
+        assertThat(listener.successes.size(), is(25));
+        assertThat(listener.checkpoints, is(list(10L, 20L, 25L)));
+        assertThat(listener.lastProgress.isDone(), is(true));
+    }
+
+    @Test
+    public void testExecuteTwice() {
+        completeImmediately();
+        Broadcast broadcast = Broadcast.builder(sendOperations, message, recipients(1)).build();
+        broadcast.execute();
+        try {
+            broadcast.execute();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMaxInFlight() throws Exception {
+        completeLater();
+        final Broadcast broadcast = Broadcast.builder(sendOperations, message, recipients(10))
+                .maxInFlight(3)
+                .progressInterval(10, TimeUnit.MILLISECONDS)
+                .listener(listener)
+                .build();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<BroadcastStats> result = executor.submit(new Callable<BroadcastStats>() {
+
+                @Override
+                public BroadcastStats call() {
+                    return broadcast.execute();
+                }
+            });
+            List<SendFuture<SendResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(pending.poll(1, TimeUnit.SECONDS));
+            }
+            assertThat(pending.poll(50, TimeUnit.MILLISECONDS), is(nullValue()));
+            assertThat(broadcast.getStats().getInFlight(), is(3L));
+            // completing out of order only advances the position once the first operation completes
+            futures.get(1).complete(new SendResponse());
+            futures.get(2).complete(new SendResponse());
+            assertThat(broadcast.getStats().getPosition(), is(0L));
+            futures.get(0).complete(new SendResponse());
+            assertThat(broadcast.getStats().getPosition(), is(3L));
+            for (int i = 3; i < 10; i++) {
+                pending.poll(1, TimeUnit.SECONDS).complete(new SendResponse());
+            }
+            BroadcastStats stats = result.get(1, TimeUnit.SECONDS);
+            assertThat(stats.getSucceeded(), is(10L));
+            assertThat(stats.getPosition(), is(10L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testResumeFrom() {
+        completeImmediately();
+        Broadcast broadcast = Broadcast.builder(sendOperations, message, recipients(10))
+                .resumeFrom(7)
+                .listener(listener)
+                .build();
+        BroadcastStats stats = broadcast.execute();
+        assertThat(stats.getDispatched(), is(3L));
+        assertThat(stats.getPosition(), is(10L));
+        assertThat(listener.successes, is(list(7L, 8L, 9L)));
+    }
+
+    @Test
+    public void testFailures() {
+        when(sendOperations.preparedMessage(any(MessageRecipient.class), eq(message))).thenAnswer(new Answer<SendFuture<SendResponse>>() {
+
+            private int count;
+
+            @Override
+            public SendFuture<SendResponse> answer(InvocationOnMock invocation) throws Throwable {
+                if (count++ % 2 == 0) {
+                    return SendFuture.completed(new SendResponse());
+                }
+                return SendFuture.failed(
+                        new FacebookOAuthException("OAuthException", "blocked", 200, 1545041, 403, null, null, false, null));
+            }
+        });
+        Broadcast broadcast = Broadcast.builder(sendOperations, message, recipients(10)).listener(listener).build();
+        BroadcastStats stats = broadcast.execute();
+        assertThat(stats.getSucceeded(), is(5L));
+        assertThat(stats.getFailed(), is(5L));
+        assertThat(stats.getPosition(), is(10L));
+        assertThat(stats.getErrorCounts().get("FacebookOAuthException#200"), is(5L));
+        assertThat(listener.failures, is(list(1L, 3L, 5L, 7L, 9L)));
+    }
+
+    @Test
+    public void testSendOperationThrowingIsCountedAsFailure() {
+        when(sendOperations.preparedMessage(any(MessageRecipient.class), eq(message))).thenThrow(new IllegalStateException("full"));
+        BroadcastStats stats = Broadcast.builder(sendOperations, message, recipients(2)).build().execute();
+        assertThat(stats.getFailed(), is(2L));
+        assertThat(stats.getErrorCounts().get("IllegalStateException"), is(2L));
+    }
+
+    @Test
+    public void testCancel() {
+        completeImmediately();
+        final List<Broadcast> holder = new ArrayList<>();
+        Broadcast broadcast = Broadcast.builder(sendOperations, message, recipients(100))
+                .listener(new AbstractBroadcastListener() {
+
+                    @Override
+                    public void onSuccess(long index, MessageRecipient recipient, SendResponse response) {
+                        if (index == 4) {
+                            holder.get(0).cancel();
+                        }
+                    }
+                })
+                .build();
+        holder.add(broadcast);
+        BroadcastStats stats = broadcast.execute();
+        assertThat(broadcast.isCancelled(), is(true));
+        assertThat(stats.getDispatched(), is(5L));
+        assertThat(stats.getPosition(), is(5L));
+    }
+
+    @Test
+    public void testCompletionTrackerCompacts() {
+        Broadcast.CompletionTracker tracker = new Broadcast.CompletionTracker(100);
+        tracker.complete(100 + 10001);
+        for (long i = 100; i < 100 + 10000; i++) {
+            tracker.complete(i);
+        }
+        assertThat(tracker.position, is(100L + 10000));
+        tracker.complete(100 + 10000);
+        assertThat(tracker.position, is(100L + 10002));
+    }
+
+    @Test
+    public void testRecipientsFromLines() {
+        Iterator<MessageRecipient> recipients = BroadcastRecipients.lines(new StringReader("user-1\n\n  user-2 \r\nuser-3"));
+        List<String> ids = new ArrayList<>();
+        while (recipients.hasNext()) {
+            ids.add(((IdMessageRecipient) recipients.next()).getId());
+        }
+        assertThat(ids, is(list("user-1", "user-2", "user-3")));
+    }
+
+    private void completeImmediately() {
+        when(sendOperations.preparedMessage(any(MessageRecipient.class), eq(message)))
+                .thenReturn(SendFuture.completed(new SendResponse()));
+    }
+
+    private void completeLater() {
+        when(sendOperations.preparedMessage(any(MessageRecipient.class), eq(message))).thenAnswer(new Answer<SendFuture<SendResponse>>() {
+
+            @Override
+            public SendFuture<SendResponse> answer(InvocationOnMock invocation) throws Throwable {
+                SendFuture<SendResponse> future = new SendFuture<>();
+                pending.add(future);
+                return future;
+            }
+        });
+    }
+
+    private static Iterator<MessageRecipient> recipients(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add("user-" + i);
+        }
+        return BroadcastRecipients.ids(ids.iterator());
+    }
+
+    @SafeVarargs
+    private static <T> List<T> list(T... values) {
+        List<T> list = new ArrayList<>();
+        Collections.addAll(list, values);
+        return list;
+    }
+
+    private static class RecordingListener implements BroadcastListener {
+
+        private final List<Long> successes = Collections.synchronizedList(new ArrayList<Long>());
+        private final List<Long> failures = Collections.synchronizedList(new ArrayList<Long>());
+        private final List<Long> checkpoints = new ArrayList<>();
+        private volatile BroadcastStats lastProgress;
+
+        @Override
+        public void onSuccess(long index, MessageRecipient recipient, SendResponse response) {
+            successes.add(index);
+        }
+
+        @Override
+        public void onFailure(long index, MessageRecipient recipient, Throwable failure) {
+            failures.add(index);
+        }
+
+        @Override
+        public void onCheckpoint(long position) {
+            checkpoints.add(position);
+        }
+
+        @Override
+        public void onProgress(BroadcastStats stats) {
+            lastProgress = stats;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.client;
+
+import com.github.marsbits.restfbmessenger.client.CircuitBreaker.State;
+import com.restfb.FacebookClient;
+import com.restfb.Parameter;
+import com.restfb.exception.FacebookNetworkException;
+import com.restfb.exception.FacebookOAuthException;
+import com.restfb.types.send.SendResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link CircuitBreakerFacebookClient}.
+ *
+ * @author Marcel Overdijk
+ */
+public class CircuitBreakerFacebookClientTests {
+
+    private FacebookClient delegate;
+    private CircuitBreaker circuitBreaker;
+    private CircuitBreakerFacebookClient facebookClient;
+
+    @Before
+    public void setUp() {
+        this.delegate = mock(FacebookClient.class);
+        this.circuitBreaker = CircuitBreaker.builder().minimumNumberOfCalls(2).failureRateThreshold(1.0).build();
+        this.facebookClient = new CircuitBreakerFacebookClient(delegate, circuitBreaker);
+    }
+
+    @Test
+    public void testPublish() {
+        SendResponse response = new SendResponse();
+        when(delegate.publish(eq("me/messages"), eq(SendResponse.class), Matchers.<Parameter>anyVararg())).thenReturn(response);
+        assertThat(facebookClient.publish("me/messages", SendResponse.class), is(sameInstance(response)));
+    }
+
+    @Test
+    public void testTransientFailuresOpenCircuitBreakerAndFailFast() {
+        FacebookNetworkException exception = new FacebookNetworkException("failure", 503);
+        when(delegate.publish(eq("me/messages"), eq(SendResponse.class), Matchers.<Parameter>anyVararg())).thenThrow(exception);
+        for (int i = 0; i < 2; i++) {
+            try {
+                facebookClient.publish("me/messages", SendResponse.class);
+                fail("Expected FacebookNetworkException");
+            } catch (FacebookNetworkException e) {
+                assertThat(e, is(sameInstance(exception)));
+            }
+        }
+        assertThat(circuitBreaker.getState(), is(State.OPEN));
+        try {
+            facebookClient.publish("me/messages", SendResponse.class);
+            fail("Expected CircuitBreakerOpenException");
+        } catch (CircuitBreakerOpenException e) {
+            // expected
+        }
+        verify(delegate, times(2)).publish(eq("me/messages"), eq(SendResponse.class), Matchers.<Parameter>anyVararg());
+    }
+
+    @Test
+    public void testNonTransientFailuresDoNotOpenCircuitBreaker() {
+        FacebookOAuthException exception = new FacebookOAuthException("type", "message", 100, 0, 400, null, null, false, null);
+        when(delegate.deleteObject(anyString(), Matchers.<Parameter>anyVararg())).thenThrow(exception);
+        for (int i = 0; i < 3; i++) {
+            try {
+                facebookClient.deleteObject("the-object");
+                fail("Expected FacebookOAuthException");
+            } catch (FacebookOAuthException e) {
+                // expected
+            }
+        }
+        assertThat(circuitBreaker.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void testHalfOpenProbeThrowingErrorReleasesPermission() throws Exception {
+        circuitBreaker = CircuitBreaker.builder().minimumNumberOfCalls(1).waitDurationInOpenState(10, TimeUnit.MILLISECONDS)
+                .permittedCallsInHalfOpenState(1).build();
+        facebookClient = new CircuitBreakerFacebookClient(delegate, circuitBreaker);
+        circuitBreaker.onFailure(circuitBreaker.tryAcquirePermission(), 0);
+        Thread.sleep(20);
+        when(delegate.publish(eq("me/messages"), eq(SendResponse.class), Matchers.<Parameter>anyVararg()))
+                .thenThrow(new Error("failure"))
+                .thenReturn(new SendResponse());
+        try {
+            facebookClient.publish("me/messages", SendResponse.class);
+            fail("Expected Error");
+        } catch (Error e) {
+            // expected
+        }
+        assertThat(circuitBreaker.getState(), is(State.HALF_OPEN));
+        facebookClient.publish("me/messages", SendResponse.class);
+        assertThat(circuitBreaker.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void testNonGraphApiMethodsAreNotProtected() {
+        circuitBreaker.onFailure(circuitBreaker.tryAcquirePermission(), 0);
+        circuitBreaker.onFailure(circuitBreaker.tryAcquirePermission(), 0);
+        assertThat(circuitBreaker.getState(), is(State.OPEN));
+        facebookClient.getJsonMapper();
+        verify(delegate).getJsonMapper();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.client;
+
+import com.github.marsbits.restfbmessenger.client.CircuitBreaker.State;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.marsbits.restfbmessenger.client.CircuitBreaker.NOT_PERMITTED;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link CircuitBreaker}.
+ *
+ * @author Marcel Overdijk
+ */
+public class CircuitBreakerTests {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(10);
+
+    private CircuitBreakerListener listener;
+
+    @Before
+    public void setUp() {
+        this.listener = mock(CircuitBreakerListener.class);
+    }
+
+    @Test
+    public void testOpensOnFailureRate() {
+        CircuitBreaker circuitBreaker = CircuitBreaker.builder().slidingWindowSize(10).minimumNumberOfCalls(4).failureRateThreshold(0.5)
+                .build();
+        circuitBreaker.addListener(listener);
+        success(circuitBreaker, FAST);
+        failure(circuitBreaker, FAST);
+        success(circuitBreaker, FAST);
+        assertThat(circuitBreaker.getState(), is(State.CLOSED));
+        failure(circuitBreaker, FAST);
+        assertThat(circuitBreaker.getState(), is(State.OPEN));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(NOT_PERMITTED));
+        verify(listener).onStateTransition(circuitBreaker, State.CLOSED, State.OPEN);
+    }
+
+    @Test
+    public void testOpensOnSlowCallRate() {
+        CircuitBreaker circuitBreaker = CircuitBreaker.builder().minimumNumberOfCalls(2)
+                .slowCallRateThreshold(1.0, 5, TimeUnit.SECONDS).build();
+        success(circuitBreaker, SLOW);
+        assertThat(circuitBreaker.getState(), is(State.CLOSED));
+        success(circuitBreaker, SLOW);
+        assertThat(circuitBreaker.getState(), is(State.OPEN));
+    }
+
+    @Test
+    public void testSlidingWindowForgetsOldCalls() {
+        CircuitBreaker circuitBreaker = CircuitBreaker.builder().slidingWindowSize(4).minimumNumberOfCalls(4).failureRateThreshold(0.75)
+                .build();
+        failure(circuitBreaker, FAST);
+        failure(circuitBreaker, FAST);
+        success(circuitBreaker, FAST);
+        success(circuitBreaker, FAST);
+        success(circuitBreaker, FAST);
+        failure(circuitBreaker, FAST);
+        assertThat(circuitBreaker.getState(), is(State.CLOSED));
+        failure(circuitBreaker, FAST);
+        failure(circuitBreaker, FAST);
+        assertThat(circuitBreaker.getState(), is(State.OPEN));
+    }
+
+    @Test
+    public void testHalfOpenClosesAfterSuccessfulProbes() throws Exception {
+        CircuitBreaker circuitBreaker = openCircuitBreaker(2);
+        circuitBreaker.addListener(listener);
+        Thread.sleep(20);
+        long permission1 = circuitBreaker.tryAcquirePermission();
+        assertThat(permission1 == NOT_PERMITTED, is(false));
+        assertThat(circuitBreaker.getState(), is(State.HALF_OPEN));
+        long permission2 = circuitBreaker.tryAcquirePermission();
+        assertThat(permission2 == NOT_PERMITTED, is(false));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(NOT_PERMITTED));
+        circuitBreaker.onSuccess(permission1, FAST);
+        circuitBreaker.onSuccess(permission2, FAST);
+        assertThat(circuitBreaker.getState(), is(State.CLOSED));
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).onStateTransition(circuitBreaker, State.OPEN, State.HALF_OPEN);
+        inOrder.verify(listener).onStateTransition(circuitBreaker, State.HALF_OPEN, State.CLOSED);
+    }
+
+    @Test
+    public void testHalfOpenReopensOnFailedProbe() throws Exception {
+        CircuitBreaker circuitBreaker = openCircuitBreaker(2);
+        Thread.sleep(20);
+        long permission = circuitBreaker.tryAcquirePermission();
+        assertThat(permission == NOT_PERMITTED, is(false));
+        circuitBreaker.onFailure(permission, FAST);
+        assertThat(circuitBreaker.getState(), is(State.OPEN));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(NOT_PERMITTED));
+    }
+
+    @Test
+    public void testHalfOpenIgnoresOutcomesOfCallsPermittedWhileClosed() throws Exception {
+        CircuitBreaker circuitBreaker = CircuitBreaker.builder().minimumNumberOfCalls(1)
+                .waitDurationInOpenState(10, TimeUnit.MILLISECONDS).permittedCallsInHalfOpenState(1).build();
+        long stalePermission = circuitBreaker.tryAcquirePermission();
+        failure(circuitBreaker, FAST);
+        assertThat(circuitBreaker.getState(), is(State.OPEN));
+        Thread.sleep(20);
+        long permission = circuitBreaker.tryAcquirePermission();
+        assertThat(circuitBreaker.getState(), is(State.HALF_OPEN));
+        circuitBreaker.onFailure(stalePermission, SLOW);
+        assertThat(circuitBreaker.getState(), is(State.HALF_OPEN));
+        circuitBreaker.onSuccess(permission, FAST);
+        assertThat(circuitBreaker.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void testHalfOpenReleasedPermissionPermitsAnotherProbe() throws Exception {
+        CircuitBreaker circuitBreaker = openCircuitBreaker(1);
+        Thread.sleep(20);
+        long permission = circuitBreaker.tryAcquirePermission();
+        assertThat(circuitBreaker.tryAcquirePermission(), is(NOT_PERMITTED));
+        circuitBreaker.release(permission);
+        assertThat(circuitBreaker.tryAcquirePermission() == NOT_PERMITTED, is(false));
+        assertThat(circuitBreaker.getState(), is(State.HALF_OPEN));
+    }
+
+    @Test
+    public void testReset() {
+        CircuitBreaker circuitBreaker = openCircuitBreaker(1);
+        circuitBreaker.reset();
+        assertThat(circuitBreaker.getState(), is(State.CLOSED));
+        assertThat(circuitBreaker.tryAcquirePermission() == NOT_PERMITTED, is(false));
+    }
+
+    private static CircuitBreaker openCircuitBreaker(int permittedCallsInHalfOpenState) {
+        CircuitBreaker circuitBreaker = CircuitBreaker.builder().minimumNumberOfCalls(1)
+                .waitDurationInOpenState(10, TimeUnit.MILLISECONDS).permittedCallsInHalfOpenState(permittedCallsInHalfOpenState).build();
+        failure(circuitBreaker, FAST);
+        assertThat(circuitBreaker.getState(), is(State.OPEN));
+        return circuitBreaker;
+    }
+
+    private static void success(CircuitBreaker circuitBreaker, long durationNanos) {
+        circuitBreaker.onSuccess(circuitBreaker.tryAcquirePermission(), durationNanos);
+    }
+
+    private static void failure(CircuitBreaker circuitBreaker, long durationNanos) {
+        circuitBreaker.onFailure(circuitBreaker.tryAcquirePermission(), durationNanos);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.client;
+
+import com.restfb.WebRequestor.Response;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link HttpClientWebRequestor}.
+ *
+ * @author Marcel Overdijk
+ */
+public class HttpClientWebRequestorTests {
+
+    private HttpServer server;
+    private HttpClientWebRequestor webRequestor;
+    private String baseUrl;
+
+    private List<String> requests = new CopyOnWriteArrayList<>();
+    private List<InetSocketAddress> remoteAddresses = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String body = read(exchange.getRequestBody());
+                requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI() + " " + body);
+                remoteAddresses.add(exchange.getRemoteAddress());
+                byte[] response = "{\"success\":true}".getBytes("UTF-8");
+                exchange.getResponseHeaders().add("x-fb-trace-id", "the-trace-id");
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(exchange.getRequestURI().getPath().equals("/error") ? 400 : 200, response.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(response);
+                }
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        webRequestor = HttpClientWebRequestor.builder()
+                .maxConnections(2)
+                .maxConnectionsPerRoute(2)
+                .readTimeout(5, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        webRequestor.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testExecuteGet() throws Exception {
+        Response response = webRequestor.executeGet(baseUrl + "/me?fields=id");
+        assertThat(response.getStatusCode(), is(200));
+        assertThat(response.getBody(), is("{\"success\":true}"));
+        assertThat(requests.get(0), is("GET /me?fields=id "));
+        assertThat(webRequestor.getDebugHeaderInfo().getTraceId(), is("the-trace-id"));
+    }
+
+    @Test
+    public void testExecutePost() throws Exception {
+        Response response = webRequestor.executePost(baseUrl + "/me/messages", "recipient=1&access_token=token");
+        assertThat(response.getStatusCode(), is(200));
+        assertThat(requests.get(0), is("POST /me/messages recipient=1&access_token=token"));
+    }
+
+    @Test
+    public void testExecuteDelete() throws Exception {
+        Response response = webRequestor.executeDelete(baseUrl + "/me/messenger_profile");
+        assertThat(response.getStatusCode(), is(200));
+        assertThat(requests.get(0), is("DELETE /me/messenger_profile "));
+    }
+
+    @Test
+    public void testErrorStatusCode() throws Exception {
+        Response response = webRequestor.executeGet(baseUrl + "/error");
+        assertThat(response.getStatusCode(), is(400));
+        assertThat(response.getBody(), is("{\"success\":true}"));
+    }
+
+    @Test
+    public void testConnectionsAreReused() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            webRequestor.executePost(baseUrl + "/me/messages", "recipient=" + i);
+        }
+        Set<InetSocketAddress> connections = new HashSet<>(remoteAddresses);
+        assertThat(requests.size(), is(10));
+        assertThat(connections.size(), is(1));
+    }
+
+    private static String read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toString("UTF-8");
+    }
+}
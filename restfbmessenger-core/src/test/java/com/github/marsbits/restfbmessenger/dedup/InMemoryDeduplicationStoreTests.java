@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.dedup;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link InMemoryDeduplicationStore}.
+ *
+ * @author Marcel Overdijk
+ */
+public class InMemoryDeduplicationStoreTests {
+
+    private static final long WINDOW = TimeUnit.MINUTES.toNanos(10);
+
+    @Test
+    public void testMarkSeen() {
+        InMemoryDeduplicationStore store = new InMemoryDeduplicationStore();
+        assertThat(store.tryClaim("mid.1"), is(true));
+        store.markSeen("mid.1");
+        assertThat(store.tryClaim("mid.1"), is(false));
+        assertThat(store.tryClaim("mid.2"), is(true));
+        store.markSeen("mid.2");
+        assertThat(store.size(), is(2));
+    }
+
+    @Test
+    public void testClaimedIdIsDuplicate() {
+        InMemoryDeduplicationStore store = new InMemoryDeduplicationStore();
+        assertThat(store.tryClaim("mid.1"), is(true));
+        assertThat(store.tryClaim("mid.1"), is(false));
+        assertThat(store.size(), is(0));
+    }
+
+    @Test
+    public void testReleasedIdCanBeClaimedAgain() {
+        InMemoryDeduplicationStore store = new InMemoryDeduplicationStore();
+        assertThat(store.tryClaim("mid.1"), is(true));
+        store.release("mid.1");
+        assertThat(store.tryClaim("mid.1"), is(true));
+    }
+
+    @Test
+    public void testClaimExpiresAfterWindow() {
+        InMemoryDeduplicationStore store = InMemoryDeduplicationStore.builder().window(10, TimeUnit.MINUTES).build();
+        assertThat(store.tryClaim("mid.1", 0), is(true));
+        assertThat(store.tryClaim("mid.1", WINDOW - 1), is(false));
+        assertThat(store.tryClaim("mid.1", WINDOW), is(true));
+    }
+
+    @Test
+    public void testMarkSeenAfterWindow() {
+        InMemoryDeduplicationStore store = InMemoryDeduplicationStore.builder().window(10, TimeUnit.MINUTES).build();
+        store.markSeen("mid.1", 0);
+        assertThat(store.tryClaim("mid.1", WINDOW - 1), is(false));
+        assertThat(store.tryClaim("mid.1", 2 * WINDOW), is(true));
+    }
+
+    @Test
+    public void testEvictedIdIsForgottenWithoutBloomFilter() {
+        InMemoryDeduplicationStore store = InMemoryDeduplicationStore.builder().maximumSize(2).concurrencyLevel(1).build();
+        store.markSeen("mid.1", 0);
+        store.markSeen("mid.2", 1);
+        store.markSeen("mid.3", 2);
+        assertThat(store.size(), is(2));
+        assertThat(store.tryClaim("mid.1", 3), is(true));
+    }
+
+    @Test
+    public void testEvictedIdIsRememberedByBloomFilter() {
+        InMemoryDeduplicationStore store = InMemoryDeduplicationStore.builder()
+                .maximumSize(2)
+                .concurrencyLevel(1)
+                .window(10, TimeUnit.MINUTES)
+                .bloomFilter(1000, 0.0001)
+                .build();
+        long now = System.nanoTime();
+        store.markSeen("mid.1", now);
+        store.markSeen("mid.2", now + 1);
+        store.markSeen("mid.3", now + 2);
+        assertThat(store.tryClaim("mid.1", now + 3), is(false));
+        // the bloom filter forgets the id after the window
+        assertThat(store.tryClaim("mid.1", now + WINDOW + 4), is(true));
+    }
+
+    @Test
+    public void testAdvanceWatermark() {
+        InMemoryDeduplicationStore store = new InMemoryDeduplicationStore();
+        assertThat(store.isWatermarkStale("read:user-1", 100), is(false));
+        store.advanceWatermark("read:user-1", 100);
+        assertThat(store.isWatermarkStale("read:user-1", 100), is(true));
+        assertThat(store.isWatermarkStale("read:user-1", 99), is(true));
+        assertThat(store.isWatermarkStale("read:user-1", 101), is(false));
+        store.advanceWatermark("read:user-1", 101);
+        store.advanceWatermark("read:user-1", 50);
+        assertThat(store.isWatermarkStale("read:user-1", 101), is(true));
+        assertThat(store.isWatermarkStale("read:user-2", 50), is(false));
+    }
+
+    @Test
+    public void testBloomFilterFalsePositiveRate() {
+        TimeWindowedBloomFilter bloomFilter = new TimeWindowedBloomFilter(10000, 0.01, WINDOW, 0);
+        for (int i = 0; i < 10000; i++) {
+            bloomFilter.put("mid." + i, 0);
+        }
+        int falsePositives = 0;
+        for (int i = 10000; i < 20000; i++) {
+            if (bloomFilter.mightContain("mid." + i, 0)) {
+                falsePositives++;
+            }
+        }
+        assertThat(bloomFilter.getHashCount(), is(7));
+        assertThat(falsePositives < 200, is(true));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.dedup;
+
+import com.restfb.types.webhook.messaging.DeliveryItem;
+import com.restfb.types.webhook.messaging.MessageItem;
+import com.restfb.types.webhook.messaging.MessagingItem;
+import com.restfb.types.webhook.messaging.MessagingParticipant;
+import com.restfb.types.webhook.messaging.PostbackItem;
+import com.restfb.types.webhook.messaging.ReadItem;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link MessagingDeduplicator}.
+ *
+ * @author Marcel Overdijk
+ */
+public class MessagingDeduplicatorTests {
+
+    private MessagingDeduplicator deduplicator;
+
+    @Before
+    public void setUp() {
+        this.deduplicator = new MessagingDeduplicator();
+    }
+
+    @Test
+    public void testMessage() {
+        assertThat(handle(message("mid.1"), false), is(false));
+        assertThat(handle(message("mid.1"), false), is(true));
+        assertThat(handle(message("mid.1"), true), is(false));
+        assertThat(handle(message("mid.2"), false), is(false));
+        assertThat(handle(message(null), false), is(false));
+        assertThat(handle(message(null), false), is(false));
+    }
+
+    @Test
+    public void testMessageBeingHandledIsDuplicate() {
+        assertThat(deduplicator.isDuplicate(message("mid.1"), false), is(false));
+        // e.g. Facebook redelivered the message while it is still being handled
+        assertThat(deduplicator.isDuplicate(message("mid.1"), false), is(true));
+        deduplicator.markHandled(message("mid.1"), false);
+        assertThat(deduplicator.isDuplicate(message("mid.1"), false), is(true));
+    }
+
+    @Test
+    public void testReleasedMessageIsNotDuplicate() {
+        assertThat(deduplicator.isDuplicate(message("mid.1"), false), is(false));
+        // e.g. handling the message failed and Facebook redelivered it
+        deduplicator.release(message("mid.1"), false);
+        assertThat(deduplicator.isDuplicate(message("mid.1"), false), is(false));
+    }
+
+    @Test
+    public void testDelivery() {
+        assertThat(handle(delivery("user-1", "1000"), false), is(false));
+        assertThat(handle(delivery("user-1", "1000"), false), is(true));
+        assertThat(handle(delivery("user-2", "1000"), false), is(false));
+        assertThat(handle(delivery("user-1", "2000"), false), is(false));
+        assertThat(handle(delivery("user-1", "1500"), false), is(true));
+    }
+
+    @Test
+    public void testDeliveryIsNotDuplicateUntilHandled() {
+        assertThat(deduplicator.isDuplicate(delivery("user-1", "1000"), false), is(false));
+        assertThat(deduplicator.isDuplicate(delivery("user-1", "1000"), false), is(false));
+        deduplicator.markHandled(delivery("user-1", "1000"), false);
+        assertThat(deduplicator.isDuplicate(delivery("user-1", "1000"), false), is(true));
+    }
+
+    @Test
+    public void testRead() {
+        MessagingItem read = messaging("user-1");
+        ReadItem item = new ReadItem();
+        item.setWatermark("1000");
+        read.setRead(item);
+        assertThat(handle(read, false), is(false));
+        assertThat(handle(read, false), is(true));
+        // deliveries and reads have separate watermarks
+        assertThat(handle(delivery("user-1", "1000"), false), is(false));
+    }
+
+    @Test
+    public void testOtherItemsAreNotDuplicates() {
+        MessagingItem postback = messaging("user-1");
+        postback.setPostback(new PostbackItem());
+        assertThat(handle(postback, false), is(false));
+        assertThat(handle(postback, false), is(false));
+    }
+
+    @Test
+    public void testStoreFailureIsNotDuplicate() {
+        DeduplicationStore store = mock(DeduplicationStore.class);
+        when(store.tryClaim(anyString())).thenThrow(new IllegalStateException("unavailable"));
+        doThrow(new IllegalStateException("unavailable")).when(store).markSeen(anyString());
+        doThrow(new IllegalStateException("unavailable")).when(store).release(anyString());
+        deduplicator = new MessagingDeduplicator(store);
+        assertThat(handle(message("mid.1"), false), is(false));
+        deduplicator.release(message("mid.1"), false);
+    }
+
+    /**
+     * Checks whether the given item is a duplicate, and marks it as handled when it is not.
+     */
+    private boolean handle(MessagingItem messaging, boolean standby) {
+        if (deduplicator.isDuplicate(messaging, standby)) {
+            return true;
+        }
+        deduplicator.markHandled(messaging, standby);
+        return false;
+    }
+
+    private static MessagingItem message(String mid) {
+        MessageItem message = new MessageItem();
+        message.setMid(mid);
+        MessagingItem messaging = messaging("user-1");
+        messaging.setMessage(message);
+        return messaging;
+    }
+
+    private static MessagingItem delivery(String senderId, String watermark) {
+        DeliveryItem delivery = new DeliveryItem();
+        delivery.setWatermark(watermark);
+        MessagingItem messaging = messaging(senderId);
+        messaging.setDelivery(delivery);
+        return messaging;
+    }
+
+    private static MessagingItem messaging(String senderId) {
+        MessagingParticipant sender = new MessagingParticipant();
+        sender.setId(senderId);
+        MessagingParticipant recipient = new MessagingParticipant();
+        recipient.setId("page-1");
+        MessagingItem messaging = new MessagingItem();
+        messaging.setSender(sender);
+        messaging.setRecipient(recipient);
+        return messaging;
+    }
+}
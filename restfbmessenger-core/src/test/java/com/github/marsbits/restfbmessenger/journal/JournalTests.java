@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link Journal}.
+ *
+ * @author Marcel Overdijk
+ */
+public class JournalTests {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private Journal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = folder.newFolder("journal");
+        this.journal = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+    }
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        long first = journal.append(bytes("record-1"));
+        long second = journal.append(bytes("record-22"));
+        assertThat(first, is(0L));
+        assertThat(second, is((long) Journal.HEADER_SIZE + 8));
+        assertThat(journal.getEndOffset(), is(second + Journal.HEADER_SIZE + 9));
+        JournalReader reader = journal.reader(0);
+        JournalRecord record = reader.next();
+        assertThat(string(record.getData()), is("record-1"));
+        assertThat(record.getNextOffset(), is(second));
+        assertThat(string(reader.next().getData()), is("record-22"));
+        assertThat(reader.next(), is(nullValue()));
+        journal.append(bytes("record-333"));
+        assertThat(string(reader.next().getData()), is("record-333"));
+    }
+
+    @Test
+    public void testAppendEmptyRecord() throws IOException {
+        try {
+            journal.append(new byte[0]);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSegmentsAreRolled() throws IOException {
+        List<String> appended = appendRecords(100);
+        assertThat(journal.getSegmentCount() > 1, is(true));
+        assertThat(readAll(journal.reader(0)), is(appended));
+    }
+
+    @Test
+    public void testSync() throws IOException {
+        long offset = journal.append(bytes("record"));
+        assertThat(journal.getDurableOffset(), is(0L));
+        journal.sync(offset);
+        assertThat(journal.getDurableOffset(), is(journal.getEndOffset()));
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        List<String> appended = appendRecords(100);
+        long end = journal.getEndOffset();
+        journal.close();
+        journal = open();
+        assertThat(journal.getEndOffset(), is(end));
+        assertThat(journal.getCommittedOffset(), is(0L));
+        assertThat(readAll(journal.reader(0)), is(appended));
+    }
+
+    @Test
+    public void testCommitDeletesSegments() throws IOException {
+        List<String> appended = appendRecords(100);
+        int segments = journal.getSegmentCount();
+        JournalReader reader = journal.reader(0);
+        for (int i = 0; i < 60; i++) {
+            reader.next();
+        }
+        journal.commit(reader.getOffset());
+        assertThat(journal.getSegmentCount() < segments, is(true));
+        journal.close();
+        journal = open();
+        assertThat(journal.getCommittedOffset(), is(reader.getOffset()));
+        assertThat(readAll(journal.reader(journal.getCommittedOffset())), is(appended.subList(60, 100)));
+    }
+
+    @Test
+    public void testCommittedSegmentsAreRetained() throws IOException {
+        journal.close();
+        journal = Journal.builder(directory).segmentSize(4096).retentionSize(8192).build();
+        appendRecords(200);
+        journal.commit(journal.getEndOffset());
+        assertThat(journal.getFirstOffset() > 0, is(true));
+        assertThat(journal.getEndOffset() - journal.getFirstOffset() >= 8192, is(true));
+        assertThat(readAll(journal.reader(journal.getFirstOffset())).isEmpty(), is(false));
+    }
+
+    @Test
+    public void testTornTailIsTruncated() throws IOException {
+        journal.append(bytes("record-1"));
+        long torn = journal.append(bytes("record-2"));
+        journal.close();
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, "00000000000000000000.log"), "rw")) {
+            // corrupt the last record
+            file.seek(torn + Journal.HEADER_SIZE);
+            file.write(bytes("x"));
+        }
+        journal = open();
+        assertThat(journal.getEndOffset(), is(torn));
+        journal.append(bytes("record-3"));
+        List<String> records = readAll(journal.reader(0));
+        assertThat(records.size(), is(2));
+        assertThat(records.get(1), is("record-3"));
+    }
+
+    private Journal open() throws IOException {
+        return Journal.builder(directory).segmentSize(4096).build();
+    }
+
+    private List<String> appendRecords(int count) throws IOException {
+        List<String> appended = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String record = "record-" + i + "-0123456789012345678901234567890123456789012345678901234567890123456789";
+            journal.append(bytes(record));
+            appended.add(record);
+        }
+        return appended;
+    }
+
+    private static List<String> readAll(JournalReader reader) {
+        List<String> records = new ArrayList<>();
+        JournalRecord record;
+        while ((record = reader.next()) != null) {
+            records.add(string(record.getData()));
+        }
+        return records;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(UTF_8);
+    }
+
+    private static String string(byte[] data) {
+        return new String(data, UTF_8);
+    }
+}
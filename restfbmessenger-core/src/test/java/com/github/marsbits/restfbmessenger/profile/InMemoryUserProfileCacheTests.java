@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.profile;
+
+import com.restfb.exception.FacebookOAuthException;
+import com.restfb.types.User;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link InMemoryUserProfileCache}.
+ *
+ * @author Marcel Overdijk
+ */
+public class InMemoryUserProfileCacheTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private InMemoryUserProfileCache cache = InMemoryUserProfileCache.builder()
+            .maximumSize(2)
+            .concurrencyLevel(1)
+            .ttl(60, TimeUnit.SECONDS)
+            .notFoundTtl(10, TimeUnit.SECONDS)
+            .build();
+
+    @Test
+    public void testGetCachedProfile() {
+        CachedUserProfile profile = CachedUserProfile.found(new User());
+        cache.put("user-1", "first_name", profile, 0);
+        assertThat(cache.get("user-1", "first_name", SECOND), is(sameInstance(profile)));
+        assertThat(cache.get("user-1", "last_name", SECOND), is(nullValue()));
+        assertThat(cache.get("user-2", "first_name", SECOND), is(nullValue()));
+    }
+
+    @Test
+    public void testProfilesExpire() {
+        cache.put("user-1", "first_name", CachedUserProfile.found(new User()), 0);
+        cache.put("user-2", "first_name", CachedUserProfile.notFound(new FacebookOAuthException(null, null, 100, 33, 400, null, null,
+                null, null)), 0);
+        assertThat(cache.get("user-2", "first_name", 9 * SECOND).isNotFound(), is(true));
+        assertThat(cache.get("user-2", "first_name", 10 * SECOND), is(nullValue()));
+        assertThat(cache.get("user-1", "first_name", 59 * SECOND).isNotFound(), is(false));
+        assertThat(cache.get("user-1", "first_name", 60 * SECOND), is(nullValue()));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedUserIsEvicted() {
+        cache.put("user-1", "first_name", CachedUserProfile.found(new User()), 0);
+        cache.put("user-1", "last_name", CachedUserProfile.found(new User()), 0);
+        cache.put("user-2", "first_name", CachedUserProfile.found(new User()), 0);
+        cache.get("user-1", "first_name", 0);
+        cache.put("user-3", "first_name", CachedUserProfile.found(new User()), 0);
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get("user-2", "first_name", 0), is(nullValue()));
+        assertThat(cache.get("user-1", "last_name", 0).isNotFound(), is(false));
+        assertThat(cache.get("user-3", "first_name", 0).isNotFound(), is(false));
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.put("user-1", "first_name", CachedUserProfile.found(new User()), 0);
+        cache.put("user-1", "last_name", CachedUserProfile.found(new User()), 0);
+        cache.put("user-2", "first_name", CachedUserProfile.found(new User()), 0);
+        cache.invalidate("user-1");
+        assertThat(cache.get("user-1", "first_name", 0), is(nullValue()));
+        assertThat(cache.get("user-1", "last_name", 0), is(nullValue()));
+        assertThat(cache.size(), is(1));
+        cache.clear();
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void testMaximumSizeIsSpreadOverSegments() {
+        InMemoryUserProfileCache cache = InMemoryUserProfileCache.builder().maximumSize(10).concurrencyLevel(4).build();
+        for (int i = 0; i < 1000; i++) {
+            cache.put("user-" + i, "first_name", CachedUserProfile.found(new User()));
+        }
+        assertThat(cache.size(), is(10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaximumSize() {
+        InMemoryUserProfileCache.builder().maximumSize(0);
+    }
+}
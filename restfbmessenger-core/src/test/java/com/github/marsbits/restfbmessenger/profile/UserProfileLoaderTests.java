@@ -0,0 +1,281 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.profile;
+
+import com.restfb.DefaultJsonMapper;
+import com.restfb.FacebookClient;
+import com.restfb.Parameter;
+import com.restfb.batch.BatchHeader;
+import com.restfb.batch.BatchRequest;
+import com.restfb.batch.BatchResponse;
+import com.restfb.exception.FacebookException;
+import com.restfb.exception.FacebookGraphException;
+import com.restfb.exception.FacebookNetworkException;
+import com.restfb.exception.FacebookOAuthException;
+import com.restfb.types.User;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link UserProfileLoader}.
+ *
+ * @author Marcel Overdijk
+ */
+public class UserProfileLoaderTests {
+
+    private FacebookClient facebookClient;
+    private UserProfileLoader loader;
+
+    @Before
+    public void setUp() {
+        this.facebookClient = mock(FacebookClient.class);
+        when(facebookClient.getJsonMapper()).thenReturn(new DefaultJsonMapper());
+        this.loader = new UserProfileLoader(facebookClient, new InMemoryUserProfileCache());
+    }
+
+    @Test
+    public void testLoadCachesProfile() {
+        User user = user("user-1", "John");
+        when(facebookClient.fetchObject("user-1", User.class, Parameter.with("fields", "last_name,first_name"))).thenReturn(user);
+        assertThat(loader.load("user-1", "last_name,first_name"), is(user));
+        assertThat(loader.load("user-1", "first_name, last_name"), is(user));
+        verify(facebookClient, times(1)).fetchObject(anyString(), eq(User.class), any(Parameter.class));
+    }
+
+    @Test
+    public void testLoadReturnsCopies() {
+        User user = user("user-1", "John");
+        when(facebookClient.fetchObject("user-1", User.class, Parameter.with("fields", "first_name"))).thenReturn(user);
+        User first = loader.load("user-1", "first_name");
+        first.setFirstName("Jane");
+        User second = loader.load("user-1", "first_name");
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(second.getFirstName(), is("John"));
+        assertThat(loader.loadAll(Arrays.asList("user-1"), "first_name").get("user-1").getFirstName(), is("John"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        when(facebookClient.fetchObject("user-1", User.class, Parameter.with("fields", "first_name"))).thenReturn(new User());
+        loader.load("user-1", "first_name");
+        loader.invalidate("user-1");
+        loader.load("user-1", "first_name");
+        verify(facebookClient, times(2)).fetchObject(anyString(), eq(User.class), any(Parameter.class));
+    }
+
+    @Test
+    public void testNotFoundIsCached() {
+        FacebookOAuthException notFound = new FacebookOAuthException("GraphMethodException", "Unsupported get request", 100, 33, 400,
+                null, null, null, null);
+        when(facebookClient.fetchObject("user-1", User.class, Parameter.with("fields", "first_name"))).thenThrow(notFound);
+        for (int i = 0; i < 2; i++) {
+            try {
+                loader.load("user-1", "first_name");
+                fail("Expected FacebookOAuthException");
+            } catch (FacebookOAuthException e) {
+                assertThat(e, is(sameInstance(notFound)));
+            }
+        }
+        verify(facebookClient, times(1)).fetchObject(anyString(), eq(User.class), any(Parameter.class));
+    }
+
+    @Test
+    public void testOtherFailuresAreNotCached() {
+        when(facebookClient.fetchObject("user-1", User.class, Parameter.with("fields", "first_name")))
+                .thenThrow(new FacebookNetworkException("failure", 503));
+        for (int i = 0; i < 2; i++) {
+            try {
+                loader.load("user-1", "first_name");
+                fail("Expected FacebookNetworkException");
+            } catch (FacebookNetworkException e) {
+                // expected
+            }
+        }
+        verify(facebookClient, times(2)).fetchObject(anyString(), eq(User.class), any(Parameter.class));
+    }
+
+    @Test
+    public void testConcurrentLookupsAreCoalesced() throws Exception {
+        final User user = user("user-1", "John");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(facebookClient.fetchObject("user-1", User.class, Parameter.with("fields", "first_name"))).thenAnswer(new Answer<User>() {
+
+            @Override
+            public User answer(InvocationOnMock invocation) throws Throwable {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return user;
+            }
+        });
+        final UserProfileLoader loader = new UserProfileLoader(facebookClient, null);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<User>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(new Callable<User>() {
+
+                    @Override
+                    public User call() throws Exception {
+                        return loader.load("user-1", "first_name");
+                    }
+                }));
+                if (i == 0) {
+                    started.await(5, TimeUnit.SECONDS);
+                }
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<User> future : futures) {
+                User loaded = future.get(5, TimeUnit.SECONDS);
+                assertThat(loaded, is(user));
+                assertThat(loaded, is(not(sameInstance(user))));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(facebookClient, times(1)).fetchObject(anyString(), eq(User.class), any(Parameter.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLoadAllOnlyFetchesMisses() {
+        User cached = user("user-1", "John");
+        when(facebookClient.fetchObject("user-1", User.class, Parameter.with("fields", "first_name"))).thenReturn(cached);
+        loader.load("user-1", "first_name");
+        when(facebookClient.executeBatch(anyListOf(BatchRequest.class))).thenReturn(Arrays.asList(
+                response(200, "{\"id\":\"user-2\",\"first_name\":\"Jane\"}"),
+                response(400, "{\"error\":{\"message\":\"Unsupported get request\",\"type\":\"GraphMethodException\",\"code\":100,"
+                        + "\"error_subcode\":33}}"),
+                response(500, "{\"error\":{\"message\":\"An unknown error has occurred\",\"type\":\"OAuthException\",\"code\":1}}"),
+                null));
+
+        UserProfiles profiles = loader.loadAll(Arrays.asList("user-1", "user-2", "user-3", "user-4", "user-5", "user-1"), "first_name");
+
+        ArgumentCaptor<List> requests = ArgumentCaptor.forClass(List.class);
+        verify(facebookClient).executeBatch(requests.capture());
+        assertThat(requests.getValue().size(), is(4));
+        assertThat(((BatchRequest) requests.getValue().get(0)).getRelativeUrl(), is("user-2?fields=first_name"));
+        assertThat(profiles.get("user-1"), is(cached));
+        assertThat(profiles.get("user-2").getFirstName(), is("Jane"));
+        assertThat(profiles.getUsers().size(), is(2));
+        assertThat(profiles.getFailures().size(), is(3));
+        assertThat(profiles.getFailures().get("user-3"), is(instanceOf(FacebookGraphException.class)));
+        assertThat(profiles.getFailures().get("user-5"), is(instanceOf(FacebookNetworkException.class)));
+
+        // only the found and not found users are cached
+        when(facebookClient.executeBatch(anyListOf(BatchRequest.class))).thenReturn(Arrays.asList(
+                response(200, "{\"id\":\"user-4\"}"), response(200, "{\"id\":\"user-5\"}")));
+        profiles = loader.loadAll(Arrays.asList("user-1", "user-2", "user-3", "user-4", "user-5"), "first_name");
+        assertThat(profiles.getUsers().size(), is(4));
+        assertThat(profiles.getFailures().keySet(), is(Collections.singleton("user-3")));
+    }
+
+    @Test
+    public void testLoadAllSplitsBatches() {
+        List<String> userIds = new ArrayList<>();
+        final List<BatchResponse> responses = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            userIds.add("user-" + i);
+            responses.add(response(200, "{\"id\":\"user-" + i + "\"}"));
+        }
+        when(facebookClient.executeBatch(anyListOf(BatchRequest.class))).thenAnswer(new Answer<List<BatchResponse>>() {
+
+            @Override
+            public List<BatchResponse> answer(InvocationOnMock invocation) throws Throwable {
+                return responses.subList(0, ((List<?>) invocation.getArguments()[0]).size());
+            }
+        });
+        UserProfiles profiles = loader.loadAll(userIds, "first_name");
+        verify(facebookClient, times(3)).executeBatch(anyListOf(BatchRequest.class));
+        assertThat(profiles.getUsers().size(), is(120));
+        assertThat(profiles.hasFailures(), is(false));
+    }
+
+    @Test
+    public void testLoadAllBatchFailure() {
+        FacebookNetworkException failure = new FacebookNetworkException("failure", 503);
+        when(facebookClient.executeBatch(anyListOf(BatchRequest.class))).thenThrow(failure);
+        UserProfiles profiles = loader.loadAll(Arrays.asList("user-1", "user-2"), "first_name");
+        assertThat(profiles.getUsers().isEmpty(), is(true));
+        assertThat(profiles.getFailures().get("user-1"), is(sameInstance((FacebookException) failure)));
+        assertThat(profiles.getFailures().get("user-2"), is(sameInstance((FacebookException) failure)));
+    }
+
+    @Test
+    public void testLoadAllSingleMissUsesSingleLookup() {
+        User user = user("user-1", "John");
+        when(facebookClient.fetchObject("user-1", User.class, Parameter.with("fields", "first_name"))).thenReturn(user);
+        UserProfiles profiles = loader.loadAll(Collections.singletonList("user-1"), "first_name");
+        assertThat(profiles.get("user-1"), is(user));
+        verify(facebookClient, never()).executeBatch(anyListOf(BatchRequest.class));
+    }
+
+    @Test
+    public void testNormalizeFields() {
+        assertThat(UserProfileLoader.normalizeFields("last_name, first_name,,last_name"), is("first_name,last_name"));
+    }
+
+    @Test(expected = FacebookException.class)
+    public void testLoadWithoutCache() {
+        when(facebookClient.fetchObject("user-1", User.class, Parameter.with("fields", "first_name")))
+                .thenThrow(new FacebookNetworkException("failure", 503));
+        new UserProfileLoader(facebookClient, null).load("user-1", "first_name");
+    }
+
+    private static BatchResponse response(int code, String body) {
+        return new BatchResponse(code, Collections.<BatchHeader>emptyList(), body);
+    }
+
+    private static User user(String id, String firstName) {
+        User user = new User();
+        user.setId(id);
+        user.setFirstName(firstName);
+        return user;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.restfb.DefaultJsonMapper;
+import com.restfb.FacebookClient;
+import com.restfb.batch.BatchHeader;
+import com.restfb.batch.BatchRequest;
+import com.restfb.batch.BatchResponse;
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.MessageRecipient;
+import com.restfb.types.send.SendResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.restfb.types.send.MessagingType.UPDATE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link BatchingAsyncSendOperations}.
+ *
+ * @author Marcel Overdijk
+ */
+public class BatchingAsyncSendOperationsTests {
+
+    private FacebookClient facebookClient;
+    private ScheduledExecutorService scheduler;
+
+    private MessageRecipient recipient = new IdMessageRecipient("the-user-id");
+
+    @Before
+    public void setUp() {
+        this.facebookClient = mock(FacebookClient.class);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        when(facebookClient.getJsonMapper()).thenReturn(new DefaultJsonMapper());
+        when(facebookClient.executeBatch(anyListOf(BatchRequest.class))).thenAnswer(new Answer<List<BatchResponse>>() {
+
+            @Override
+            public List<BatchResponse> answer(InvocationOnMock invocation) throws Throwable {
+                List<?> requests = (List<?>) invocation.getArguments()[0];
+                List<BatchResponse> responses = new ArrayList<>();
+                for (int i = 0; i < requests.size(); i++) {
+                    responses.add(new BatchResponse(200, Collections.<BatchHeader>emptyList(), "{\"message_id\":\"mid." + i + "\"}"));
+                }
+                return responses;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testFullBatchIsExecutedImmediately() throws Exception {
+        BatchingAsyncSendOperations operations = new BatchingAsyncSendOperations(facebookClient, scheduler, 3, 1, TimeUnit.HOURS);
+        List<SendFuture<SendResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(operations.textMessage(UPDATE, recipient, "the-text"));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertThat(futures.get(i).get(1, TimeUnit.SECONDS).getMessageId(), is("mid." + i));
+        }
+        verify(facebookClient, times(1)).executeBatch(anyListOf(BatchRequest.class));
+    }
+
+    @Test
+    public void testPartialBatchIsExecutedAfterWindow() throws Exception {
+        BatchingAsyncSendOperations operations = new BatchingAsyncSendOperations(facebookClient, scheduler, 50, 50, TimeUnit.MILLISECONDS);
+        SendFuture<SendResponse> future1 = operations.textMessage(UPDATE, recipient, "the-text-1");
+        SendFuture<SendResponse> future2 = operations.textMessage(UPDATE, recipient, "the-text-2");
+        assertThat(future1.get(1, TimeUnit.SECONDS).getMessageId(), is("mid.0"));
+        assertThat(future2.get(1, TimeUnit.SECONDS).getMessageId(), is("mid.1"));
+        verify(facebookClient, times(1)).executeBatch(anyListOf(BatchRequest.class));
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        BatchingAsyncSendOperations operations = new BatchingAsyncSendOperations(facebookClient, scheduler, 50, 1, TimeUnit.HOURS);
+        SendFuture<SendResponse> future = operations.markSeen(recipient);
+        operations.flush();
+        assertThat(future.get(1, TimeUnit.SECONDS).getMessageId(), is("mid.0"));
+    }
+
+    @Test
+    public void testRejectedBatchFails() throws Exception {
+        scheduler.shutdown();
+        BatchingAsyncSendOperations operations = new BatchingAsyncSendOperations(facebookClient, scheduler, 50, 1, TimeUnit.HOURS);
+        SendFuture<SendResponse> future = operations.markSeen(recipient);
+        assertThat(future.isDone(), is(true));
+        verify(facebookClient, never()).executeBatch(anyListOf(BatchRequest.class));
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.restfb.exception.FacebookOAuthException;
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.Message;
+import com.restfb.types.send.MessageRecipient;
+import com.restfb.types.send.NotificationTypeEnum;
+import com.restfb.types.send.SendResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.restfb.types.send.MessagingType.RESPONSE;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link DefaultAsyncSendOperations}.
+ *
+ * @author Marcel Overdijk
+ */
+public class DefaultAsyncSendOperationsTests {
+
+    private SendOperations sendOperations;
+    private QueueingExecutor executor;
+    private DefaultAsyncSendOperations asyncSendOperations;
+
+    private MessageRecipient recipient = new IdMessageRecipient("the-user-id");
+
+    @Before
+    public void setUp() {
+        this.sendOperations = mock(SendOperations.class);
+        this.executor = new QueueingExecutor();
+        this.asyncSendOperations = new DefaultAsyncSendOperations(sendOperations, executor);
+    }
+
+    @Test
+    public void testAllOperationsAreMirrored() throws Exception {
+        asyncSendOperations = new DefaultAsyncSendOperations(sendOperations, new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        // preparedMessage is only available on DefaultSendOperations
+        assertThat(AsyncSendOperations.class.getMethods().length, is(SendOperations.class.getMethods().length + 1));
+        for (Method method : AsyncSendOperations.class.getMethods()) {
+            if (method.getName().equals("preparedMessage")) {
+                continue;
+            }
+            Method sendMethod = SendOperations.class.getMethod(method.getName(), method.getParameterTypes());
+            Object[] args = new Object[method.getParameterTypes().length];
+            SendFuture<?> future = (SendFuture<?>) method.invoke(asyncSendOperations, args);
+            assertThat(future.isDone(), is(true));
+            future.get();
+            sendMethod.invoke(verify(sendOperations), args);
+        }
+    }
+
+    @Test
+    public void testTextMessage() throws Exception {
+        SendResponse response = new SendResponse();
+        when(sendOperations.textMessage(RESPONSE, recipient, "the-text")).thenReturn(response);
+        SendFuture<SendResponse> future = asyncSendOperations.textMessage(RESPONSE, recipient, "the-text");
+        assertThat(future.isDone(), is(false));
+        executor.runAll();
+        assertThat(future.get(), is(sameInstance(response)));
+    }
+
+    @Test
+    public void testTextMessageFailure() throws Exception {
+        FacebookOAuthException exception = new FacebookOAuthException("type", "message", 100, 0, 400, null, null, false, null);
+        doThrow(exception).when(sendOperations).textMessage(RESPONSE, recipient, "the-text");
+        SendFuture<SendResponse> future = asyncSendOperations.textMessage(RESPONSE, recipient, "the-text");
+        executor.runAll();
+        try {
+            future.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(sameInstance((Throwable) exception)));
+        }
+    }
+
+    @Test
+    public void testPreparedMessage() throws Exception {
+        DefaultSendOperations defaultSendOperations = mock(DefaultSendOperations.class);
+        PreparedMessage message = PreparedMessage.of(RESPONSE, new Message("the-text"));
+        SendResponse response = new SendResponse();
+        when(defaultSendOperations.preparedMessage(recipient, message)).thenReturn(response);
+        asyncSendOperations = new DefaultAsyncSendOperations(defaultSendOperations, executor);
+        SendFuture<SendResponse> future = asyncSendOperations.preparedMessage(recipient, message);
+        executor.runAll();
+        assertThat(future.get(), is(sameInstance(response)));
+    }
+
+    @Test
+    public void testPreparedMessageWithOtherSendOperationsSendsOriginalMessage() throws Exception {
+        Message original = new Message("the-text");
+        PreparedMessage message = PreparedMessage.of(RESPONSE, original, NotificationTypeEnum.NO_PUSH, null);
+        SendResponse response = new SendResponse();
+        when(sendOperations.message(RESPONSE, recipient, original, NotificationTypeEnum.NO_PUSH, null)).thenReturn(response);
+        SendFuture<SendResponse> future = asyncSendOperations.preparedMessage(recipient, message);
+        executor.runAll();
+        assertThat(future.get(), is(sameInstance(response)));
+    }
+
+    @Test
+    public void testPreparedJsonMessageWithOtherSendOperationsFails() throws Exception {
+        PreparedMessage message = PreparedMessage.ofJson(RESPONSE, "{\"text\":\"the-text\"}", null, null);
+        SendFuture<SendResponse> future = asyncSendOperations.preparedMessage(recipient, message);
+        executor.runAll();
+        try {
+            future.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(UnsupportedOperationException.class)));
+        }
+    }
+
+    @Test
+    public void testCancelledOperationIsNotPerformed() throws Exception {
+        SendFuture<SendResponse> future = asyncSendOperations.markSeen(recipient);
+        future.cancel(false);
+        executor.runAll();
+        verify(sendOperations, never()).markSeen(any(MessageRecipient.class));
+    }
+
+    @Test
+    public void testRejectedOperationFails() throws Exception {
+        asyncSendOperations = new DefaultAsyncSendOperations(sendOperations, new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException("rejected");
+            }
+        });
+        SendFuture<SendResponse> future = asyncSendOperations.typingOn(recipient);
+        try {
+            future.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(RejectedExecutionException.class)));
+        }
+    }
+
+    @Test
+    public void testTransientFailureIsRetried() throws Exception {
+        SendResponse response = new SendResponse();
+        FacebookOAuthException exception = new FacebookOAuthException("type", "message", 2, 0, 500, null, null, true, null);
+        when(sendOperations.textMessage(RESPONSE, recipient, "the-text")).thenThrow(exception).thenThrow(exception).thenReturn(response);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            asyncSendOperations = new DefaultAsyncSendOperations(sendOperations, scheduler);
+            asyncSendOperations.setRetryPolicy(RetryPolicy.builder().maxAttempts(3).backoff(1, 1, TimeUnit.MILLISECONDS).build(), scheduler);
+            SendFuture<SendResponse> future = asyncSendOperations.textMessage(RESPONSE, recipient, "the-text");
+            assertThat(future.get(1, TimeUnit.SECONDS), is(sameInstance(response)));
+            verify(sendOperations, times(3)).textMessage(RESPONSE, recipient, "the-text");
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRetriesAreLimitedByMaxAttempts() throws Exception {
+        FacebookOAuthException exception = new FacebookOAuthException("type", "message", 613, 0, 400, null, null, false, null);
+        doThrow(exception).when(sendOperations).textMessage(RESPONSE, recipient, "the-text");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            asyncSendOperations = new DefaultAsyncSendOperations(sendOperations, scheduler);
+            asyncSendOperations.setRetryPolicy(RetryPolicy.builder().maxAttempts(2).backoff(1, 1, TimeUnit.MILLISECONDS).build(), scheduler);
+            SendFuture<SendResponse> future = asyncSendOperations.textMessage(RESPONSE, recipient, "the-text");
+            try {
+                future.get(1, TimeUnit.SECONDS);
+                fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), is(sameInstance((Throwable) exception)));
+            }
+            verify(sendOperations, times(2)).textMessage(RESPONSE, recipient, "the-text");
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNonRetryableFailureIsNotRetried() throws Exception {
+        FacebookOAuthException exception = new FacebookOAuthException("type", "message", 100, 0, 400, null, null, false, null);
+        doThrow(exception).when(sendOperations).textMessage(RESPONSE, recipient, "the-text");
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        asyncSendOperations.setRetryPolicy(RetryPolicy.builder().build(), scheduler);
+        SendFuture<SendResponse> future = asyncSendOperations.textMessage(RESPONSE, recipient, "the-text");
+        executor.runAll();
+        assertThat(future.isDone(), is(true));
+        verify(sendOperations, times(1)).textMessage(RESPONSE, recipient, "the-text");
+        verifyZeroInteractions(scheduler);
+    }
+
+    private static class QueueingExecutor implements Executor {
+
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            tasks.clear();
+        }
+    }
+}
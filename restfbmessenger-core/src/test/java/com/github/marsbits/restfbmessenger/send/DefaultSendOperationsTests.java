@@ -16,8 +16,14 @@
 
 package com.github.marsbits.restfbmessenger.send;
 
+import com.github.marsbits.restfbmessenger.metrics.MessengerMetrics;
+import com.github.marsbits.restfbmessenger.tracing.MessengerSpan;
+import com.github.marsbits.restfbmessenger.tracing.MessengerTracer;
+import com.restfb.DefaultJsonMapper;
 import com.restfb.FacebookClient;
 import com.restfb.Parameter;
+import com.restfb.exception.FacebookOAuthException;
+import com.restfb.json.JsonObject;
 import com.restfb.types.send.Bubble;
 import com.restfb.types.send.ButtonTemplatePayload;
 import com.restfb.types.send.CallButton;
@@ -54,6 +60,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
+import org.mockito.Matchers;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -68,8 +75,16 @@ import static com.github.marsbits.restfbmessenger.send.DefaultSendOperations.REC
 import static com.github.marsbits.restfbmessenger.send.DefaultSendOperations.SENDER_ACTION_PARAM_NAME;
 import static com.github.marsbits.restfbmessenger.send.DefaultSendOperations.TAG_PARAM_NAME;
 import static com.restfb.types.send.MessagingType.RESPONSE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Tests for {@link DefaultSendOperations}.
@@ -106,6 +121,54 @@ public class DefaultSendOperationsTests {
         verifySend(messageRecipient, Parameter.with(SENDER_ACTION_PARAM_NAME, senderAction));
     }
 
+    @Test
+    public void testSendRecordsMetrics() {
+        MessengerMetrics metrics = mock(MessengerMetrics.class);
+        sendOperations.setMetrics(metrics);
+        sendOperations.markSeen(messageRecipient);
+        sendOperations.textMessage(RESPONSE, messageRecipient, "Hello!");
+        verify(metrics).sendCompleted(eq(SENDER_ACTION_PARAM_NAME), (String) isNull(), anyLong());
+        verify(metrics).sendCompleted(eq(MESSAGE_PARAM_NAME), (String) isNull(), anyLong());
+    }
+
+    @Test
+    public void testSendFailureRecordsErrorCode() {
+        MessengerMetrics metrics = mock(MessengerMetrics.class);
+        sendOperations.setMetrics(metrics);
+        FacebookOAuthException exception = new FacebookOAuthException("OAuthException", "Too many calls", 613, 0, 400, null, null, null,
+                null);
+        when(facebookClient.publish(eq(MESSAGES_PATH), eq(SendResponse.class), Matchers.<Parameter>anyVararg())).thenThrow(exception);
+        try {
+            sendOperations.textMessage(RESPONSE, messageRecipient, "Hello!");
+            fail();
+        } catch (FacebookOAuthException e) {
+            assertThat(e, is(exception));
+        }
+        verify(metrics).sendCompleted(eq(MESSAGE_PARAM_NAME), eq("613"), anyLong());
+    }
+
+    @Test
+    public void testSendFailureIsTraced() {
+        MessengerTracer tracer = mock(MessengerTracer.class);
+        MessengerSpan span = mock(MessengerSpan.class);
+        when(tracer.startSpan(MessengerTracer.SEND_SPAN_NAME)).thenReturn(span);
+        when(span.setAttribute(anyString(), anyString())).thenReturn(span);
+        sendOperations.setTracer(tracer);
+        FacebookOAuthException exception = new FacebookOAuthException("OAuthException", "Too many calls", 613, 0, 400, null, null, null,
+                null);
+        when(facebookClient.publish(eq(MESSAGES_PATH), eq(SendResponse.class), Matchers.<Parameter>anyVararg())).thenThrow(exception);
+        try {
+            sendOperations.textMessage(RESPONSE, messageRecipient, "Hello!");
+            fail();
+        } catch (FacebookOAuthException e) {
+            assertThat(e, is(exception));
+        }
+        verify(span).setAttribute(MessengerTracer.OPERATION_ATTRIBUTE, MESSAGE_PARAM_NAME);
+        verify(span).setAttribute(MessengerTracer.ERROR_CODE_ATTRIBUTE, "613");
+        verify(span).recordFailure(exception);
+        verify(span).end();
+    }
+
     @Test
     public void testSenderActionWithNotificationType() {
         SenderActionEnum senderAction = SenderActionEnum.mark_seen;
@@ -713,6 +776,37 @@ public class DefaultSendOperationsTests {
                 Parameter.with(MESSAGE_PARAM_NAME, message));
     }
 
+    @Test
+    public void testPreparedMessage() {
+        Message message = new Message("Hello!");
+        sendOperations.preparedMessage(messageRecipient, PreparedMessage.of(RESPONSE, message));
+        verifySend(RESPONSE, messageRecipient, Parameter.with(MESSAGE_PARAM_NAME, message));
+    }
+
+    @Test
+    public void testPreparedMessageWithNotificationTypeAndMessageTag() {
+        Message message = new Message(new TemplateAttachment(createGenericTemplate()));
+        PreparedMessage preparedMessage = PreparedMessage.of(RESPONSE, message, NotificationTypeEnum.NO_PUSH, MessageTag.ISSUE_RESOLUTION);
+        sendOperations.preparedMessage(messageRecipient, preparedMessage);
+        verifySend(RESPONSE, messageRecipient,
+                Parameter.with(NOTIFICATION_TYPE_PARAM_NAME, NotificationTypeEnum.NO_PUSH),
+                Parameter.with(TAG_PARAM_NAME, MessageTag.ISSUE_RESOLUTION.getTag()),
+                Parameter.with(MESSAGE_PARAM_NAME, message));
+    }
+
+    @Test
+    public void testPreparedMessageFromJson() {
+        sendOperations.preparedMessage(messageRecipient, PreparedMessage.ofJson(RESPONSE, "{\"text\":\"Hello!\"}", null, null));
+        verifySend(RESPONSE, messageRecipient, Parameter.with(MESSAGE_PARAM_NAME, new Message("Hello!")));
+    }
+
+    @Test
+    public void testRecipientParameterIsEscaped() {
+        String id = "1\"2\\3\n";
+        Parameter recipient = DefaultSendOperations.toRecipientParameter(new IdMessageRecipient(id));
+        assertThat(new DefaultJsonMapper().toJavaObject(recipient.value, JsonObject.class).getString("id", null), is(id));
+    }
+
     private void verifySend(MessageRecipient recipient, Parameter... parameters) {
         List<Parameter> params = new ArrayList<>();
         params.add(Parameter.with(RECIPIENT_PARAM_NAME, recipient));
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.github.marsbits.restfbmessenger.journal.Journal;
+import com.restfb.FacebookClient;
+import com.restfb.Parameter;
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.MessageRecipient;
+import com.restfb.types.send.SendResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import static com.github.marsbits.restfbmessenger.send.DefaultSendOperations.MESSAGES_PATH;
+import static com.restfb.types.send.MessagingType.UPDATE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link DurableAsyncSendOperations}.
+ *
+ * @author Marcel Overdijk
+ */
+public class DurableAsyncSendOperationsTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FacebookClient facebookClient;
+    private QueueingExecutor executor;
+    private File directory;
+    private Journal journal;
+    private DurableAsyncSendOperations asyncSendOperations;
+
+    private MessageRecipient recipient1 = new IdMessageRecipient("user-1");
+    private MessageRecipient recipient2 = new IdMessageRecipient("user-2");
+
+    @Before
+    public void setUp() throws IOException {
+        this.facebookClient = mock(FacebookClient.class);
+        this.executor = new QueueingExecutor();
+        this.directory = folder.newFolder("journal");
+        this.journal = Journal.builder(directory).build();
+        this.asyncSendOperations = new DurableAsyncSendOperations(new DefaultSendOperations(facebookClient), executor, journal);
+        when(facebookClient.publish(eq(MESSAGES_PATH), eq(SendResponse.class), Matchers.<Parameter>anyVararg()))
+                .thenReturn(new SendResponse());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+    }
+
+    @Test
+    public void testSendIsJournaledAndCommitted() throws Exception {
+        SendFuture<SendResponse> future = asyncSendOperations.textMessage(UPDATE, recipient1, "Hello!");
+        assertThat(asyncSendOperations.getPendingCount(), is(1));
+        assertThat(journal.getDurableOffset(), is(journal.getEndOffset()));
+        assertThat(journal.getCommittedOffset(), is(0L));
+        executor.runAll();
+        assertThat(future.isDone(), is(true));
+        assertThat(asyncSendOperations.getPendingCount(), is(0));
+        assertThat(journal.getCommittedOffset(), is(journal.getEndOffset()));
+        verify(facebookClient).publish(MESSAGES_PATH, SendResponse.class,
+                DurableAsyncSendOperations.decode(DurableAsyncSendOperations.encode(recordTextMessage(recipient1, "Hello!"))));
+    }
+
+    @Test
+    public void testOperationsArePerformedInOrderPerRecipient() throws Exception {
+        SendFuture<SendResponse> first = asyncSendOperations.textMessage(UPDATE, recipient1, "first");
+        SendFuture<SendResponse> second = asyncSendOperations.textMessage(UPDATE, recipient1, "second");
+        SendFuture<SendResponse> other = asyncSendOperations.textMessage(UPDATE, recipient2, "other");
+        // the second operation for the recipient waits for the first one
+        assertThat(executor.tasks.size(), is(2));
+        executor.runAll();
+        assertThat(first.isDone(), is(true));
+        assertThat(other.isDone(), is(true));
+        assertThat(second.isDone(), is(false));
+        assertThat(executor.tasks.size(), is(1));
+        executor.runAll();
+        assertThat(second.isDone(), is(true));
+        InOrder inOrder = inOrder(facebookClient);
+        inOrder.verify(facebookClient).publish(MESSAGES_PATH, SendResponse.class, recordTextMessage(recipient1, "first"));
+        inOrder.verify(facebookClient).publish(MESSAGES_PATH, SendResponse.class, recordTextMessage(recipient1, "second"));
+    }
+
+    @Test
+    public void testFailedOperationIsAcknowledged() throws Exception {
+        when(facebookClient.publish(eq(MESSAGES_PATH), eq(SendResponse.class), Matchers.<Parameter>anyVararg()))
+                .thenThrow(new IllegalStateException("failure"));
+        SendFuture<SendResponse> future = asyncSendOperations.textMessage(UPDATE, recipient1, "Hello!");
+        executor.runAll();
+        assertThat(future.isDone(), is(true));
+        assertThat(asyncSendOperations.getPendingCount(), is(0));
+        assertThat(journal.getCommittedOffset(), is(journal.getEndOffset()));
+    }
+
+    @Test
+    public void testOperationIsNotPerformedWhenSyncFails() throws Exception {
+        Journal journal = spy(this.journal);
+        doThrow(new IOException("sync failed")).when(journal).sync(anyLong());
+        asyncSendOperations = new DurableAsyncSendOperations(new DefaultSendOperations(facebookClient), executor, journal);
+        SendFuture<SendResponse> future = asyncSendOperations.textMessage(UPDATE, recipient1, "Hello!");
+        assertThat(future.isDone(), is(true));
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause() instanceof IOException, is(true));
+        }
+        assertThat(executor.tasks.size(), is(0));
+        assertThat(asyncSendOperations.getPendingCount(), is(0));
+        verify(facebookClient, never()).publish(eq(MESSAGES_PATH), eq(SendResponse.class), Matchers.<Parameter>anyVararg());
+    }
+
+    @Test
+    public void testQueuedOperationIsRemovedWhenSyncFails() throws Exception {
+        Journal journal = spy(this.journal);
+        asyncSendOperations = new DurableAsyncSendOperations(new DefaultSendOperations(facebookClient), executor, journal);
+        SendFuture<SendResponse> first = asyncSendOperations.textMessage(UPDATE, recipient1, "first");
+        doThrow(new IOException("sync failed")).when(journal).sync(anyLong());
+        SendFuture<SendResponse> second = asyncSendOperations.textMessage(UPDATE, recipient1, "second");
+        assertThat(second.isDone(), is(true));
+        assertThat(asyncSendOperations.getPendingCount(), is(1));
+        doNothing().when(journal).sync(anyLong());
+        SendFuture<SendResponse> third = asyncSendOperations.textMessage(UPDATE, recipient1, "third");
+        executor.runAll();
+        assertThat(first.isDone(), is(true));
+        executor.runAll();
+        assertThat(third.isDone(), is(true));
+        assertThat(asyncSendOperations.getPendingCount(), is(0));
+        verify(facebookClient, never()).publish(MESSAGES_PATH, SendResponse.class, recordTextMessage(recipient1, "second"));
+    }
+
+    @Test
+    public void testQueuedOperationIsNotPerformedWhenSyncFailsAfterHeadCompleted() throws Exception {
+        Journal journal = spy(this.journal);
+        asyncSendOperations = new DurableAsyncSendOperations(new DefaultSendOperations(facebookClient), executor, journal);
+        SendFuture<SendResponse> first = asyncSendOperations.textMessage(UPDATE, recipient1, "first");
+        // the first operation completes while the second one is synced
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                executor.runAll();
+                throw new IOException("sync failed");
+            }
+        }).when(journal).sync(anyLong());
+        SendFuture<SendResponse> second = asyncSendOperations.textMessage(UPDATE, recipient1, "second");
+        assertThat(first.isDone(), is(true));
+        assertThat(second.isDone(), is(true));
+        assertThat(executor.tasks.size(), is(0));
+        assertThat(asyncSendOperations.getPendingCount(), is(0));
+        doNothing().when(journal).sync(anyLong());
+        SendFuture<SendResponse> third = asyncSendOperations.textMessage(UPDATE, recipient1, "third");
+        assertThat(executor.tasks.size(), is(1));
+        executor.runAll();
+        assertThat(third.isDone(), is(true));
+        verify(facebookClient, never()).publish(MESSAGES_PATH, SendResponse.class, recordTextMessage(recipient1, "second"));
+    }
+
+    @Test
+    public void testQueuedOperationIsDispatchedOnceSyncedAfterHeadCompleted() throws Exception {
+        Journal journal = spy(this.journal);
+        asyncSendOperations = new DurableAsyncSendOperations(new DefaultSendOperations(facebookClient), executor, journal);
+        SendFuture<SendResponse> first = asyncSendOperations.textMessage(UPDATE, recipient1, "first");
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                executor.runAll();
+                return null;
+            }
+        }).when(journal).sync(anyLong());
+        SendFuture<SendResponse> second = asyncSendOperations.textMessage(UPDATE, recipient1, "second");
+        assertThat(first.isDone(), is(true));
+        assertThat(executor.tasks.size(), is(1));
+        executor.runAll();
+        assertThat(second.isDone(), is(true));
+        assertThat(asyncSendOperations.getPendingCount(), is(0));
+        verify(facebookClient, times(1)).publish(MESSAGES_PATH, SendResponse.class, recordTextMessage(recipient1, "second"));
+    }
+
+    @Test
+    public void testJournalIsNotCommittedPastUnrecoveredOperations() throws Exception {
+        asyncSendOperations.textMessage(UPDATE, recipient1, "first");
+        // the JVM stops before the operation is performed
+        journal.close();
+        journal = Journal.builder(directory).build();
+        executor = new QueueingExecutor();
+        asyncSendOperations = new DurableAsyncSendOperations(new DefaultSendOperations(facebookClient), executor, journal);
+        asyncSendOperations.textMessage(UPDATE, recipient2, "other");
+        executor.runAll();
+        assertThat(journal.getCommittedOffset(), is(0L));
+        assertThat(asyncSendOperations.recover(), is(1));
+        executor.runAll();
+        verify(facebookClient, times(1)).publish(MESSAGES_PATH, SendResponse.class, recordTextMessage(recipient1, "first"));
+        assertThat(journal.getCommittedOffset(), is(journal.getEndOffset()));
+    }
+
+    @Test
+    public void testRecover() throws Exception {
+        asyncSendOperations.textMessage(UPDATE, recipient1, "first");
+        asyncSendOperations.textMessage(UPDATE, recipient1, "second");
+        asyncSendOperations.textMessage(UPDATE, recipient2, "other");
+        executor.tasks.get(0).run();
+        // the JVM stops before the remaining operations are performed
+        journal.close();
+        journal = Journal.builder(directory).build();
+        executor = new QueueingExecutor();
+        asyncSendOperations = new DurableAsyncSendOperations(new DefaultSendOperations(facebookClient), executor, journal);
+        assertThat(asyncSendOperations.recover(), is(2));
+        assertThat(asyncSendOperations.getPendingCount(), is(2));
+        executor.runAll();
+        executor.runAll();
+        verify(facebookClient, times(1)).publish(MESSAGES_PATH, SendResponse.class, recordTextMessage(recipient1, "first"));
+        verify(facebookClient, times(1)).publish(MESSAGES_PATH, SendResponse.class, recordTextMessage(recipient1, "second"));
+        verify(facebookClient, times(1)).publish(MESSAGES_PATH, SendResponse.class, recordTextMessage(recipient2, "other"));
+        assertThat(journal.getCommittedOffset(), is(journal.getEndOffset()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRecoverTwice() throws Exception {
+        asyncSendOperations.recover();
+        asyncSendOperations.recover();
+    }
+
+    @Test
+    public void testEncodeAndDecode() throws Exception {
+        Parameter[] parameters = {Parameter.with("recipient", "{\"id\":\"user-1\"}"), Parameter.with("message", "{\"text\":\"Héllo!\"}")};
+        Parameter[] decoded = DurableAsyncSendOperations.decode(DurableAsyncSendOperations.encode(parameters));
+        assertThat(decoded, is(parameters));
+    }
+
+    private Parameter[] recordTextMessage(final MessageRecipient recipient, final String text) {
+        return RecordingSendOperations.record(new DefaultAsyncSendOperations.SendTask() {
+
+            @Override
+            public SendResponse send() {
+                return new RecordingSendOperations(facebookClient).textMessage(UPDATE, recipient, text);
+            }
+        });
+    }
+
+    private static class QueueingExecutor implements Executor {
+
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            List<Runnable> tasks = new ArrayList<>(this.tasks);
+            this.tasks.clear();
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        }
+    }
+}
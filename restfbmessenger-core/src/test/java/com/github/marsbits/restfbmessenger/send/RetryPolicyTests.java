@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.restfb.exception.FacebookGraphException;
+import com.restfb.exception.FacebookNetworkException;
+import com.restfb.exception.FacebookOAuthException;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link RetryPolicy}, {@link RetryBudget} and {@link DefaultRetryableErrorClassifier}.
+ *
+ * @author Marcel Overdijk
+ */
+public class RetryPolicyTests {
+
+    private static final FacebookOAuthException THROTTLED = oauthException(613, 400, false);
+
+    @Test
+    public void testShouldRetry() {
+        RetryPolicy retryPolicy = RetryPolicy.builder().maxAttempts(3).build();
+        assertThat(retryPolicy.shouldRetry(THROTTLED, 1), is(true));
+        assertThat(retryPolicy.shouldRetry(THROTTLED, 2), is(true));
+        assertThat(retryPolicy.shouldRetry(THROTTLED, 3), is(false));
+        assertThat(retryPolicy.shouldRetry(oauthException(100, 400, false), 1), is(false));
+    }
+
+    @Test
+    public void testBackoffGrowsExponentiallyUpToMax() {
+        RetryPolicy retryPolicy = RetryPolicy.builder().backoff(100, 350, TimeUnit.NANOSECONDS).multiplier(2).jitter(0).build();
+        assertThat(retryPolicy.getBackoffNanos(1), is(100L));
+        assertThat(retryPolicy.getBackoffNanos(2), is(200L));
+        assertThat(retryPolicy.getBackoffNanos(3), is(350L));
+        assertThat(retryPolicy.getBackoffNanos(10), is(350L));
+    }
+
+    @Test
+    public void testBackoffJitter() {
+        RetryPolicy retryPolicy = RetryPolicy.builder().backoff(1000, 1000, TimeUnit.NANOSECONDS).jitter(0.5).build();
+        for (int i = 0; i < 100; i++) {
+            long backoff = retryPolicy.getBackoffNanos(1);
+            assertThat(backoff >= 500 && backoff <= 1000, is(true));
+        }
+    }
+
+    @Test
+    public void testRetryBudget() {
+        RetryPolicy retryPolicy = RetryPolicy.builder().maxAttempts(10).budget(new RetryBudget(0.5, 2)).build();
+        assertThat(retryPolicy.shouldRetry(THROTTLED, 1), is(true));
+        assertThat(retryPolicy.shouldRetry(THROTTLED, 1), is(true));
+        assertThat(retryPolicy.shouldRetry(THROTTLED, 1), is(false));
+        retryPolicy.onSend();
+        assertThat(retryPolicy.shouldRetry(THROTTLED, 1), is(false));
+        retryPolicy.onSend();
+        assertThat(retryPolicy.shouldRetry(THROTTLED, 1), is(true));
+    }
+
+    @Test
+    public void testRetryBudgetIsCapped() {
+        RetryBudget budget = new RetryBudget(1, 1);
+        budget.deposit();
+        budget.deposit();
+        assertThat(budget.tryWithdraw(), is(true));
+        assertThat(budget.tryWithdraw(), is(false));
+    }
+
+    @Test
+    public void testDefaultClassifier() {
+        DefaultRetryableErrorClassifier classifier = new DefaultRetryableErrorClassifier();
+        assertThat(classifier.isRetryable(oauthException(1, 400, false)), is(true));
+        assertThat(classifier.isRetryable(oauthException(2, 400, false)), is(true));
+        assertThat(classifier.isRetryable(oauthException(4, 400, false)), is(true));
+        assertThat(classifier.isRetryable(oauthException(17, 400, false)), is(true));
+        assertThat(classifier.isRetryable(oauthException(613, 400, false)), is(true));
+        assertThat(classifier.isRetryable(oauthException(100, 400, true)), is(true));
+        assertThat(classifier.isRetryable(oauthException(100, 400, false)), is(false));
+        assertThat(classifier.isRetryable(oauthException(190, 401, false)), is(false));
+        assertThat(classifier.isRetryable(new FacebookGraphException("type", "message", 100, 0, 503, null, null, false, null)),
+                is(true));
+        assertThat(classifier.isRetryable(new FacebookNetworkException("timeout", new RuntimeException())), is(true));
+        assertThat(classifier.isRetryable(new FacebookNetworkException("server error", 502)), is(true));
+        assertThat(classifier.isRetryable(new FacebookNetworkException("not found", 404)), is(false));
+        assertThat(classifier.isRetryable(new RateLimitExceededException("exceeded")), is(false));
+        assertThat(classifier.isRetryable(new IllegalStateException()), is(false));
+    }
+
+    private static FacebookOAuthException oauthException(int code, int httpStatusCode, boolean isTransient) {
+        return new FacebookOAuthException("type", "message", code, 0, httpStatusCode, null, null, isTransient, null);
+    }
+}
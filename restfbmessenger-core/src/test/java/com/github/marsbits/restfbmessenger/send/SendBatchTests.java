@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.restfb.DefaultJsonMapper;
+import com.restfb.FacebookClient;
+import com.restfb.batch.BatchRequest;
+import com.restfb.batch.BatchResponse;
+import com.restfb.batch.BatchHeader;
+import com.restfb.exception.FacebookNetworkException;
+import com.restfb.exception.FacebookOAuthException;
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.MessageRecipient;
+import com.restfb.types.send.SendResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static com.github.marsbits.restfbmessenger.send.DefaultSendOperations.MESSAGES_PATH;
+import static com.restfb.types.send.MessagingType.RESPONSE;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link SendBatch}.
+ *
+ * @author Marcel Overdijk
+ */
+public class SendBatchTests {
+
+    private FacebookClient facebookClient;
+    private SendBatch batch;
+
+    private MessageRecipient recipient = new IdMessageRecipient("the-user-id");
+
+    @Before
+    public void setUp() {
+        this.facebookClient = mock(FacebookClient.class);
+        this.batch = new SendBatch(facebookClient);
+        when(facebookClient.getJsonMapper()).thenReturn(new DefaultJsonMapper());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorWithTooLargeBatchSize() {
+        new SendBatch(facebookClient, SendBatch.MAX_BATCH_SIZE + 1);
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        when(facebookClient.executeBatch(anyListOf(BatchRequest.class))).thenReturn(Arrays.asList(
+                response(200, "{\"recipient_id\":\"the-user-id\",\"message_id\":\"mid.1\"}"),
+                response(200, "{\"recipient_id\":\"the-user-id\",\"message_id\":\"mid.2\"}")));
+        SendFuture<SendResponse> future1 = batch.textMessage(RESPONSE, recipient, "the-text-1");
+        SendFuture<SendResponse> future2 = batch.textMessage(RESPONSE, recipient, "the-text-2");
+        assertThat(batch.size(), is(2));
+        assertThat(future1.isDone(), is(false));
+        batch.execute();
+        assertThat(batch.isEmpty(), is(true));
+        assertThat(future1.get().getMessageId(), is("mid.1"));
+        assertThat(future2.get().getMessageId(), is("mid.2"));
+        List<BatchRequest> requests = captureBatchRequests(1).get(0);
+        assertThat(requests.size(), is(2));
+        assertThat(requests.get(0).getRelativeUrl(), is(MESSAGES_PATH));
+        assertThat(requests.get(0).getMethod(), is("POST"));
+        assertThat(requests.get(0).getBody(), containsString("the-text-1"));
+        assertThat(requests.get(0).getBody(), containsString("the-user-id"));
+        assertThat(requests.get(1).getBody(), containsString("the-text-2"));
+    }
+
+    @Test
+    public void testExecuteSplitsIntoBatchesOfMaxBatchSize() throws Exception {
+        batch = new SendBatch(facebookClient, 2);
+        when(facebookClient.executeBatch(anyListOf(BatchRequest.class))).thenReturn(Arrays.asList(
+                response(200, "{\"message_id\":\"mid.1\"}"), response(200, "{\"message_id\":\"mid.2\"}")));
+        for (int i = 0; i < 5; i++) {
+            batch.markSeen(recipient);
+        }
+        batch.execute();
+        List<List<BatchRequest>> requests = captureBatchRequests(3);
+        assertThat(requests.get(0).size(), is(2));
+        assertThat(requests.get(1).size(), is(2));
+        assertThat(requests.get(2).size(), is(1));
+    }
+
+    @Test
+    public void testExecuteDemultiplexesErrors() throws Exception {
+        when(facebookClient.executeBatch(anyListOf(BatchRequest.class))).thenReturn(Arrays.asList(
+                response(200, "{\"message_id\":\"mid.1\"}"),
+                response(400, "{\"error\":{\"message\":\"Invalid parameter\",\"type\":\"OAuthException\",\"code\":100}}"),
+                null));
+        SendFuture<SendResponse> future1 = batch.textMessage(RESPONSE, recipient, "the-text-1");
+        SendFuture<SendResponse> future2 = batch.textMessage(RESPONSE, recipient, "the-text-2");
+        SendFuture<SendResponse> future3 = batch.textMessage(RESPONSE, recipient, "the-text-3");
+        batch.execute();
+        assertThat(future1.get().getMessageId(), is("mid.1"));
+        assertThat(failure(future2), is(instanceOf(FacebookOAuthException.class)));
+        assertThat(((FacebookOAuthException) failure(future2)).getErrorCode(), is(100));
+        assertThat(failure(future3), is(instanceOf(FacebookNetworkException.class)));
+    }
+
+    @Test
+    public void testExecuteFailureFailsAllOperations() throws Exception {
+        FacebookNetworkException exception = new FacebookNetworkException("failure", 500);
+        when(facebookClient.executeBatch(anyListOf(BatchRequest.class))).thenThrow(exception);
+        SendFuture<SendResponse> future1 = batch.typingOn(recipient);
+        SendFuture<SendResponse> future2 = batch.typingOff(recipient);
+        batch.execute();
+        assertThat(failure(future1), is(sameInstance((Throwable) exception)));
+        assertThat(failure(future2), is(sameInstance((Throwable) exception)));
+    }
+
+    @Test
+    public void testInvalidOperationFailsImmediately() throws Exception {
+        SendFuture<SendResponse> future = batch.textMessage(RESPONSE, null, "the-text");
+        assertThat(failure(future), is(instanceOf(NullPointerException.class)));
+        assertThat(batch.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testCancelledOperationIsNotSent() throws Exception {
+        batch.markSeen(recipient).cancel(false);
+        batch.execute();
+        verify(facebookClient, never()).executeBatch(anyListOf(BatchRequest.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<BatchRequest>> captureBatchRequests(int times) {
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(facebookClient, times(times)).executeBatch(captor.capture());
+        List<List<BatchRequest>> requests = new ArrayList<>();
+        for (List value : captor.getAllValues()) {
+            requests.add(new ArrayList<BatchRequest>(value));
+        }
+        return requests;
+    }
+
+    private static BatchResponse response(int code, String body) {
+        return new BatchResponse(code, Collections.<BatchHeader>emptyList(), body);
+    }
+
+    private static Throwable failure(SendFuture<?> future) throws InterruptedException {
+        try {
+            future.get();
+            fail("Expected ExecutionException");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link SendFuture}.
+ *
+ * @author Marcel Overdijk
+ */
+public class SendFutureTests {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testComplete() throws Exception {
+        SendFuture<String> future = new SendFuture<>();
+        SendCallback<String> callback = mock(SendCallback.class);
+        future.addCallback(callback);
+        assertThat(future.isDone(), is(false));
+        assertThat(future.complete("result"), is(true));
+        assertThat(future.complete("another result"), is(false));
+        assertThat(future.isDone(), is(true));
+        assertThat(future.get(), is("result"));
+        verify(callback).onSuccess("result");
+        verify(callback, never()).onFailure(any(Throwable.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCompleteExceptionally() throws Exception {
+        SendFuture<String> future = new SendFuture<>();
+        SendCallback<String> callback = mock(SendCallback.class);
+        future.addCallback(callback);
+        IllegalStateException failure = new IllegalStateException("failure");
+        assertThat(future.completeExceptionally(failure), is(true));
+        assertThat(future.complete("result"), is(false));
+        verify(callback).onFailure(failure);
+        try {
+            future.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is((Throwable) failure));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCancel() throws Exception {
+        SendFuture<String> future = new SendFuture<>();
+        SendCallback<String> callback = mock(SendCallback.class);
+        future.addCallback(callback);
+        assertThat(future.cancel(true), is(true));
+        assertThat(future.isCancelled(), is(true));
+        assertThat(future.complete("result"), is(false));
+        verify(callback).onFailure(any(CancellationException.class));
+        try {
+            future.get();
+            fail("Expected CancellationException");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAddCallbackToCompletedFuture() {
+        SendCallback<String> callback = mock(SendCallback.class);
+        SendFuture.completed("result").addCallback(callback);
+        verify(callback).onSuccess("result");
+        SendFuture.<String>failed(new IllegalStateException()).addCallback(callback);
+        verify(callback).onFailure(any(IllegalStateException.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailingCallbackDoesNotPreventOtherCallbacks() {
+        SendFuture<String> future = new SendFuture<>();
+        SendCallback<String> failingCallback = mock(SendCallback.class);
+        SendCallback<String> callback = mock(SendCallback.class);
+        doThrow(new IllegalStateException("failure")).when(failingCallback).onSuccess("result");
+        future.addCallback(failingCallback);
+        future.addCallback(callback);
+        future.complete("result");
+        verify(callback).onSuccess("result");
+    }
+
+    @Test
+    public void testGetWaitsForCompletion() throws Exception {
+        final SendFuture<String> future = new SendFuture<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                started.countDown();
+                future.complete("result");
+            }
+        }).start();
+        started.await();
+        assertThat(future.get(5, TimeUnit.SECONDS), is("result"));
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testGetTimeout() throws Exception {
+        new SendFuture<String>().get(10, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testFailedFuture() throws Exception {
+        try {
+            SendFuture.failed(new IllegalStateException()).get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+        }
+    }
+}
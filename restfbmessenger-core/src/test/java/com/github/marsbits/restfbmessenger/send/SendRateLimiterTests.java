@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.send;
+
+import com.restfb.FacebookClient;
+import com.restfb.Parameter;
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.MessageRecipient;
+import com.restfb.types.send.SendResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.marsbits.restfbmessenger.send.DefaultSendOperations.MESSAGES_PATH;
+import static com.restfb.types.send.MessagingType.RESPONSE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link SendRateLimiter}.
+ *
+ * @author Marcel Overdijk
+ */
+public class SendRateLimiterTests {
+
+    private Object page = new Object();
+
+    private FacebookClient facebookClient;
+
+    @Before
+    public void setUp() {
+        this.facebookClient = mock(FacebookClient.class);
+    }
+
+    @Test
+    public void testRecipientLimit() {
+        SendRateLimiter rateLimiter = SendRateLimiter.builder().recipientLimit(0.001, 2).build();
+        rateLimiter.acquire(page, "recipient-1");
+        rateLimiter.acquire(page, "recipient-1");
+        assertExceeded(rateLimiter, page, "recipient-1");
+        rateLimiter.acquire(page, "recipient-2");
+        rateLimiter.acquire(page, null);
+    }
+
+    @Test
+    public void testPageLimit() {
+        SendRateLimiter rateLimiter = SendRateLimiter.builder().pageLimit(0.001, 2).build();
+        rateLimiter.acquire(page, "recipient-1");
+        rateLimiter.acquire(page, "recipient-2");
+        assertExceeded(rateLimiter, page, "recipient-3");
+        rateLimiter.acquire(new Object(), "recipient-3");
+    }
+
+    @Test
+    public void testGlobalLimit() {
+        SendRateLimiter rateLimiter = SendRateLimiter.builder().globalLimit(0.001, 2).build();
+        rateLimiter.acquire(page, "recipient-1");
+        rateLimiter.acquire(new Object(), "recipient-2");
+        assertExceeded(rateLimiter, new Object(), "recipient-3");
+    }
+
+    @Test
+    public void testExceededLimitReleasesOtherPermits() {
+        SendRateLimiter rateLimiter = SendRateLimiter.builder().recipientLimit(0.001, 1).pageLimit(0.001, 1).build();
+        rateLimiter.acquire(page, "recipient-1");
+        // rejected by the page limit; the permit of recipient-2 must not be consumed
+        assertExceeded(rateLimiter, page, "recipient-2");
+        rateLimiter.acquire(new Object(), "recipient-2");
+    }
+
+    @Test
+    public void testMaxWaitQueuesUntilPermitIsAvailable() {
+        SendRateLimiter rateLimiter = SendRateLimiter.builder().recipientLimit(20, 1).maxWait(1, TimeUnit.SECONDS).build();
+        long start = System.nanoTime();
+        rateLimiter.acquire(page, "recipient-1");
+        rateLimiter.acquire(page, "recipient-1");
+        assertThat(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40), is(true));
+    }
+
+    @Test
+    public void testIdleRecipientsAreEvicted() {
+        SendRateLimiter rateLimiter = SendRateLimiter.builder().recipientLimit(1000000, 1).build();
+        for (int i = 0; i < SendRateLimiter.EVICTION_INTERVAL - 1; i++) {
+            rateLimiter.acquire(page, "recipient-" + i);
+        }
+        assertThat(rateLimiter.getRecipientBucketCount(), is(SendRateLimiter.EVICTION_INTERVAL - 1));
+        rateLimiter.acquire(page, "recipient-last");
+        assertThat(rateLimiter.getRecipientBucketCount() < SendRateLimiter.EVICTION_INTERVAL, is(true));
+    }
+
+    @Test
+    public void testDefaultSendOperationsFailFastWithoutSending() {
+        DefaultSendOperations sendOperations = new DefaultSendOperations(facebookClient,
+                SendRateLimiter.builder().recipientLimit(0.001, 1).build());
+        MessageRecipient recipient = new IdMessageRecipient("the-user-id");
+        sendOperations.textMessage(RESPONSE, recipient, "the-text-1");
+        try {
+            sendOperations.textMessage(RESPONSE, recipient, "the-text-2");
+            fail("Expected RateLimitExceededException");
+        } catch (RateLimitExceededException e) {
+            // expected
+        }
+        sendOperations.textMessage(RESPONSE, new IdMessageRecipient("another-user-id"), "the-text-3");
+        verify(facebookClient, times(2)).publish(eq(MESSAGES_PATH), eq(SendResponse.class), Matchers.<Parameter>anyVararg());
+    }
+
+    private static void assertExceeded(SendRateLimiter rateLimiter, Object page, String recipient) {
+        try {
+            rateLimiter.acquire(page, recipient);
+            fail("Expected RateLimitExceededException");
+        } catch (RateLimitExceededException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.util;
+
+import com.github.marsbits.restfbmessenger.util.PartitionedExecutor.OverflowPolicy;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link PartitionedExecutor}.
+ *
+ * @author Marcel Overdijk
+ */
+public class PartitionedExecutorTests {
+
+    private PartitionedExecutor executor;
+
+    @After
+    public void tearDown() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExecutePreservesOrderPerKey() throws Exception {
+        executor = new PartitionedExecutor(4, 1000, OverflowPolicy.BLOCK);
+        final List<Integer> results = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < 500; i++) {
+            final int value = i;
+            executor.execute("key", new Runnable() {
+
+                @Override
+                public void run() {
+                    results.add(value);
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        assertThat(results.size(), is(500));
+        for (int i = 0; i < 500; i++) {
+            assertThat(results.get(i), is(i));
+        }
+    }
+
+    @Test
+    public void testExecuteDoesNotBlockOtherLanes() throws Exception {
+        executor = new PartitionedExecutor(2, 10, OverflowPolicy.REJECT);
+        String slowKey = "slow";
+        String otherKey = findKeyOnOtherLane(slowKey);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(slowKey, new Runnable() {
+
+            @Override
+            public void run() {
+                await(release);
+            }
+        });
+        executor.execute(otherKey, new Runnable() {
+
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        release.countDown();
+    }
+
+    @Test
+    public void testExecuteWithRejectPolicyRejectsWhenLaneIsFull() throws Exception {
+        executor = new PartitionedExecutor(1, 1, OverflowPolicy.REJECT);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute("key", blockingTask(release));
+        executor.execute("key", blockingTask(release));
+        try {
+            executor.execute("key", blockingTask(release));
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            // expected
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testExecuteWithCallerRunsPolicyRunsOnCallerWhenLaneIsFull() throws Exception {
+        executor = new PartitionedExecutor(1, 1, OverflowPolicy.CALLER_RUNS);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute("key", blockingTask(release));
+        executor.execute("key", blockingTask(release));
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        executor.execute("key", new Runnable() {
+
+            @Override
+            public void run() {
+                thread.set(Thread.currentThread());
+            }
+        });
+        release.countDown();
+        assertThat(thread.get(), is(Thread.currentThread()));
+    }
+
+    @Test
+    public void testExecuteWithBlockPolicyWaitsWhenLaneIsFull() throws Exception {
+        executor = new PartitionedExecutor(1, 1, OverflowPolicy.BLOCK);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute("key", blockingTask(release));
+        executor.execute("key", blockingTask(release));
+        Thread submitter = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                executor.execute("key", new Runnable() {
+
+                    @Override
+                    public void run() {
+                        done.countDown();
+                    }
+                });
+            }
+        });
+        submitter.start();
+        assertThat(done.await(200, TimeUnit.MILLISECONDS), is(false));
+        release.countDown();
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        submitter.join();
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testExecuteAfterShutdown() throws Exception {
+        executor = new PartitionedExecutor(1, 1, OverflowPolicy.BLOCK);
+        executor.shutdown();
+        executor.execute("key", blockingTask(new CountDownLatch(0)));
+    }
+
+    @Test
+    public void testNullKeyUsesFirstLane() {
+        executor = new PartitionedExecutor(4, 1, OverflowPolicy.REJECT);
+        assertThat(executor.getLane(null), is(0));
+        assertThat(executor.getLaneCount(), is(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLaneCount() {
+        new PartitionedExecutor(0, 1, OverflowPolicy.REJECT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQueueCapacity() {
+        new PartitionedExecutor(1, 0, OverflowPolicy.REJECT);
+    }
+
+    private String findKeyOnOtherLane(String key) {
+        for (int i = 0; ; i++) {
+            String other = "key-" + i;
+            if (executor.getLane(other) != executor.getLane(key)) {
+                assertThat(other, is(not(key)));
+                return other;
+            }
+        }
+    }
+
+    private static Runnable blockingTask(final CountDownLatch release) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                await(release);
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link TokenBucket}.
+ *
+ * @author Marcel Overdijk
+ */
+public class TokenBucketTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorWithZeroRate() {
+        new TokenBucket(0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorWithZeroBurst() {
+        new TokenBucket(1, 0);
+    }
+
+    @Test
+    public void testBurstIsAvailableImmediately() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+        long now = System.nanoTime();
+        assertThat(bucket.reserve(now, 0), is(0L));
+        assertThat(bucket.reserve(now, 0), is(0L));
+        assertThat(bucket.reserve(now, 0), is(0L));
+        assertThat(bucket.reserve(now, 0), is(-1L));
+    }
+
+    @Test
+    public void testReserveWaitsForRefill() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        long now = System.nanoTime();
+        assertThat(bucket.reserve(now, 0), is(0L));
+        assertThat(bucket.reserve(now, SECOND / 20), is(-1L));
+        assertThat(bucket.reserve(now, SECOND), is(SECOND / 10));
+        assertThat(bucket.reserve(now, SECOND), is(2 * SECOND / 10));
+    }
+
+    @Test
+    public void testRefill() {
+        TokenBucket bucket = new TokenBucket(10, 2);
+        long now = System.nanoTime();
+        assertThat(bucket.reserve(now, 0), is(0L));
+        assertThat(bucket.reserve(now, 0), is(0L));
+        assertThat(bucket.isFull(now), is(false));
+        assertThat(bucket.reserve(now + SECOND / 10, 0), is(0L));
+        assertThat(bucket.reserve(now + SECOND / 10, 0), is(-1L));
+        assertThat(bucket.isFull(now + SECOND), is(true));
+        assertThat(bucket.reserve(now + SECOND, 0), is(0L));
+        assertThat(bucket.reserve(now + SECOND, 0), is(0L));
+    }
+
+    @Test
+    public void testRelease() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        long now = System.nanoTime();
+        assertThat(bucket.reserve(now, 0), is(0L));
+        assertThat(bucket.reserve(now, 0), is(-1L));
+        bucket.release();
+        assertThat(bucket.reserve(now, 0), is(0L));
+    }
+
+    @Test
+    public void testConcurrentAcquireDoesNotExceedBurst() throws Exception {
+        final TokenBucket bucket = new TokenBucket(0.001, 100);
+        final AtomicInteger acquired = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 1000; j++) {
+                        if (bucket.tryAcquire()) {
+                            acquired.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(acquired.get(), is(100));
+    }
+}
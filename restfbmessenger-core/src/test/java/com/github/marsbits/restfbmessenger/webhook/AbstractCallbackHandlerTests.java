@@ -17,6 +17,9 @@
 package com.github.marsbits.restfbmessenger.webhook;
 
 import com.github.marsbits.restfbmessenger.Messenger;
+import com.github.marsbits.restfbmessenger.dedup.MessagingDeduplicator;
+import com.github.marsbits.restfbmessenger.metrics.MessengerMetrics;
+import com.github.marsbits.restfbmessenger.util.PartitionedExecutor;
 import com.restfb.types.webhook.WebhookEntry;
 import com.restfb.types.webhook.WebhookObject;
 import com.restfb.types.webhook.messaging.AccountLinkingItem;
@@ -25,6 +28,7 @@ import com.restfb.types.webhook.messaging.CheckoutUpdateItem;
 import com.restfb.types.webhook.messaging.DeliveryItem;
 import com.restfb.types.webhook.messaging.MessageItem;
 import com.restfb.types.webhook.messaging.MessagingItem;
+import com.restfb.types.webhook.messaging.MessagingParticipant;
 import com.restfb.types.webhook.messaging.OptinItem;
 import com.restfb.types.webhook.messaging.PassThreadControlItem;
 import com.restfb.types.webhook.messaging.PaymentItem;
@@ -35,10 +39,27 @@ import com.restfb.types.webhook.messaging.ReferralItem;
 import com.restfb.types.webhook.messaging.TakeThreadControlItem;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -317,6 +338,222 @@ public class AbstractCallbackHandlerTests {
         verifyNoMoreInteractions(spyCallbackHandler);
     }
 
+    @Test
+    public void testListener() {
+        MessagingEventListener listener = mock(MessagingEventListener.class);
+        MessagingEventListener otherListener = mock(MessagingEventListener.class);
+        callbackHandler.addListener(MessagingEventType.POSTBACK, listener);
+        callbackHandler.addListener(MessagingEventType.MESSAGE, otherListener);
+        PostbackItem postback = new PostbackItem();
+        MessagingItem messagingItem = new MessagingItem();
+        messagingItem.setPostback(postback);
+        callbackHandler.onCallback(messenger, createWebhookObjectWithMessagingItem(messagingItem));
+        verify(listener, times(1)).onEvent(messenger, messagingItem);
+        verifyNoMoreInteractions(listener, otherListener);
+    }
+
+    @Test
+    public void testListenerIsInvokedAfterCallbackMethod() {
+        MessagingEventListener listener = mock(MessagingEventListener.class);
+        spyCallbackHandler.addListener(MessagingEventType.MESSAGE, listener);
+        MessagingItem messagingItem = new MessagingItem();
+        messagingItem.setMessage(new MessageItem());
+        spyCallbackHandler.onCallback(messenger, createWebhookObjectWithMessagingItem(messagingItem));
+        InOrder inOrder = inOrder(spyCallbackHandler, listener);
+        inOrder.verify(spyCallbackHandler).onMessage(messenger, messagingItem);
+        inOrder.verify(listener).onEvent(messenger, messagingItem);
+    }
+
+    @Test
+    public void testUnknownListener() {
+        MessagingEventListener listener = mock(MessagingEventListener.class);
+        callbackHandler.addListener(MessagingEventType.UNKNOWN, listener);
+        MessagingItem messagingItem = new MessagingItem();
+        callbackHandler.onCallback(messenger, createWebhookObjectWithMessagingItem(messagingItem));
+        verify(listener, times(1)).onEvent(messenger, messagingItem);
+    }
+
+    @Test
+    public void testStandbyListener() {
+        MessagingEventListener listener = mock(MessagingEventListener.class);
+        MessagingEventListener messagingListener = mock(MessagingEventListener.class);
+        callbackHandler.addStandbyListener(MessagingEventType.MESSAGE_READ, listener);
+        callbackHandler.addListener(MessagingEventType.MESSAGE_READ, messagingListener);
+        MessagingItem standbyItem = new MessagingItem();
+        standbyItem.setRead(new ReadItem());
+        callbackHandler.onCallback(messenger, createWebhookObjectWithStandbyItem(standbyItem));
+        verify(listener, times(1)).onEvent(messenger, standbyItem);
+        verifyNoMoreInteractions(listener, messagingListener);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testAddListenerWithNullType() {
+        callbackHandler.addListener(null, mock(MessagingEventListener.class));
+    }
+
+    @Test
+    public void testOnCallbackWithDispatchExecutorPreservesOrderPerSender() throws Exception {
+        final Map<String, List<String>> received = new ConcurrentHashMap<>();
+        AbstractCallbackHandler callbackHandler = new AbstractCallbackHandler() {
+
+            @Override
+            public void onMessage(Messenger messenger, MessagingItem messaging) {
+                received.get(messaging.getSender().getId()).add(messaging.getMessage().getText());
+            }
+        };
+        PartitionedExecutor executor = new PartitionedExecutor(4, 100, PartitionedExecutor.OverflowPolicy.BLOCK);
+        callbackHandler.setDispatchExecutor(executor);
+        List<MessagingItem> messagingItems = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String senderId = "sender-" + (i % 5);
+            if (!received.containsKey(senderId)) {
+                received.put(senderId, Collections.synchronizedList(new ArrayList<String>()));
+            }
+            messagingItems.add(createMessageItem(senderId, String.valueOf(i)));
+        }
+        callbackHandler.onCallback(messenger, createWebhookObject(messagingItems, null));
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        for (int s = 0; s < 5; s++) {
+            List<String> texts = received.get("sender-" + s);
+            assertThat(texts.size(), is(20));
+            for (int i = 0; i < 20; i++) {
+                assertThat(texts.get(i), is(String.valueOf(i * 5 + s)));
+            }
+        }
+    }
+
+    @Test
+    public void testOnCallbackWithDispatchExecutorContinuesAfterException() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        AbstractCallbackHandler callbackHandler = new AbstractCallbackHandler() {
+
+            @Override
+            public void onMessage(Messenger messenger, MessagingItem messaging) {
+                if ("fail".equals(messaging.getMessage().getText())) {
+                    throw new IllegalStateException("failure");
+                }
+                latch.countDown();
+            }
+        };
+        PartitionedExecutor executor = new PartitionedExecutor(1, 10, PartitionedExecutor.OverflowPolicy.BLOCK);
+        callbackHandler.setDispatchExecutor(executor);
+        try {
+            callbackHandler.onCallback(messenger, createWebhookObject(
+                    Arrays.asList(createMessageItem("sender", "fail"), createMessageItem("sender", "ok")), null));
+            assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private MessagingItem createMessageItem(String senderId, String text) {
+        MessagingParticipant sender = new MessagingParticipant();
+        sender.setId(senderId);
+        MessageItem message = new MessageItem();
+        message.setText(text);
+        MessagingItem messagingItem = new MessagingItem();
+        messagingItem.setSender(sender);
+        messagingItem.setMessage(message);
+        return messagingItem;
+    }
+
+    @Test
+    public void testDuplicateMessageIsSkipped() {
+        spyCallbackHandler.setDeduplicator(new MessagingDeduplicator());
+        MessageItem message = new MessageItem();
+        message.setMid("mid.1");
+        MessagingItem messagingItem = new MessagingItem();
+        messagingItem.setMessage(message);
+        WebhookObject webhookObject = createWebhookObjectWithMessagingItem(messagingItem);
+        spyCallbackHandler.onCallback(messenger, webhookObject);
+        spyCallbackHandler.onCallback(messenger, webhookObject);
+        verify(spyCallbackHandler, times(1)).onMessage(messenger, messagingItem);
+    }
+
+    @Test
+    public void testMessageRedeliveredWhileBeingHandledIsSkipped() throws Exception {
+        final CountDownLatch handling = new CountDownLatch(1);
+        final CountDownLatch redelivered = new CountDownLatch(1);
+        final AtomicInteger handled = new AtomicInteger();
+        final AbstractCallbackHandler callbackHandler = new AbstractCallbackHandler() {
+
+            @Override
+            public void onMessage(Messenger messenger, MessagingItem messaging) {
+                handled.incrementAndGet();
+                handling.countDown();
+                try {
+                    redelivered.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        callbackHandler.setDeduplicator(new MessagingDeduplicator());
+        MessageItem message = new MessageItem();
+        message.setMid("mid.1");
+        MessagingItem messagingItem = new MessagingItem();
+        messagingItem.setMessage(message);
+        final WebhookObject webhookObject = createWebhookObjectWithMessagingItem(messagingItem);
+        Thread original = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                callbackHandler.onCallback(messenger, webhookObject);
+            }
+        });
+        original.start();
+        assertThat(handling.await(5, TimeUnit.SECONDS), is(true));
+        // the redelivery is received on another request thread while the original is still being handled
+        callbackHandler.onCallback(messenger, webhookObject);
+        redelivered.countDown();
+        original.join(5000);
+        assertThat(handled.get(), is(1));
+    }
+
+    @Test
+    public void testFailedMessageIsHandledWhenRedelivered() {
+        spyCallbackHandler.setDeduplicator(new MessagingDeduplicator());
+        MessageItem message = new MessageItem();
+        message.setMid("mid.1");
+        MessagingItem messagingItem = new MessagingItem();
+        messagingItem.setMessage(message);
+        WebhookObject webhookObject = createWebhookObjectWithMessagingItem(messagingItem);
+        IllegalStateException failure = new IllegalStateException("failure");
+        doThrow(failure).doNothing().when(spyCallbackHandler).onMessage(messenger, messagingItem);
+        try {
+            spyCallbackHandler.onCallback(messenger, webhookObject);
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e, is(failure));
+        }
+        spyCallbackHandler.onCallback(messenger, webhookObject);
+        spyCallbackHandler.onCallback(messenger, webhookObject);
+        verify(spyCallbackHandler, times(2)).onMessage(messenger, messagingItem);
+    }
+
+    @Test
+    public void testDispatchRecordsMetrics() {
+        MessengerMetrics metrics = mock(MessengerMetrics.class);
+        spyCallbackHandler.setMetrics(metrics);
+        MessagingItem postback = new MessagingItem();
+        postback.setPostback(new PostbackItem());
+        spyCallbackHandler.onCallback(messenger, createWebhookObjectWithMessagingItem(postback));
+        MessagingItem read = new MessagingItem();
+        read.setRead(new ReadItem());
+        IllegalStateException failure = new IllegalStateException("failure");
+        doThrow(failure).when(spyCallbackHandler).onMessageRead(messenger, read);
+        try {
+            spyCallbackHandler.onCallback(messenger, createWebhookObjectWithMessagingItem(read));
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e, is(failure));
+        }
+        verify(metrics).messagingItemDispatched(eq(MessagingEventType.POSTBACK), eq(false), anyLong(), (Throwable) isNull());
+        verify(metrics).messagingItemDispatched(eq(MessagingEventType.MESSAGE_READ), eq(false), anyLong(), eq(failure));
+        verify(metrics).registerQueue(eq("dispatch"), any(MessengerMetrics.QueueDepth.class));
+    }
+
     private WebhookObject createWebhookObjectWithMessagingItem(MessagingItem messagingItem) {
         return createWebhookObject(Arrays.asList(messagingItem), null);
     }
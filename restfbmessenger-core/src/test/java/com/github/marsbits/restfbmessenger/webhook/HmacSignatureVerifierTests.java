@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.webhook;
+
+import com.restfb.util.EncodingUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static com.github.marsbits.restfbmessenger.webhook.HmacSignatureVerifier.HMAC_SHA1_ALGORITHM;
+import static com.github.marsbits.restfbmessenger.webhook.HmacSignatureVerifier.HMAC_SHA256_ALGORITHM;
+import static com.github.marsbits.restfbmessenger.webhook.HmacSignatureVerifier.SHA1_SIGNATURE_PREFIX;
+import static com.github.marsbits.restfbmessenger.webhook.HmacSignatureVerifier.SHA256_SIGNATURE_PREFIX;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link HmacSignatureVerifier}.
+ *
+ * @author Marcel Overdijk
+ */
+public class HmacSignatureVerifierTests {
+
+    private String appSecret = "app secret";
+    private byte[] payload;
+
+    private HmacSignatureVerifier signatureVerifier;
+
+    @Before
+    public void setUp() throws Exception {
+        this.payload = "{\n  \"object\": \"page\"\n}".getBytes("UTF-8");
+        this.signatureVerifier = new HmacSignatureVerifier(appSecret);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testConstructWithNullAppSecret() {
+        new HmacSignatureVerifier(null);
+    }
+
+    @Test
+    public void testVerifySha1Signature() throws Exception {
+        String signature = SHA1_SIGNATURE_PREFIX + generateHmac(payload, HMAC_SHA1_ALGORITHM);
+        assertThat(signatureVerifier.verify(payload, signature), is(true));
+    }
+
+    @Test
+    public void testVerifySha256Signature() throws Exception {
+        String signature = SHA256_SIGNATURE_PREFIX + generateHmac(payload, HMAC_SHA256_ALGORITHM);
+        assertThat(signatureVerifier.verify(payload, signature), is(true));
+    }
+
+    @Test
+    public void testVerifyUpperCaseSignature() throws Exception {
+        String signature = SHA256_SIGNATURE_PREFIX + generateHmac(payload, HMAC_SHA256_ALGORITHM).toUpperCase();
+        assertThat(signatureVerifier.verify(payload, signature), is(true));
+    }
+
+    @Test
+    public void testVerifyReturnsFalseWhenAlgorithmDoesNotMatchPrefix() throws Exception {
+        String signature = SHA256_SIGNATURE_PREFIX + generateHmac(payload, HMAC_SHA1_ALGORITHM);
+        assertThat(signatureVerifier.verify(payload, signature), is(false));
+    }
+
+    @Test
+    public void testVerifyReturnsFalseWhenPayloadDoesNotMatch() throws Exception {
+        String signature = SHA256_SIGNATURE_PREFIX + generateHmac(payload, HMAC_SHA256_ALGORITHM);
+        assertThat(signatureVerifier.verify("another payload".getBytes("UTF-8"), signature), is(false));
+    }
+
+    @Test
+    public void testVerifyReturnsFalseWhenAppSecretDoesNotMatch() throws Exception {
+        String signature = SHA256_SIGNATURE_PREFIX + generateHmac(payload, HMAC_SHA256_ALGORITHM);
+        assertThat(new HmacSignatureVerifier("another app secret").verify(payload, signature), is(false));
+    }
+
+    @Test
+    public void testVerifyReturnsFalseWhenSignatureIsInvalid() throws Exception {
+        assertThat(signatureVerifier.verify(payload, null), is(false));
+        assertThat(signatureVerifier.verify(payload, ""), is(false));
+        assertThat(signatureVerifier.verify(payload, "md5=abcdef"), is(false));
+        assertThat(signatureVerifier.verify(payload, SHA256_SIGNATURE_PREFIX), is(false));
+        assertThat(signatureVerifier.verify(payload, SHA256_SIGNATURE_PREFIX + "abc"), is(false));
+        assertThat(signatureVerifier.verify(payload, SHA256_SIGNATURE_PREFIX + "invalid!"), is(false));
+    }
+
+    private String generateHmac(byte[] payload, String algorithm) throws Exception {
+        Mac mac = Mac.getInstance(algorithm);
+        mac.init(new SecretKeySpec(appSecret.getBytes("UTF-8"), algorithm));
+        return new String(EncodingUtils.encodeHex(mac.doFinal(payload)));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.webhook;
+
+import com.restfb.types.webhook.messaging.AccountLinkingItem;
+import com.restfb.types.webhook.messaging.AppRoles;
+import com.restfb.types.webhook.messaging.CheckoutUpdateItem;
+import com.restfb.types.webhook.messaging.DeliveryItem;
+import com.restfb.types.webhook.messaging.MessageItem;
+import com.restfb.types.webhook.messaging.MessagingItem;
+import com.restfb.types.webhook.messaging.OptinItem;
+import com.restfb.types.webhook.messaging.PassThreadControlItem;
+import com.restfb.types.webhook.messaging.PaymentItem;
+import com.restfb.types.webhook.messaging.PolicyEnforcementItem;
+import com.restfb.types.webhook.messaging.PostbackItem;
+import com.restfb.types.webhook.messaging.ReadItem;
+import com.restfb.types.webhook.messaging.ReferralItem;
+import com.restfb.types.webhook.messaging.TakeThreadControlItem;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link MessagingEventType}.
+ *
+ * @author Marcel Overdijk
+ */
+public class MessagingEventTypeTests {
+
+    @Test
+    public void testOf() {
+        MessagingItem messagingItem = new MessagingItem();
+        messagingItem.setMessage(new MessageItem());
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.MESSAGE));
+        messagingItem = new MessagingItem();
+        messagingItem.setDelivery(new DeliveryItem());
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.MESSAGE_DELIVERED));
+        messagingItem = new MessagingItem();
+        messagingItem.setRead(new ReadItem());
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.MESSAGE_READ));
+        messagingItem = new MessagingItem();
+        messagingItem.setPostback(new PostbackItem());
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.POSTBACK));
+        messagingItem = new MessagingItem();
+        messagingItem.setOptin(new OptinItem());
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.OPTIN));
+        messagingItem = new MessagingItem();
+        messagingItem.setReferral(new ReferralItem());
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.REFERRAL));
+        messagingItem = new MessagingItem();
+        messagingItem.setPayment(new PaymentItem());
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.PAYMENT));
+        messagingItem = new MessagingItem();
+        messagingItem.setCheckoutUpdate(new CheckoutUpdateItem());
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.CHECKOUT_UPDATE));
+        messagingItem = new MessagingItem();
+        messagingItem.setAccountLinking(new AccountLinkingItem());
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.ACCOUNT_LINKING));
+        messagingItem = new MessagingItem();
+        messagingItem.setPolicyEnforcement(new PolicyEnforcementItem());
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.POLICY_ENFORCEMENT));
+        messagingItem = new MessagingItem();
+        messagingItem.setTakeThreadControl(new TakeThreadControlItem());
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.TAKE_THREAD_CONTROL));
+        messagingItem = new MessagingItem();
+        messagingItem.setPassThreadControl(new PassThreadControlItem());
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.PASS_THREAD_CONTROL));
+        messagingItem = new MessagingItem();
+        messagingItem.setAppRoles(new AppRoles());
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.APP_ROLES));
+    }
+
+    @Test
+    public void testOfMessageEcho() {
+        MessageItem message = new MessageItem();
+        message.setEcho(true);
+        MessagingItem messagingItem = new MessagingItem();
+        messagingItem.setMessage(message);
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.MESSAGE_ECHO));
+    }
+
+    @Test
+    public void testOfSubclassedItem() {
+        MessagingItem messagingItem = new MessagingItem();
+        messagingItem.setPostback(new PostbackItem() {
+
+        });
+        assertThat(MessagingEventType.of(messagingItem), is(MessagingEventType.POSTBACK));
+    }
+
+    @Test
+    public void testOfUnknown() {
+        assertThat(MessagingEventType.of(new MessagingItem()), is(MessagingEventType.UNKNOWN));
+        assertThat(MessagingEventType.of(null), is(MessagingEventType.UNKNOWN));
+    }
+}
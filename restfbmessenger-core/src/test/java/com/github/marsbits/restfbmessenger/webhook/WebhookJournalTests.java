@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.webhook;
+
+import com.github.marsbits.restfbmessenger.DefaultMessenger;
+import com.github.marsbits.restfbmessenger.Messenger;
+import com.github.marsbits.restfbmessenger.journal.Journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link WebhookJournal}.
+ *
+ * @author Marcel Overdijk
+ */
+public class WebhookJournalTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private DefaultMessenger messenger;
+    private WebhookJournal webhookJournal;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = folder.newFolder("journal");
+        this.messenger = mock(DefaultMessenger.class);
+        this.webhookJournal = new WebhookJournal(Journal.builder(directory).build(), messenger);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        webhookJournal.close();
+    }
+
+    @Test
+    public void testConsumerHandlesAppendedCallbacks() throws Exception {
+        webhookJournal.start();
+        webhookJournal.append(bytes("payload-1"), "signature-1");
+        webhookJournal.append(bytes("payload-2"), null);
+        verify(messenger, timeout(1000)).handleCallback(bytes("payload-1"), "signature-1");
+        verify(messenger, timeout(1000)).handleCallback(bytes("payload-2"), null);
+        awaitCommitted();
+        assertThat(webhookJournal.getLag(), is(0L));
+    }
+
+    @Test
+    public void testConsumerHandsOtherMessengerDecodedPayload() throws Exception {
+        Messenger otherMessenger = mock(Messenger.class);
+        webhookJournal.close();
+        webhookJournal = new WebhookJournal(Journal.builder(directory).build(), otherMessenger);
+        webhookJournal.start();
+        webhookJournal.append(bytes("payload-1"), "signature-1");
+        verify(otherMessenger, timeout(1000)).handleCallback("payload-1", "signature-1");
+        awaitCommitted();
+    }
+
+    @Test
+    public void testFailedCallbackIsRetried() throws Exception {
+        doThrow(new IllegalStateException("failure")).doNothing().when(messenger).handleCallback(bytes("payload-1"), "signature-1");
+        webhookJournal.start();
+        webhookJournal.append(bytes("payload-1"), "signature-1");
+        webhookJournal.append(bytes("payload-2"), "signature-2");
+        verify(messenger, timeout(1000).times(2)).handleCallback(bytes("payload-1"), "signature-1");
+        verify(messenger, timeout(1000)).handleCallback(bytes("payload-2"), "signature-2");
+        awaitCommitted();
+    }
+
+    @Test
+    public void testFailedCallbackIsNotCommitted() throws Exception {
+        doThrow(new IllegalStateException("failure")).when(messenger).handleCallback(bytes("payload-1"), "signature-1");
+        webhookJournal.start();
+        webhookJournal.append(bytes("payload-1"), "signature-1");
+        webhookJournal.append(bytes("payload-2"), "signature-2");
+        verify(messenger, timeout(1000).times(2)).handleCallback(bytes("payload-1"), "signature-1");
+        webhookJournal.close();
+        assertThat(webhookJournal.getCommittedOffset(), is(0L));
+        verify(messenger, never()).handleCallback(bytes("payload-2"), "signature-2");
+        webhookJournal = new WebhookJournal(Journal.builder(directory).build(), messenger);
+        assertThat(webhookJournal.getCommittedOffset(), is(0L));
+    }
+
+    @Test
+    public void testFailedCallbackIsDeadLetteredAfterMaxAttempts() throws Exception {
+        final IllegalStateException failure = new IllegalStateException("failure");
+        final List<String> deadLetters = new CopyOnWriteArrayList<>();
+        webhookJournal.close();
+        webhookJournal = new WebhookJournal(Journal.builder(directory).build(), messenger) {
+
+            @Override
+            protected void onDeadLetter(long offset, byte[] payload, String signature, Exception exception) {
+                assertThat(exception, is((Exception) failure));
+                deadLetters.add(new String(payload, UTF_8) + ":" + signature);
+            }
+        };
+        webhookJournal.setMaxAttempts(2);
+        doThrow(failure).when(messenger).handleCallback(bytes("payload-1"), "signature-1");
+        webhookJournal.start();
+        webhookJournal.append(bytes("payload-1"), "signature-1");
+        webhookJournal.append(bytes("payload-2"), "signature-2");
+        verify(messenger, timeout(1000)).handleCallback(bytes("payload-2"), "signature-2");
+        verify(messenger, times(2)).handleCallback(bytes("payload-1"), "signature-1");
+        awaitCommitted();
+        assertThat(deadLetters, is(Collections.singletonList("payload-1:signature-1")));
+    }
+
+    @Test
+    public void testFailingDeadLetterIsCommitted() throws Exception {
+        webhookJournal.close();
+        webhookJournal = new WebhookJournal(Journal.builder(directory).build(), messenger) {
+
+            @Override
+            protected void onDeadLetter(long offset, byte[] payload, String signature, Exception failure) {
+                throw new IllegalStateException("dead letter failure");
+            }
+        };
+        webhookJournal.setMaxAttempts(1);
+        doThrow(new IllegalStateException("failure")).when(messenger).handleCallback(bytes("payload-1"), "signature-1");
+        webhookJournal.start();
+        webhookJournal.append(bytes("payload-1"), "signature-1");
+        webhookJournal.append(bytes("payload-2"), "signature-2");
+        verify(messenger, timeout(1000)).handleCallback(bytes("payload-2"), "signature-2");
+        awaitCommitted();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetMaxAttemptsLessThanOne() {
+        webhookJournal.setMaxAttempts(0);
+    }
+
+    @Test
+    public void testUnhandledCallbacksAreHandledAfterRestart() throws Exception {
+        webhookJournal.append(bytes("payload-1"), "signature-1");
+        webhookJournal.close();
+        verify(messenger, never()).handleCallback(any(byte[].class), anyString());
+        webhookJournal = new WebhookJournal(Journal.builder(directory).build(), messenger);
+        webhookJournal.start();
+        verify(messenger, timeout(1000)).handleCallback(bytes("payload-1"), "signature-1");
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        webhookJournal.close();
+        webhookJournal = new WebhookJournal(Journal.builder(directory).retentionSize(1024 * 1024).build(), messenger);
+        webhookJournal.start();
+        webhookJournal.append(bytes("payload-1"), "signature-1");
+        verify(messenger, timeout(1000)).handleCallback(bytes("payload-1"), "signature-1");
+        awaitCommitted();
+        assertThat(webhookJournal.replay(webhookJournal.getFirstOffset()), is(1));
+        verify(messenger, times(2)).handleCallback(bytes("payload-1"), "signature-1");
+    }
+
+    private void awaitCommitted() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (webhookJournal.getLag() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(webhookJournal.getCommittedOffset(), is(webhookJournal.getEndOffset()));
+    }
+
+    private static byte[] bytes(String payload) {
+        return payload.getBytes(UTF_8);
+    }
+}
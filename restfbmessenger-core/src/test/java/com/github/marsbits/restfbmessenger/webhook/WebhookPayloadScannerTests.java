@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.webhook;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link WebhookPayloadScanner}.
+ *
+ * @author Marcel Overdijk
+ */
+public class WebhookPayloadScannerTests {
+
+    @Test
+    public void testScan() throws Exception {
+        WebhookPayloadScanner scanner = scan("{\"object\":\"page\",\"entry\":[{\"id\":\"1\"},{\"id\":\"2\"}]}");
+        assertThat(scanner, is(notNullValue()));
+        assertThat(scanner.getObject(), is("page"));
+        assertThat(scanner.hasEntries(), is(true));
+        assertThat(scanner.getEntryCount(), is(2));
+        assertThat(scanner.getEntries(), is(Arrays.asList("{\"id\":\"1\"}", "{\"id\":\"2\"}")));
+    }
+
+    @Test
+    public void testScanPrettyPrintedPayload() throws Exception {
+        WebhookPayloadScanner scanner = scan("\n{\n  \"object\" : \"page\",\r\n  \"entry\" : [\n    {\n      \"id\" : \"1\"\n    }\n  ]\n}\n");
+        assertThat(scanner.getObject(), is("page"));
+        assertThat(scanner.getEntries(), is(Collections.singletonList("{\n      \"id\" : \"1\"\n    }")));
+    }
+
+    @Test
+    public void testScanEntryBeforeObject() throws Exception {
+        WebhookPayloadScanner scanner = scan("{\"entry\":[{\"id\":\"1\"}],\"other\":[1,true,null,{\"a\":\"b\"}],\"object\":\"page\"}");
+        assertThat(scanner.getObject(), is("page"));
+        assertThat(scanner.getEntries(), is(Collections.singletonList("{\"id\":\"1\"}")));
+    }
+
+    @Test
+    public void testScanEntriesContainingStructuralCharactersInStrings() throws Exception {
+        String entry = "{\"text\":\"héllo }] [{ \\\"world\\\" \\\\\",\"n\":-1.5e3,\"b\":false}";
+        WebhookPayloadScanner scanner = scan("{\"object\":\"page\",\"entry\":[" + entry + ",\"x\",42]}");
+        assertThat(scanner.getEntries(), is(Arrays.asList(entry, "\"x\"", "42")));
+    }
+
+    @Test
+    public void testScanManyEntries() throws Exception {
+        StringBuilder sb = new StringBuilder("{\"object\":\"page\",\"entry\":[");
+        for (int i = 0; i < 100; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"id\":\"").append(i).append("\"}");
+        }
+        WebhookPayloadScanner scanner = scan(sb.append("]}").toString());
+        assertThat(scanner.getEntryCount(), is(100));
+        assertThat(scanner.getEntry(99), is("{\"id\":\"99\"}"));
+    }
+
+    @Test
+    public void testScanEmptyEntries() throws Exception {
+        WebhookPayloadScanner scanner = scan("{\"object\":\"page\",\"entry\":[ ]}");
+        assertThat(scanner.hasEntries(), is(true));
+        assertThat(scanner.getEntryCount(), is(0));
+        assertThat(scanner.getEntries().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testScanWithoutEntries() throws Exception {
+        WebhookPayloadScanner scanner = scan("{\"object\":\"page\"}");
+        assertThat(scanner.getObject(), is("page"));
+        assertThat(scanner.hasEntries(), is(false));
+    }
+
+    @Test
+    public void testScanStopsWhenObjectDoesNotMatch() throws Exception {
+        WebhookPayloadScanner scanner = scan("{\"object\":\"user\",\"entry\":[{ this is not scanned");
+        assertThat(scanner.getObject(), is("user"));
+        assertThat(scanner.hasEntries(), is(false));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetEntryWithInvalidIndex() throws Exception {
+        scan("{\"object\":\"page\",\"entry\":[{\"id\":\"1\"}]}").getEntry(1);
+    }
+
+    @Test
+    public void testScanReturnsNullWhenPayloadCannotBeScanned() throws Exception {
+        assertThat(scan(""), is(nullValue()));
+        assertThat(scan("the payload"), is(nullValue()));
+        assertThat(scan("[]"), is(nullValue()));
+        assertThat(scan("{}"), is(nullValue()));
+        assertThat(scan("{\"entry\":[]}"), is(nullValue()));
+        assertThat(scan("{\"object\":null}"), is(nullValue()));
+        assertThat(scan("{\"object\":\"p\\u0061ge\"}"), is(nullValue()));
+        assertThat(scan("{\"object\":\"page\""), is(nullValue()));
+        assertThat(scan("{\"object\":\"page\",\"entry\":[{\"id\":\"1\"}"), is(nullValue()));
+        assertThat(scan("{\"object\":\"page\",\"entry\":[{\"id\":\"1\"} {}]}"), is(nullValue()));
+        assertThat(scan("{\"object\":\"page\",\"other\":}"), is(nullValue()));
+        assertThat(scan("{\"object\":\"page\"} trailing"), is(nullValue()));
+        assertThat(scan("{\"object\" \"page\"}"), is(nullValue()));
+        assertThat(scan("{object:\"page\"}"), is(nullValue()));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testScanWithNullPayload() {
+        WebhookPayloadScanner.scan(null, "page");
+    }
+
+    private static WebhookPayloadScanner scan(String payload) throws Exception {
+        return WebhookPayloadScanner.scan(payload.getBytes("UTF-8"), "page");
+    }
+}
@@ -16,28 +16,47 @@
 
 package com.github.marsbits.restfbmessenger.webhook;
 
+import com.github.marsbits.restfbmessenger.DefaultMessenger;
 import com.github.marsbits.restfbmessenger.Messenger;
 import com.github.marsbits.restfbmessenger.MessengerProvider;
+import com.github.marsbits.restfbmessenger.metrics.MessengerMetrics;
+import com.github.marsbits.restfbmessenger.tracing.NoopMessengerTracer;
+import com.github.marsbits.restfbmessenger.util.PartitionedExecutor;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.StringReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import static com.github.marsbits.restfbmessenger.Messenger.HUB_MODE_PARAM_NAME;
 import static com.github.marsbits.restfbmessenger.Messenger.HUB_MODE_SUBSCRIBE_VALUE;
+import static com.github.marsbits.restfbmessenger.Messenger.HUB_SIGNATURE_256_HEADER_NAME;
 import static com.github.marsbits.restfbmessenger.Messenger.HUB_SIGNATURE_HEADER_NAME;
 import static com.github.marsbits.restfbmessenger.Messenger.HUB_VERIFY_TOKEN_PARAM_NAME;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -48,11 +67,14 @@ import static org.mockito.Mockito.when;
  */
 public class WebhookServletTests {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private WebhookServlet servlet;
 
     private static Messenger messengerStatic;
 
-    private Messenger messenger;
+    private DefaultMessenger messenger;
     private HttpServletRequest request;
     private HttpServletResponse response;
     private PrintWriter writer;
@@ -61,21 +83,23 @@ public class WebhookServletTests {
     @Before
     public void setUp() throws Exception {
         messengerStatic = mock(Messenger.class);
-        this.messenger = mock(Messenger.class);
+        this.messenger = mock(DefaultMessenger.class);
+        when(messenger.getTracer()).thenReturn(NoopMessengerTracer.INSTANCE);
         this.request = mock(HttpServletRequest.class);
         this.response = mock(HttpServletResponse.class);
         this.writer = mock(PrintWriter.class);
         this.servletConfig = mock(ServletConfig.class);
         when(response.getWriter()).thenReturn(writer);
+        when(request.getContentLength()).thenReturn(-1);
     }
 
     @Test
     public void testConstructorWithMessenger() throws Exception {
         servlet = new WebhookServlet(messenger);
-        assertThat(servlet.getMessenger(), is(sameInstance(messenger)));
+        assertThat(servlet.getMessenger(), is(sameInstance((Messenger) messenger)));
         servlet.init(servletConfig);
         servlet.init(); // let's explicitly call init()
-        assertThat(servlet.getMessenger(), is(sameInstance(messenger)));
+        assertThat(servlet.getMessenger(), is(sameInstance((Messenger) messenger)));
     }
 
     @Test
@@ -128,21 +152,330 @@ public class WebhookServletTests {
 
     @Test
     public void testPostHandleWebhook() throws Exception {
-        when(request.getReader()).thenReturn(new BufferedReader(new StringReader("the-payload")));
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
         when(request.getHeader(HUB_SIGNATURE_HEADER_NAME)).thenReturn("the-signature");
         servlet = new WebhookServlet(messenger);
         servlet.init(servletConfig);
         servlet.doPost(request, response);
-        verify(messenger).handleCallback("the-payload", "the-signature");
+        verify(messenger).handleCallback(bytes("the-payload"), "the-signature");
+    }
+
+    @Test
+    public void testPostPrefersSha256Signature() throws Exception {
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        when(request.getHeader(HUB_SIGNATURE_HEADER_NAME)).thenReturn("sha1=the-signature");
+        when(request.getHeader(HUB_SIGNATURE_256_HEADER_NAME)).thenReturn("sha256=the-signature");
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(messenger).handleCallback(bytes("the-payload"), "sha256=the-signature");
     }
 
     @Test
     public void testPostWithoutSignature() throws Exception {
-        when(request.getReader()).thenReturn(new BufferedReader(new StringReader("the-payload")));
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(messenger).handleCallback(bytes("the-payload"), null);
+    }
+
+    @Test
+    public void testPostPreservesPayloadBytes() throws Exception {
+        String payload = "{\n  \"object\": \"page\",\n  \"text\": \"h\u00e9llo \u2764\"\n}\n";
+        when(request.getInputStream()).thenReturn(new StubServletInputStream(payload));
+        when(request.getContentLength()).thenReturn(bytes(payload).length);
+        when(request.getHeader(HUB_SIGNATURE_HEADER_NAME)).thenReturn("the-signature");
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(messenger).handleCallback(bytes(payload), "the-signature");
+    }
+
+    @Test
+    public void testPostWithContentLengthAboveMaxRequestBodySizeReturnsRequestEntityTooLarge() throws Exception {
+        when(servletConfig.getInitParameter(WebhookServlet.MAX_REQUEST_BODY_SIZE_PARAM_NAME)).thenReturn("10");
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        when(request.getContentLength()).thenReturn("the-payload".length());
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(response).setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        verify(messenger, never()).handleCallback(any(byte[].class), anyString());
+    }
+
+    @Test
+    public void testPostWithoutContentLengthAboveMaxRequestBodySizeReturnsRequestEntityTooLarge() throws Exception {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            payload.append("the-payload-").append(i).append('\n');
+        }
+        when(servletConfig.getInitParameter(WebhookServlet.MAX_REQUEST_BODY_SIZE_PARAM_NAME)).thenReturn("5000");
+        when(request.getInputStream()).thenReturn(new StubServletInputStream(payload.toString()));
         servlet = new WebhookServlet(messenger);
         servlet.init(servletConfig);
         servlet.doPost(request, response);
-        verify(messenger).handleCallback("the-payload", null);
+        verify(response).setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        verify(messenger, never()).handleCallback(any(byte[].class), anyString());
+    }
+
+    @Test
+    public void testGetRequestBodyWithoutContentLengthOfMaxRequestBodySize() throws Exception {
+        when(servletConfig.getInitParameter(WebhookServlet.MAX_REQUEST_BODY_SIZE_PARAM_NAME)).thenReturn("11");
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+        assertThat(servlet.getRequestBody(request), is(bytes("the-payload")));
+    }
+
+    @Test
+    public void testGetRequestBodyWithContentLength() throws Exception {
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        when(request.getContentLength()).thenReturn("the-payload".length());
+        servlet = new WebhookServlet(messenger);
+        assertThat(servlet.getRequestBody(request), is(bytes("the-payload")));
+    }
+
+    @Test
+    public void testGetRequestBodyWithTruncatedBody() throws Exception {
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        when(request.getContentLength()).thenReturn(100);
+        servlet = new WebhookServlet(messenger);
+        assertThat(servlet.getRequestBody(request), is(bytes("the-payload")));
+    }
+
+    @Test
+    public void testGetRequestBodyWithoutContentLength() throws Exception {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            payload.append("the-payload-").append(i).append('\n');
+        }
+        when(request.getInputStream()).thenReturn(new StubServletInputStream(payload.toString()));
+        when(request.getContentLength()).thenReturn(-1);
+        servlet = new WebhookServlet(messenger);
+        assertThat(servlet.getRequestBody(request), is(bytes(payload.toString())));
+    }
+
+    @Test
+    public void testInitWithoutAsyncInitParamDoesNotCreateExecutor() throws Exception {
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+        assertThat(servlet.getExecutorService(), is(nullValue()));
+    }
+
+    @Test
+    public void testInitWithAsyncInitParamCreatesExecutor() throws Exception {
+        when(servletConfig.getInitParameter(WebhookServlet.ASYNC_PARAM_NAME)).thenReturn("true");
+        when(servletConfig.getInitParameter(WebhookServlet.ASYNC_POOL_SIZE_PARAM_NAME)).thenReturn("2");
+        when(servletConfig.getInitParameter(WebhookServlet.ASYNC_QUEUE_CAPACITY_PARAM_NAME)).thenReturn("5");
+        when(servletConfig.getInitParameter(WebhookServlet.ASYNC_REJECTION_POLICY_PARAM_NAME)).thenReturn("caller_runs");
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+        assertThat(servlet.getExecutorService(), is(notNullValue()));
+        servlet.destroy();
+        assertThat(servlet.getExecutorService().isShutdown(), is(true));
+    }
+
+    @Test
+    public void testPostRecordsMetrics() throws Exception {
+        DefaultMessenger messenger = mock(DefaultMessenger.class);
+        MessengerMetrics metrics = mock(MessengerMetrics.class);
+        when(messenger.getMetrics()).thenReturn(metrics);
+        when(servletConfig.getInitParameter(WebhookServlet.ASYNC_PARAM_NAME)).thenReturn("true");
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(metrics).webhookReceived("the-payload".length());
+        verify(metrics).registerQueue(eq("webhook.executor"), any(MessengerMetrics.QueueDepth.class));
+        servlet.destroy();
+    }
+
+    @Test
+    public void testPostHandleWebhookWithOtherMessenger() throws Exception {
+        Messenger otherMessenger = mock(Messenger.class);
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        when(request.getHeader(HUB_SIGNATURE_HEADER_NAME)).thenReturn("the-signature");
+        servlet = new WebhookServlet(otherMessenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(otherMessenger).handleCallback("the-payload", "the-signature");
+    }
+
+    @Test
+    public void testPostAsyncHandleWebhook() throws Exception {
+        when(servletConfig.getInitParameter(WebhookServlet.ASYNC_PARAM_NAME)).thenReturn("true");
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        when(request.getHeader(HUB_SIGNATURE_HEADER_NAME)).thenReturn("the-signature");
+        when(messenger.verifySignature(bytes("the-payload"), "the-signature")).thenReturn(true);
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(messenger, timeout(1000)).handleVerifiedCallback(bytes("the-payload"));
+        verify(response, never()).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        servlet.destroy();
+    }
+
+    @Test
+    public void testPostAsyncHandleWebhookWithOtherMessenger() throws Exception {
+        Messenger otherMessenger = mock(Messenger.class);
+        when(servletConfig.getInitParameter(WebhookServlet.ASYNC_PARAM_NAME)).thenReturn("true");
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        when(request.getHeader(HUB_SIGNATURE_HEADER_NAME)).thenReturn("the-signature");
+        servlet = new WebhookServlet(otherMessenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        // the signature is verified by the messenger handling the callback
+        verify(otherMessenger, timeout(1000)).handleCallback("the-payload", "the-signature");
+        verify(response, never()).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        servlet.destroy();
+    }
+
+    @Test
+    public void testPostAsyncHandleWebhookVerifiesSignatureOnce() throws Exception {
+        DefaultMessenger defaultMessenger = mock(DefaultMessenger.class);
+        when(defaultMessenger.getTracer()).thenReturn(NoopMessengerTracer.INSTANCE);
+        when(servletConfig.getInitParameter(WebhookServlet.ASYNC_PARAM_NAME)).thenReturn("true");
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        when(request.getHeader(HUB_SIGNATURE_HEADER_NAME)).thenReturn("the-signature");
+        when(defaultMessenger.verifySignature(bytes("the-payload"), "the-signature")).thenReturn(true);
+        servlet = new WebhookServlet(defaultMessenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(defaultMessenger, timeout(1000)).handleVerifiedCallback(bytes("the-payload"));
+        verify(defaultMessenger).verifySignature(bytes("the-payload"), "the-signature");
+        verify(defaultMessenger, never()).handleCallback(any(byte[].class), anyString());
+        servlet.destroy();
+    }
+
+    @Test
+    public void testPostAsyncWithInvalidSignatureIsNotEnqueued() throws Exception {
+        final ExecutorService executorService = mock(ExecutorService.class);
+        when(servletConfig.getInitParameter(WebhookServlet.ASYNC_PARAM_NAME)).thenReturn("true");
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        when(request.getHeader(HUB_SIGNATURE_HEADER_NAME)).thenReturn("the-signature");
+        when(messenger.verifySignature(bytes("the-payload"), "the-signature")).thenReturn(false);
+        servlet = new WebhookServlet(messenger) {
+
+            @Override
+            protected ExecutorService createExecutorService(int poolSize, int queueCapacity, AsyncRejectionPolicy rejectionPolicy) {
+                return executorService;
+            }
+        };
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(executorService, never()).execute(any(Runnable.class));
+        verify(messenger, never()).handleCallback(any(byte[].class), anyString());
+    }
+
+    @Test
+    public void testPostAsyncWhenQueueIsFullReturnsServiceUnavailable() throws Exception {
+        final ExecutorService executorService = mock(ExecutorService.class);
+        doThrow(new RejectedExecutionException()).when(executorService).execute(any(Runnable.class));
+        when(servletConfig.getInitParameter(WebhookServlet.ASYNC_PARAM_NAME)).thenReturn("true");
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        when(request.getHeader(HUB_SIGNATURE_HEADER_NAME)).thenReturn("the-signature");
+        when(messenger.verifySignature(bytes("the-payload"), "the-signature")).thenReturn(true);
+        servlet = new WebhookServlet(messenger) {
+
+            @Override
+            protected ExecutorService createExecutorService(int poolSize, int queueCapacity, AsyncRejectionPolicy rejectionPolicy) {
+                return executorService;
+            }
+        };
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(response).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        verify(messenger, never()).handleCallback(any(byte[].class), anyString());
+    }
+
+    @Test
+    public void testPostJournaledHandleWebhook() throws Exception {
+        when(servletConfig.getInitParameter(WebhookServlet.JOURNAL_DIRECTORY_PARAM_NAME))
+                .thenReturn(folder.newFolder("journal").getAbsolutePath());
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        when(request.getHeader(HUB_SIGNATURE_HEADER_NAME)).thenReturn("the-signature");
+        when(messenger.verifySignature(bytes("the-payload"), "the-signature")).thenReturn(true);
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+        assertThat(servlet.getWebhookJournal(), is(notNullValue()));
+        servlet.doPost(request, response);
+        assertThat(servlet.getWebhookJournal().getEndOffset() > 0, is(true));
+        verify(messenger, timeout(1000)).handleCallback(bytes("the-payload"), "the-signature");
+        verify(response, never()).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        servlet.destroy();
+    }
+
+    @Test
+    public void testPostJournaledWithInvalidSignatureIsNotJournaled() throws Exception {
+        when(servletConfig.getInitParameter(WebhookServlet.JOURNAL_DIRECTORY_PARAM_NAME))
+                .thenReturn(folder.newFolder("journal").getAbsolutePath());
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        when(request.getHeader(HUB_SIGNATURE_HEADER_NAME)).thenReturn("the-signature");
+        when(messenger.verifySignature(bytes("the-payload"), "the-signature")).thenReturn(false);
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        assertThat(servlet.getWebhookJournal().getEndOffset(), is(0L));
+        servlet.destroy();
+    }
+
+    @Test
+    public void testInitJournaledWithMaxAttempts() throws Exception {
+        when(servletConfig.getInitParameter(WebhookServlet.JOURNAL_DIRECTORY_PARAM_NAME))
+                .thenReturn(folder.newFolder("journal").getAbsolutePath());
+        when(servletConfig.getInitParameter(WebhookServlet.JOURNAL_MAX_ATTEMPTS_PARAM_NAME)).thenReturn("3");
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+        assertThat(servlet.getWebhookJournal().getMaxAttempts(), is(3));
+        servlet.destroy();
+    }
+
+    @Test
+    public void testInitJournaledWithInvalidMaxAttempts() throws Exception {
+        when(servletConfig.getInitParameter(WebhookServlet.JOURNAL_DIRECTORY_PARAM_NAME))
+                .thenReturn(folder.newFolder("journal").getAbsolutePath());
+        when(servletConfig.getInitParameter(WebhookServlet.JOURNAL_MAX_ATTEMPTS_PARAM_NAME)).thenReturn("0");
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+        assertThat(servlet.getWebhookJournal().getMaxAttempts(), is(WebhookJournal.DEFAULT_MAX_ATTEMPTS));
+        servlet.destroy();
+    }
+
+    @Test(expected = ServletException.class)
+    public void testInitJournaledWithDispatchExecutor() throws Exception {
+        when(servletConfig.getInitParameter(WebhookServlet.JOURNAL_DIRECTORY_PARAM_NAME))
+                .thenReturn(folder.newFolder("journal").getAbsolutePath());
+        AbstractCallbackHandler callbackHandler = mock(AbstractCallbackHandler.class);
+        when(callbackHandler.getDispatchExecutor()).thenReturn(mock(PartitionedExecutor.class));
+        DefaultMessenger messenger = mock(DefaultMessenger.class);
+        when(messenger.getCallbackHandler()).thenReturn(callbackHandler);
+        servlet = new WebhookServlet(messenger);
+        servlet.init(servletConfig);
+    }
+
+    private static byte[] bytes(String payload) throws IOException {
+        return payload.getBytes("UTF-8");
+    }
+
+    private static class StubServletInputStream extends ServletInputStream {
+
+        private final ByteArrayInputStream input;
+
+        StubServletInputStream(String body) throws IOException {
+            this.input = new ByteArrayInputStream(bytes(body));
+        }
+
+        @Override
+        public int read() throws IOException {
+            return input.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            // return small chunks to exercise the read loop
+            return input.read(b, off, Math.min(len, 7));
+        }
     }
 
     public static class MyMessengerProvider implements MessengerProvider {
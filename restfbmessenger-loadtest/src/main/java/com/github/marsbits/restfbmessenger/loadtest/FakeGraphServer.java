@@ -0,0 +1,526 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.loadtest;
+
+import com.github.marsbits.restfbmessenger.util.NamedThreadFactory;
+import com.restfb.DefaultFacebookClient;
+import com.restfb.DefaultJsonMapper;
+import com.restfb.DefaultWebRequestor;
+import com.restfb.WebRequestor;
+import com.restfb.json.Json;
+import com.restfb.json.JsonArray;
+import com.restfb.json.JsonObject;
+import com.restfb.json.JsonValue;
+import com.restfb.json.ParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static com.github.marsbits.restfbmessenger.DefaultMessenger.DEFAULT_API_VERSION;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Embeddable HTTP server standing in for the Graph API Send API, for load testing bots without calling Facebook.
+ * <p>
+ * The server accepts the {@code POST /{version}/me/messages} requests of the
+ * {@link com.github.marsbits.restfbmessenger.send.SendOperations} and the Graph API batch requests ({@code POST /{version}/} with a
+ * {@code batch} parameter) of the {@link com.github.marsbits.restfbmessenger.send.SendBatch}, and responds like the Graph API would.
+ * Each response is delayed according to the configured {@link LatencyDistribution}, and a configurable fraction of the messages fails
+ * with a transient error (code {@value #TRANSIENT_ERROR_CODE}) or is throttled (code {@value #THROTTLED_ERROR_CODE}). Messages
+ * exceeding the configured rate limit are throttled as well.
+ * <pre class="code">
+ * FakeGraphServer server = FakeGraphServer.builder()
+ *         .latency(LatencyDistribution.logNormal(50, 400, TimeUnit.MILLISECONDS))
+ *         .throttleRate(0.01)
+ *         .build();
+ * server.start();
+ * DefaultMessenger messenger = new DefaultMessenger(verifyToken, appSecret, callbackHandler, server.createFacebookClient(accessToken));
+ * </pre>
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class FakeGraphServer implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(FakeGraphServer.class.getName());
+
+    public static final int DEFAULT_THREADS = 200;
+    public static final int MAX_BATCH_SIZE = 50;
+
+    public static final int INVALID_PARAMETER_ERROR_CODE = 100;
+    public static final int TRANSIENT_ERROR_CODE = 2;
+    public static final int THROTTLED_ERROR_CODE = 613;
+
+    public static final String MESSAGES_PATH = "me/messages";
+    public static final String BATCH_PARAM_NAME = "batch";
+
+    private final InetSocketAddress address;
+    private final int threads;
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final double throttleRate;
+    private final int rateLimit;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong messageCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+
+    private long rateLimitWindow;
+    private int rateLimitCount;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    protected FakeGraphServer(Builder builder) {
+        this.address = new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port);
+        this.threads = builder.threads;
+        this.latency = builder.latency;
+        this.errorRate = builder.errorRate;
+        this.throttleRate = builder.throttleRate;
+        this.rateLimit = builder.rateLimit;
+    }
+
+    /**
+     * Returns a new builder for {@link FakeGraphServer} instances.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Starts the server.
+     *
+     * @throws IOException in case the server could not be bound to the port
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Fake Graph server already started");
+        }
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/", new GraphHandler());
+        // the latency is simulated by sleeping, so requests are handled by a thread each
+        executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("fake-graph"));
+        server.setExecutor(executor);
+        server.start();
+        this.server = server;
+        logger.info(format("Fake Graph server started on %s", getUrl()));
+    }
+
+    /**
+     * Stops the server, aborting the requests in progress.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+            executor = null;
+            logger.info("Fake Graph server stopped");
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     */
+    public synchronized int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("Fake Graph server not started");
+        }
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the url of the server, to be used as Graph API endpoint url.
+     */
+    public String getUrl() {
+        return format("http://%s:%d", address.getAddress().getHostAddress(), getPort());
+    }
+
+    /**
+     * Creates a {@link DefaultFacebookClient} performing the Graph API calls against this server.
+     *
+     * @param accessToken the access token
+     * @return the facebook client
+     */
+    public DefaultFacebookClient createFacebookClient(String accessToken) {
+        return createFacebookClient(accessToken, new DefaultWebRequestor());
+    }
+
+    /**
+     * Creates a {@link DefaultFacebookClient} performing the Graph API calls against this server with the given web requestor, e.g. a
+     * {@link com.github.marsbits.restfbmessenger.client.HttpClientWebRequestor}.
+     *
+     * @param accessToken  the access token
+     * @param webRequestor the web requestor, not null
+     * @return the facebook client
+     */
+    public DefaultFacebookClient createFacebookClient(String accessToken, WebRequestor webRequestor) {
+        requireNonNull(webRequestor, "'webRequestor' must not be null");
+        DefaultFacebookClient facebookClient =
+                new DefaultFacebookClient(accessToken, webRequestor, new DefaultJsonMapper(), DEFAULT_API_VERSION);
+        facebookClient.setFacebookGraphEndpointUrl(getUrl());
+        return facebookClient;
+    }
+
+    /**
+     * Returns the number of received http requests.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of received batch requests.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Returns the number of successfully sent messages and sender actions, including those sent in batch requests.
+     */
+    public long getMessageCount() {
+        return messageCount.get();
+    }
+
+    /**
+     * Returns the number of messages that failed with an injected transient error.
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * Returns the number of messages that were throttled.
+     */
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * Resets the counters.
+     */
+    public void reset() {
+        requestCount.set(0);
+        batchCount.set(0);
+        messageCount.set(0);
+        errorCount.set(0);
+        throttledCount.set(0);
+    }
+
+    /**
+     * Handles a single send request, which is either a http request or an operation of a batch request.
+     */
+    protected Response send(Map<String, String> parameters) {
+        if (isRateLimited() || (throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < throttleRate)) {
+            throttledCount.incrementAndGet();
+            return error(400, THROTTLED_ERROR_CODE, "(#613) Calls to this api have exceeded the rate limit.", false);
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            errorCount.incrementAndGet();
+            return error(500, TRANSIENT_ERROR_CODE, "An unexpected error has occurred. Please retry your request later.", true);
+        }
+        String recipientId = getRecipientId(parameters.get("recipient"));
+        if (recipientId == null) {
+            return error(400, INVALID_PARAMETER_ERROR_CODE, "(#100) The parameter recipient is required", false);
+        }
+        long messageId = messageCount.incrementAndGet();
+        JsonObject response = new JsonObject().add("recipient_id", recipientId);
+        if (parameters.containsKey("message")) {
+            response.add("message_id", "mid.fake-graph:" + messageId);
+        }
+        return new Response(200, response.toString());
+    }
+
+    /**
+     * Handles a batch request, performing each operation like a separate request.
+     */
+    protected Response batch(String batch) {
+        JsonArray operations;
+        try {
+            operations = Json.parse(batch).asArray();
+        } catch (ParseException | UnsupportedOperationException e) {
+            return error(400, INVALID_PARAMETER_ERROR_CODE, "(#100) The parameter batch must be a JSON array", false);
+        }
+        if (operations.size() > MAX_BATCH_SIZE) {
+            return error(400, INVALID_PARAMETER_ERROR_CODE, format("(#100) Too many requests in batch message. Maximum batch size is %d",
+                    MAX_BATCH_SIZE), false);
+        }
+        batchCount.incrementAndGet();
+        JsonArray responses = new JsonArray();
+        for (JsonValue operation : operations) {
+            String relativeUrl = operation.asObject().getString("relative_url", "");
+            Response response = relativeUrl.endsWith(MESSAGES_PATH)
+                    ? send(parseForm(operation.asObject().getString("body", "")))
+                    : error(400, INVALID_PARAMETER_ERROR_CODE, "(#100) Unknown path components: /" + relativeUrl, false);
+            responses.add(new JsonObject()
+                    .add("code", response.status)
+                    .add("headers", new JsonArray())
+                    .add("body", response.body));
+        }
+        return new Response(200, responses.toString());
+    }
+
+    private synchronized boolean isRateLimited() {
+        if (rateLimit == 0) {
+            return false;
+        }
+        long window = System.nanoTime() / TimeUnit.SECONDS.toNanos(1);
+        if (window != rateLimitWindow) {
+            rateLimitWindow = window;
+            rateLimitCount = 0;
+        }
+        return ++rateLimitCount > rateLimit;
+    }
+
+    private static String getRecipientId(String recipient) {
+        if (recipient == null) {
+            return null;
+        }
+        try {
+            JsonValue id = Json.parse(recipient).asObject().get("id");
+            return id != null && id.isString() ? id.asString() : null;
+        } catch (ParseException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static Response error(int status, int code, String message, boolean isTransient) {
+        JsonObject error = new JsonObject()
+                .add("message", message)
+                .add("type", "OAuthException")
+                .add("code", code)
+                .add("is_transient", isTransient)
+                .add("fbtrace_id", "FakeGraph");
+        return new Response(status, new JsonObject().add("error", error).toString());
+    }
+
+    private static Map<String, String> parseForm(String form) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : form.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int separator = pair.indexOf('=');
+            try {
+                if (separator == -1) {
+                    parameters.put(URLDecoder.decode(pair, "UTF-8"), "");
+                } else {
+                    parameters.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                            URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+                }
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return parameters;
+    }
+
+    private static String read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return new String(output.toByteArray(), UTF_8);
+    }
+
+    /**
+     * A Graph API response.
+     */
+    protected static class Response {
+
+        private final int status;
+        private final String body;
+
+        public Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+
+    private class GraphHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                requestCount.incrementAndGet();
+                Map<String, String> parameters = parseForm(read(exchange.getRequestBody()));
+                long delay = latency.nextNanos();
+                if (delay > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                }
+                String path = exchange.getRequestURI().getPath();
+                Response response;
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    response = error(400, INVALID_PARAMETER_ERROR_CODE, "(#100) Unsupported request method", false);
+                } else if (path.endsWith("/" + MESSAGES_PATH)) {
+                    response = send(parameters);
+                } else if (parameters.containsKey(BATCH_PARAM_NAME)) {
+                    response = batch(parameters.get(BATCH_PARAM_NAME));
+                } else {
+                    response = error(400, INVALID_PARAMETER_ERROR_CODE, "(#100) Unknown path components: " + path, false);
+                }
+                byte[] body = response.body.getBytes(UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                exchange.sendResponseHeaders(response.status, body.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            } catch (InterruptedException e) {
+                // stopped while simulating the latency
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * Builder for {@link FakeGraphServer} instances.
+     */
+    public static class Builder {
+
+        private int port;
+        private int threads = DEFAULT_THREADS;
+        private LatencyDistribution latency = LatencyDistribution.none();
+        private double errorRate;
+        private double throttleRate;
+        private int rateLimit;
+
+        protected Builder() {
+        }
+
+        /**
+         * Sets the port to listen on. Defaults to {@code 0}, which selects a free port.
+         *
+         * @param port the port, must not be negative
+         */
+        public Builder port(int port) {
+            if (port < 0) {
+                throw new IllegalArgumentException("'port' must not be negative");
+            }
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads handling the requests, which is the maximum number of concurrent requests. Defaults to {@value
+         * #DEFAULT_THREADS}.
+         *
+         * @param threads the number of threads, must be positive
+         */
+        public Builder threads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("'threads' must be positive");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the latency added to each response. Defaults to no latency.
+         *
+         * @param latency the latency distribution, not null
+         */
+        public Builder latency(LatencyDistribution latency) {
+            this.latency = requireNonNull(latency, "'latency' must not be null");
+            return this;
+        }
+
+        /**
+         * Sets the fraction of the messages failing with a transient error. Defaults to {@code 0}.
+         *
+         * @param errorRate the error rate, between {@code 0} and {@code 1}
+         */
+        public Builder errorRate(double errorRate) {
+            this.errorRate = rate(errorRate, "errorRate");
+            return this;
+        }
+
+        /**
+         * Sets the fraction of the messages that are throttled. Defaults to {@code 0}.
+         *
+         * @param throttleRate the throttle rate, between {@code 0} and {@code 1}
+         */
+        public Builder throttleRate(double throttleRate) {
+            this.throttleRate = rate(throttleRate, "throttleRate");
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of messages per second; the messages exceeding it are throttled. Defaults to {@code 0}, which does not
+         * limit the messages.
+         *
+         * @param rateLimit the maximum number of messages per second, {@code 0} for no limit
+         */
+        public Builder rateLimit(int rateLimit) {
+            if (rateLimit < 0) {
+                throw new IllegalArgumentException("'rateLimit' must not be negative");
+            }
+            this.rateLimit = rateLimit;
+            return this;
+        }
+
+        public FakeGraphServer build() {
+            return new FakeGraphServer(this);
+        }
+
+        private static double rate(double rate, String name) {
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException(format("'%s' must be between 0 and 1", name));
+            }
+            return rate;
+        }
+    }
+}
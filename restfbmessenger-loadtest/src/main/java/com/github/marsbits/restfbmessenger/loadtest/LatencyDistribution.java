@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The distribution of the latency the {@link FakeGraphServer} adds to each response.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public abstract class LatencyDistribution {
+
+    // the 99th percentile of the standard normal distribution
+    private static final double Z_99 = 2.3263;
+
+    /**
+     * Returns the next latency in nanoseconds.
+     */
+    public abstract long nextNanos();
+
+    /**
+     * Returns a distribution without latency.
+     */
+    public static LatencyDistribution none() {
+        return fixed(0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns a distribution with a fixed latency.
+     *
+     * @param latency the latency, must not be negative
+     * @param unit    the time unit, not null
+     */
+    public static LatencyDistribution fixed(long latency, TimeUnit unit) {
+        final long nanos = nanos(latency, unit, "latency");
+        return new LatencyDistribution() {
+
+            @Override
+            public long nextNanos() {
+                return nanos;
+            }
+        };
+    }
+
+    /**
+     * Returns a distribution with a latency uniformly distributed between the given minimum and maximum.
+     *
+     * @param min  the minimum latency, must not be negative
+     * @param max  the maximum latency, must not be less than the minimum latency
+     * @param unit the time unit, not null
+     */
+    public static LatencyDistribution uniform(long min, long max, TimeUnit unit) {
+        final long minNanos = nanos(min, unit, "min");
+        final long maxNanos = nanos(max, unit, "max");
+        if (maxNanos < minNanos) {
+            throw new IllegalArgumentException("'max' must not be less than 'min'");
+        }
+        return new LatencyDistribution() {
+
+            @Override
+            public long nextNanos() {
+                return minNanos + (long) (ThreadLocalRandom.current().nextDouble() * (maxNanos - minNanos));
+            }
+        };
+    }
+
+    /**
+     * Returns a log-normal distribution with the given median and 99th percentile latency. Like the latency of a real service it has a
+     * long tail.
+     *
+     * @param median the median latency, must be positive
+     * @param p99    the 99th percentile latency, must not be less than the median latency
+     * @param unit   the time unit, not null
+     */
+    public static LatencyDistribution logNormal(long median, long p99, TimeUnit unit) {
+        long medianNanos = nanos(median, unit, "median");
+        long p99Nanos = nanos(p99, unit, "p99");
+        if (medianNanos == 0) {
+            throw new IllegalArgumentException("'median' must be positive");
+        }
+        if (p99Nanos < medianNanos) {
+            throw new IllegalArgumentException("'p99' must not be less than 'median'");
+        }
+        final double mu = Math.log(medianNanos);
+        final double sigma = (Math.log(p99Nanos) - mu) / Z_99;
+        return new LatencyDistribution() {
+
+            @Override
+            public long nextNanos() {
+                return (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+            }
+        };
+    }
+
+    private static long nanos(long value, TimeUnit unit, String name) {
+        requireNonNull(unit, "'unit' must not be null");
+        if (value < 0) {
+            throw new IllegalArgumentException(format("'%s' must not be negative", name));
+        }
+        return unit.toNanos(value);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.loadtest;
+
+import com.github.marsbits.restfbmessenger.DefaultMessenger;
+import com.github.marsbits.restfbmessenger.Messenger;
+import com.github.marsbits.restfbmessenger.servlet3.AsyncWebhookServlet;
+import com.github.marsbits.restfbmessenger.util.PartitionedExecutor;
+import com.github.marsbits.restfbmessenger.webhook.AbstractCallbackHandler;
+import com.github.marsbits.restfbmessenger.webhook.WebhookServlet;
+import com.restfb.exception.FacebookException;
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.MessagingType;
+import com.restfb.types.webhook.messaging.MessagingItem;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Measures the end-to-end throughput of the library on a single machine.
+ * <p>
+ * Starts a {@link FakeGraphServer}, an embedded Jetty server running a {@link WebhookServlet} with a {@link DefaultMessenger} replying to
+ * every message, and posts webhooks to it with the {@link WebhookTrafficGenerator}. Once the replies have been sent the webhook throughput
+ * and latency, and the reply throughput are printed.
+ * <p>
+ * Options are passed as {@code --name=value} arguments:
+ * <ul>
+ * <li>{@code requests}: the number of webhooks (default {@code 10000})</li>
+ * <li>{@code concurrency}: the number of concurrent webhook connections (default {@code 64})</li>
+ * <li>{@code entries}: the number of messages per webhook (default {@code 1})</li>
+ * <li>{@code senders}: the number of simulated senders (default {@code 1000})</li>
+ * <li>{@code servlet}: {@code sync}, {@code async} or {@code nonblocking} (default {@code async})</li>
+ * <li>{@code dispatch-lanes}: the number of dispatch executor lanes, {@code 0} to dispatch sequentially (default {@code 0})</li>
+ * <li>{@code send}: {@code sync} or {@code async} replies (default {@code async})</li>
+ * <li>{@code latency-median} and {@code latency-p99}: the Send API latency in milliseconds (default {@code 50} and {@code 250})</li>
+ * <li>{@code error-rate} and {@code throttle-rate}: the fraction of failed and throttled replies (default {@code 0})</li>
+ * <li>{@code rate-limit}: the maximum number of replies per second, {@code 0} for no limit (default {@code 0})</li>
+ * </ul>
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class LoadTest {
+
+    private static final String VERIFY_TOKEN = "the verify token";
+    private static final String ACCESS_TOKEN = "the access token";
+    private static final String APP_SECRET = "the app secret";
+
+    private static final long REPLY_TIMEOUT_MILLIS = 60000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        long requests = Long.parseLong(option(options, "requests", "10000"));
+        int entries = Integer.parseInt(option(options, "entries", "1"));
+        final boolean asyncSend = !"sync".equals(option(options, "send", "async"));
+        quietLogging();
+
+        FakeGraphServer graphServer = FakeGraphServer.builder()
+                .latency(LatencyDistribution.logNormal(Long.parseLong(option(options, "latency-median", "50")),
+                        Long.parseLong(option(options, "latency-p99", "250")), TimeUnit.MILLISECONDS))
+                .errorRate(Double.parseDouble(option(options, "error-rate", "0")))
+                .throttleRate(Double.parseDouble(option(options, "throttle-rate", "0")))
+                .rateLimit(Integer.parseInt(option(options, "rate-limit", "0")))
+                .build();
+        graphServer.start();
+
+        AbstractCallbackHandler callbackHandler = new AbstractCallbackHandler() {
+
+            @Override
+            public void onMessage(Messenger messenger, MessagingItem messaging) {
+                IdMessageRecipient recipient = new IdMessageRecipient(messaging.getSender().getId());
+                String text = "echo: " + messaging.getMessage().getText();
+                if (asyncSend) {
+                    ((DefaultMessenger) messenger).sendAsync().textMessage(MessagingType.RESPONSE, recipient, text);
+                } else {
+                    try {
+                        messenger.send().textMessage(MessagingType.RESPONSE, recipient, text);
+                    } catch (FacebookException e) {
+                        // counted by the fake Graph server
+                    }
+                }
+            }
+        };
+        int dispatchLanes = Integer.parseInt(option(options, "dispatch-lanes", "0"));
+        if (dispatchLanes > 0) {
+            callbackHandler.setDispatchExecutor(new PartitionedExecutor(dispatchLanes, 1024, PartitionedExecutor.OverflowPolicy.BLOCK));
+        }
+        DefaultMessenger messenger = new DefaultMessenger(VERIFY_TOKEN, APP_SECRET, callbackHandler,
+                graphServer.createFacebookClient(ACCESS_TOKEN));
+
+        Server server = createServer(messenger, option(options, "servlet", "async"));
+        server.start();
+        try {
+            int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+            WebhookTrafficGenerator generator = WebhookTrafficGenerator.builder()
+                    .url(format("http://127.0.0.1:%d/webhook", port))
+                    .appSecret(APP_SECRET)
+                    .requests(requests)
+                    .concurrency(Integer.parseInt(option(options, "concurrency", "64")))
+                    .entries(entries)
+                    .senders(Integer.parseInt(option(options, "senders", "1000")))
+                    .build();
+            long start = System.nanoTime();
+            WebhookTrafficGenerator.Result result = generator.run();
+            System.out.println("Webhooks: " + result);
+
+            long expected = (result.getRequests() - result.getFailures()) * entries;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REPLY_TIMEOUT_MILLIS);
+            while (getReplyCount(graphServer) < expected && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.println(format("Replies: %d sent, %d failed, %d throttled of %d expected in %d ms (%.1f/s) end-to-end",
+                    graphServer.getMessageCount(), graphServer.getErrorCount(), graphServer.getThrottledCount(), expected, elapsedMillis,
+                    elapsedMillis > 0 ? graphServer.getMessageCount() * 1000.0 / elapsedMillis : 0));
+        } finally {
+            server.stop();
+            graphServer.stop();
+        }
+        System.exit(0);
+    }
+
+    private static Server createServer(DefaultMessenger messenger, String servlet) {
+        ServletHolder holder;
+        if ("nonblocking".equals(servlet)) {
+            holder = new ServletHolder(new AsyncWebhookServlet(messenger));
+            holder.setAsyncSupported(true);
+        } else {
+            holder = new ServletHolder(new WebhookServlet(messenger));
+            holder.setInitParameter(WebhookServlet.ASYNC_PARAM_NAME, String.valueOf("async".equals(servlet)));
+        }
+        ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(holder, "/webhook");
+        Server server = new Server(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.setHandler(context);
+        return server;
+    }
+
+    private static long getReplyCount(FakeGraphServer graphServer) {
+        return graphServer.getMessageCount() + graphServer.getErrorCount() + graphServer.getThrottledCount();
+    }
+
+    private static void quietLogging() {
+        // the webhook servlet logs every received webhook
+        Logger rootLogger = Logger.getLogger("");
+        rootLogger.setLevel(Level.WARNING);
+        for (Handler handler : rootLogger.getHandlers()) {
+            handler.setLevel(Level.WARNING);
+        }
+        System.setProperty("org.eclipse.jetty.LEVEL", "WARN");
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator == -1) {
+                throw new IllegalArgumentException(format("Invalid option: %s; expected --name=value", arg));
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.loadtest;
+
+import com.github.marsbits.restfbmessenger.util.NamedThreadFactory;
+import com.restfb.util.EncodingUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static com.github.marsbits.restfbmessenger.Messenger.HUB_SIGNATURE_256_HEADER_NAME;
+import static com.github.marsbits.restfbmessenger.Messenger.HUB_SIGNATURE_HEADER_NAME;
+import static com.github.marsbits.restfbmessenger.webhook.HmacSignatureVerifier.HMAC_SHA1_ALGORITHM;
+import static com.github.marsbits.restfbmessenger.webhook.HmacSignatureVerifier.HMAC_SHA256_ALGORITHM;
+import static com.github.marsbits.restfbmessenger.webhook.HmacSignatureVerifier.SHA1_SIGNATURE_PREFIX;
+import static com.github.marsbits.restfbmessenger.webhook.HmacSignatureVerifier.SHA256_SIGNATURE_PREFIX;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Generates webhook traffic against a {@link com.github.marsbits.restfbmessenger.webhook.WebhookServlet}, for measuring the webhook
+ * throughput of a bot.
+ * <p>
+ * The generator posts the given number of webhooks from concurrent connections, each webhook containing text messages of a set of
+ * simulated senders. The payloads are signed with the app secret in both the {@code X-Hub-Signature} and {@code X-Hub-Signature-256}
+ * headers, and each message has a unique message id so it is not skipped as a redelivery.
+ * <pre class="code">
+ * WebhookTrafficGenerator.Result result = WebhookTrafficGenerator.builder()
+ *         .url("http://localhost:8080/webhook")
+ *         .appSecret(appSecret)
+ *         .requests(100000)
+ *         .concurrency(64)
+ *         .build()
+ *         .run();
+ * </pre>
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class WebhookTrafficGenerator {
+
+    public static final int DEFAULT_CONCURRENCY = 16;
+    public static final int DEFAULT_ENTRIES = 1;
+    public static final int DEFAULT_SENDERS = 1000;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+    private final URL url;
+    private final String appSecret;
+    private final long requests;
+    private final int concurrency;
+    private final int entries;
+    private final int senders;
+    private final int timeoutMillis;
+
+    protected WebhookTrafficGenerator(Builder builder) {
+        this.url = builder.url;
+        this.appSecret = builder.appSecret;
+        this.requests = builder.requests;
+        this.concurrency = builder.concurrency;
+        this.entries = builder.entries;
+        this.senders = builder.senders;
+        this.timeoutMillis = (int) builder.timeoutMillis;
+    }
+
+    /**
+     * Returns a new builder for {@link WebhookTrafficGenerator} instances.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Posts the webhooks and waits until all of them have been responded to.
+     *
+     * @return the result
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Result run() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, new NamedThreadFactory("webhook-traffic"));
+        try {
+            AtomicLong sequence = new AtomicLong();
+            List<Callable<Worker>> workers = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(new Worker(sequence));
+            }
+            long start = System.nanoTime();
+            List<Future<Worker>> futures = executor.invokeAll(workers);
+            long elapsed = System.nanoTime() - start;
+            List<Worker> completed = new ArrayList<>(concurrency);
+            for (Future<Worker> future : futures) {
+                try {
+                    completed.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Webhook traffic worker failed", e.getCause());
+                }
+            }
+            return new Result(completed, elapsed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the payload of the webhook with the given sequence number.
+     */
+    protected String createPayload(long sequence) {
+        long time = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder(256 * entries);
+        sb.append("{\"object\":\"page\",\"entry\":[");
+        for (int i = 0; i < entries; i++) {
+            long message = sequence * entries + i;
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":\"PAGE_ID\",\"time\":").append(time).append(",\"messaging\":[{")
+                    .append("\"sender\":{\"id\":\"USER_ID_").append(message % senders).append("\"},")
+                    .append("\"recipient\":{\"id\":\"PAGE_ID\"},")
+                    .append("\"timestamp\":").append(time).append(',')
+                    .append("\"message\":{\"mid\":\"mid.loadtest:").append(message).append("\",\"seq\":").append(message)
+                    .append(",\"text\":\"load test message ").append(message).append("\"}}]}");
+        }
+        return sb.append("]}").toString();
+    }
+
+    private class Worker implements Callable<Worker> {
+
+        private final AtomicLong sequence;
+        private long[] latencies = new long[1024];
+        private int count;
+        private long failures;
+
+        Worker(AtomicLong sequence) {
+            this.sequence = sequence;
+        }
+
+        @Override
+        public Worker call() throws Exception {
+            // macs are not thread safe, so each worker signs with its own
+            Mac sha1 = appSecret != null ? createMac(HMAC_SHA1_ALGORITHM) : null;
+            Mac sha256 = appSecret != null ? createMac(HMAC_SHA256_ALGORITHM) : null;
+            for (long next = sequence.getAndIncrement(); next < requests && !Thread.currentThread().isInterrupted();
+                    next = sequence.getAndIncrement()) {
+                byte[] payload = createPayload(next).getBytes(UTF_8);
+                long start = System.nanoTime();
+                boolean success;
+                try {
+                    success = post(payload, sha1, sha256);
+                } catch (IOException e) {
+                    success = false;
+                }
+                record(System.nanoTime() - start, success);
+            }
+            return this;
+        }
+
+        private boolean post(byte[] payload, Mac sha1, Mac sha256) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setFixedLengthStreamingMode(payload.length);
+            connection.setRequestProperty("Content-Type", "application/json");
+            if (sha1 != null) {
+                connection.setRequestProperty(HUB_SIGNATURE_HEADER_NAME, SHA1_SIGNATURE_PREFIX + sign(sha1, payload));
+                connection.setRequestProperty(HUB_SIGNATURE_256_HEADER_NAME, SHA256_SIGNATURE_PREFIX + sign(sha256, payload));
+            }
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(payload);
+            }
+            int status = connection.getResponseCode();
+            // the response is read fully so the connection is kept alive
+            drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            return status / 100 == 2;
+        }
+
+        private void record(long latency, boolean success) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[count++] = latency;
+            if (!success) {
+                failures++;
+            }
+        }
+    }
+
+    private Mac createMac(String algorithm) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(algorithm);
+        mac.init(new SecretKeySpec(appSecret.getBytes(UTF_8), algorithm));
+        return mac;
+    }
+
+    private static String sign(Mac mac, byte[] payload) {
+        return new String(EncodingUtils.encodeHex(mac.doFinal(payload)));
+    }
+
+    private static void drain(InputStream input) throws IOException {
+        if (input == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[512];
+            while (input.read(buffer) != -1) {
+                // discard
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * The result of a webhook traffic run.
+     */
+    public static class Result {
+
+        private final long requests;
+        private final long failures;
+        private final long elapsedNanos;
+        private final long[] latencies;
+
+        Result(List<Worker> workers, long elapsedNanos) {
+            int count = 0;
+            long failures = 0;
+            for (Worker worker : workers) {
+                count += worker.count;
+                failures += worker.failures;
+            }
+            long[] latencies = new long[count];
+            int offset = 0;
+            for (Worker worker : workers) {
+                System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+                offset += worker.count;
+            }
+            Arrays.sort(latencies);
+            this.requests = count;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+        }
+
+        /**
+         * Returns the number of posted webhooks.
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * Returns the number of webhooks that failed or were not acknowledged with a {@code 2xx} status.
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * Returns the duration of the run.
+         *
+         * @param unit the time unit, not null
+         */
+        public long getElapsed(TimeUnit unit) {
+            return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the number of webhooks posted per second.
+         */
+        public double getThroughput() {
+            return elapsedNanos > 0 ? requests * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+        }
+
+        /**
+         * Returns the webhook response latency at the given percentile.
+         *
+         * @param percentile the percentile, between {@code 0} and {@code 100}
+         * @param unit       the time unit, not null
+         */
+        public long getLatency(double percentile, TimeUnit unit) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("'percentile' must be between 0 and 100");
+            }
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return unit.convert(latencies[Math.max(index, 0)], TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return format("%d webhooks in %d ms (%.1f/s), %d failures, latency p50: %.2f ms, p99: %.2f ms, max: %.2f ms",
+                    requests, getElapsed(TimeUnit.MILLISECONDS), getThroughput(), failures, millis(50), millis(99), millis(100));
+        }
+
+        private double millis(double percentile) {
+            return getLatency(percentile, TimeUnit.MICROSECONDS) / 1000.0;
+        }
+    }
+
+    /**
+     * Builder for {@link WebhookTrafficGenerator} instances.
+     */
+    public static class Builder {
+
+        private URL url;
+        private String appSecret;
+        private long requests;
+        private int concurrency = DEFAULT_CONCURRENCY;
+        private int entries = DEFAULT_ENTRIES;
+        private int senders = DEFAULT_SENDERS;
+        private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+        protected Builder() {
+        }
+
+        /**
+         * Sets the url of the webhook servlet.
+         *
+         * @param url the url, not null
+         */
+        public Builder url(String url) {
+            requireNonNull(url, "'url' must not be null");
+            try {
+                this.url = new URL(url);
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException(format("Invalid url: %s", url), e);
+            }
+            return this;
+        }
+
+        /**
+         * Sets the app secret the payloads are signed with. Defaults to {@code null}, which does not sign the payloads.
+         *
+         * @param appSecret the app secret
+         */
+        public Builder appSecret(String appSecret) {
+            this.appSecret = appSecret;
+            return this;
+        }
+
+        /**
+         * Sets the number of webhooks to post.
+         *
+         * @param requests the number of webhooks, must be positive
+         */
+        public Builder requests(long requests) {
+            if (requests < 1) {
+                throw new IllegalArgumentException("'requests' must be positive");
+            }
+            this.requests = requests;
+            return this;
+        }
+
+        /**
+         * Sets the number of concurrent connections posting webhooks. Defaults to {@value #DEFAULT_CONCURRENCY}.
+         *
+         * @param concurrency the number of connections, must be positive
+         */
+        public Builder concurrency(int concurrency) {
+            this.concurrency = positive(concurrency, "concurrency");
+            return this;
+        }
+
+        /**
+         * Sets the number of entries, each containing a single message, per webhook. Defaults to {@value #DEFAULT_ENTRIES}.
+         *
+         * @param entries the number of entries, must be positive
+         */
+        public Builder entries(int entries) {
+            this.entries = positive(entries, "entries");
+            return this;
+        }
+
+        /**
+         * Sets the number of simulated senders the messages are spread over. Defaults to {@value #DEFAULT_SENDERS}.
+         *
+         * @param senders the number of senders, must be positive
+         */
+        public Builder senders(int senders) {
+            this.senders = positive(senders, "senders");
+            return this;
+        }
+
+        /**
+         * Sets the connect and read timeout of the webhook requests. Defaults to {@value #DEFAULT_TIMEOUT_MILLIS} milliseconds.
+         *
+         * @param timeout the timeout, must be positive
+         * @param unit    the time unit, not null
+         */
+        public Builder timeout(long timeout, TimeUnit unit) {
+            requireNonNull(unit, "'unit' must not be null");
+            long timeoutMillis = unit.toMillis(timeout);
+            if (timeoutMillis < 1 || timeoutMillis > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("'timeout' must be positive");
+            }
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        public WebhookTrafficGenerator build() {
+            if (url == null) {
+                throw new IllegalStateException("'url' must be set");
+            }
+            if (requests == 0) {
+                throw new IllegalStateException("'requests' must be set");
+            }
+            return new WebhookTrafficGenerator(this);
+        }
+
+        private static int positive(int value, String name) {
+            if (value < 1) {
+                throw new IllegalArgumentException(format("'%s' must be positive", name));
+            }
+            return value;
+        }
+    }
+}
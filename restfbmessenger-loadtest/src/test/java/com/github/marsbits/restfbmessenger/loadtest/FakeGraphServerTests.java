@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.loadtest;
+
+import com.github.marsbits.restfbmessenger.send.DefaultSendOperations;
+import com.github.marsbits.restfbmessenger.send.SendBatch;
+import com.github.marsbits.restfbmessenger.send.SendFuture;
+import com.restfb.exception.FacebookOAuthException;
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.MessagingType;
+import com.restfb.types.send.SendResponse;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link FakeGraphServer}.
+ *
+ * @author Marcel Overdijk
+ */
+public class FakeGraphServerTests {
+
+    private FakeGraphServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testSend() throws Exception {
+        server = FakeGraphServer.builder().build();
+        server.start();
+        DefaultSendOperations sendOperations = new DefaultSendOperations(server.createFacebookClient("the-access-token"));
+        SendResponse response = sendOperations.textMessage(MessagingType.RESPONSE, new IdMessageRecipient("USER_ID"), "Hello");
+        assertThat(response.getRecipientId(), is("USER_ID"));
+        assertThat(response.getMessageId(), startsWith("mid.fake-graph:"));
+        assertThat(server.getRequestCount(), is(1L));
+        assertThat(server.getMessageCount(), is(1L));
+    }
+
+    @Test
+    public void testSendThrottled() throws Exception {
+        server = FakeGraphServer.builder().throttleRate(1).build();
+        server.start();
+        DefaultSendOperations sendOperations = new DefaultSendOperations(server.createFacebookClient("the-access-token"));
+        try {
+            sendOperations.textMessage(MessagingType.RESPONSE, new IdMessageRecipient("USER_ID"), "Hello");
+            fail("Expected FacebookOAuthException");
+        } catch (FacebookOAuthException e) {
+            assertThat(e.getErrorCode(), is(FakeGraphServer.THROTTLED_ERROR_CODE));
+        }
+        assertThat(server.getThrottledCount(), is(1L));
+        assertThat(server.getMessageCount(), is(0L));
+    }
+
+    @Test
+    public void testSendError() throws Exception {
+        server = FakeGraphServer.builder().errorRate(1).build();
+        server.start();
+        DefaultSendOperations sendOperations = new DefaultSendOperations(server.createFacebookClient("the-access-token"));
+        try {
+            sendOperations.textMessage(MessagingType.RESPONSE, new IdMessageRecipient("USER_ID"), "Hello");
+            fail("Expected FacebookOAuthException");
+        } catch (FacebookOAuthException e) {
+            assertThat(e.getErrorCode(), is(FakeGraphServer.TRANSIENT_ERROR_CODE));
+            assertThat(e.getIsTransient(), is(true));
+        }
+        assertThat(server.getErrorCount(), is(1L));
+    }
+
+    @Test
+    public void testSendRateLimited() throws Exception {
+        server = FakeGraphServer.builder().rateLimit(2).build();
+        server.start();
+        DefaultSendOperations sendOperations = new DefaultSendOperations(server.createFacebookClient("the-access-token"));
+        int throttled = 0;
+        for (int i = 0; i < 5; i++) {
+            try {
+                sendOperations.textMessage(MessagingType.RESPONSE, new IdMessageRecipient("USER_ID"), "Hello");
+            } catch (FacebookOAuthException e) {
+                throttled++;
+            }
+        }
+        // the requests may straddle a one second window
+        assertThat(throttled >= 1, is(true));
+        assertThat(server.getMessageCount() + server.getThrottledCount(), is(5L));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        server = FakeGraphServer.builder().build();
+        server.start();
+        SendBatch batch = new SendBatch(server.createFacebookClient("the-access-token"));
+        SendFuture<SendResponse> future1 = batch.textMessage(MessagingType.RESPONSE, new IdMessageRecipient("USER_ID_1"), "Hello");
+        SendFuture<SendResponse> future2 = batch.textMessage(MessagingType.RESPONSE, new IdMessageRecipient("USER_ID_2"), "Hello");
+        batch.execute();
+        assertThat(future1.get().getRecipientId(), is("USER_ID_1"));
+        assertThat(future2.get().getRecipientId(), is("USER_ID_2"));
+        assertThat(server.getRequestCount(), is(1L));
+        assertThat(server.getBatchCount(), is(1L));
+        assertThat(server.getMessageCount(), is(2L));
+    }
+
+    @Test
+    public void testBatchThrottled() throws Exception {
+        server = FakeGraphServer.builder().throttleRate(1).build();
+        server.start();
+        SendBatch batch = new SendBatch(server.createFacebookClient("the-access-token"));
+        SendFuture<SendResponse> future = batch.textMessage(MessagingType.RESPONSE, new IdMessageRecipient("USER_ID"), "Hello");
+        batch.execute();
+        try {
+            future.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(((FacebookOAuthException) e.getCause()).getErrorCode(), is(FakeGraphServer.THROTTLED_ERROR_CODE));
+        }
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        server = FakeGraphServer.builder().build();
+        server.start();
+        new DefaultSendOperations(server.createFacebookClient("the-access-token"))
+                .textMessage(MessagingType.RESPONSE, new IdMessageRecipient("USER_ID"), "Hello");
+        server.reset();
+        assertThat(server.getRequestCount(), is(0L));
+        assertThat(server.getMessageCount(), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilderWithInvalidErrorRate() {
+        FakeGraphServer.builder().errorRate(1.5);
+    }
+}
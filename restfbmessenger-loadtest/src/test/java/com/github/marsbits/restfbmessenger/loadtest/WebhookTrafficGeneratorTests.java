@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.loadtest;
+
+import com.github.marsbits.restfbmessenger.webhook.HmacSignatureVerifier;
+import com.restfb.DefaultJsonMapper;
+import com.restfb.types.webhook.WebhookObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.marsbits.restfbmessenger.Messenger.HUB_SIGNATURE_256_HEADER_NAME;
+import static com.github.marsbits.restfbmessenger.Messenger.HUB_SIGNATURE_HEADER_NAME;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link WebhookTrafficGenerator}.
+ *
+ * @author Marcel Overdijk
+ */
+public class WebhookTrafficGeneratorTests {
+
+    private HttpServer server;
+    private HmacSignatureVerifier signatureVerifier;
+    private AtomicInteger invalidSignatures;
+    private Set<String> messageIds;
+    private volatile int status;
+
+    @Before
+    public void setUp() throws Exception {
+        this.signatureVerifier = new HmacSignatureVerifier("the-app-secret");
+        this.invalidSignatures = new AtomicInteger();
+        this.messageIds = Collections.synchronizedSet(new HashSet<String>());
+        this.status = 200;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/webhook", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] payload = read(exchange.getRequestBody());
+                if (!signatureVerifier.verify(payload, exchange.getRequestHeaders().getFirst(HUB_SIGNATURE_HEADER_NAME))
+                        || !signatureVerifier.verify(payload, exchange.getRequestHeaders().getFirst(HUB_SIGNATURE_256_HEADER_NAME))) {
+                    invalidSignatures.incrementAndGet();
+                }
+                WebhookObject webhookObject = new DefaultJsonMapper().toJavaObject(new String(payload, "UTF-8"), WebhookObject.class);
+                for (int i = 0; i < webhookObject.getEntryList().size(); i++) {
+                    messageIds.add(webhookObject.getEntryList().get(i).getMessaging().get(0).getMessage().getMid());
+                }
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+            }
+        });
+        this.server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        WebhookTrafficGenerator generator = WebhookTrafficGenerator.builder()
+                .url(getUrl())
+                .appSecret("the-app-secret")
+                .requests(20)
+                .concurrency(4)
+                .entries(3)
+                .build();
+        WebhookTrafficGenerator.Result result = generator.run();
+        assertThat(result.getRequests(), is(20L));
+        assertThat(result.getFailures(), is(0L));
+        assertThat(result.getLatency(100, TimeUnit.NANOSECONDS) > 0, is(true));
+        assertThat(invalidSignatures.get(), is(0));
+        assertThat(messageIds.size(), is(60));
+    }
+
+    @Test
+    public void testRunCountsFailures() throws Exception {
+        status = 500;
+        WebhookTrafficGenerator generator = WebhookTrafficGenerator.builder()
+                .url(getUrl())
+                .appSecret("the-app-secret")
+                .requests(5)
+                .concurrency(2)
+                .build();
+        WebhookTrafficGenerator.Result result = generator.run();
+        assertThat(result.getRequests(), is(5L));
+        assertThat(result.getFailures(), is(5L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilderWithInvalidConcurrency() {
+        WebhookTrafficGenerator.builder().concurrency(0);
+    }
+
+    private String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/webhook";
+    }
+
+    private static byte[] read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.opentelemetry;
+
+import com.github.marsbits.restfbmessenger.tracing.MessengerSpan;
+import com.github.marsbits.restfbmessenger.tracing.MessengerTracer;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link MessengerTracer} implementation recording the spans with OpenTelemetry.
+ * <p>
+ * The spans are started as children of the current OpenTelemetry context, so when the webhook request is traced by an instrumented servlet
+ * container the webhook span becomes part of the request trace. The Send API spans are {@link SpanKind#CLIENT client} spans, the other
+ * spans are {@link SpanKind#INTERNAL internal} spans.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class OpenTelemetryMessengerTracer implements MessengerTracer {
+
+    /**
+     * The instrumentation scope name of the tracer.
+     */
+    public static final String INSTRUMENTATION_NAME = "com.github.marsbits.restfbmessenger";
+
+    private final Tracer tracer;
+
+    /**
+     * Creates a {@code OpenTelemetryMessengerTracer} instance using the tracer of the given {@link OpenTelemetry} instance.
+     *
+     * @param openTelemetry the OpenTelemetry instance, not null
+     */
+    public OpenTelemetryMessengerTracer(OpenTelemetry openTelemetry) {
+        this(requireNonNull(openTelemetry, "'openTelemetry' must not be null").getTracer(INSTRUMENTATION_NAME));
+    }
+
+    /**
+     * Creates a {@code OpenTelemetryMessengerTracer} instance using the given tracer.
+     *
+     * @param tracer the tracer, not null
+     */
+    public OpenTelemetryMessengerTracer(Tracer tracer) {
+        this.tracer = requireNonNull(tracer, "'tracer' must not be null");
+    }
+
+    @Override
+    public MessengerSpan startSpan(String name) {
+        Span span = tracer.spanBuilder(name)
+                .setSpanKind(SEND_SPAN_NAME.equals(name) ? SpanKind.CLIENT : SpanKind.INTERNAL)
+                .startSpan();
+        return new OpenTelemetrySpan(span, span.makeCurrent());
+    }
+
+    @Override
+    public Runnable wrap(Runnable task) {
+        return Context.current().wrap(task);
+    }
+
+    private static class OpenTelemetrySpan implements MessengerSpan {
+
+        private final Span span;
+        private final Scope scope;
+
+        OpenTelemetrySpan(Span span, Scope scope) {
+            this.span = span;
+            this.scope = scope;
+        }
+
+        @Override
+        public MessengerSpan setAttribute(String key, String value) {
+            if (value != null) {
+                span.setAttribute(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public MessengerSpan setAttribute(String key, long value) {
+            span.setAttribute(key, value);
+            return this;
+        }
+
+        @Override
+        public MessengerSpan setAttribute(String key, boolean value) {
+            span.setAttribute(key, value);
+            return this;
+        }
+
+        @Override
+        public void recordFailure(Throwable failure) {
+            span.recordException(failure);
+            span.setStatus(StatusCode.ERROR);
+        }
+
+        @Override
+        public void end() {
+            try {
+                scope.close();
+            } finally {
+                span.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.opentelemetry;
+
+import com.github.marsbits.restfbmessenger.tracing.MessengerSpan;
+import com.github.marsbits.restfbmessenger.tracing.MessengerTracer;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link OpenTelemetryMessengerTracer}.
+ *
+ * @author Marcel Overdijk
+ */
+public class OpenTelemetryMessengerTracerTests {
+
+    private InMemorySpanExporter exporter;
+    private SdkTracerProvider tracerProvider;
+    private OpenTelemetryMessengerTracer tracer;
+
+    @Before
+    public void setUp() {
+        this.exporter = InMemorySpanExporter.create();
+        this.tracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(exporter)).build();
+        this.tracer = new OpenTelemetryMessengerTracer(tracerProvider.get(OpenTelemetryMessengerTracer.INSTRUMENTATION_NAME));
+    }
+
+    @After
+    public void tearDown() {
+        tracerProvider.close();
+    }
+
+    @Test
+    public void testSpansAreNested() {
+        MessengerSpan webhookSpan = tracer.startSpan(MessengerTracer.WEBHOOK_SPAN_NAME);
+        MessengerSpan itemSpan = tracer.startSpan(MessengerTracer.MESSAGING_ITEM_SPAN_NAME)
+                .setAttribute(MessengerTracer.EVENT_TYPE_ATTRIBUTE, "message")
+                .setAttribute(MessengerTracer.SENDER_ID_ATTRIBUTE, (String) null);
+        MessengerSpan sendSpan = tracer.startSpan(MessengerTracer.SEND_SPAN_NAME);
+        sendSpan.end();
+        itemSpan.end();
+        webhookSpan.end();
+        assertThat(Span.current().getSpanContext().isValid(), is(false));
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        assertThat(spans.size(), is(3));
+        SpanData send = spans.get(0);
+        SpanData item = spans.get(1);
+        SpanData webhook = spans.get(2);
+        assertThat(webhook.getName(), is(MessengerTracer.WEBHOOK_SPAN_NAME));
+        assertThat(webhook.getParentSpanContext().isValid(), is(false));
+        assertThat(item.getParentSpanId(), is(webhook.getSpanId()));
+        assertThat(item.getKind(), is(SpanKind.INTERNAL));
+        assertThat(item.getAttributes().get(AttributeKey.stringKey(MessengerTracer.EVENT_TYPE_ATTRIBUTE)), is("message"));
+        assertThat(item.getAttributes().size(), is(1));
+        assertThat(send.getParentSpanId(), is(item.getSpanId()));
+        assertThat(send.getKind(), is(SpanKind.CLIENT));
+        assertThat(send.getTraceId(), is(webhook.getTraceId()));
+    }
+
+    @Test
+    public void testRecordFailure() {
+        IllegalStateException failure = new IllegalStateException("failure");
+        MessengerSpan span = tracer.startSpan(MessengerTracer.SEND_SPAN_NAME).setAttribute(MessengerTracer.ERROR_CODE_ATTRIBUTE, "613");
+        span.recordFailure(failure);
+        span.end();
+        SpanData send = exporter.getFinishedSpanItems().get(0);
+        assertThat(send.getStatus().getStatusCode(), is(StatusCode.ERROR));
+        assertThat(send.getEvents().size(), is(1));
+        assertThat(send.getAttributes().get(AttributeKey.stringKey(MessengerTracer.ERROR_CODE_ATTRIBUTE)), is("613"));
+    }
+
+    @Test
+    public void testWrapPropagatesContext() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            MessengerSpan webhookSpan = tracer.startSpan(MessengerTracer.WEBHOOK_SPAN_NAME);
+            executor.execute(tracer.wrap(new Runnable() {
+
+                @Override
+                public void run() {
+                    tracer.startSpan(MessengerTracer.MESSAGING_ITEM_SPAN_NAME).end();
+                }
+            }));
+            webhookSpan.end();
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(executor.awaitTermination(1, TimeUnit.SECONDS), is(true));
+        SpanData webhook = null;
+        SpanData item = null;
+        for (SpanData span : exporter.getFinishedSpanItems()) {
+            if (span.getName().equals(MessengerTracer.WEBHOOK_SPAN_NAME)) {
+                webhook = span;
+            } else {
+                item = span;
+            }
+        }
+        assertThat(item.getParentSpanId(), is(webhook.getSpanId()));
+        assertThat(item.getTraceId(), is(webhook.getTraceId()));
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.servlet3;
+
+import com.github.marsbits.restfbmessenger.Messenger;
+import com.github.marsbits.restfbmessenger.metrics.MessengerMetrics;
+import com.github.marsbits.restfbmessenger.webhook.WebhookServlet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static java.lang.String.format;
+
+/**
+ * Servlet 3.1 variant of the {@link WebhookServlet} that does not block a container thread while handling webhook callbacks.
+ * <p>
+ * The request body is read with a non-blocking {@link ReadListener} and the callback is handled on the webhook executor, so the container
+ * thread is released while the payload arrives and while the {@link com.github.marsbits.restfbmessenger.webhook.CallbackHandler} runs.
+ * When the {@code async} init parameter is set to {@code true} the response is completed as soon as the callback is enqueued, otherwise
+ * it is completed after the callback has been handled. When a webhook journal is configured the response is completed once the payload has
+ * been journaled.
+ * <p>
+ * Request bodies larger than the maximum request body size are rejected with a {@code 413 Request Entity Too Large} status.
+ * <p>
+ * The servlet must be registered with async support enabled.
+ *
+ * @author Marcel Overdijk
+ * @see WebhookServlet
+ * @since 2.3.0
+ */
+public class AsyncWebhookServlet extends WebhookServlet {
+
+    private static final Logger logger = Logger.getLogger(AsyncWebhookServlet.class.getName());
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_PRESIZED_BUFFER_SIZE = 1024 * 1024;
+
+    public AsyncWebhookServlet() {
+    }
+
+    public AsyncWebhookServlet(Messenger messenger) {
+        super(messenger);
+    }
+
+    /**
+     * Processes the webhook callback {@code POST} request asynchronously.
+     */
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+        logger.info("Webhook received");
+        if (req.getContentLength() > getMaxRequestBodySize()) {
+            logger.warning(format("Webhook rejected: request body exceeds the maximum size of %d bytes", getMaxRequestBodySize()));
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        AsyncContext asyncContext = req.startAsync();
+        String signature = getSignature(req);
+        ServletInputStream input = req.getInputStream();
+        input.setReadListener(new WebhookReadListener(asyncContext, input, req.getContentLength(), signature));
+    }
+
+    @Override
+    protected boolean isExecutorRequired() {
+        return true;
+    }
+
+    /**
+     * Handles the webhook callback on the executor and completes the response once the callback has been handled.
+     */
+    protected void handleCallback(final byte[] payload, final String signature, final AsyncContext asyncContext) {
+        if (getWebhookJournal() != null) {
+            handleCallbackJournaled(payload, signature, asyncContext);
+            return;
+        }
+        if (isAsync()) {
+            try {
+                handleCallbackAsync(payload, signature, (HttpServletResponse) asyncContext.getResponse());
+            } finally {
+                asyncContext.complete();
+            }
+            return;
+        }
+        try {
+            getExecutorService().execute(getTracer().wrap(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        handleCallback(payload, signature);
+                    } catch (Exception e) {
+                        logger.severe(format("Exception handling webhook: %s", e.getMessage()));
+                        ((HttpServletResponse) asyncContext.getResponse()).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    } finally {
+                        asyncContext.complete();
+                    }
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            logger.warning("Webhook queue is full; webhook rejected");
+            ((HttpServletResponse) asyncContext.getResponse()).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            asyncContext.complete();
+        }
+    }
+
+    /**
+     * Appends the webhook callback to the journal on the executor, so the container thread does not wait for the journal sync.
+     */
+    protected void handleCallbackJournaled(final byte[] payload, final String signature, final AsyncContext asyncContext) {
+        try {
+            getExecutorService().execute(getTracer().wrap(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        handleCallbackJournaled(payload, signature, (HttpServletResponse) asyncContext.getResponse());
+                    } finally {
+                        asyncContext.complete();
+                    }
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            logger.warning("Webhook queue is full; webhook rejected");
+            ((HttpServletResponse) asyncContext.getResponse()).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            asyncContext.complete();
+        }
+    }
+
+    private class WebhookReadListener implements ReadListener {
+
+        private final AsyncContext asyncContext;
+        private final ServletInputStream input;
+        private final String signature;
+        private byte[] body;
+        private int length;
+        private boolean rejected;
+
+        WebhookReadListener(AsyncContext asyncContext, ServletInputStream input, int contentLength, String signature) {
+            this.asyncContext = asyncContext;
+            this.input = input;
+            this.signature = signature;
+            // only trust the content length for pre-sizing up to the max buffer size
+            this.body = new byte[contentLength >= 0 && contentLength <= MAX_PRESIZED_BUFFER_SIZE ? contentLength : BUFFER_SIZE];
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            while (!rejected && input.isReady()) {
+                if (length > getMaxRequestBodySize()) {
+                    reject();
+                    return;
+                }
+                if (length == body.length) {
+                    // only grow the buffer when the body turns out to be larger than expected
+                    int next = input.read();
+                    if (next == -1) {
+                        return;
+                    }
+                    // grow up to one byte past the maximum so an exactly maximum sized body is accepted
+                    body = Arrays.copyOf(body, (int) Math.min(Math.max(body.length * 2L, BUFFER_SIZE), getMaxRequestBodySize() + 1L));
+                    body[length++] = (byte) next;
+                    continue;
+                }
+                int read = input.read(body, length, body.length - length);
+                if (read == -1) {
+                    return;
+                }
+                length += read;
+            }
+        }
+
+        @Override
+        public void onAllDataRead() throws IOException {
+            if (rejected) {
+                return;
+            }
+            if (length > getMaxRequestBodySize()) {
+                reject();
+                return;
+            }
+            MessengerMetrics metrics = getMetrics();
+            if (metrics != null) {
+                metrics.webhookReceived(length);
+            }
+            handleCallback(length == body.length ? body : Arrays.copyOf(body, length), signature, asyncContext);
+        }
+
+        private void reject() {
+            rejected = true;
+            logger.warning(format("Webhook rejected: request body exceeds the maximum size of %d bytes", getMaxRequestBodySize()));
+            ((HttpServletResponse) asyncContext.getResponse()).setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            asyncContext.complete();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            logger.severe(format("Exception reading webhook: %s", t.getMessage()));
+            ((HttpServletResponse) asyncContext.getResponse()).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            asyncContext.complete();
+        }
+    }
+}
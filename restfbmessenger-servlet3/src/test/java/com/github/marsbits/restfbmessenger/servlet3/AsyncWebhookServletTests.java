@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.servlet3;
+
+import com.github.marsbits.restfbmessenger.DefaultMessenger;
+import com.github.marsbits.restfbmessenger.tracing.NoopMessengerTracer;
+import com.github.marsbits.restfbmessenger.webhook.WebhookServlet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static com.github.marsbits.restfbmessenger.Messenger.HUB_SIGNATURE_HEADER_NAME;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link AsyncWebhookServlet}.
+ *
+ * @author Marcel Overdijk
+ */
+public class AsyncWebhookServletTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AsyncWebhookServlet servlet;
+
+    private DefaultMessenger messenger;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private AsyncContext asyncContext;
+    private ServletConfig servletConfig;
+
+    @Before
+    public void setUp() throws Exception {
+        this.messenger = mock(DefaultMessenger.class);
+        when(messenger.getTracer()).thenReturn(NoopMessengerTracer.INSTANCE);
+        this.request = mock(HttpServletRequest.class);
+        this.response = mock(HttpServletResponse.class);
+        this.asyncContext = mock(AsyncContext.class);
+        this.servletConfig = mock(ServletConfig.class);
+        when(request.startAsync()).thenReturn(asyncContext);
+        when(request.getInputStream()).thenReturn(new StubServletInputStream("the-payload"));
+        when(request.getContentLength()).thenReturn("the-payload".length());
+        when(request.getHeader(HUB_SIGNATURE_HEADER_NAME)).thenReturn("the-signature");
+        when(asyncContext.getResponse()).thenReturn(response);
+    }
+
+    @After
+    public void tearDown() {
+        if (servlet != null) {
+            servlet.destroy();
+        }
+    }
+
+    @Test
+    public void testPostHandleWebhookAndCompletesAfterCallback() throws Exception {
+        servlet = new AsyncWebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(request).startAsync();
+        verify(messenger, timeout(1000)).handleCallback(bytes("the-payload"), "the-signature");
+        verify(asyncContext, timeout(1000)).complete();
+    }
+
+    @Test
+    public void testPostHandleWebhookWithoutContentLength() throws Exception {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            payload.append("the-payload-").append(i).append('\n');
+        }
+        when(request.getInputStream()).thenReturn(new StubServletInputStream(payload.toString()));
+        when(request.getContentLength()).thenReturn(-1);
+        servlet = new AsyncWebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(messenger, timeout(1000)).handleCallback(bytes(payload.toString()), "the-signature");
+    }
+
+    @Test
+    public void testPostWithContentLengthAboveMaxRequestBodySizeReturnsRequestEntityTooLarge() throws Exception {
+        when(servletConfig.getInitParameter(WebhookServlet.MAX_REQUEST_BODY_SIZE_PARAM_NAME)).thenReturn("10");
+        servlet = new AsyncWebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(response).setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        verify(request, never()).startAsync();
+    }
+
+    @Test
+    public void testPostWithoutContentLengthAboveMaxRequestBodySizeReturnsRequestEntityTooLarge() throws Exception {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            payload.append("the-payload-").append(i).append('\n');
+        }
+        when(request.getInputStream()).thenReturn(new StubServletInputStream(payload.toString()));
+        when(request.getContentLength()).thenReturn(-1);
+        when(servletConfig.getInitParameter(WebhookServlet.MAX_REQUEST_BODY_SIZE_PARAM_NAME)).thenReturn("5000");
+        servlet = new AsyncWebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(response).setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        verify(asyncContext).complete();
+        verify(messenger, never()).handleCallback(any(byte[].class), anyString());
+    }
+
+    @Test
+    public void testPostHandleWebhookFailureCompletesWithInternalServerError() throws Exception {
+        doThrow(new IllegalStateException("failure")).when(messenger).handleCallback(bytes("the-payload"), "the-signature");
+        servlet = new AsyncWebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(response, timeout(1000)).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        verify(asyncContext, timeout(1000)).complete();
+    }
+
+    @Test
+    public void testPostAsyncCompletesAfterEnqueue() throws Exception {
+        when(servletConfig.getInitParameter(WebhookServlet.ASYNC_PARAM_NAME)).thenReturn("true");
+        when(messenger.verifySignature(bytes("the-payload"), "the-signature")).thenReturn(true);
+        servlet = new AsyncWebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(asyncContext).complete();
+        verify(messenger, timeout(1000)).handleVerifiedCallback(bytes("the-payload"));
+    }
+
+    @Test
+    public void testPostAsyncWithInvalidSignatureIsNotHandled() throws Exception {
+        when(servletConfig.getInitParameter(WebhookServlet.ASYNC_PARAM_NAME)).thenReturn("true");
+        when(messenger.verifySignature(bytes("the-payload"), "the-signature")).thenReturn(false);
+        servlet = new AsyncWebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(asyncContext).complete();
+        verify(messenger, never()).handleCallback(any(byte[].class), anyString());
+    }
+
+    @Test
+    public void testPostJournaledCompletesAfterJournaling() throws Exception {
+        when(servletConfig.getInitParameter(WebhookServlet.JOURNAL_DIRECTORY_PARAM_NAME))
+                .thenReturn(folder.newFolder("journal").getAbsolutePath());
+        when(messenger.verifySignature(bytes("the-payload"), "the-signature")).thenReturn(true);
+        servlet = new AsyncWebhookServlet(messenger);
+        servlet.init(servletConfig);
+        servlet.doPost(request, response);
+        verify(asyncContext, timeout(1000)).complete();
+        verify(messenger, timeout(1000)).handleCallback(bytes("the-payload"), "the-signature");
+    }
+
+    private static byte[] bytes(String payload) throws IOException {
+        return payload.getBytes("UTF-8");
+    }
+
+    private static class StubServletInputStream extends ServletInputStream {
+
+        private final ByteArrayInputStream input;
+
+        StubServletInputStream(String body) throws IOException {
+            this.input = new ByteArrayInputStream(bytes(body));
+        }
+
+        @Override
+        public boolean isFinished() {
+            return input.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            try {
+                readListener.onDataAvailable();
+                readListener.onAllDataRead();
+            } catch (IOException e) {
+                readListener.onError(e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            return input.read();
+        }
+    }
+}
@@ -18,12 +18,23 @@ package com.github.marsbits.restfbmessenger.spring.boot.autoconfigure;
 
 import com.github.marsbits.restfbmessenger.DefaultMessenger;
 import com.github.marsbits.restfbmessenger.Messenger;
+import com.github.marsbits.restfbmessenger.client.HttpClientWebRequestor;
+import com.github.marsbits.restfbmessenger.metrics.MessengerMetrics;
+import com.github.marsbits.restfbmessenger.servlet3.AsyncWebhookServlet;
+import com.github.marsbits.restfbmessenger.spring.boot.metrics.MicrometerMessengerMetrics;
+import com.github.marsbits.restfbmessenger.tracing.MessengerTracer;
 import com.github.marsbits.restfbmessenger.webhook.CallbackHandler;
 import com.github.marsbits.restfbmessenger.webhook.WebhookServlet;
 import com.restfb.Version;
+import com.restfb.WebRequestor;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
@@ -32,6 +43,8 @@ import org.springframework.boot.web.servlet.ServletRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * {@link EnableAutoConfiguration Auto-configuration} for Messenger.
  *
@@ -41,6 +54,7 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 @ConditionalOnProperty(prefix = "restfbmessenger", name = "enabled", matchIfMissing = true)
 @EnableConfigurationProperties(MessengerProperties.class)
+@AutoConfigureAfter(name = "io.micrometer.spring.autoconfigure.MetricsAutoConfiguration")
 public class MessengerAutoConfiguration {
 
     @Configuration
@@ -50,14 +64,72 @@ public class MessengerAutoConfiguration {
         @Autowired(required = false)
         private CallbackHandler callbackHandler;
 
+        @Autowired(required = false)
+        private WebRequestor webRequestor;
+
+        @Autowired(required = false)
+        private MessengerMetrics metrics;
+
+        @Autowired(required = false)
+        private MessengerTracer tracer;
+
         @Autowired
         private MessengerProperties properties;
 
         @Bean
         public Messenger messenger() {
-            return new DefaultMessenger(properties.getVerifyToken(), properties.getAccessToken(),
-                    properties.getAppSecret(), callbackHandler,
-                    Version.getVersionFromString(properties.getApiVersion()));
+            Version apiVersion = Version.getVersionFromString(properties.getApiVersion());
+            DefaultMessenger messenger;
+            if (webRequestor != null) {
+                messenger = new DefaultMessenger(properties.getVerifyToken(), properties.getAccessToken(),
+                        properties.getAppSecret(), callbackHandler, apiVersion, webRequestor);
+            } else {
+                messenger = new DefaultMessenger(properties.getVerifyToken(), properties.getAccessToken(),
+                        properties.getAppSecret(), callbackHandler, apiVersion);
+            }
+            if (metrics != null) {
+                messenger.setMetrics(metrics);
+            }
+            if (tracer != null) {
+                messenger.setTracer(tracer);
+            }
+            return messenger;
+        }
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    @ConditionalOnBean(type = "io.micrometer.core.instrument.MeterRegistry")
+    @ConditionalOnMissingBean(MessengerMetrics.class)
+    @ConditionalOnProperty(prefix = "restfbmessenger.metrics", name = "enabled", matchIfMissing = true)
+    protected static class MetricsConfiguration {
+
+        @Bean
+        public MessengerMetrics messengerMetrics(MeterRegistry meterRegistry) {
+            return new MicrometerMessengerMetrics(meterRegistry);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "org.apache.http.impl.client.CloseableHttpClient")
+    @ConditionalOnMissingBean({Messenger.class, WebRequestor.class})
+    @ConditionalOnProperty(prefix = "restfbmessenger.http", name = "pooled")
+    protected static class HttpClientConfiguration {
+
+        @Autowired
+        private MessengerProperties properties;
+
+        @Bean(destroyMethod = "close")
+        public HttpClientWebRequestor webRequestor() {
+            MessengerProperties.Http http = properties.getHttp();
+            return HttpClientWebRequestor.builder()
+                    .maxConnections(http.getMaxConnections())
+                    .maxConnectionsPerRoute(http.getMaxConnectionsPerRoute())
+                    .connectTimeout(http.getConnectTimeout(), TimeUnit.MILLISECONDS)
+                    .readTimeout(http.getReadTimeout(), TimeUnit.MILLISECONDS)
+                    .connectionRequestTimeout(http.getConnectionRequestTimeout(), TimeUnit.MILLISECONDS)
+                    .keepAlive(http.getKeepAlive(), TimeUnit.MILLISECONDS)
+                    .build();
         }
     }
 
@@ -75,8 +147,25 @@ public class MessengerAutoConfiguration {
         public ServletRegistrationBean webhookServlet(Messenger messenger) {
             String path = properties.getWebhook().getPath();
             String urlMapping = (path.endsWith("/") ? path + "*" : path + "/*");
-            WebhookServlet servlet = new WebhookServlet(messenger);
-            return new ServletRegistrationBean(servlet, urlMapping);
+            WebhookServlet servlet = properties.getWebhook().isNonBlocking()
+                    ? new AsyncWebhookServlet(messenger) : new WebhookServlet(messenger);
+            ServletRegistrationBean registration = new ServletRegistrationBean(servlet, urlMapping);
+            registration.setAsyncSupported(true);
+            MessengerProperties.Async async = properties.getWebhook().getAsync();
+            if (async.isEnabled()) {
+                registration.addInitParameter(WebhookServlet.ASYNC_PARAM_NAME, "true");
+                registration.addInitParameter(WebhookServlet.ASYNC_POOL_SIZE_PARAM_NAME, String.valueOf(async.getPoolSize()));
+                registration.addInitParameter(WebhookServlet.ASYNC_QUEUE_CAPACITY_PARAM_NAME,
+                        String.valueOf(async.getQueueCapacity()));
+                registration.addInitParameter(WebhookServlet.ASYNC_REJECTION_POLICY_PARAM_NAME, async.getRejectionPolicy().name());
+            }
+            MessengerProperties.Journal journal = properties.getWebhook().getJournal();
+            if (journal.getDirectory() != null) {
+                registration.addInitParameter(WebhookServlet.JOURNAL_DIRECTORY_PARAM_NAME, journal.getDirectory());
+                registration.addInitParameter(WebhookServlet.JOURNAL_RETENTION_SIZE_PARAM_NAME, String.valueOf(journal.getRetentionSize()));
+                registration.addInitParameter(WebhookServlet.JOURNAL_MAX_ATTEMPTS_PARAM_NAME, String.valueOf(journal.getMaxAttempts()));
+            }
+            return registration;
         }
     }
 }
@@ -17,6 +17,10 @@
 package com.github.marsbits.restfbmessenger.spring.boot.autoconfigure;
 
 import com.github.marsbits.restfbmessenger.DefaultMessenger;
+import com.github.marsbits.restfbmessenger.client.HttpClientWebRequestor;
+import com.github.marsbits.restfbmessenger.webhook.WebhookJournal;
+import com.github.marsbits.restfbmessenger.webhook.WebhookServlet;
+import com.github.marsbits.restfbmessenger.webhook.WebhookServlet.AsyncRejectionPolicy;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
@@ -61,6 +65,10 @@ public class MessengerProperties {
     @Valid
     private Webhook webhook = new Webhook();
 
+    private Http http = new Http();
+
+    private Metrics metrics = new Metrics();
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -109,6 +117,22 @@ public class MessengerProperties {
         this.webhook = webhook;
     }
 
+    public Http getHttp() {
+        return http;
+    }
+
+    public void setHttp(Http http) {
+        this.http = http;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
     public static class Webhook {
 
         /**
@@ -123,6 +147,15 @@ public class MessengerProperties {
         @Pattern(regexp = "/[^?#]*", message = "Path must start with /")
         private String path = "/webhook";
 
+        /**
+         * Use the Servlet 3.1 non-blocking webhook servlet.
+         */
+        private boolean nonBlocking = false;
+
+        private Async async = new Async();
+
+        private Journal journal = new Journal();
+
         public boolean isEnabled() {
             return enabled;
         }
@@ -138,5 +171,236 @@ public class MessengerProperties {
         public void setPath(String path) {
             this.path = path;
         }
+
+        public boolean isNonBlocking() {
+            return nonBlocking;
+        }
+
+        public void setNonBlocking(boolean nonBlocking) {
+            this.nonBlocking = nonBlocking;
+        }
+
+        public Async getAsync() {
+            return async;
+        }
+
+        public void setAsync(Async async) {
+            this.async = async;
+        }
+
+        public Journal getJournal() {
+            return journal;
+        }
+
+        public void setJournal(Journal journal) {
+            this.journal = journal;
+        }
+    }
+
+    public static class Async {
+
+        /**
+         * Acknowledge webhooks immediately and handle the callbacks on a bounded executor.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The number of threads handling webhook callbacks.
+         */
+        private int poolSize = WebhookServlet.DEFAULT_ASYNC_POOL_SIZE;
+
+        /**
+         * The maximum number of webhook callbacks waiting to be handled.
+         */
+        private int queueCapacity = WebhookServlet.DEFAULT_ASYNC_QUEUE_CAPACITY;
+
+        /**
+         * The policy applied when the queue is full.
+         */
+        private AsyncRejectionPolicy rejectionPolicy = WebhookServlet.DEFAULT_ASYNC_REJECTION_POLICY;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public AsyncRejectionPolicy getRejectionPolicy() {
+            return rejectionPolicy;
+        }
+
+        public void setRejectionPolicy(AsyncRejectionPolicy rejectionPolicy) {
+            this.rejectionPolicy = rejectionPolicy;
+        }
+    }
+
+    public static class Journal {
+
+        /**
+         * The directory to journal verified webhook payloads in before acknowledging them; journaling is disabled when not set.
+         */
+        private String directory;
+
+        /**
+         * The minimum number of bytes of handled webhook payloads to retain for replaying.
+         */
+        private long retentionSize = 0;
+
+        /**
+         * The maximum number of attempts to handle a journaled webhook payload before giving up on it.
+         */
+        private int maxAttempts = WebhookJournal.DEFAULT_MAX_ATTEMPTS;
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public long getRetentionSize() {
+            return retentionSize;
+        }
+
+        public void setRetentionSize(long retentionSize) {
+            this.retentionSize = retentionSize;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+    }
+
+    public static class Http {
+
+        /**
+         * Perform the Graph API requests with a pooled keep-alive Apache HttpClient, requires httpclient on the classpath.
+         */
+        private boolean pooled = false;
+
+        /**
+         * The maximum number of pooled connections.
+         */
+        private int maxConnections = HttpClientWebRequestor.DEFAULT_MAX_CONNECTIONS;
+
+        /**
+         * The maximum number of pooled connections per route.
+         */
+        private int maxConnectionsPerRoute = HttpClientWebRequestor.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+        /**
+         * The connect timeout in milliseconds.
+         */
+        private long connectTimeout = HttpClientWebRequestor.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+
+        /**
+         * The read timeout in milliseconds.
+         */
+        private long readTimeout = HttpClientWebRequestor.DEFAULT_READ_TIMEOUT_MILLIS;
+
+        /**
+         * The maximum time in milliseconds to wait for a pooled connection.
+         */
+        private long connectionRequestTimeout = HttpClientWebRequestor.DEFAULT_CONNECTION_REQUEST_TIMEOUT_MILLIS;
+
+        /**
+         * The maximum time in milliseconds an idle connection is kept alive.
+         */
+        private long keepAlive = HttpClientWebRequestor.DEFAULT_KEEP_ALIVE_MILLIS;
+
+        public boolean isPooled() {
+            return pooled;
+        }
+
+        public void setPooled(boolean pooled) {
+            this.pooled = pooled;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public int getMaxConnectionsPerRoute() {
+            return maxConnectionsPerRoute;
+        }
+
+        public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        }
+
+        public long getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(long connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public long getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(long readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+
+        public long getConnectionRequestTimeout() {
+            return connectionRequestTimeout;
+        }
+
+        public void setConnectionRequestTimeout(long connectionRequestTimeout) {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+        }
+
+        public long getKeepAlive() {
+            return keepAlive;
+        }
+
+        public void setKeepAlive(long keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    public static class Metrics {
+
+        /**
+         * Record the webhook and Send API metrics to the Micrometer meter registry, requires micrometer-core on the classpath.
+         */
+        private boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
     }
 }
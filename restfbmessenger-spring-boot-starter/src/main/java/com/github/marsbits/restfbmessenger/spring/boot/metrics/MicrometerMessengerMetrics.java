@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.spring.boot.metrics;
+
+import com.github.marsbits.restfbmessenger.metrics.MessengerMetrics;
+import com.github.marsbits.restfbmessenger.webhook.MessagingEventType;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToDoubleFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link MessengerMetrics} implementation recording the metrics to a Micrometer {@link MeterRegistry}.
+ * <p>
+ * The following meters are registered:
+ * <ul>
+ * <li>{@code messenger.webhook.payload.size}: distribution summary of the received webhook payload sizes in bytes, its count is the
+ * number of received webhooks</li>
+ * <li>{@code messenger.webhook.signature.failures}: counter of the webhooks with an invalid signature</li>
+ * <li>{@code messenger.webhook.parse}: timer of the webhook payload parsing</li>
+ * <li>{@code messenger.dispatch}: timer of the messaging item dispatch, tagged with {@code type}, {@code standby} and {@code outcome}</li>
+ * <li>{@code messenger.send}: timer of the Send API requests, tagged with {@code operation} and {@code error}</li>
+ * <li>{@code messenger.queue.depth}: gauge of the queue depths, tagged with {@code queue}; registering a queue again replaces its
+ * gauge</li>
+ * </ul>
+ * The distribution summary and timers publish the 50th, 95th and 99th percentiles and a percentile histogram, unless configured
+ * otherwise by a {@link MeterFilter} registered after this instance is created.
+ *
+ * @author Marcel Overdijk
+ * @since 2.3.0
+ */
+public class MicrometerMessengerMetrics implements MessengerMetrics {
+
+    public static final String METER_NAME_PREFIX = "messenger.";
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private static final String NO_ERROR = "none";
+
+    private final MeterRegistry registry;
+
+    private final DistributionSummary webhookPayloadSize;
+    private final Counter webhookSignatureFailures;
+    private final Timer webhookParse;
+
+    // indexed by event type, standby and outcome, so dispatching does not allocate a key
+    private final AtomicReferenceArray<Timer> dispatchTimers = new AtomicReferenceArray<>(MessagingEventType.values().length * 4);
+    private final ConcurrentMap<String, ConcurrentMap<String, Timer>> sendTimers = new ConcurrentHashMap<>();
+
+    // gauges only hold a weak reference to the observed object, which refers to the last gauge registered per queue
+    private final ConcurrentMap<String, AtomicReference<QueueDepth>> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a {@code MicrometerMessengerMetrics} instance.
+     *
+     * @param registry the meter registry, not null
+     */
+    public MicrometerMessengerMetrics(MeterRegistry registry) {
+        this.registry = requireNonNull(registry, "'registry' must not be null");
+        registry.config().meterFilter(new PercentilesMeterFilter());
+        this.webhookPayloadSize = registry.summary(METER_NAME_PREFIX + "webhook.payload.size");
+        this.webhookSignatureFailures = registry.counter(METER_NAME_PREFIX + "webhook.signature.failures");
+        this.webhookParse = registry.timer(METER_NAME_PREFIX + "webhook.parse");
+    }
+
+    @Override
+    public void webhookReceived(int payloadSize) {
+        webhookPayloadSize.record(payloadSize);
+    }
+
+    @Override
+    public void webhookSignatureFailed() {
+        webhookSignatureFailures.increment();
+    }
+
+    @Override
+    public void webhookParsed(long durationNanos) {
+        webhookParse.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void messagingItemDispatched(MessagingEventType eventType, boolean standby, long durationNanos, Throwable failure) {
+        int index = eventType.ordinal() * 4 + (standby ? 2 : 0) + (failure != null ? 1 : 0);
+        Timer timer = dispatchTimers.get(index);
+        if (timer == null) {
+            timer = registry.timer(METER_NAME_PREFIX + "dispatch",
+                    "type", eventType.name().toLowerCase(),
+                    "standby", String.valueOf(standby),
+                    "outcome", failure != null ? "failure" : "success");
+            dispatchTimers.set(index, timer);
+        }
+        timer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void sendCompleted(String operation, String errorCode, long durationNanos) {
+        String error = errorCode != null ? errorCode : NO_ERROR;
+        ConcurrentMap<String, Timer> timers = sendTimers.get(operation);
+        if (timers == null) {
+            ConcurrentMap<String, Timer> existing = sendTimers.putIfAbsent(operation, timers = new ConcurrentHashMap<>());
+            if (existing != null) {
+                timers = existing;
+            }
+        }
+        Timer timer = timers.get(error);
+        if (timer == null) {
+            // the registry returns the already registered timer for the same name and tags
+            timer = registry.timer(METER_NAME_PREFIX + "send", "operation", operation, "error", error);
+            timers.put(error, timer);
+        }
+        timer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void registerQueue(String name, QueueDepth gauge) {
+        requireNonNull(name, "'name' must not be null");
+        requireNonNull(gauge, "'gauge' must not be null");
+        AtomicReference<QueueDepth> queue = queues.get(name);
+        if (queue == null) {
+            AtomicReference<QueueDepth> existing = queues.putIfAbsent(name, queue = new AtomicReference<>(gauge));
+            if (existing == null) {
+                // the registry ignores registering the same name and tags again, so the gauge is registered once per queue
+                registry.gauge(METER_NAME_PREFIX + "queue.depth", Tags.of("queue", name), queue,
+                        new ToDoubleFunction<AtomicReference<QueueDepth>>() {
+
+                            @Override
+                            public double applyAsDouble(AtomicReference<QueueDepth> queue) {
+                                return queue.get().get();
+                            }
+                        });
+                return;
+            }
+            queue = existing;
+        }
+        queue.set(gauge);
+    }
+
+    private static class PercentilesMeterFilter implements MeterFilter {
+
+        @Override
+        public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+            if (!id.getName().startsWith(METER_NAME_PREFIX) || id.getType() == Meter.Type.GAUGE || id.getType() == Meter.Type.COUNTER) {
+                return config;
+            }
+            return DistributionStatisticConfig.builder()
+                    .percentiles(PERCENTILES)
+                    .percentilesHistogram(true)
+                    .build()
+                    .merge(config);
+        }
+    }
+}
@@ -18,11 +18,22 @@ package com.github.marsbits.restfbmessenger.spring.boot.autoconfigure;
 
 import com.github.marsbits.restfbmessenger.DefaultMessenger;
 import com.github.marsbits.restfbmessenger.Messenger;
+import com.github.marsbits.restfbmessenger.client.HttpClientWebRequestor;
+import com.github.marsbits.restfbmessenger.metrics.MessengerMetrics;
+import com.github.marsbits.restfbmessenger.servlet3.AsyncWebhookServlet;
+import com.github.marsbits.restfbmessenger.spring.boot.metrics.MicrometerMessengerMetrics;
+import com.github.marsbits.restfbmessenger.tracing.MessengerSpan;
+import com.github.marsbits.restfbmessenger.tracing.MessengerTracer;
+import com.github.marsbits.restfbmessenger.tracing.NoopMessengerTracer;
 import com.github.marsbits.restfbmessenger.webhook.AbstractCallbackHandler;
 import com.github.marsbits.restfbmessenger.webhook.CallbackHandler;
+import com.github.marsbits.restfbmessenger.webhook.WebhookServlet;
 import com.restfb.DefaultFacebookClient;
 import com.restfb.FacebookClient;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.boot.test.util.EnvironmentTestUtils;
@@ -33,8 +44,10 @@ import org.springframework.util.ReflectionUtils;
 import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
 
 import java.lang.reflect.Field;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -144,6 +157,150 @@ public class MessengerAutoConfigurationTests {
                 hasItem("/my-webhook/*"));
     }
 
+    @Test
+    public void testWebhookNonBlocking() {
+        load(new Class[] {CallbackHandlerConfig.class, MessengerAutoConfiguration.class},
+                "restfbmessenger.verify-token: the_verify_token",
+                "restfbmessenger.access-token: the_access_token",
+                "restfbmessenger.app-secret: the_app_secret",
+                "restfbmessenger.webhook.non-blocking: true");
+
+        ServletRegistrationBean registration = this.context.getBean(ServletRegistrationBean.class);
+        assertThat(getFieldValue(registration, "servlet"), is(instanceOf(AsyncWebhookServlet.class)));
+        assertThat(registration.isAsyncSupported(), is(true));
+    }
+
+    @Test
+    public void testWebhookAsync() {
+        load(new Class[] {CallbackHandlerConfig.class, MessengerAutoConfiguration.class},
+                "restfbmessenger.verify-token: the_verify_token",
+                "restfbmessenger.access-token: the_access_token",
+                "restfbmessenger.app-secret: the_app_secret",
+                "restfbmessenger.webhook.async.enabled: true",
+                "restfbmessenger.webhook.async.pool-size: 4",
+                "restfbmessenger.webhook.async.queue-capacity: 50",
+                "restfbmessenger.webhook.async.rejection-policy: caller_runs");
+
+        Map<String, String> initParameters =
+                this.context.getBean(ServletRegistrationBean.class).getInitParameters();
+        assertThat(initParameters.get(WebhookServlet.ASYNC_PARAM_NAME), is("true"));
+        assertThat(initParameters.get(WebhookServlet.ASYNC_POOL_SIZE_PARAM_NAME), is("4"));
+        assertThat(initParameters.get(WebhookServlet.ASYNC_QUEUE_CAPACITY_PARAM_NAME), is("50"));
+        assertThat(initParameters.get(WebhookServlet.ASYNC_REJECTION_POLICY_PARAM_NAME),
+                is("CALLER_RUNS"));
+    }
+
+    @Test
+    public void testWebhookAsyncDisabledByDefault() {
+        load(new Class[] {CallbackHandlerConfig.class, MessengerAutoConfiguration.class},
+                "restfbmessenger.verify-token: the_verify_token",
+                "restfbmessenger.access-token: the_access_token",
+                "restfbmessenger.app-secret: the_app_secret");
+
+        assertThat(this.context.getBean(ServletRegistrationBean.class).getInitParameters()
+                .containsKey(WebhookServlet.ASYNC_PARAM_NAME), is(false));
+    }
+
+    @Test
+    public void testWebhookJournal() {
+        load(new Class[] {CallbackHandlerConfig.class, MessengerAutoConfiguration.class},
+                "restfbmessenger.verify-token: the_verify_token",
+                "restfbmessenger.access-token: the_access_token",
+                "restfbmessenger.app-secret: the_app_secret",
+                "restfbmessenger.webhook.journal.directory: /var/lib/bot/inbound",
+                "restfbmessenger.webhook.journal.retention-size: 1048576",
+                "restfbmessenger.webhook.journal.max-attempts: 3");
+
+        Map<String, String> initParameters =
+                this.context.getBean(ServletRegistrationBean.class).getInitParameters();
+        assertThat(initParameters.get(WebhookServlet.JOURNAL_DIRECTORY_PARAM_NAME), is("/var/lib/bot/inbound"));
+        assertThat(initParameters.get(WebhookServlet.JOURNAL_RETENTION_SIZE_PARAM_NAME), is("1048576"));
+        assertThat(initParameters.get(WebhookServlet.JOURNAL_MAX_ATTEMPTS_PARAM_NAME), is("3"));
+    }
+
+    @Test
+    public void testHttpPooled() {
+        load(new Class[] {CallbackHandlerConfig.class, MessengerAutoConfiguration.class},
+                "restfbmessenger.verify-token: the_verify_token",
+                "restfbmessenger.access-token: the_access_token",
+                "restfbmessenger.app-secret: the_app_secret",
+                "restfbmessenger.http.pooled: true",
+                "restfbmessenger.http.max-connections: 20");
+
+        DefaultMessenger defaultMessenger = (DefaultMessenger) this.context.getBean(Messenger.class);
+        FacebookClient facebookClient =
+                (FacebookClient) getFieldValue(defaultMessenger, "facebookClient");
+        HttpClientWebRequestor webRequestor = this.context.getBean(HttpClientWebRequestor.class);
+
+        assertThat(getFieldValue(facebookClient, "webRequestor"), is((Object) webRequestor));
+        assertThat((String) getFieldValue(facebookClient, "accessToken"), is("the_access_token"));
+    }
+
+    @Test
+    public void testHttpNotPooledByDefault() {
+        load(new Class[] {CallbackHandlerConfig.class, MessengerAutoConfiguration.class},
+                "restfbmessenger.verify-token: the_verify_token",
+                "restfbmessenger.access-token: the_access_token",
+                "restfbmessenger.app-secret: the_app_secret");
+
+        assertThat(this.context.getBeansOfType(HttpClientWebRequestor.class).size(), is(0));
+    }
+
+    @Test
+    public void testMetrics() {
+        load(new Class[] {CallbackHandlerConfig.class, MeterRegistryConfig.class, MessengerAutoConfiguration.class},
+                "restfbmessenger.verify-token: the_verify_token",
+                "restfbmessenger.access-token: the_access_token",
+                "restfbmessenger.app-secret: the_app_secret");
+
+        DefaultMessenger defaultMessenger = (DefaultMessenger) this.context.getBean(Messenger.class);
+        MessengerMetrics metrics = this.context.getBean(MessengerMetrics.class);
+
+        assertThat(metrics, is(instanceOf(MicrometerMessengerMetrics.class)));
+        assertThat(defaultMessenger.getMetrics(), is(metrics));
+        assertThat(((AbstractCallbackHandler) this.context.getBean(CallbackHandler.class)).getMetrics(), is(metrics));
+    }
+
+    @Test
+    public void testMetricsDisabled() {
+        load(new Class[] {CallbackHandlerConfig.class, MeterRegistryConfig.class, MessengerAutoConfiguration.class},
+                "restfbmessenger.verify-token: the_verify_token",
+                "restfbmessenger.access-token: the_access_token",
+                "restfbmessenger.app-secret: the_app_secret",
+                "restfbmessenger.metrics.enabled: false");
+
+        DefaultMessenger defaultMessenger = (DefaultMessenger) this.context.getBean(Messenger.class);
+
+        assertThat(this.context.getBeansOfType(MessengerMetrics.class).size(), is(0));
+        assertThat(defaultMessenger.getMetrics(), is(nullValue()));
+    }
+
+    @Test
+    public void testTracer() {
+        load(new Class[] {CallbackHandlerConfig.class, TracerConfig.class, MessengerAutoConfiguration.class},
+                "restfbmessenger.verify-token: the_verify_token",
+                "restfbmessenger.access-token: the_access_token",
+                "restfbmessenger.app-secret: the_app_secret");
+
+        DefaultMessenger defaultMessenger = (DefaultMessenger) this.context.getBean(Messenger.class);
+        MessengerTracer tracer = this.context.getBean(MessengerTracer.class);
+
+        assertThat(defaultMessenger.getTracer(), is(tracer));
+        assertThat(((AbstractCallbackHandler) this.context.getBean(CallbackHandler.class)).getTracer(), is(tracer));
+    }
+
+    @Test
+    public void testNoTracer() {
+        load(new Class[] {CallbackHandlerConfig.class, MessengerAutoConfiguration.class},
+                "restfbmessenger.verify-token: the_verify_token",
+                "restfbmessenger.access-token: the_access_token",
+                "restfbmessenger.app-secret: the_app_secret");
+
+        DefaultMessenger defaultMessenger = (DefaultMessenger) this.context.getBean(Messenger.class);
+
+        assertThat(defaultMessenger.getTracer(), is((MessengerTracer) NoopMessengerTracer.INSTANCE));
+    }
+
     private void load(Class<?>[] configs, String... environment) {
         this.context.register(configs);
         EnvironmentTestUtils.addEnvironment(this.context, environment);
@@ -161,6 +318,35 @@ public class MessengerAutoConfigurationTests {
         }
     }
 
+    @Configuration
+    protected static class MeterRegistryConfig {
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Configuration
+    protected static class TracerConfig {
+
+        @Bean
+        public MessengerTracer messengerTracer() {
+            return new MessengerTracer() {
+
+                @Override
+                public MessengerSpan startSpan(String name) {
+                    return NoopMessengerTracer.INSTANCE.startSpan(name);
+                }
+
+                @Override
+                public Runnable wrap(Runnable task) {
+                    return task;
+                }
+            };
+        }
+    }
+
     private Object getFieldValue(Object object, String name) {
         Field field = ReflectionUtils.findField(object.getClass(), name);
         ReflectionUtils.makeAccessible(field);
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.marsbits.restfbmessenger.spring.boot.metrics;
+
+import com.github.marsbits.restfbmessenger.metrics.MessengerMetrics;
+import com.github.marsbits.restfbmessenger.webhook.MessagingEventType;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link MicrometerMessengerMetrics}.
+ *
+ * @author Marcel Overdijk
+ */
+public class MicrometerMessengerMetricsTests {
+
+    private SimpleMeterRegistry registry;
+    private MicrometerMessengerMetrics metrics;
+
+    @Before
+    public void setUp() {
+        this.registry = new SimpleMeterRegistry();
+        this.metrics = new MicrometerMessengerMetrics(registry);
+    }
+
+    @Test
+    public void testWebhookMetrics() {
+        metrics.webhookReceived(100);
+        metrics.webhookReceived(300);
+        metrics.webhookSignatureFailed();
+        metrics.webhookParsed(TimeUnit.MILLISECONDS.toNanos(2));
+        assertThat(registry.get("messenger.webhook.payload.size").summary().count(), is(2L));
+        assertThat(registry.get("messenger.webhook.payload.size").summary().totalAmount(), is(400.0));
+        assertThat(registry.get("messenger.webhook.signature.failures").counter().count(), is(1.0));
+        assertThat(registry.get("messenger.webhook.parse").timer().totalTime(TimeUnit.MILLISECONDS), is(2.0));
+    }
+
+    @Test
+    public void testDispatchMetrics() {
+        metrics.messagingItemDispatched(MessagingEventType.MESSAGE, false, 1000, null);
+        metrics.messagingItemDispatched(MessagingEventType.MESSAGE, false, 1000, null);
+        metrics.messagingItemDispatched(MessagingEventType.MESSAGE, false, 1000, new IllegalStateException());
+        metrics.messagingItemDispatched(MessagingEventType.MESSAGE, true, 1000, null);
+        assertThat(dispatchTimer("message", "false", "success").count(), is(2L));
+        assertThat(dispatchTimer("message", "false", "failure").count(), is(1L));
+        assertThat(dispatchTimer("message", "true", "success").count(), is(1L));
+    }
+
+    @Test
+    public void testSendMetrics() {
+        metrics.sendCompleted("message", null, 1000);
+        metrics.sendCompleted("message", "613", 1000);
+        metrics.sendCompleted("message", "613", 1000);
+        Timer timer = registry.get("messenger.send").tag("operation", "message").tag("error", "613").timer();
+        assertThat(timer.count(), is(2L));
+        assertThat(timer.takeSnapshot(false).percentileValues().length, is(3));
+        assertThat(registry.get("messenger.send").tag("operation", "message").tag("error", "none").timer().count(), is(1L));
+    }
+
+    @Test
+    public void testQueueDepth() {
+        final AtomicLong depth = new AtomicLong(5);
+        metrics.registerQueue("webhook.executor", new MessengerMetrics.QueueDepth() {
+
+            @Override
+            public long get() {
+                return depth.get();
+            }
+        });
+        System.gc();
+        depth.set(7);
+        assertThat(registry.get("messenger.queue.depth").tag("queue", "webhook.executor").gauge().value(), is(7.0));
+    }
+
+    @Test
+    public void testQueueDepthRegisteredAgainReplacesGauge() {
+        int meterCount = registry.getMeters().size();
+        metrics.registerQueue("dispatch", queueDepth(5));
+        metrics.registerQueue("dispatch", queueDepth(7));
+        System.gc();
+        assertThat(registry.getMeters().size(), is(meterCount + 1));
+        assertThat(registry.get("messenger.queue.depth").tag("queue", "dispatch").gauge().value(), is(7.0));
+    }
+
+    private static MessengerMetrics.QueueDepth queueDepth(final long depth) {
+        return new MessengerMetrics.QueueDepth() {
+
+            @Override
+            public long get() {
+                return depth;
+            }
+        };
+    }
+
+    private Timer dispatchTimer(String type, String standby, String outcome) {
+        return registry.get("messenger.dispatch").tag("type", type).tag("standby", standby).tag("outcome", outcome).timer();
+    }
+}